@@ -0,0 +1,42 @@
+import java.util.*;
+
+/**
+ * BatchResult class holds the outcome of Inventory.applyBatch
+ * A batch is all-or-nothing: either every operation is APPLIED or none are
+ */
+public class BatchResult {
+    private final boolean applied;
+    private final List<OperationResult> results;
+    
+    public BatchResult(boolean applied, List<OperationResult> results) {
+        this.applied = applied;
+        this.results = Collections.unmodifiableList(results);
+    }
+    
+    // True if every operation took effect
+    public boolean isApplied() {
+        return applied;
+    }
+    
+    // One result per operation, in the order the operations were given
+    public List<OperationResult> getResults() {
+        return results;
+    }
+    
+    // Results of the operations that caused the batch to be rejected
+    public List<OperationResult> getFailures() {
+        List<OperationResult> failures = new ArrayList<>();
+        for (OperationResult result : results) {
+            if (result.getStatus() == OperationResult.Status.FAILED) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+    
+    @Override
+    public String toString() {
+        return (applied ? "Batch applied" : "Batch rejected") + " (" + results.size() + " operation(s), "
+                + getFailures().size() + " failure(s))";
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * CategoryIndex class maps categories to their products and keeps running totals per category
+ * (product count, quantity, value and low-stock count), so category listings and summaries
+ * cost O(categories) instead of O(products). It also keeps the inventory-wide stock value,
+ * so the total is available in constant time.
+ *
+ * Values are fixed-point long cents (see Money), so running totals never drift.
+ *
+ * Category names are dictionary-encoded: every product of a category shares one String instance.
+ *
+ * Each product's entry remembers what it last contributed to its category's totals, and an
+ * update applies only the difference. Entries are only touched under the product's lock stripe;
+ * the category totals are shared between stripes and synchronized per category.
+ */
+class CategoryIndex implements InventoryIndex {
+    private final Map<String, String> dictionary = new ConcurrentHashMap<>();
+    private final Map<String, Category> categories = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>(); // product ID -> entry
+    private final AtomicLong inventoryValueCents = new AtomicLong();
+    private final Predicate<Product> lowStock;
+    
+    // lowStock decides which products count towards a category's low-stock total
+    CategoryIndex(Predicate<Product> lowStock) {
+        this.lowStock = lowStock;
+    }
+    
+    // Products and running totals of one category
+    private final class Category {
+        final String name;
+        final Set<String> productIds = ConcurrentHashMap.newKeySet();
+        int productCount;
+        long totalQuantity;
+        long totalValueCents;
+        int lowStockCount;
+        
+        Category(String name) {
+            this.name = name;
+        }
+        
+        synchronized void add(int sign, int quantity, long priceCents, boolean lowStock) {
+            long value = sign * priceCents * quantity;
+            productCount += sign;
+            totalQuantity += sign * (long) quantity;
+            totalValueCents += value;
+            lowStockCount += lowStock ? sign : 0;
+            inventoryValueCents.addAndGet(value);
+        }
+        
+        synchronized CategoryStats stats() {
+            return new CategoryStats(name, productCount, totalQuantity, totalValueCents, lowStockCount);
+        }
+    }
+    
+    // What one product currently contributes to its category
+    private static final class Entry {
+        Category category;
+        int quantity;
+        long priceCents;
+        boolean lowStock;
+    }
+    
+    // The shared instance for a category name
+    public String canonical(String category) {
+        if (category == null) {
+            return null;
+        }
+        String existing = dictionary.putIfAbsent(category, category);
+        return existing != null ? existing : category;
+    }
+    
+    @Override
+    public void productAdded(Product product) {
+        Entry entry = new Entry();
+        entry.category = categoryFor(product.getCategory());
+        entry.quantity = product.getQuantity();
+        entry.priceCents = Money.toCents(product.getPrice());
+        entry.lowStock = lowStock.test(product);
+        entries.put(product.getId(), entry);
+        entry.category.productIds.add(product.getId());
+        entry.category.add(1, entry.quantity, entry.priceCents, entry.lowStock);
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        Entry entry = entries.remove(product.getId());
+        if (entry == null) {
+            return;
+        }
+        entry.category.productIds.remove(product.getId());
+        entry.category.add(-1, entry.quantity, entry.priceCents, entry.lowStock);
+    }
+    
+    @Override
+    public void productUpdated(Product before, Product after) {
+        Entry entry = entries.get(after.getId());
+        if (entry != null) {
+            reconcile(entry, after);
+        }
+    }
+    
+    @Override
+    public void cleared() {
+        entries.clear();
+        categories.clear();
+        inventoryValueCents.set(0);
+    }
+    
+    // Stock value of the whole inventory in cents
+    public long totalValueCents() {
+        return inventoryValueCents.get();
+    }
+    
+    // IDs of products whose category contains the query, ignoring case
+    public List<String> search(String query) {
+        String needle = query.toLowerCase();
+        List<String> ids = new ArrayList<>();
+        for (Category category : categories.values()) {
+            if (category.name.toLowerCase().contains(needle)) {
+                ids.addAll(category.productIds);
+            }
+        }
+        return ids;
+    }
+    
+    // IDs of products in exactly this category
+    public List<String> productIds(String category) {
+        Category existing = categories.get(category == null ? "" : category);
+        return existing == null ? new ArrayList<>() : new ArrayList<>(existing.productIds);
+    }
+    
+    // Number of products in exactly this category
+    public int productCount(String category) {
+        Category existing = categories.get(category == null ? "" : category);
+        return existing == null ? 0 : existing.productIds.size();
+    }
+    
+    // Summary of every non-empty category
+    public List<CategoryStats> statistics() {
+        List<CategoryStats> stats = new ArrayList<>(categories.size());
+        for (Category category : categories.values()) {
+            CategoryStats categoryStats = category.stats();
+            if (categoryStats.getProductCount() > 0) {
+                stats.add(categoryStats);
+            }
+        }
+        return stats;
+    }
+    
+    // Bring an entry's contribution in line with the product's values
+    private void reconcile(Entry entry, Product product) {
+        Category category = categoryFor(product.getCategory());
+        int quantity = product.getQuantity();
+        long priceCents = Money.toCents(product.getPrice());
+        boolean low = lowStock.test(product);
+        if (category == entry.category && quantity == entry.quantity && priceCents == entry.priceCents
+                && low == entry.lowStock) {
+            return;
+        }
+        
+        entry.category.add(-1, entry.quantity, entry.priceCents, entry.lowStock);
+        if (category != entry.category) {
+            entry.category.productIds.remove(product.getId());
+            category.productIds.add(product.getId());
+            entry.category = category;
+        }
+        entry.quantity = quantity;
+        entry.priceCents = priceCents;
+        entry.lowStock = low;
+        category.add(1, quantity, priceCents, low);
+    }
+    
+    private Category categoryFor(String category) {
+        String name = category == null ? "" : canonical(category);
+        Category existing = categories.get(name);
+        return existing != null ? existing : categories.computeIfAbsent(name, Category::new);
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CategoryOrderIndex class keeps one ordering per category, for rankings within a category
+ * Each category has its own ProductOrderIndex, so "the 10 most expensive products in Garden"
+ * walks 10 entries of Garden's skip list instead of sorting the category. A product that
+ * changes category moves from one category's index to the other's.
+ *
+ * Categories are few, so an index emptied by removals is kept rather than dropped.
+ */
+class CategoryOrderIndex implements InventoryIndex {
+    private final ProductOrder order;
+    private final Map<String, ProductOrderIndex> categories = new ConcurrentHashMap<>();
+    
+    CategoryOrderIndex(ProductOrder order) {
+        this.order = order;
+    }
+    
+    ProductOrder getOrder() {
+        return order;
+    }
+    
+    @Override
+    public void productAdded(Product product) {
+        indexFor(product.getCategory()).productAdded(product);
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        ProductOrderIndex index = categories.get(keyOf(product.getCategory()));
+        if (index != null) {
+            index.productRemoved(product);
+        }
+    }
+    
+    @Override
+    public void productUpdated(Product before, Product after) {
+        if (keyOf(before.getCategory()).equals(keyOf(after.getCategory()))) {
+            indexFor(after.getCategory()).productUpdated(before, after);
+        } else {
+            productRemoved(before);
+            productAdded(after);
+        }
+    }
+    
+    @Override
+    public void cleared() {
+        categories.clear();
+    }
+    
+    // Up to limit products of exactly this category, lowest first or highest first
+    List<Product> first(String category, int limit, boolean highest) {
+        ProductOrderIndex index = categories.get(keyOf(category));
+        return index == null ? new ArrayList<>() : index.first(limit, highest);
+    }
+    
+    // Up to limit products of every non-empty category, by category name
+    Map<String, List<Product>> firstByCategory(int limit, boolean highest) {
+        Map<String, List<Product>> result = new TreeMap<>();
+        for (Map.Entry<String, ProductOrderIndex> entry : categories.entrySet()) {
+            List<Product> products = entry.getValue().first(limit, highest);
+            if (!products.isEmpty()) {
+                result.put(entry.getKey(), products);
+            }
+        }
+        return result;
+    }
+    
+    private ProductOrderIndex indexFor(String category) {
+        String key = keyOf(category);
+        ProductOrderIndex index = categories.get(key);
+        return index != null ? index : categories.computeIfAbsent(key, ignored -> new ProductOrderIndex(order));
+    }
+    
+    // Products without a category are ranked under "", like in CategoryIndex
+    private static String keyOf(String category) {
+        return category == null ? "" : category;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * CategoryStats class is a point-in-time summary of one product category
+ * Stock value is kept in fixed-point cents
+ */
+public class CategoryStats {
+    private final String category;
+    private final int productCount;
+    private final long totalQuantity;
+    private final long totalValueCents;
+    private final int lowStockCount;
+    
+    public CategoryStats(String category, int productCount, long totalQuantity, long totalValueCents, int lowStockCount) {
+        this.category = category;
+        this.productCount = productCount;
+        this.totalQuantity = totalQuantity;
+        this.totalValueCents = totalValueCents;
+        this.lowStockCount = lowStockCount;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    // Number of distinct products in the category
+    public int getProductCount() {
+        return productCount;
+    }
+    
+    // Units in stock across the category
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+    
+    // Stock value (price * quantity) across the category
+    public double getTotalValue() {
+        return Money.toAmount(totalValueCents);
+    }
+    
+    // Exact stock value across the category in cents
+    public long getTotalValueCents() {
+        return totalValueCents;
+    }
+    
+    // Number of products in the category that are low in stock
+    public int getLowStockCount() {
+        return lowStockCount;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: %d product(s), %d items, $%s, %d low stock",
+                category, productCount, totalQuantity, Money.format(totalValueCents), lowStockCount);
+    }
+}
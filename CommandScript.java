@@ -0,0 +1,333 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * CommandScript class replays one-line commands against the inventory without menus or pauses
+ * Every command writes exactly one JSON line: {"line":N,"command":"...","ok":true,...} or
+ * {"line":N,"command":"...","ok":false,"error":"..."}. Blank lines and lines starting with #
+ * are skipped. Arguments are separated by spaces; double quotes keep spaces in an argument and
+ * a backslash escapes the next character.
+ *
+ *   add <id> <name> <price> <quantity> [category] [description]
+ *   update <id> [name=<name>] [price=<price>] [quantity=<quantity>] [category=<category>] [description=<text>]
+ *   qty <id> <change>                       fails instead of taking stock below zero
+ *   delete <id>
+ *   get <id>
+ *   search [name|prefix|category] <text> [limit]
+ *   report summary|low-stock|categories
+ *
+ * Every command takes effect before the next one is read. With a batchSize of 1 each mutation is
+ * persisted as it is applied, like the interactive menu does; with a larger batchSize mutations
+ * are applied without persisting and persisted together once per batchSize of them (one journal
+ * append, or one data file rewrite without a journal). They are also persisted whenever the
+ * input has nothing more buffered, so a client feeding commands over a pipe never waits on a
+ * batch that cannot fill up. The output is flushed at the same moments.
+ */
+public class CommandScript {
+    
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_PREFIX_LIMIT = 20;
+    
+    private final Inventory inventory;
+    private final BufferedReader in;
+    private final Writer out;
+    private final int batchSize;
+    private final StringBuilder line = new StringBuilder(256);
+    private final List<InventoryOperation> unpersisted = new ArrayList<>(); // applied, not yet persisted
+    private long commands;
+    private long failed;
+    private long mutations;
+    private long persists;
+    
+    private CommandScript(Inventory inventory, Reader in, Writer out, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.inventory = inventory;
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, BUFFER_SIZE);
+        this.out = out;
+        this.batchSize = batchSize;
+    }
+    
+    // Replay a script file, writing the results to out
+    public static ScriptResult runFile(Inventory inventory, File file, Writer out, int batchSize) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return run(inventory, in, out, batchSize);
+        }
+    }
+    
+    // Replay commands until the end of the input; out is flushed but not closed
+    public static ScriptResult run(Inventory inventory, Reader in, Writer out, int batchSize) throws IOException {
+        Writer buffered = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFER_SIZE);
+        return new CommandScript(inventory, in, buffered, batchSize).run();
+    }
+    
+    private ScriptResult run() throws IOException {
+        long start = System.nanoTime();
+        int lineNumber = 0;
+        String text;
+        while ((text = in.readLine()) != null) {
+            lineNumber++;
+            String command = text.trim();
+            if (!command.isEmpty() && command.charAt(0) != '#') {
+                commands++;
+                execute(lineNumber, command);
+            }
+            if (!in.ready()) {
+                persist();
+                out.flush();
+            }
+        }
+        persist();
+        out.flush();
+        return new ScriptResult(commands, failed, mutations, persists, System.nanoTime() - start);
+    }
+    
+    private void execute(int lineNumber, String command) throws IOException {
+        List<String> args;
+        try {
+            args = tokenize(command);
+        } catch (IllegalArgumentException e) {
+            fail(lineNumber, command.split("\\s", 2)[0], e.getMessage());
+            return;
+        }
+        String name = args.get(0);
+        try {
+            switch (name) {
+                case "add":
+                    requireArgs(args, 5, 7, "add <id> <name> <price> <quantity> [category] [description]");
+                    apply(lineNumber, name, InventoryOperation.add(new Product(args.get(1), args.get(2),
+                            parsePrice(args.get(3)), parseQuantity(args.get(4)),
+                            args.size() > 5 ? args.get(5) : "", args.size() > 6 ? args.get(6) : "")));
+                    break;
+                case "update":
+                    requireArgs(args, 3, 7, "update <id> <field>=<value>...");
+                    apply(lineNumber, name, InventoryOperation.update(args.get(1), updated(args)));
+                    break;
+                case "qty":
+                    requireArgs(args, 3, 3, "qty <id> <change>");
+                    apply(lineNumber, name, InventoryOperation.adjustQuantity(args.get(1), parseInt(args.get(2), "change")));
+                    break;
+                case "delete":
+                    requireArgs(args, 2, 2, "delete <id>");
+                    apply(lineNumber, name, InventoryOperation.delete(args.get(1)));
+                    break;
+                case "get":
+                    requireArgs(args, 2, 2, "get <id>");
+                    get(lineNumber, args.get(1));
+                    break;
+                case "search":
+                    requireArgs(args, 2, 4, "search [name|prefix|category] <text> [limit]");
+                    search(lineNumber, args);
+                    break;
+                case "report":
+                    requireArgs(args, 2, 2, "report summary|low-stock|categories");
+                    StringBuilder report = Json.appendReport(new StringBuilder(1024), inventory, args.get(1));
+                    if (report == null) {
+                        throw new IllegalArgumentException("Unknown report, expected summary, low-stock or categories");
+                    }
+                    write(success(lineNumber, name).append(",\"report\":").append(report).append('}'));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command, expected add, update, qty, delete, get, search or report");
+            }
+        } catch (IllegalArgumentException e) {
+            fail(lineNumber, name, e.getMessage());
+        }
+    }
+    
+    // Apply a mutation, persisting once batchSize of them are waiting
+    private void apply(int lineNumber, String command, InventoryOperation operation) throws IOException {
+        BatchResult result = inventory.applyBatch(Collections.singletonList(operation), batchSize == 1);
+        OperationResult outcome = result.getResults().get(0);
+        if (!result.isApplied()) {
+            fail(lineNumber, command, outcome.getMessage());
+            return;
+        }
+        mutations++;
+        if (batchSize == 1) {
+            persists++;
+        } else {
+            unpersisted.add(operation);
+            if (unpersisted.size() >= batchSize) {
+                persist();
+            }
+        }
+        StringBuilder entry = success(lineNumber, command);
+        if (outcome.getQuantity() >= 0) {
+            entry.append(",\"quantity\":").append(outcome.getQuantity());
+        }
+        write(entry.append('}'));
+    }
+    
+    // Persist every mutation applied since the last time
+    private void persist() {
+        if (!unpersisted.isEmpty()) {
+            inventory.persist(unpersisted);
+            persists++;
+            unpersisted.clear();
+        }
+    }
+    
+    private void get(int lineNumber, String id) throws IOException {
+        Product product = inventory.getProduct(id);
+        if (product == null) {
+            fail(lineNumber, "get", "Product with ID '" + id + "' not found");
+            return;
+        }
+        StringBuilder entry = success(lineNumber, "get").append(",\"product\":");
+        write(Json.appendProduct(entry, product).append('}'));
+    }
+    
+    private void search(int lineNumber, List<String> args) throws IOException {
+        String by = args.size() > 2 ? args.get(1) : "name";
+        String text = args.get(args.size() > 2 ? 2 : 1);
+        List<Product> results;
+        switch (by) {
+            case "name":
+                results = inventory.searchProductsByName(text);
+                break;
+            case "prefix":
+                results = inventory.searchProductsByNamePrefix(text,
+                        args.size() > 3 ? parseInt(args.get(3), "limit") : DEFAULT_PREFIX_LIMIT);
+                break;
+            case "category":
+                results = inventory.searchProductsByCategory(text);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown search, expected name, prefix or category");
+        }
+        if (args.size() > 3 && !by.equals("prefix")) {
+            int limit = parseInt(args.get(3), "limit");
+            results = results.subList(0, Math.min(Math.max(limit, 0), results.size()));
+        }
+        StringBuilder entry = success(lineNumber, "search").append(",\"count\":").append(results.size())
+                .append(",\"products\":");
+        write(Json.appendProducts(entry, results).append('}'));
+    }
+    
+    // The product an update command describes: the current product with the given fields replaced
+    private Product updated(List<String> args) {
+        String id = args.get(1);
+        Product current = inventory.getProduct(id);
+        if (current == null) {
+            throw new IllegalArgumentException("Product with ID '" + id + "' not found");
+        }
+        Product product = current.copy();
+        for (String field : args.subList(2, args.size())) {
+            int equals = field.indexOf('=');
+            String value = equals < 0 ? "" : field.substring(equals + 1);
+            switch (equals < 0 ? field : field.substring(0, equals)) {
+                case "name":
+                    product.setName(value);
+                    break;
+                case "price":
+                    product.setPrice(parsePrice(value));
+                    break;
+                case "quantity":
+                    product.setQuantity(parseQuantity(value));
+                    break;
+                case "category":
+                    product.setCategory(value);
+                    break;
+                case "description":
+                    product.setDescription(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field '" + field
+                            + "', expected name, price, quantity, category or description");
+            }
+        }
+        return product;
+    }
+    
+    private StringBuilder success(int lineNumber, String command) {
+        line.setLength(0);
+        return line.append("{\"line\":").append(lineNumber).append(",\"command\":\"").append(command)
+                .append("\",\"ok\":true");
+    }
+    
+    private void fail(int lineNumber, String command, String error) throws IOException {
+        failed++;
+        line.setLength(0);
+        line.append("{\"line\":").append(lineNumber).append(",\"command\":");
+        Json.appendString(line, command);
+        line.append(",\"ok\":false,\"error\":");
+        write(Json.appendString(line, error).append('}'));
+    }
+    
+    private void write(StringBuilder entry) throws IOException {
+        entry.append('\n');
+        out.append(entry);
+    }
+    
+    private static void requireArgs(List<String> args, int min, int max, String usage) {
+        if (args.size() < min || args.size() > max) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+    
+    private static double parsePrice(String value) {
+        double price;
+        try {
+            price = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid price '" + value + "'");
+        }
+        if (!(price >= 0) || Double.isInfinite(price)) {
+            throw new IllegalArgumentException("Price must be a non-negative number");
+        }
+        return price;
+    }
+    
+    private static int parseQuantity(String value) {
+        int quantity = parseInt(value, "quantity");
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        return quantity;
+    }
+    
+    private static int parseInt(String value, String what) {
+        try {
+            return Integer.parseInt(value.startsWith("+") ? value.substring(1) : value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + " '" + value + "'");
+        }
+    }
+    
+    // Split a command into arguments; quotes group spaces and a backslash escapes one character
+    private static List<String> tokenize(String command) {
+        List<String> args = new ArrayList<>(8);
+        StringBuilder arg = new StringBuilder();
+        boolean quoted = false;
+        boolean inArg = false;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (c == '\\' && i + 1 < command.length()) {
+                arg.append(command.charAt(++i));
+                inArg = true;
+            } else if (c == '"') {
+                quoted = !quoted;
+                inArg = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+}
@@ -0,0 +1,588 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * CompactProductStore class is a memory-only product store for very large catalogs
+ * It offers the core Inventory operations but keeps products in a struct-of-arrays layout
+ * instead of one Product object (plus four Strings and a map entry) per product.
+ *
+ * Every product lives in a dense slot: price, quantity and category code are primitive arrays
+ * indexed by the slot, IDs are found through an open-addressing int table of slots, and the
+ * ID, name and description are stored as UTF-8 in a byte arena of fixed-size chunks, optionally
+ * off-heap. Category names are dictionary-encoded. Product objects returned by the store are
+ * detached copies materialized on demand; changing them does not change the store.
+ *
+ * Reads and quantity adjustments share a read lock (quantities are compare-and-set on the
+ * array element), while add/update/delete take the write lock.
+ */
+public class CompactProductStore {
+    private static final VarHandle QUANTITY = MethodHandles.arrayElementVarHandle(int[].class);
+    
+    private static final int CHUNK_BITS = 24;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // 16MB per arena chunk
+    private static final int NULL_LENGTH = -1;
+    private static final int FREE = -1;
+    
+    private final boolean offHeap;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // Slot columns
+    private double[] prices;
+    private int[] quantities;
+    private int[] categoryCodes;
+    private long[] records;  // arena address of the slot's ID, name and description, FREE if unused
+    private int[] idHashes;
+    private int slotCount;   // slots ever used
+    private int size;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    
+    // ID -> slot + 1, 0 marks an empty bucket (linear probing)
+    private int[] table;
+    
+    // Category dictionary
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> categoryCodesByName = new HashMap<>();
+    
+    // String arena
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long arenaEnd;
+    private long garbageBytes;
+    
+    private final AtomicLong totalValueCents = new AtomicLong();
+    
+    // Constructor with the arena on the Java heap
+    public CompactProductStore() {
+        this(false);
+    }
+    
+    // Constructor, offHeap keeps the string arena in direct buffers outside the Java heap
+    public CompactProductStore(boolean offHeap) {
+        this.offHeap = offHeap;
+        initialize(1024);
+    }
+    
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+    
+    // Add a new product to the store
+    public boolean addProduct(Product product) {
+        if (product == null || product.getId() == null || product.getId().trim().isEmpty()) {
+            return false;
+        }
+        
+        byte[] id = utf8(product.getId());
+        int hash = product.getId().hashCode();
+        lock.writeLock().lock();
+        try {
+            if (find(id, hash) >= 0) {
+                return false;
+            }
+            int slot = allocateSlot();
+            idHashes[slot] = hash;
+            records[slot] = writeRecord(id, product.getName(), product.getDescription());
+            prices[slot] = product.getPrice();
+            quantities[slot] = product.getQuantity();
+            categoryCodes[slot] = categoryCode(product.getCategory());
+            insert(slot);
+            size++;
+            totalValueCents.addAndGet(valueCents(slot));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Update an existing product with the values of another product (the ID is kept)
+    public boolean updateProduct(String id, Product updatedProduct) {
+        if (id == null || updatedProduct == null) {
+            return false;
+        }
+        
+        byte[] key = utf8(id);
+        lock.writeLock().lock();
+        try {
+            int slot = find(key, id.hashCode());
+            if (slot < 0) {
+                return false;
+            }
+            totalValueCents.addAndGet(-valueCents(slot));
+            garbageBytes += recordLength(records[slot]);
+            records[slot] = writeRecord(key, updatedProduct.getName(), updatedProduct.getDescription());
+            prices[slot] = updatedProduct.getPrice();
+            quantities[slot] = updatedProduct.getQuantity();
+            categoryCodes[slot] = categoryCode(updatedProduct.getCategory());
+            totalValueCents.addAndGet(valueCents(slot));
+            compactIfWasteful();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Delete a product from the store
+    public boolean deleteProduct(String id) {
+        if (id == null) {
+            return false;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            int slot = find(utf8(id), id.hashCode());
+            if (slot < 0) {
+                return false;
+            }
+            totalValueCents.addAndGet(-valueCents(slot));
+            remove(slot);
+            garbageBytes += recordLength(records[slot]);
+            records[slot] = FREE;
+            quantities[slot] = 0;
+            prices[slot] = 0;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            size--;
+            compactIfWasteful();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Get a detached copy of a product by ID
+    public Product getProduct(String id) {
+        if (id == null) {
+            return null;
+        }
+        
+        lock.readLock().lock();
+        try {
+            int slot = find(utf8(id), id.hashCode());
+            return slot < 0 ? null : materialize(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Get detached copies of all products
+    public List<Product> getAllProducts() {
+        List<Product> result = new ArrayList<>(size);
+        forEachProduct(result::add);
+        return result;
+    }
+    
+    // Visit every product without collecting them into a list, each product is a detached copy
+    // The action runs under the read lock and must not modify the store
+    public void forEachProduct(Consumer<Product> action) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (records[slot] != FREE) {
+                    action.accept(materialize(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Search products by name (case-insensitive), scanning the arena
+    public List<Product> searchProductsByName(String name) {
+        List<Product> result = new ArrayList<>();
+        if (name == null) {
+            return result;
+        }
+        
+        String needle = name.toLowerCase();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (records[slot] == FREE) {
+                    continue;
+                }
+                long address = records[slot];
+                String productName = readString(address + 4 + readInt(address));
+                if (productName != null && productName.toLowerCase().contains(needle)) {
+                    result.add(materialize(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    // Search products by category (case-insensitive, matches part of the category name)
+    public List<Product> searchProductsByCategory(String category) {
+        List<Product> result = new ArrayList<>();
+        if (category == null) {
+            return result;
+        }
+        
+        String needle = category.toLowerCase();
+        lock.readLock().lock();
+        try {
+            boolean[] matches = new boolean[categoryNames.size()];
+            for (int code = 0; code < matches.length; code++) {
+                String name = categoryNames.get(code);
+                matches[code] = name != null && name.toLowerCase().contains(needle);
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (records[slot] != FREE && matches[categoryCodes[slot]]) {
+                    result.add(materialize(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    // Get products with less than the default low-stock threshold
+    public List<Product> getLowStockProducts() {
+        List<Product> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (records[slot] != FREE && quantities[slot] < Product.DEFAULT_LOW_STOCK_THRESHOLD) {
+                    result.add(materialize(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    // Update product quantity, clamping at zero
+    public boolean updateProductQuantity(String id, int quantityChange) {
+        return adjustQuantity(id, quantityChange, true);
+    }
+    
+    // Update product quantity only if stock would not go below zero
+    public boolean tryUpdateProductQuantity(String id, int quantityChange) {
+        return adjustQuantity(id, quantityChange, false);
+    }
+    
+    // Get total inventory value, kept as a running total so this is constant time
+    public double getTotalInventoryValue() {
+        return Money.toAmount(totalValueCents.get());
+    }
+    
+    // Get exact total inventory value in cents
+    public long getTotalInventoryValueCents() {
+        return totalValueCents.get();
+    }
+    
+    // Get total number of products
+    public int getTotalProducts() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Check if the store is empty
+    public boolean isEmpty() {
+        return getTotalProducts() == 0;
+    }
+    
+    // Bytes reserved for the string arena
+    public long getArenaCapacity() {
+        lock.readLock().lock();
+        try {
+            return (long) chunks.size() * CHUNK_SIZE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Clear all products
+    public void clearInventory() {
+        lock.writeLock().lock();
+        try {
+            initialize(1024);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private boolean adjustQuantity(String id, int quantityChange, boolean clamp) {
+        if (id == null) {
+            return false;
+        }
+        
+        lock.readLock().lock();
+        try {
+            int slot = find(utf8(id), id.hashCode());
+            if (slot < 0) {
+                return false;
+            }
+            while (true) {
+                int current = (int) QUANTITY.getVolatile(quantities, slot);
+                long next = (long) current + quantityChange;
+                if (next < 0) {
+                    if (!clamp) {
+                        return false;
+                    }
+                    next = 0;
+                }
+                if (next > Integer.MAX_VALUE) {
+                    if (!clamp) {
+                        return false;
+                    }
+                    throw new IllegalArgumentException("Quantity would exceed " + Integer.MAX_VALUE);
+                }
+                if (QUANTITY.compareAndSet(quantities, slot, current, (int) next)) {
+                    // Prices only change under the write lock, so this delta is exact
+                    totalValueCents.addAndGet(Money.toCents(prices[slot]) * (next - current));
+                    return true;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void initialize(int capacity) {
+        prices = new double[capacity];
+        quantities = new int[capacity];
+        categoryCodes = new int[capacity];
+        records = new long[capacity];
+        idHashes = new int[capacity];
+        table = new int[Integer.highestOneBit(capacity) * 4];
+        slotCount = 0;
+        size = 0;
+        freeCount = 0;
+        categoryNames.clear();
+        categoryCodesByName.clear();
+        chunks.clear();
+        arenaEnd = 0;
+        garbageBytes = 0;
+        totalValueCents.set(0);
+    }
+    
+    private Product materialize(int slot) {
+        long address = records[slot];
+        int idLength = readInt(address);
+        String id = readString(address);
+        long nameAddress = address + 4 + idLength;
+        String name = readString(nameAddress);
+        String description = readString(nameAddress + 4 + Math.max(0, readInt(nameAddress)));
+        return new Product(id, name, prices[slot], (int) QUANTITY.getVolatile(quantities, slot),
+                categoryNames.get(categoryCodes[slot]), description);
+    }
+    
+    private long valueCents(int slot) {
+        return Money.valueOf(prices[slot], quantities[slot]);
+    }
+    
+    private int categoryCode(String category) {
+        Integer code = categoryCodesByName.get(category == null ? "" : category);
+        if (code == null) {
+            code = categoryNames.size();
+            categoryNames.add(category);
+            categoryCodesByName.put(category == null ? "" : category, code);
+        }
+        return code;
+    }
+    
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == records.length) {
+            int capacity = records.length * 2;
+            prices = Arrays.copyOf(prices, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+            records = Arrays.copyOf(records, capacity);
+            idHashes = Arrays.copyOf(idHashes, capacity);
+        }
+        return slotCount++;
+    }
+    
+    // Slot holding the ID, or -1
+    private int find(byte[] id, int hash) {
+        int mask = table.length - 1;
+        for (int bucket = spread(hash) & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = table[bucket] - 1;
+            if (idHashes[slot] == hash && idEquals(records[slot], id)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    private void insert(int slot) {
+        // Keep the table at most half full so probe sequences stay short
+        if ((size + 1) * 2 > table.length) {
+            int[] old = table;
+            table = new int[old.length * 2];
+            for (int entry : old) {
+                if (entry != 0) {
+                    place(entry - 1);
+                }
+            }
+        }
+        place(slot);
+    }
+    
+    private void place(int slot) {
+        int mask = table.length - 1;
+        int bucket = spread(idHashes[slot]) & mask;
+        while (table[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        table[bucket] = slot + 1;
+    }
+    
+    // Remove a slot from the table, shifting later entries of the probe run back (no tombstones)
+    private void remove(int slot) {
+        int mask = table.length - 1;
+        int bucket = spread(idHashes[slot]) & mask;
+        while (table[bucket] != slot + 1) {
+            bucket = (bucket + 1) & mask;
+        }
+        int hole = bucket;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = spread(idHashes[table[next] - 1]) & mask;
+            // Move the entry into the hole unless its home bucket lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+    }
+    
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    // Record layout in the arena: [int length][UTF-8 ID][int length][name][int length][description]
+    private long writeRecord(byte[] id, String name, String description) {
+        byte[] nameBytes = name == null ? null : utf8(name);
+        byte[] descriptionBytes = description == null ? null : utf8(description);
+        int length = 12 + id.length + (nameBytes == null ? 0 : nameBytes.length)
+                + (descriptionBytes == null ? 0 : descriptionBytes.length);
+        if (length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("Product text exceeds " + CHUNK_SIZE + " bytes");
+        }
+        
+        // Records never span chunks, start a new chunk if this one is too full
+        int offset = (int) (arenaEnd & (CHUNK_SIZE - 1));
+        if (arenaEnd == (long) chunks.size() * CHUNK_SIZE || offset + length > CHUNK_SIZE) {
+            if (offset != 0) {
+                garbageBytes += CHUNK_SIZE - offset;
+            }
+            chunks.add(offHeap ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE));
+            arenaEnd = (long) (chunks.size() - 1) * CHUNK_SIZE;
+            offset = 0;
+        }
+        
+        ByteBuffer chunk = chunks.get(chunks.size() - 1);
+        long address = arenaEnd;
+        offset = putBytes(chunk, offset, id);
+        offset = putBytes(chunk, offset, nameBytes);
+        putBytes(chunk, offset, descriptionBytes);
+        arenaEnd += length;
+        return address;
+    }
+    
+    private static int putBytes(ByteBuffer chunk, int offset, byte[] bytes) {
+        if (bytes == null) {
+            chunk.putInt(offset, NULL_LENGTH);
+            return offset + 4;
+        }
+        chunk.putInt(offset, bytes.length);
+        chunk.put(offset + 4, bytes);
+        return offset + 4 + bytes.length;
+    }
+    
+    private int recordLength(long address) {
+        long position = address;
+        for (int i = 0; i < 3; i++) {
+            position += 4 + Math.max(0, readInt(position));
+        }
+        return (int) (position - address);
+    }
+    
+    // Rewrite the live records into fresh chunks once more than half of the arena is garbage
+    private void compactIfWasteful() {
+        if (chunks.size() < 2 || garbageBytes * 2 < arenaEnd) {
+            return;
+        }
+        List<ByteBuffer> oldChunks = new ArrayList<>(chunks);
+        long[] oldRecords = records.clone();
+        chunks.clear();
+        arenaEnd = 0;
+        garbageBytes = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (oldRecords[slot] != FREE) {
+                records[slot] = copyRecord(oldChunks, oldRecords[slot]);
+            }
+        }
+    }
+    
+    private long copyRecord(List<ByteBuffer> from, long address) {
+        ByteBuffer chunk = from.get((int) (address >>> CHUNK_BITS));
+        int offset = (int) (address & (CHUNK_SIZE - 1));
+        byte[][] fields = new byte[3][];
+        for (int i = 0; i < 3; i++) {
+            int length = chunk.getInt(offset);
+            if (length != NULL_LENGTH) {
+                fields[i] = new byte[length];
+                chunk.get(offset + 4, fields[i]);
+            }
+            offset += 4 + Math.max(0, length);
+        }
+        return writeRecord(fields[0], fields[1] == null ? null : new String(fields[1], StandardCharsets.UTF_8),
+                fields[2] == null ? null : new String(fields[2], StandardCharsets.UTF_8));
+    }
+    
+    private int readInt(long address) {
+        return chunks.get((int) (address >>> CHUNK_BITS)).getInt((int) (address & (CHUNK_SIZE - 1)));
+    }
+    
+    private String readString(long address) {
+        ByteBuffer chunk = chunks.get((int) (address >>> CHUNK_BITS));
+        int offset = (int) (address & (CHUNK_SIZE - 1));
+        int length = chunk.getInt(offset);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        chunk.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private boolean idEquals(long address, byte[] id) {
+        ByteBuffer chunk = chunks.get((int) (address >>> CHUNK_BITS));
+        int offset = (int) (address & (CHUNK_SIZE - 1));
+        if (chunk.getInt(offset) != id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i++) {
+            if (chunk.get(offset + 4 + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
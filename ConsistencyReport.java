@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ConsistencyReport class compares the inventory's running totals with values recomputed from scratch
+ * Both sides are read from the same snapshot, so the check holds while other threads keep writing
+ */
+public class ConsistencyReport {
+    private final long expectedValueCents;
+    private final long actualValueCents;
+    private final List<String> drifts;
+
+    public ConsistencyReport(long expectedValueCents, long actualValueCents, List<String> drifts) {
+        this.expectedValueCents = expectedValueCents;
+        this.actualValueCents = actualValueCents;
+        this.drifts = Collections.unmodifiableList(new ArrayList<>(drifts));
+    }
+
+    // True if every running total matched its recomputed value
+    public boolean isConsistent() {
+        return drifts.isEmpty();
+    }
+
+    // Total value in cents recomputed from every product
+    public long getExpectedValueCents() {
+        return expectedValueCents;
+    }
+
+    // Total value in cents according to the running total
+    public long getActualValueCents() {
+        return actualValueCents;
+    }
+
+    // Running total minus recomputed total, in cents
+    public long getValueDriftCents() {
+        return actualValueCents - expectedValueCents;
+    }
+
+    // One line per mismatch found
+    public List<String> getDrifts() {
+        return drifts;
+    }
+
+    @Override
+    public String toString() {
+        if (isConsistent()) {
+            return "Consistent: total value $" + Money.format(actualValueCents);
+        }
+        return "Inconsistent (" + drifts.size() + " drift(s)): " + String.join("; ", drifts);
+    }
+}
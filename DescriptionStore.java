@@ -0,0 +1,262 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DescriptionStore class keeps long product descriptions in a cold file next to the data file
+ * Descriptions are appended to the file and never changed; a product only holds a Ref (offset
+ * and length), and the text is read back when getDescription() is called, through an LRU cache
+ * bounded by the number of bytes it holds. The data file stores the refs instead of the text,
+ * so loading an inventory reads none of it.
+ *
+ * Changed and deleted descriptions leave garbage behind; Inventory compacts the file into a new
+ * generation (inventory.dat.desc.1, .2, ...) when it is opened or saved. The data file header
+ * names the generation its refs point into, so the two switch over together when the new
+ * snapshot is written. Compaction moves refs rather than replacing them, so every product
+ * version sharing a description follows it into the new file.
+ */
+final class DescriptionStore implements Closeable {
+    static final int MIN_COLD_LENGTH = 64; // shorter descriptions stay in the data file and in memory
+    static final long DEFAULT_CACHE_BYTES = 16L << 20;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Ref class is the position of one description in a store's file
+     */
+    static final class Ref {
+        final int length; // UTF-8 bytes
+        private volatile Location location; // replaced as a whole when the description moves
+        
+        Ref(DescriptionStore store, long offset, int length) {
+            this.length = length;
+            this.location = new Location(store, offset);
+        }
+        
+        String text() {
+            Location at = location;
+            try {
+                return at.store.read(at.offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read a description from " + at.store.file, e);
+            }
+        }
+        
+        // Offset of the description in the store, or -1 if it is kept in another one
+        long offsetIn(DescriptionStore store) {
+            Location at = location;
+            return at.store == store ? at.offset : -1;
+        }
+    }
+    
+    // Store and offset of a ref, read and written together
+    private static final class Location {
+        final DescriptionStore store;
+        final long offset;
+        
+        Location(DescriptionStore store, long offset) {
+            this.store = store;
+            this.offset = offset;
+        }
+    }
+    
+    private final File file;
+    private final int generation;
+    private final long cacheBytes;
+    private final Map<Long, String> cache = new LinkedHashMap<>(256, 0.75f, true); // offset -> text, LRU order
+    private long cachedBytes; // guarded by cache
+    private long hits; // guarded by cache
+    private long misses; // guarded by cache
+    private FileChannel channel; // opened on first use, guarded by this
+    private boolean writable;
+    private final ByteBuffer pending = ByteBuffer.allocate(WRITE_BUFFER_SIZE); // appended, not written yet
+    private long flushedSize; // bytes in the file, guarded by this
+    
+    // The store of a data file's description generation; the file is created on the first append
+    DescriptionStore(String dataFile, int generation, long cacheBytes) {
+        this.file = fileFor(dataFile, generation);
+        this.generation = generation;
+        this.cacheBytes = cacheBytes;
+        this.flushedSize = file.length();
+    }
+    
+    static File fileFor(String dataFile, int generation) {
+        return new File(dataFile + ".desc." + generation);
+    }
+    
+    // Delete the description files of a data file, except the given generation (0 to delete all)
+    static void deleteGenerations(String dataFile, int keep) {
+        File base = new File(dataFile).getAbsoluteFile();
+        File directory = base.getParentFile();
+        String prefix = base.getName() + ".desc.";
+        String[] names = directory == null ? null : directory.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d{1,9}")
+                    && Integer.parseInt(name.substring(prefix.length())) != keep) {
+                File stale = new File(directory, name);
+                if (!stale.delete()) {
+                    System.err.println("Could not delete old description file " + stale.getPath());
+                }
+            }
+        }
+    }
+    
+    int getGeneration() {
+        return generation;
+    }
+    
+    File getFile() {
+        return file;
+    }
+    
+    // Bytes appended so far, including garbage
+    synchronized long size() {
+        return flushedSize + pending.position();
+    }
+    
+    // True if the ref points into this store
+    boolean owns(Ref ref) {
+        return ref.location.store == this;
+    }
+    
+    // Append a description and return where it is
+    synchronized Ref append(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > pending.remaining()) {
+            flush();
+        }
+        long offset = size();
+        if (bytes.length > pending.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes), offset);
+            flushedSize += bytes.length;
+        } else {
+            pending.put(bytes);
+        }
+        cache(offset, text);
+        return new Ref(this, offset, bytes.length);
+    }
+    
+    // Copy a description kept in another store to the end of this one and point its ref here
+    // Readers that already picked up the old position still read it from the old file
+    synchronized void moveHere(Ref ref) throws IOException {
+        if (owns(ref)) {
+            return;
+        }
+        ref.location = append(ref.text()).location;
+    }
+    
+    // Text of a description, from the cache or else from the file
+    private String read(long offset, int length) throws IOException {
+        synchronized (cache) {
+            String text = cache.get(offset);
+            if (text != null) {
+                hits++;
+                return text;
+            }
+            misses++;
+        }
+        byte[] bytes = new byte[length];
+        synchronized (this) {
+            if (offset + length > flushedSize) {
+                flush();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = offset;
+            FileChannel reader = channel(false);
+            while (buffer.hasRemaining()) {
+                int read = reader.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Description file " + file + " is truncated");
+                }
+                position += read;
+            }
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        cache(offset, text);
+        return text;
+    }
+    
+    // Write buffered appends to the file (and force them to disk), before a snapshot refers to them
+    synchronized void sync(boolean force) throws IOException {
+        flush();
+        if (force && channel != null && writable) {
+            channel.force(false);
+        }
+    }
+    
+    // Keep the file open for the refs still pointing into it once compaction has moved the rest,
+    // so older product versions (in snapshots and events) stay readable after the file is deleted
+    synchronized void retire() throws IOException {
+        flush();
+        channel(false);
+    }
+    
+    // Cache hits and misses so far
+    long[] cacheStatistics() {
+        synchronized (cache) {
+            return new long[] {hits, misses, cachedBytes};
+        }
+    }
+    
+    // Flush buffered appends and release the file; reads afterwards reopen it
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+    
+    private void flush() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        int length = pending.remaining();
+        writeFully(pending, flushedSize);
+        flushedSize += length;
+        pending.clear();
+    }
+    
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        FileChannel writer = channel(true);
+        while (buffer.hasRemaining()) {
+            position += writer.write(buffer, position);
+        }
+    }
+    
+    private FileChannel channel(boolean write) throws IOException {
+        if (channel != null && (writable || !write)) {
+            return channel;
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        channel = write ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE) : FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        writable = write;
+        return channel;
+    }
+    
+    // Weighs entries by their length in chars, which is close to their UTF-8 size for most text
+    private void cache(long offset, String text) {
+        synchronized (cache) {
+            if (cache.put(offset, text) == null) {
+                cachedBytes += text.length();
+            }
+            var eldest = cache.entrySet().iterator();
+            while (cachedBytes > cacheBytes && eldest.hasNext()) {
+                Map.Entry<Long, String> entry = eldest.next();
+                cachedBytes -= entry.getValue().length();
+                eldest.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * GroupCommitWriter class persists inventory mutations on a background thread in groups
+ * Mutations are enqueued without waiting for the disk. The writer collects everything that
+ * arrives within the commit window and makes it durable with a single write: one journal
+ * append and fsync in journaled mode, or one snapshot of the data file otherwise. Each
+ * enqueued mutation gets a sequence number; durableFuture(seq) completes once it is on disk.
+ *
+ * A journal group that fails is cut off the log again, so its mutations are only in memory.
+ * Sequence numbers never count as durable past it until a full checkpoint has covered them:
+ * the next group (or a later durableFuture call, or close) writes one instead of appending.
+ *
+ * Futures complete on the writer thread, so callbacks attached to them should be quick.
+ */
+class GroupCommitWriter {
+    
+    // Encodes the journal records of one mutation into the open group
+    interface Records {
+        void writeTo(InventoryJournal.Batch batch) throws IOException;
+    }
+    
+    // Mutations collected for one durable write
+    private static final class Group {
+        final InventoryJournal.Batch batch;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+        long lastSequence;
+        
+        Group(InventoryJournal journal) {
+            this.batch = journal != null ? journal.newBatch() : null;
+        }
+    }
+    
+    private final InventoryJournal journal; // null to write a snapshot per group
+    private final BooleanSupplier checkpoint;
+    private final Runnable afterCommit;
+    private final long windowNanos;
+    private final InventoryMetrics metrics;
+    private final Thread thread;
+    
+    private Group open;
+    private Group inFlight;
+    private long enqueued;
+    private long durable;
+    private boolean closed;
+    private Throwable lost; // failure of a journal group that no checkpoint has covered yet
+    private boolean recoveryRequested;
+    
+    // checkpoint writes the data file, empties the journal if there is one and returns false if
+    // either failed; afterCommit runs after each journal group (e.g. to checkpoint a journal that
+    // grew past its limit)
+    GroupCommitWriter(InventoryJournal journal, BooleanSupplier checkpoint, Runnable afterCommit,
+                      long windowMillis, InventoryMetrics metrics) {
+        this.journal = journal;
+        this.checkpoint = checkpoint;
+        this.afterCommit = afterCommit;
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.metrics = metrics;
+        this.open = new Group(journal);
+        this.thread = new Thread(this::run, "inventory-group-commit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    // Add one mutation's records to the open group, returns its sequence number
+    // Records are encoded right away, so they capture the values at the time of the call
+    synchronized long enqueue(Records records) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Inventory has been closed");
+        }
+        if (journal != null) {
+            records.writeTo(open.batch);
+        }
+        if (open.lastSequence == 0) {
+            notifyAll(); // first mutation of the group starts the window
+        }
+        open.lastSequence = ++enqueued;
+        return enqueued;
+    }
+    
+    // Sequence number of the most recently enqueued mutation
+    synchronized long lastEnqueued() {
+        return enqueued;
+    }
+    
+    // Future that completes when the mutation with this sequence number (and every earlier one)
+    // is durable, or completes exceptionally if its group could not be written
+    // After a failed group it asks the writer for the checkpoint that makes it durable again
+    synchronized CompletableFuture<Void> durableFuture(long sequence) {
+        if (sequence <= durable) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (inFlight != null && sequence <= inFlight.lastSequence) {
+            return inFlight.durable;
+        }
+        if (lost != null && !recoveryRequested) {
+            recoveryRequested = true;
+            notifyAll();
+        }
+        return open.durable;
+    }
+    
+    // Write everything enqueued so far, wait for it and stop the writer thread
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void run() {
+        while (true) {
+            Group group;
+            boolean recovering;
+            synchronized (this) {
+                while (open.lastSequence == 0 && !recoveryRequested && !closed) {
+                    waitQuietly(0);
+                }
+                if (open.lastSequence == 0 && lost == null) {
+                    return;
+                }
+                // Let the group fill up for the rest of the window, unless shutting down
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining = windowNanos;
+                while (remaining > 0 && !closed) {
+                    waitQuietly(Math.max(1, remaining / 1_000_000L));
+                    remaining = deadline - System.nanoTime();
+                }
+                group = open;
+                group.lastSequence = enqueued; // a recovery group may be empty but covers them all
+                recovering = lost != null;
+                recoveryRequested = false;
+                inFlight = group;
+                open = new Group(journal);
+            }
+            
+            Throwable failure = recovering ? checkpoint() : write(group);
+            boolean stop;
+            synchronized (this) {
+                if (failure == null) {
+                    durable = group.lastSequence;
+                    lost = null;
+                } else if (journal != null && lost == null) {
+                    lost = failure;
+                }
+                inFlight = null;
+                // At close a failed checkpoint is not retried, the changes stay in memory only
+                stop = closed && recovering && failure != null;
+            }
+            if (failure == null) {
+                group.durable.complete(null);
+            } else {
+                System.err.println("Error writing group commit: " + failure.getMessage());
+                group.durable.completeExceptionally(failure);
+            }
+            if (stop) {
+                return;
+            }
+        }
+    }
+    
+    // One durable write for the whole group, returns the failure if there was one
+    // A journal group that fails leaves nothing in the log, see InventoryJournal.commitDurably
+    private Throwable write(Group group) {
+        long start = metrics.start();
+        try {
+            if (journal == null) {
+                return checkpoint();
+            }
+            int bytes = journal.commitDurably(group.batch);
+            metrics.journalWritten(group.batch.size(), bytes);
+            afterCommit.run();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            return e;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GROUP_COMMIT, start);
+        }
+    }
+    
+    // Full checkpoint in place of the group, returns the failure if there was one
+    private Throwable checkpoint() {
+        try {
+            if (!checkpoint.getAsBoolean()) {
+                return new IOException("Snapshot could not be written");
+            }
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+    
+    private void waitQuietly(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            // The writer only stops through close(), which writes what is left first
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.*;
+
+/**
+ * ImportResult class holds the outcome of a bulk import
+ * Counts, throughput and peak heap use, plus the first few rejected rows
+ */
+public class ImportResult {
+    private final long rows;
+    private final long added;
+    private final long updated;
+    private final long rejected;
+    private final long elapsedNanos;
+    private final long peakHeapBytes;
+    private final List<String> sampleRejects;
+    
+    public ImportResult(long rows, long added, long updated, long rejected, long elapsedNanos,
+                        long peakHeapBytes, List<String> sampleRejects) {
+        this.rows = rows;
+        this.added = added;
+        this.updated = updated;
+        this.rejected = rejected;
+        this.elapsedNanos = elapsedNanos;
+        this.peakHeapBytes = peakHeapBytes;
+        this.sampleRejects = Collections.unmodifiableList(new ArrayList<>(sampleRejects));
+    }
+    
+    // Records read, accepted or not
+    public long getRows() {
+        return rows;
+    }
+    
+    // Products that were new to the inventory
+    public long getAdded() {
+        return added;
+    }
+    
+    // Rows that replaced an existing product with the same ID
+    public long getUpdated() {
+        return updated;
+    }
+    
+    public long getRejected() {
+        return rejected;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    // Rows processed per second, including the final persistence pass
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+    
+    // Highest heap use seen during the import
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+    
+    // "line N: reason" for the first rejected rows
+    public List<String> getSampleRejects() {
+        return sampleRejects;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d row(s): %d added, %d updated, %d rejected in %.1f s (%.0f rows/sec, peak heap %.1f MB)",
+                rows, added, updated, rejected, elapsedNanos / 1e9, getRowsPerSecond(), peakHeapBytes / 1048576.0);
+    }
+}
@@ -1,167 +1,2110 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Inventory class manages a collection of products
  * Provides CRUD operations and various inventory reports
+ *
+ * Inventory is safe to use from several threads: every change takes the lock stripe of the
+ * product's ID. Stored products are immutable (see Product.isFrozen()); a change stores a new
+ * version of the product, so a product handed out never changes underneath its reader.
+ * The products of each stripe are kept in a persistent map that a change replaces rather than
+ * modifies, which lets snapshot() hand out a consistent point-in-time view of the whole
+ * inventory without copying it, for reports that must not block writers or see half-applied
+ * batches.
+ * With a data file, long descriptions are kept in a description file next to it and read on
+ * demand through a bounded cache (see DescriptionStore), so they take no heap while loaded;
+ * -Dinventory.descriptions.cold=false keeps them in memory instead.
+ * With -Dinventory.ledger=true every change of quantity is also recorded in a stock ledger (see
+ * StockLedger), kept in a ledger file next to the data file, so past quantities and movements can
+ * be looked up; without it one is only started, in memory, when history is first asked for.
+ * Every public operation and every load, save and journal write is timed (see getMetrics()).
  */
 public class Inventory {
-    private Map<String, Product> products;
+    private static final int LOCK_STRIPES = 64;
+    private static final String VALUE_TOO_LARGE = "Stock value (price times quantity) would exceed "
+            + Money.format(Long.MAX_VALUE);
+    private static final long RESERVATION_TICK_MILLIS = 10; // expiries are processed at most this late
+    private static final int RESERVATION_WHEEL_SIZE = 512; // one turn of the expiry wheel is 5.12 s
+    private static final String COLD_DESCRIPTIONS = "inventory.descriptions.cold"; // read as each data file opens
+    private static final long DESCRIPTION_CACHE_BYTES =
+            Long.getLong("inventory.descriptions.cacheBytes", DescriptionStore.DEFAULT_CACHE_BYTES);
+    private static final long DESCRIPTION_GARBAGE_SLACK = 1L << 20; // compact once garbage exceeds live bytes + 1 MiB
+    private static final String STOCK_LEDGER = "inventory.ledger"; // read as each inventory opens its data file
+    private static final long LEDGER_DETAIL_MILLIS = Long.getLong("inventory.ledger.detailDays",
+            StockLedger.DEFAULT_DETAIL_DAYS) * StockLedger.DAY_MILLIS; // single movements are kept this long
+    private static final long LEDGER_RETENTION_MILLIS = Long.getLong("inventory.ledger.retentionDays", 0)
+            * StockLedger.DAY_MILLIS; // daily rollups are kept this long, 0 keeps them
+    
+    private final AtomicReferenceArray<PersistentProductMap> products; // per stripe, replaced under its lock
     private String dataFile;
+    private InventoryJournal journal; // null when every mutation rewrites the data file
+    private volatile DescriptionStore descriptions; // null without a data file or with cold descriptions off
+    private final List<DescriptionStore> retiredDescriptions = new ArrayList<>(); // earlier generations, guarded by saveLock
+    private GroupCommitWriter groupCommit; // null when the mutating thread persists its own change
+    private final ReentrantLock[] locks;
+    private final long[] changeCounts; // changes applied per stripe, summed into snapshot versions
+    private final Object saveLock = new Object();
+    private volatile boolean verbose = true;
+    private final ProductNameIndex nameIndex = new ProductNameIndex();
+    private final LowStockTracker lowStockTracker = new LowStockTracker();
+    private final CategoryIndex categoryIndex = new CategoryIndex(lowStockTracker::isLowStock);
+    private final List<InventoryIndex> indexes = new CopyOnWriteArrayList<>();
+    private final Map<ProductOrder, ProductOrderIndex> orderIndexes = new ConcurrentHashMap<>(); // built on first use
+    private final Map<ProductOrder, CategoryOrderIndex> categoryOrderIndexes = new ConcurrentHashMap<>(); // likewise
+    private final QueryPlanner queryPlanner = new QueryPlanner(nameIndex, categoryIndex, this::orderIndex, this::find,
+            this::forEachProduct, this::getTotalProducts);
+    private final InventoryMetrics metrics = new InventoryMetrics();
+    private final ReservationTracker reservations = new ReservationTracker();
+    private volatile InventoryEventStream eventStream; // null until first requested
+    private volatile StockLedger ledger; // opened with the data file, or in memory on first query
+    private static ScheduledExecutorService ledgerScheduler; // shared by every inventory, guarded by Inventory.class
+    private final List<ScheduledFuture<?>> ledgerTasks = new ArrayList<>(); // daily compaction and flushes, guarded by indexes
+    private final Object ledgerMaintenance = new Object(); // held while the ledger is compacted or closed
+    private volatile long thresholdChanges; // low-stock threshold changes, counted with every stripe locked
+    private final TimingWheel<Reservation> reservationExpiry = new TimingWheel<>(RESERVATION_TICK_MILLIS,
+            RESERVATION_WHEEL_SIZE, this::expireReservation, "inventory-reservation-expiry");
     
     // Constructor
     public Inventory() {
-        this.products = new HashMap<>();
-        this.dataFile = "inventory.dat";
-        loadInventory();
+        this("inventory.dat");
+    }
+    
+    // Constructor with a custom data file, a null data file keeps the inventory in memory only
+    public Inventory(String dataFile) {
+        this(dataFile, null);
+    }
+    
+    // Constructor with journaled persistence: mutations are appended to the journal
+    // and the data file is only rewritten at checkpoints. A journal damaged anywhere but at its
+    // end (see InventoryJournal.replay) throws UncheckedIOException and is left as it is.
+    public Inventory(String dataFile, InventoryJournal journal) {
+        this(dataFile, journal, -1);
+    }
+    
+    // Constructor with group commit: mutations return without waiting for the disk, and a
+    // background writer makes everything that arrives within groupCommitWindowMillis durable
+    // with one write (a journal append and fsync, or a data file snapshot without a journal).
+    // A negative window persists every mutation on the calling thread instead.
+    public Inventory(String dataFile, InventoryJournal journal, long groupCommitWindowMillis) {
+        this(dataFile, journal, groupCommitWindowMillis, true);
+    }
+    
+    // Constructor that can also silence the messages printed while loading
+    Inventory(String dataFile, InventoryJournal journal, long groupCommitWindowMillis, boolean verbose) {
+        this.verbose = verbose;
+        this.dataFile = dataFile;
+        this.journal = dataFile != null ? journal : null;
+        this.locks = new ReentrantLock[LOCK_STRIPES];
+        this.products = new AtomicReferenceArray<>(LOCK_STRIPES);
+        this.changeCounts = new long[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        indexes.add(nameIndex);
+        indexes.add(categoryIndex);
+        indexes.add(lowStockTracker);
+        indexes.add(reservations);
+        // Loaded products are stored as they are, once categories are shared and they are frozen
+        List<List<Product>> loaded = new ArrayList<>(LOCK_STRIPES);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            loaded.add(new ArrayList<>());
+        }
+        Collection<Product> stored = loadInventory().values();
+        boolean rewrite = prepareDescriptions(stored);
+        for (Product product : stored) {
+            product.setCategory(categoryIndex.canonical(product.getCategory()));
+            loaded.get(stripeFor(product.getId())).add(product.freeze());
+            indexAdded(product);
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            products.set(i, PersistentProductMap.of(loaded.get(i)));
+        }
+        if (rewrite) {
+            // Point the data file at the descriptions as they are now, then drop the files it left behind
+            checkpoint();
+            deleteUnusedDescriptions();
+        }
+        if (dataFile != null && Boolean.getBoolean(STOCK_LEDGER)) {
+            synchronized (indexes) {
+                ledger = startLedger(new File(dataFile + ".ledger"), stored);
+            }
+        }
+        if (dataFile != null && groupCommitWindowMillis >= 0) {
+            groupCommit = new GroupCommitWriter(this.journal, this::writeCheckpoint,
+                    this::checkpointIfDue, groupCommitWindowMillis, metrics);
+        }
+    }
+    
+    // Turn the console messages printed by each operation on or off
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+    
+    // Latency histograms and persistence counters of this inventory
+    public InventoryMetrics getMetrics() {
+        return metrics;
+    }
+    
+    // Future that completes once every mutation made so far (by any thread) is durable
+    // Without group commit mutations are persisted before they return, so it is already complete
+    public CompletableFuture<Void> durable() {
+        GroupCommitWriter writer = groupCommit;
+        return writer == null ? CompletableFuture.completedFuture(null) : writer.durableFuture(writer.lastEnqueued());
+    }
+    
+    // Wait until every mutation made so far is durable, stock ledger included
+    public void flush() {
+        try {
+            durable().join();
+        } catch (CompletionException e) {
+            System.err.println("Error flushing inventory: " + e.getCause().getMessage());
+        }
+        syncLedger();
+    }
+    
+    // Add a product; the future completes with true once the product is durable, or right away
+    // with false if it was not added. addProduct() is the fire-and-forget form.
+    public CompletableFuture<Boolean> addProductAsync(Product product) {
+        return whenDurable(addProduct(product));
+    }
+    
+    public CompletableFuture<Boolean> updateProductAsync(String id, Product updatedProduct) {
+        return whenDurable(updateProduct(id, updatedProduct));
+    }
+    
+    public CompletableFuture<Boolean> deleteProductAsync(String id) {
+        return whenDurable(deleteProduct(id));
+    }
+    
+    public CompletableFuture<Boolean> updateProductQuantityAsync(String id, int quantityChange) {
+        return whenDurable(updateProductQuantity(id, quantityChange));
+    }
+    
+    public CompletableFuture<Boolean> tryUpdateProductQuantityAsync(String id, int quantityChange) {
+        return whenDurable(tryUpdateProductQuantity(id, quantityChange));
+    }
+    
+    // Apply a batch; the future completes with the result once an applied batch is durable
+    public CompletableFuture<BatchResult> applyBatchAsync(List<InventoryOperation> operations) {
+        BatchResult result = applyBatch(operations);
+        return result.isApplied() ? durable().thenApply(ignored -> result) : CompletableFuture.completedFuture(result);
     }
     
     // Add a new product to inventory
     public boolean addProduct(Product product) {
-        if (product == null || product.getId() == null || product.getId().trim().isEmpty()) {
-            return false;
-        }
-        
-        if (products.containsKey(product.getId())) {
-            System.out.println("Product with ID '" + product.getId() + "' already exists!");
-            return false;
+        long start = metrics.start();
+        try {
+            if (product == null || product.getId() == null || product.getId().trim().isEmpty()) {
+                return false;
+            }
+            
+            String id = product.getId();
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                if (find(id) != null) {
+                    message("Product with ID '" + id + "' already exists!");
+                    return false;
+                }
+                Product stored = store(null, frozenCopy(id, product), StockMovement.Reason.ADDED);
+                persistPut(stored);
+            } finally {
+                unlock(lock);
+            }
+            metrics.mutations(1);
+            message("Product added successfully!");
+            return true;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.ADD_PRODUCT, start);
         }
-        
-        products.put(product.getId(), product);
-        saveInventory();
-        System.out.println("Product added successfully!");
-        return true;
     }
     
     // Update an existing product
+    // The stored product is replaced by a copy of updatedProduct, which the caller may keep changing
     public boolean updateProduct(String id, Product updatedProduct) {
-        if (!products.containsKey(id)) {
-            System.out.println("Product with ID '" + id + "' not found!");
-            return false;
+        long start = metrics.start();
+        try {
+            if (id == null || updatedProduct == null) {
+                return false;
+            }
+            
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                Product product = find(id);
+                if (product == null) {
+                    message("Product with ID '" + id + "' not found!");
+                    return false;
+                }
+                
+                persistPut(store(product, frozenCopy(id, updatedProduct), StockMovement.Reason.CORRECTED));
+            } finally {
+                unlock(lock);
+            }
+            metrics.mutations(1);
+            message("Product updated successfully!");
+            return true;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.UPDATE_PRODUCT, start);
         }
-        
-        products.put(id, updatedProduct);
-        saveInventory();
-        System.out.println("Product updated successfully!");
-        return true;
     }
     
     // Delete a product from inventory
     public boolean deleteProduct(String id) {
-        if (!products.containsKey(id)) {
-            System.out.println("Product with ID '" + id + "' not found!");
-            return false;
+        long start = metrics.start();
+        try {
+            if (id == null) {
+                return false;
+            }
+            
+            Product removedProduct;
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                removedProduct = find(id);
+                if (removedProduct == null) {
+                    message("Product with ID '" + id + "' not found!");
+                    return false;
+                }
+                remove(removedProduct, StockMovement.Reason.DELETED);
+                persistDelete(id);
+            } finally {
+                unlock(lock);
+            }
+            metrics.mutations(1);
+            message("Product '" + removedProduct.getName() + "' deleted successfully!");
+            return true;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.DELETE_PRODUCT, start);
         }
-        
-        Product removedProduct = products.remove(id);
-        saveInventory();
-        System.out.println("Product '" + removedProduct.getName() + "' deleted successfully!");
-        return true;
     }
     
     // Get a product by ID
     public Product getProduct(String id) {
-        return products.get(id);
+        long start = metrics.start();
+        try {
+            return id == null ? null : find(id);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_PRODUCT, start);
+        }
     }
     
-    // Get all products
+    // Get all products, as they were at one point in time
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products.values());
+        long start = metrics.start();
+        try {
+            return snapshot().getAllProducts();
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_ALL_PRODUCTS, start);
+        }
+    }
+    
+    // Get one page of products in a stable order, starting after the position of a resume token
+    // (null for the first page). Pages are read from a sorted index, not a copy of the inventory;
+    // the index for an ordering is built the first time that ordering is listed.
+    public ProductPage listProducts(ProductOrder order, int pageSize, String resumeToken) {
+        long start = metrics.start();
+        try {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("Page size must be positive");
+            }
+            return orderIndex(order).page(resumeToken, pageSize);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.LIST_PRODUCTS, start);
+        }
+    }
+    
+    // Walk every product in a stable order without copying them, optionally after a resume token
+    // The iterator is weakly consistent: it reflects some, not necessarily all, concurrent changes
+    public Iterator<Product> iterateProducts(ProductOrder order, String resumeToken) {
+        long start = metrics.start();
+        try {
+            return orderIndex(order).iterator(resumeToken);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.ITERATE_PRODUCTS, start);
+        }
     }
     
     // Search products by name (case-insensitive)
     public List<Product> searchProductsByName(String name) {
-        return products.values().stream()
-                .filter(product -> product.getName().toLowerCase().contains(name.toLowerCase()))
-                .collect(Collectors.toList());
+        long start = metrics.start();
+        try {
+            if (name == null) {
+                return new ArrayList<>();
+            }
+            return lookup(nameIndex.search(name));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.SEARCH_BY_NAME, start);
+        }
+    }
+    
+    // Find up to limit products whose name starts with the prefix (case-insensitive), in name order
+    public List<Product> searchProductsByNamePrefix(String prefix, int limit) {
+        long start = metrics.start();
+        try {
+            if (prefix == null || limit <= 0) {
+                return new ArrayList<>();
+            }
+            return lookup(nameIndex.searchPrefix(prefix, limit));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.SEARCH_BY_NAME_PREFIX, start);
+        }
     }
     
-    // Search products by category
+    // Search products by category (case-insensitive, matches part of the category name)
     public List<Product> searchProductsByCategory(String category) {
-        return products.values().stream()
-                .filter(product -> product.getCategory().toLowerCase().contains(category.toLowerCase()))
-                .collect(Collectors.toList());
+        long start = metrics.start();
+        try {
+            if (category == null) {
+                return new ArrayList<>();
+            }
+            return lookup(categoryIndex.search(category));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.SEARCH_BY_CATEGORY, start);
+        }
+    }
+    
+    // Products matching every predicate of a query (category, name, price, quantity and value
+    // ranges), sorted and limited as it asks; the most selective index drives the search (see
+    // QueryPlanner). The price, quantity and value indexes are built the first time they are needed.
+    public List<Product> query(ProductQuery query) {
+        long start = metrics.start();
+        try {
+            if (query == null) {
+                throw new IllegalArgumentException("Query cannot be null");
+            }
+            return queryPlanner.run(query);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.QUERY, start);
+        }
+    }
+    
+    // The plan query() would use right now: the index it starts from, the indexes it intersects
+    // and whether it still has to sort
+    public String explain(ProductQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+        return queryPlanner.explain(query);
+    }
+    
+    // Up to limit products ranked by an ordering, highest first when highest is set: the 100 most
+    // valuable products are getTopProducts(ProductOrder.VALUE, true, 100), the 100 lowest-stock ones
+    // getTopProducts(ProductOrder.QUANTITY, false, 100). Reads limit entries of the ordering's
+    // sorted index (built on first use), not the whole inventory.
+    public List<Product> getTopProducts(ProductOrder order, boolean highest, int limit) {
+        long start = metrics.start();
+        try {
+            checkLimit(limit);
+            ProductOrderIndex index = orderIndex(order);
+            return underAllLocks(() -> index.first(limit, highest));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_TOP_PRODUCTS, start);
+        }
+    }
+    
+    // Up to limit products of exactly this category, ranked like getTopProducts()
+    public List<Product> getTopProductsInCategory(String category, ProductOrder order, boolean highest, int limit) {
+        long start = metrics.start();
+        try {
+            checkLimit(limit);
+            CategoryOrderIndex index = categoryOrderIndex(order);
+            return underAllLocks(() -> index.first(category, limit, highest));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_TOP_PRODUCTS, start);
+        }
+    }
+    
+    // Up to limit ranked products of every category, by category name ("the most expensive
+    // product per category" is getTopProductsByCategory(ProductOrder.PRICE, true, 1))
+    public Map<String, List<Product>> getTopProductsByCategory(ProductOrder order, boolean highest, int limit) {
+        long start = metrics.start();
+        try {
+            checkLimit(limit);
+            CategoryOrderIndex index = categoryOrderIndex(order);
+            return underAllLocks(() -> index.firstByCategory(limit, highest));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_TOP_PRODUCTS, start);
+        }
     }
     
     // Get products with low stock
     public List<Product> getLowStockProducts() {
-        return products.values().stream()
-                .filter(Product::isLowStock)
-                .collect(Collectors.toList());
+        long start = metrics.start();
+        try {
+            return underAllLocks(() -> new ArrayList<>(lowStockTracker.lowStockProducts()));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_LOW_STOCK_PRODUCTS, start);
+        }
+    }
+    
+    // Check if a product is below its reorder threshold
+    public boolean isLowStock(Product product) {
+        long start = metrics.start();
+        try {
+            return lowStockTracker.isLowStock(product);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.IS_LOW_STOCK, start);
+        }
     }
     
-    // Get total inventory value
+    // Reorder threshold that applies to a product (product, then category, then default)
+    public int getLowStockThreshold(Product product) {
+        long start = metrics.start();
+        try {
+            return lowStockTracker.thresholdFor(product);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_LOW_STOCK_THRESHOLD, start);
+        }
+    }
+    
+    // Set the threshold used for products without a product or category threshold
+    public void setDefaultLowStockThreshold(int threshold) {
+        long start = metrics.start();
+        try {
+            checkThreshold(threshold);
+            changeThresholds(() -> lowStockTracker.setDefaultThreshold(threshold), () -> {
+                List<String> ids = new ArrayList<>();
+                forEachProduct(product -> ids.add(product.getId()));
+                return ids;
+            });
+        } finally {
+            metrics.record(InventoryMetrics.Operation.SET_LOW_STOCK_THRESHOLD, start);
+        }
+    }
+    
+    // Set the threshold of every product in a category, null removes it
+    public void setCategoryLowStockThreshold(String category, Integer threshold) {
+        long start = metrics.start();
+        try {
+            checkThreshold(threshold);
+            changeThresholds(() -> lowStockTracker.setCategoryThreshold(categoryIndex.canonical(category), threshold),
+                    () -> categoryIndex.productIds(category));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.SET_LOW_STOCK_THRESHOLD, start);
+        }
+    }
+    
+    // Set the threshold of a single product, null removes it
+    public void setProductLowStockThreshold(String id, Integer threshold) {
+        long start = metrics.start();
+        try {
+            checkThreshold(threshold);
+            changeThresholds(() -> lowStockTracker.setProductThreshold(id, threshold),
+                    () -> Collections.singletonList(id));
+        } finally {
+            metrics.record(InventoryMetrics.Operation.SET_LOW_STOCK_THRESHOLD, start);
+        }
+    }
+    
+    // Register a callback for products crossing their reorder threshold
+    public void addLowStockListener(LowStockListener listener) {
+        lowStockTracker.addListener(listener);
+    }
+    
+    public void removeLowStockListener(LowStockListener listener) {
+        lowStockTracker.removeListener(listener);
+    }
+    
+    // Stream of change events (added, updated, quantity changed, deleted) with before and after
+    // versions and sequence numbers, for consumers that follow changes instead of re-reading the
+    // inventory. Created on first use under every lock stripe, so it misses no change from then on.
+    public InventoryEventStream getEventStream() {
+        InventoryEventStream stream = eventStream;
+        if (stream != null) {
+            return stream;
+        }
+        synchronized (indexes) {
+            if (eventStream == null) {
+                stream = new InventoryEventStream(Integer.getInteger("inventory.events.capacity",
+                        InventoryEventStream.DEFAULT_CAPACITY));
+                lockAll();
+                try {
+                    indexes.add(stream.publisher());
+                    eventStream = stream;
+                } finally {
+                    unlockAll();
+                }
+            }
+            return eventStream;
+        }
+    }
+    
+    // Quantity of a product on hand at a point in time (epoch milliseconds), from the stock ledger:
+    // the latest checkpoint of the product's history before that time plus the movements after it,
+    // never the whole history. 0 if the product did not exist then. Without a ledger file, history
+    // starts when it is first asked for.
+    public int getQuantityAt(String id, long timestampMillis) {
+        long start = metrics.start();
+        try {
+            if (id == null) {
+                return 0;
+            }
+            StockLedger current = stockLedger();
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                return (int) current.quantityAt(id, timestampMillis);
+            } finally {
+                unlock(lock);
+            }
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_QUANTITY_AT, start);
+        }
+    }
+    
+    // Quantity on hand at a point in time of every product that had stock then, by ID, including
+    // products deleted since
+    public Map<String, Integer> getQuantitiesAt(long timestampMillis) {
+        long start = metrics.start();
+        try {
+            StockLedger current = stockLedger();
+            Map<String, Long> quantities = underAllLocks(() -> current.quantitiesAt(timestampMillis));
+            Map<String, Integer> result = new HashMap<>(quantities.size() * 4 / 3 + 1);
+            quantities.forEach((id, quantity) -> result.put(id, quantity.intValue()));
+            return result;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_QUANTITY_AT, start);
+        }
+    }
+    
+    // Movements of a product's stock from fromMillis (inclusive) to toMillis (exclusive), oldest
+    // first. Movements older than the detail window (-Dinventory.ledger.detailDays, 90 days by
+    // default) have been rolled up into one ROLLUP movement per day.
+    public List<StockMovement> getStockMovements(String id, long fromMillis, long toMillis) {
+        long start = metrics.start();
+        try {
+            if (id == null) {
+                return new ArrayList<>();
+            }
+            StockLedger current = stockLedger();
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                return current.movements(id, fromMillis, toMillis);
+            } finally {
+                unlock(lock);
+            }
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_STOCK_MOVEMENTS, start);
+        }
+    }
+    
+    // Number of movements the stock ledger keeps (0 before there is a ledger)
+    public long getLedgerMovementCount() {
+        StockLedger current = ledger;
+        return current == null ? 0 : underAllLocks(current::getMovementCount);
+    }
+    
+    // Roll movements older than the detail window up into daily ones, and fold rollups older than
+    // the retention window (-Dinventory.ledger.retentionDays, kept forever by default) into an
+    // opening balance, then rewrite the ledger file. Runs once a day on its own; products are
+    // compacted one lock stripe at a time, so a writer waits for its own stripe at most.
+    public void compactLedger() {
+        long start = metrics.start();
+        try {
+            StockLedger current = ledger;
+            if (current == null) {
+                return;
+            }
+            synchronized (ledgerMaintenance) {
+                long now = System.currentTimeMillis();
+                int compacted = 0;
+                for (int i = 0; i < LOCK_STRIPES; i++) {
+                    int stripe = i;
+                    locks[stripe].lock();
+                    try {
+                        compacted += current.compact(now, id -> stripeFor(id) == stripe);
+                    } finally {
+                        locks[stripe].unlock();
+                    }
+                }
+                if (compacted > 0) {
+                    current.rewriteFile();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error compacting stock ledger: " + e.getMessage());
+        } finally {
+            metrics.record(InventoryMetrics.Operation.COMPACT_LEDGER, start);
+        }
+    }
+    
+    // Get total inventory value, kept as a running total so this is constant time
     public double getTotalInventoryValue() {
-        return products.values().stream()
-                .mapToDouble(Product::getTotalValue)
-                .sum();
+        long start = metrics.start();
+        try {
+            return Money.toAmount(getTotalInventoryValueCents());
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_TOTAL_INVENTORY_VALUE, start);
+        }
+    }
+    
+    // Get exact total inventory value in cents
+    // Read under every lock stripe, so a change moving value between products is never half counted
+    public long getTotalInventoryValueCents() {
+        long start = metrics.start();
+        try {
+            return underAllLocks(categoryIndex::totalValueCents);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_TOTAL_INVENTORY_VALUE, start);
+        }
     }
     
     // Get inventory summary by category
     public Map<String, Integer> getInventorySummaryByCategory() {
-        return products.values().stream()
-                .collect(Collectors.groupingBy(
-                    Product::getCategory,
-                    Collectors.summingInt(Product::getQuantity)
-                ));
+        long start = metrics.start();
+        try {
+            Map<String, Integer> summary = new HashMap<>();
+            for (CategoryStats stats : underAllLocks(categoryIndex::statistics)) {
+                summary.put(stats.getCategory(), (int) stats.getTotalQuantity());
+            }
+            return summary;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_INVENTORY_SUMMARY, start);
+        }
+    }
+    
+    // Get product count, quantity, value and low-stock count of every category
+    public List<CategoryStats> getCategoryStatistics() {
+        long start = metrics.start();
+        try {
+            return underAllLocks(categoryIndex::statistics);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GET_CATEGORY_STATISTICS, start);
+        }
+    }
+    
+    // Compute every report (totals, low stock, categories, price and quantity distributions) in
+    // one pass over a snapshot of the products, in parallel on large catalogs
+    public InventoryReport generateReport() {
+        long start = metrics.start();
+        try {
+            return snapshot().generateReport();
+        } finally {
+            metrics.record(InventoryMetrics.Operation.GENERATE_REPORT, start);
+        }
+    }
+    
+    // Consistent point-in-time view of every product, for reads that must not see a change
+    // half-applied. Writers wait only while the per-stripe maps are collected, never while the
+    // snapshot is read.
+    public InventorySnapshot snapshot() {
+        long start = metrics.start();
+        try {
+            return underAllLocks(this::currentSnapshot);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.TAKE_SNAPSHOT, start);
+        }
     }
     
-    // Update product quantity
+    // Recompute the total value, category statistics and low-stock set from scratch
+    // and compare them with the running totals; writers may keep running, the running
+    // totals are read at the same point in time as the snapshot they are compared with.
+    // Low stock is judged by the thresholds of that moment too: if they change before the
+    // recount is done, it starts over.
+    public ConsistencyReport checkConsistency() {
+        long start = metrics.start();
+        try {
+            InventorySnapshot snapshot;
+            long actualValue;
+            List<CategoryStats> actualStats;
+            Set<String> actualLowStock = new HashSet<>();
+            long expectedValue;
+            Map<String, long[]> expectedStats = new HashMap<>(); // count, quantity, value, low stock
+            Set<String> expectedLowStock = new HashSet<>();
+            long thresholds;
+            do {
+                actualLowStock.clear();
+                lockAll();
+                try {
+                    snapshot = currentSnapshot();
+                    actualValue = categoryIndex.totalValueCents();
+                    actualStats = categoryIndex.statistics();
+                    for (Product product : lowStockTracker.lowStockProducts()) {
+                        actualLowStock.add(product.getId());
+                    }
+                    thresholds = thresholdChanges;
+                } finally {
+                    unlockAll();
+                }
+                expectedValue = 0;
+                expectedStats.clear();
+                expectedLowStock.clear();
+                for (Product product : snapshot.getAllProducts()) {
+                    long value = product.getTotalValueCents();
+                    boolean low = lowStockTracker.isLowStock(product);
+                    expectedValue += value;
+                    String category = product.getCategory() == null ? "" : product.getCategory();
+                    long[] stats = expectedStats.computeIfAbsent(category, key -> new long[4]);
+                    stats[0]++;
+                    stats[1] += product.getQuantity();
+                    stats[2] += value;
+                    stats[3] += low ? 1 : 0;
+                    if (low) {
+                        expectedLowStock.add(product.getId());
+                    }
+                }
+            } while (thresholds != thresholdChanges);
+            
+            List<String> drifts = new ArrayList<>();
+            if (actualValue != expectedValue) {
+                drifts.add("total value $" + Money.format(actualValue) + ", expected $" + Money.format(expectedValue));
+            }
+            
+            for (CategoryStats actual : actualStats) {
+                long[] expected = expectedStats.remove(actual.getCategory());
+                if (expected == null) {
+                    drifts.add("category '" + actual.getCategory() + "' has no products but reports " + actual);
+                } else if (expected[0] != actual.getProductCount() || expected[1] != actual.getTotalQuantity()
+                        || expected[2] != actual.getTotalValueCents() || expected[3] != actual.getLowStockCount()) {
+                    drifts.add("category " + actual + ", expected " + new CategoryStats(actual.getCategory(),
+                            (int) expected[0], expected[1], expected[2], (int) expected[3]));
+                }
+            }
+            for (String missing : expectedStats.keySet()) {
+                drifts.add("category '" + missing + "' is missing from the statistics");
+            }
+            
+            if (!actualLowStock.equals(expectedLowStock)) {
+                drifts.add("low stock set has " + actualLowStock.size() + " product(s), expected "
+                        + expectedLowStock.size());
+            }
+            
+            return new ConsistencyReport(expectedValue, actualValue, drifts);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.CHECK_CONSISTENCY, start);
+        }
+    }
+    
+    // Update product quantity, clamping at zero
     public boolean updateProductQuantity(String id, int quantityChange) {
-        Product product = products.get(id);
-        if (product == null) {
-            System.out.println("Product with ID '" + id + "' not found!");
-            return false;
+        long start = metrics.start();
+        try {
+            if (id == null) {
+                message("Product with ID '" + id + "' not found!");
+                return false;
+            }
+            
+            int newQuantity;
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                Product product = find(id);
+                if (product == null) {
+                    message("Product with ID '" + id + "' not found!");
+                    return false;
+                }
+                long next = Math.max(0L, (long) product.getQuantity() + quantityChange);
+                if (next > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Quantity would exceed " + Integer.MAX_VALUE);
+                }
+                newQuantity = (int) next;
+                store(product, withQuantity(product, newQuantity), StockMovement.Reason.ADJUSTED);
+                persistQuantity(id, newQuantity);
+            } finally {
+                unlock(lock);
+            }
+            metrics.mutations(1);
+            message("Quantity updated successfully! New quantity: " + newQuantity);
+            return true;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.UPDATE_QUANTITY, start);
         }
+    }
+    
+    // Update product quantity only if stock would not go below zero, or below the units held by
+    // active reservations. Returns false (leaving the quantity untouched) if the product is
+    // missing or stock is insufficient.
+    public boolean tryUpdateProductQuantity(String id, int quantityChange) {
+        long start = metrics.start();
+        try {
+            if (id == null) {
+                message("Product with ID '" + id + "' not found!");
+                return false;
+            }
+            
+            long next;
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                Product product = find(id);
+                if (product == null) {
+                    message("Product with ID '" + id + "' not found!");
+                    return false;
+                }
+                next = (long) product.getQuantity() + quantityChange;
+                int reserved = reservations.held(id);
+                if (next < reserved || next > Integer.MAX_VALUE) {
+                    message("Insufficient stock for '" + id + "'! Current quantity: " + product.getQuantity()
+                            + (reserved > 0 ? ", reserved: " + reserved : ""));
+                    return false;
+                }
+                store(product, withQuantity(product, (int) next), StockMovement.Reason.ADJUSTED);
+                persistQuantity(id, (int) next);
+            } finally {
+                unlock(lock);
+            }
+            metrics.mutations(1);
+            message("Quantity updated successfully! New quantity: " + next);
+            return true;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.TRY_UPDATE_QUANTITY, start);
+        }
+    }
+    
+    // Hold units of a product for ttlMillis, e.g. while a checkout waits for payment
+    // The units stay in stock but are no longer available to other reservations or to
+    // tryUpdateProductQuantity. Returns the reservation, or null if the product is missing or
+    // fewer units are available. Only the product's lock stripe is taken.
+    public Reservation reserveStock(String id, int quantity, long ttlMillis) {
+        long start = metrics.start();
+        try {
+            if (quantity <= 0 || ttlMillis <= 0) {
+                throw new IllegalArgumentException("Quantity and time to live must be positive");
+            }
+            if (id == null) {
+                return null;
+            }
+            
+            Reservation reservation;
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                Product product = find(id);
+                if (product == null) {
+                    return null;
+                }
+                reservation = reservations.reserve(product, quantity, ttlMillis);
+                if (reservation == null) {
+                    return null;
+                }
+                try {
+                    reservationExpiry.schedule(reservation, reservation.getDeadlineNanos());
+                } catch (IllegalStateException e) {
+                    reservations.finish(reservation, Reservation.Status.RELEASED);
+                    throw e;
+                }
+            } finally {
+                unlock(lock);
+            }
+            message("Reserved " + quantity + " of '" + id + "' as " + reservation.getId());
+            return reservation;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.RESERVE_STOCK, start);
+        }
+    }
+    
+    // Take the units of an active reservation out of stock
+    // Returns false if there is no such active reservation, or its deadline has passed.
+    public boolean confirmReservation(String reservationId) {
+        long start = metrics.start();
+        try {
+            Reservation reservation = reservationId == null ? null : reservations.get(reservationId);
+            if (reservation == null) {
+                message("Reservation '" + reservationId + "' not found!");
+                return false;
+            }
+            
+            String id = reservation.getProductId();
+            int newQuantity;
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                if (!reservation.isActive()) {
+                    message("Reservation '" + reservationId + "' is " + reservation.getStatus());
+                    return false;
+                }
+                if (reservation.isPastDeadline()) {
+                    reservations.finish(reservation, Reservation.Status.EXPIRED);
+                    message("Reservation '" + reservationId + "' has expired!");
+                    return false;
+                }
+                // Deleting a product releases its reservations, so the product is still there;
+                // a manual correction may have taken it below the held units
+                Product product = find(id);
+                newQuantity = Math.max(0, product.getQuantity() - reservation.getQuantity());
+                reservations.finish(reservation, Reservation.Status.CONFIRMED);
+                store(product, withQuantity(product, newQuantity), StockMovement.Reason.RESERVATION_CONFIRMED);
+                persistQuantity(id, newQuantity);
+            } finally {
+                unlock(lock);
+            }
+            metrics.mutations(1);
+            message("Reservation confirmed! New quantity: " + newQuantity);
+            return true;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.CONFIRM_RESERVATION, start);
+        }
+    }
+    
+    // Give up an active reservation, making its units available again
+    // Returns false if there is no such active reservation.
+    public boolean releaseReservation(String reservationId) {
+        long start = metrics.start();
+        try {
+            Reservation reservation = reservationId == null ? null : reservations.get(reservationId);
+            if (reservation == null) {
+                message("Reservation '" + reservationId + "' not found!");
+                return false;
+            }
+            ReentrantLock lock = lockFor(reservation.getProductId());
+            lock.lock();
+            try {
+                if (!reservation.isActive()) {
+                    return false;
+                }
+                reservations.finish(reservation, Reservation.Status.RELEASED);
+            } finally {
+                unlock(lock);
+            }
+            message("Reservation '" + reservationId + "' released");
+            return true;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.RELEASE_RESERVATION, start);
+        }
+    }
+    
+    // Active reservation with this ID, null once it has been confirmed, released or has expired
+    public Reservation getReservation(String reservationId) {
+        return reservationId == null ? null : reservations.get(reservationId);
+    }
+    
+    // Number of reservations currently holding stock
+    public int getActiveReservationCount() {
+        return reservations.activeCount();
+    }
+    
+    // Units of a product that can still be promised: its quantity minus the units held by
+    // active reservations (0 if the product is missing)
+    public int getAvailableQuantity(String id) {
+        if (id == null) {
+            return 0;
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Product product = find(id);
+            return product == null ? 0 : Math.max(0, product.getQuantity() - reservations.held(id));
+        } finally {
+            unlock(lock);
+        }
+    }
+    
+    // Units of a product held by active reservations
+    public int getReservedQuantity(String id) {
+        if (id == null) {
+            return 0;
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            return reservations.held(id);
+        } finally {
+            unlock(lock);
+        }
+    }
+    
+    // Called by the expiry wheel once a reservation's deadline has passed
+    private void expireReservation(Reservation reservation) {
+        ReentrantLock lock = lockFor(reservation.getProductId());
+        lock.lock();
+        try {
+            if (reservation.isActive()) {
+                reservations.finish(reservation, Reservation.Status.EXPIRED);
+            }
+        } finally {
+            unlock(lock);
+        }
+    }
+    
+    // Add new products and update existing ones (matched by ID) without persisting each change
+    // Meant for bulk import: call checkpoint() afterwards to write everything in a single pass.
+    // Products without an ID are ignored. Returns the number of products that were added.
+    public int upsertProducts(Collection<Product> batch) {
+        long start = metrics.start();
+        try {
+            int added = 0;
+            int upserted = 0;
+            for (Product product : batch) {
+                if (product == null || product.getId() == null || product.getId().trim().isEmpty()) {
+                    continue;
+                }
+                String id = product.getId();
+                ReentrantLock lock = lockFor(id);
+                lock.lock();
+                try {
+                    Product existing = find(id);
+                    store(existing, frozenCopy(id, product), StockMovement.Reason.IMPORTED);
+                    if (existing == null) {
+                        added++;
+                    }
+                } finally {
+                    unlock(lock);
+                }
+                upserted++;
+            }
+            metrics.mutations(upserted);
+            return added;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.UPSERT_PRODUCTS, start);
+        }
+    }
+    
+    // Apply a batch of operations all-or-nothing and persist the outcome once
+    // The whole batch is validated first; if any operation is invalid nothing is changed.
+    // No console messages are printed, the outcome of every operation is in the result.
+    public BatchResult applyBatch(List<InventoryOperation> operations) {
+        return applyBatch(operations, true);
+    }
+    
+    // Apply a batch of operations all-or-nothing, persisting the outcome only if persist is set
+    // Batches applied without persisting can be persisted together later with persist(operations).
+    public BatchResult applyBatch(List<InventoryOperation> operations, boolean persist) {
+        long start = metrics.start();
+        try {
+            int[] stripes = stripesFor(operations);
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+            }
+            try {
+                List<OperationResult> failures = validateBatch(operations);
+                if (failures != null) {
+                    return new BatchResult(false, failures);
+                }
+                
+                // Every product of the batch is locked, so nothing can invalidate it after validation
+                List<OperationResult> results = new ArrayList<>(operations.size());
+                for (InventoryOperation operation : operations) {
+                    results.add(applyOperation(operation));
+                }
+                
+                if (persist) {
+                    persistBatch(operations);
+                }
+                metrics.mutations(operations.size());
+                return new BatchResult(true, results);
+            } finally {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    unlock(locks[stripes[i]]);
+                }
+            }
+        } finally {
+            metrics.record(InventoryMetrics.Operation.APPLY_BATCH, start);
+        }
+    }
+    
+    // Persist the products touched by operations applied with applyBatch(operations, false)
+    // Their current state is written in one pass: a single journal append or group commit, or one
+    // data file rewrite without a journal.
+    public void persist(List<InventoryOperation> operations) {
+        long start = metrics.start();
+        try {
+            int[] stripes = stripesFor(operations);
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+            }
+            try {
+                persistBatch(operations);
+            } finally {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    unlock(locks[stripes[i]]);
+                }
+            }
+        } finally {
+            metrics.record(InventoryMetrics.Operation.PERSIST, start);
+        }
+    }
+    
+    // Check every operation against the current state plus the effect of the earlier operations
+    // Returns null if the batch is valid, otherwise one result per operation
+    private List<OperationResult> validateBatch(List<InventoryOperation> operations) {
+        Map<String, Integer> pending = new HashMap<>(); // ID -> quantity, -1 once deleted in the batch
+        Map<String, Double> prices = new HashMap<>(); // ID -> price set by an add or update in the batch
+        List<OperationResult> results = new ArrayList<>(operations.size());
+        boolean valid = true;
         
-        product.updateQuantity(quantityChange);
-        saveInventory();
-        System.out.println("Quantity updated successfully! New quantity: " + product.getQuantity());
-        return true;
+        for (InventoryOperation operation : operations) {
+            String id = operation.getProductId();
+            String error = null;
+            Integer quantity = id == null ? null : pending.get(id);
+            if (quantity == null && id != null) {
+                Product existing = find(id);
+                quantity = existing != null ? existing.getQuantity() : -1;
+            }
+            
+            if (id == null || id.trim().isEmpty()) {
+                error = "Product ID cannot be empty";
+            } else {
+                switch (operation.getType()) {
+                    case ADD:
+                        if (quantity >= 0) {
+                            error = "Product with ID '" + id + "' already exists";
+                        } else if (operation.getProduct().getQuantity() < 0) {
+                            error = "Quantity cannot be negative";
+                        } else if (!valueFits(operation.getProduct().getPrice(), operation.getProduct().getQuantity())) {
+                            error = VALUE_TOO_LARGE;
+                        } else {
+                            quantity = operation.getProduct().getQuantity();
+                            prices.put(id, operation.getProduct().getPrice());
+                        }
+                        break;
+                    case UPDATE:
+                        if (quantity < 0) {
+                            error = "Product with ID '" + id + "' not found";
+                        } else if (operation.getProduct() == null) {
+                            error = "Updated product cannot be empty";
+                        } else if (operation.getProduct().getQuantity() < 0) {
+                            error = "Quantity cannot be negative";
+                        } else if (!valueFits(operation.getProduct().getPrice(), operation.getProduct().getQuantity())) {
+                            error = VALUE_TOO_LARGE;
+                        } else {
+                            quantity = operation.getProduct().getQuantity();
+                            prices.put(id, operation.getProduct().getPrice());
+                        }
+                        break;
+                    case DELETE:
+                        if (quantity < 0) {
+                            error = "Product with ID '" + id + "' not found";
+                        } else {
+                            quantity = -1;
+                        }
+                        break;
+                    default:
+                        long next = (long) quantity + operation.getQuantityChange();
+                        if (quantity < 0) {
+                            error = "Product with ID '" + id + "' not found";
+                        } else if (next < 0) {
+                            error = "Insufficient stock, quantity would be " + next;
+                        } else if (next < reservations.held(id) && operation.getQuantityChange() < 0) {
+                            error = "Insufficient stock, quantity would be " + next + " with "
+                                    + reservations.held(id) + " reserved";
+                        } else if (next > Integer.MAX_VALUE) {
+                            error = "Quantity would exceed " + Integer.MAX_VALUE;
+                        } else if (!valueFits(prices.containsKey(id) ? prices.get(id) : find(id).getPrice(), (int) next)) {
+                            error = VALUE_TOO_LARGE;
+                        } else {
+                            quantity = (int) next;
+                        }
+                        break;
+                }
+            }
+            
+            if (error != null) {
+                valid = false;
+                results.add(new OperationResult(operation, OperationResult.Status.FAILED, error, -1));
+            } else {
+                pending.put(id, quantity);
+                results.add(new OperationResult(operation, OperationResult.Status.SKIPPED, null, -1));
+            }
+        }
+        return valid ? null : results;
+    }
+    
+    // Apply one validated operation
+    private OperationResult applyOperation(InventoryOperation operation) {
+        String id = operation.getProductId();
+        Product product = find(id);
+        switch (operation.getType()) {
+            case ADD:
+            case UPDATE:
+                Product stored = store(product, frozenCopy(id, operation.getProduct()),
+                        product == null ? StockMovement.Reason.ADDED : StockMovement.Reason.CORRECTED);
+                return new OperationResult(operation, OperationResult.Status.APPLIED, null, stored.getQuantity());
+            case DELETE:
+                remove(product, StockMovement.Reason.DELETED);
+                return new OperationResult(operation, OperationResult.Status.APPLIED, null, -1);
+            default:
+                int quantity = product.getQuantity() + operation.getQuantityChange();
+                store(product, withQuantity(product, quantity), StockMovement.Reason.ADJUSTED);
+                return new OperationResult(operation, OperationResult.Status.APPLIED, null, quantity);
+        }
+    }
+    
+    // Persist the final state of every product touched by a batch in one pass
+    private void persistBatch(List<InventoryOperation> operations) {
+        if (dataFile == null) {
+            return;
+        }
+        if (journal == null && groupCommit == null) {
+            saveInventory();
+            return;
+        }
+        
+        // One record per product: quantity-only changes log just the quantity
+        Map<String, Boolean> touched = new LinkedHashMap<>(); // ID -> only the quantity changed
+        for (InventoryOperation operation : operations) {
+            boolean quantityOnly = operation.getType() == InventoryOperation.Type.ADJUST_QUANTITY;
+            touched.merge(operation.getProductId(), quantityOnly, Boolean::logicalAnd);
+        }
+        // The versions the batch produced, taken while it still holds its locks
+        Map<String, Product> outcome = new HashMap<>();
+        for (String id : touched.keySet()) {
+            outcome.put(id, find(id));
+        }
+        
+        GroupCommitWriter.Records records = batch -> {
+            for (Map.Entry<String, Boolean> entry : touched.entrySet()) {
+                Product product = outcome.get(entry.getKey());
+                if (product == null) {
+                    batch.delete(entry.getKey());
+                } else if (entry.getValue()) {
+                    batch.quantity(product.getId(), product.getQuantity());
+                } else {
+                    batch.put(product);
+                }
+            }
+        };
+        if (groupCommit != null) {
+            enqueue(records);
+            return;
+        }
+        
+        long start = metrics.start();
+        InventoryJournal.Batch batch = journal.newBatch();
+        try {
+            records.writeTo(batch);
+            metrics.journalWritten(batch.size(), journal.commit(batch));
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+        }
+        metrics.record(InventoryMetrics.Operation.JOURNAL_APPEND, start);
+        checkpointIfDue();
+    }
+    
+    // Sorted, distinct lock stripes of every product in a batch, so batches lock in a fixed order
+    private static int[] stripesFor(List<InventoryOperation> operations) {
+        boolean[] used = new boolean[LOCK_STRIPES];
+        int count = 0;
+        for (InventoryOperation operation : operations) {
+            String id = operation.getProductId();
+            if (id != null && !used[stripeFor(id)]) {
+                used[stripeFor(id)] = true;
+                count++;
+            }
+        }
+        int[] stripes = new int[count];
+        for (int i = 0, j = 0; i < LOCK_STRIPES; i++) {
+            if (used[i]) {
+                stripes[j++] = i;
+            }
+        }
+        return stripes;
+    }
+    
+    // Persist an added or replaced product
+    private void persistPut(Product product) {
+        if (dataFile == null) {
+            return;
+        }
+        if (groupCommit != null) {
+            enqueue(batch -> batch.put(product));
+            return;
+        }
+        if (journal == null) {
+            saveInventory();
+            return;
+        }
+        long start = metrics.start();
+        try {
+            metrics.journalWritten(1, journal.appendPut(product));
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+        }
+        metrics.record(InventoryMetrics.Operation.JOURNAL_APPEND, start);
+        checkpointIfDue();
     }
     
-    // Save inventory to file
-    private void saveInventory() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(dataFile))) {
-            oos.writeObject(products);
+    // Persist a product removal
+    private void persistDelete(String id) {
+        if (dataFile == null) {
+            return;
+        }
+        if (groupCommit != null) {
+            enqueue(batch -> batch.delete(id));
+            return;
+        }
+        if (journal == null) {
+            saveInventory();
+            return;
+        }
+        long start = metrics.start();
+        try {
+            metrics.journalWritten(1, journal.appendDelete(id));
         } catch (IOException e) {
-            System.err.println("Error saving inventory: " + e.getMessage());
+            System.err.println("Error writing journal: " + e.getMessage());
         }
+        metrics.record(InventoryMetrics.Operation.JOURNAL_APPEND, start);
+        checkpointIfDue();
     }
     
-    // Load inventory from file
-    @SuppressWarnings("unchecked")
-    private void loadInventory() {
+    // Persist the new quantity of a product, called under the ID's lock so the last record
+    // for an ID is never older than a change that already completed
+    private void persistQuantity(String id, int quantity) {
+        if (dataFile == null) {
+            return;
+        }
+        if (groupCommit != null) {
+            enqueue(batch -> batch.quantity(id, quantity));
+            return;
+        }
+        if (journal == null) {
+            saveInventory();
+            return;
+        }
+        long start = metrics.start();
+        try {
+            metrics.journalWritten(1, journal.appendQuantity(id, quantity));
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+        }
+        metrics.record(InventoryMetrics.Operation.JOURNAL_APPEND, start);
+        checkpointIfDue();
+    }
+    
+    // Hand a mutation to the group commit writer; the whole batch of records lands in one group
+    private void enqueue(GroupCommitWriter.Records records) {
+        try {
+            groupCommit.enqueue(records);
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+        }
+    }
+    
+    private void checkpointIfDue() {
+        if (journal != null && journal.isCheckpointDue()) {
+            checkpoint();
+        }
+    }
+    
+    // Compact the journal into a fresh snapshot of the data file
+    public void checkpoint() {
+        writeCheckpoint();
+    }
+    
+    // Checkpoint, returns false if the snapshot could not be written or the journal emptied
+    private boolean writeCheckpoint() {
+        long start = metrics.start();
+        try {
+            if (dataFile == null) {
+                return true;
+            }
+            syncLedger();
+            if (journal == null) {
+                return saveInventory();
+            }
+            // Appends wait on the journal while it is compacted, so no record is truncated
+            // before the change it describes has made it into the snapshot
+            synchronized (journal) {
+                if (!saveInventory()) {
+                    return false;
+                }
+                try {
+                    journal.reset();
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("Error truncating journal: " + e.getMessage());
+                    return false;
+                }
+            }
+        } finally {
+            metrics.record(InventoryMetrics.Operation.CHECKPOINT, start);
+        }
+    }
+    
+    // Flush pending writes (including any group commit still waiting) and release the journal
+    // and the stock ledger. Reservations that are still active stay active, they no longer expire;
+    // event subscribers receive everything published so far and stop
+    public void close() {
+        long start = metrics.start();
+        try {
+            reservationExpiry.stop();
+            if (eventStream != null) {
+                eventStream.close();
+            }
+            if (groupCommit != null) {
+                groupCommit.close();
+            }
+            stopLedgerTasks();
+            if (ledger != null) {
+                synchronized (ledgerMaintenance) {
+                    try {
+                        ledger.close();
+                    } catch (IOException e) {
+                        System.err.println("Error closing stock ledger: " + e.getMessage());
+                    }
+                }
+            }
+            if (descriptions != null) {
+                synchronized (saveLock) {
+                    retiredDescriptions.add(descriptions);
+                    for (DescriptionStore store : retiredDescriptions) {
+                        try {
+                            store.close();
+                        } catch (IOException e) {
+                            System.err.println("Error closing description file: " + e.getMessage());
+                        }
+                    }
+                    retiredDescriptions.clear();
+                }
+            }
+            if (journal == null) {
+                return;
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+        } finally {
+            metrics.record(InventoryMetrics.Operation.CLOSE, start);
+        }
+    }
+    
+    // Save inventory to file, returns true if the snapshot was written
+    private boolean saveInventory() {
+        // Written to a temporary file first so a crash never leaves a half-written snapshot behind;
+        // journaled mode forces it to disk, since the journal is truncated right after, and so
+        // does group commit, which promises durability
+        synchronized (saveLock) {
+            long start = metrics.start();
+            try {
+                List<Product> all = new ArrayList<>(getTotalProducts());
+                forEachProduct(all::add);
+                boolean compacted = descriptions != null && compactDescriptionsIfDue(all);
+                if (compacted) {
+                    // Versions stored from now on copy their descriptions into the new generation;
+                    // the ones stored while it started are moved when collected again
+                    all.clear();
+                    forEachProduct(all::add);
+                    moveDescriptions(all);
+                }
+                metrics.snapshotWritten(ProductSnapshot.writeAtomically(all,
+                        new File(dataFile), journal != null || groupCommit != null, descriptions));
+                if (compacted) {
+                    deleteUnusedDescriptions();
+                }
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error saving inventory: " + e.getMessage());
+                return false;
+            } finally {
+                metrics.record(InventoryMetrics.Operation.SNAPSHOT_SAVE, start);
+            }
+        }
+    }
+    
+    // Load inventory from file, returns the products by ID
+    private Map<String, Product> loadInventory() {
+        Map<String, Product> products = new HashMap<>();
+        if (dataFile == null) {
+            return products;
+        }
+        
         File file = new File(dataFile);
-        if (!file.exists()) {
-            return; // No existing data file
+        openDescriptions(file);
+        if (file.exists()) {
+            long start = metrics.start();
+            try {
+                if (ProductSnapshot.isLegacy(file)) {
+                    // One-shot migration of a Java-serialized inventory.dat to the binary snapshot format
+                    Map<String, Product> legacy = ProductSnapshot.readLegacy(file);
+                    ProductSnapshot.migrate(file, legacy);
+                    products = legacy;
+                    message("Migrated " + dataFile + " to the binary snapshot format");
+                } else {
+                    products = new HashMap<>(ProductSnapshot.readRecordCount(file) * 4 / 3 + 1);
+                    ProductSnapshot.read(file, products, descriptions);
+                }
+                metrics.snapshotLoaded(file.length());
+                message("Inventory loaded successfully!");
+            } catch (IOException e) {
+                System.err.println("Error loading inventory: " + e.getMessage());
+                products = new HashMap<>(); // Initialize empty inventory on error
+            }
+            metrics.record(InventoryMetrics.Operation.SNAPSHOT_LOAD, start);
+        }
+        
+        if (journal == null) {
+            return products;
         }
         
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(dataFile))) {
-            products = (Map<String, Product>) ois.readObject();
-            System.out.println("Inventory loaded successfully!");
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading inventory: " + e.getMessage());
-            products = new HashMap<>(); // Initialize empty inventory on error
+        // Bring the snapshot up to date with mutations logged since the last checkpoint
+        long start = metrics.start();
+        try {
+            int replayed = journal.replay(products);
+            if (replayed > 0) {
+                message("Recovered " + replayed + " journaled change(s)");
+            }
+        } catch (IOException e) {
+            // Going on would append after the damage and lose what follows it at the next checkpoint
+            if (descriptions != null) {
+                try {
+                    descriptions.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException("Error replaying journal: " + e.getMessage(), e);
+        } finally {
+            metrics.record(InventoryMetrics.Operation.JOURNAL_REPLAY, start);
+        }
+        return products;
+    }
+    
+    // Open the description file the data file refers to, after deleting any other generation
+    // (left behind by a compaction that did not finish)
+    private void openDescriptions(File file) {
+        int generation = 0;
+        try {
+            if (file.exists() && ProductSnapshot.isSnapshot(file)) {
+                generation = ProductSnapshot.readDescriptionGeneration(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading inventory header: " + e.getMessage());
+            return; // loading fails too and starts empty; keep every description file
+        }
+        DescriptionStore.deleteGenerations(dataFile, generation);
+        if (Boolean.parseBoolean(System.getProperty(COLD_DESCRIPTIONS, "true"))) {
+            descriptions = new DescriptionStore(dataFile, Math.max(1, generation), DESCRIPTION_CACHE_BYTES);
+        }
+    }
+    
+    // Move the long descriptions of loaded products into the description file (those of a v1 file
+    // or the journal), or back into memory when cold descriptions are off; rewrites the file into
+    // the next generation when most of it is garbage. Returns true if the data file should be saved.
+    private boolean prepareDescriptions(Collection<Product> loaded) {
+        if (descriptions == null) {
+            boolean inlined = false;
+            for (Product product : loaded) {
+                if (product.getColdDescription() != null) {
+                    product.setDescription(product.getDescription());
+                    inlined = true;
+                }
+            }
+            return inlined;
+        }
+        boolean moved = false;
+        try {
+            for (Product product : loaded) {
+                if (product.getColdDescription() == null && isLong(product.getDescription())) {
+                    product.setColdDescription(descriptions.append(product.getDescription()));
+                    moved = true;
+                }
+            }
+        } catch (IOException e) {
+            // Whatever was not moved stays where it is; saving inlines descriptions of other files
+            System.err.println("Error writing description file: " + e.getMessage());
+            return moved;
+        }
+        if (compactDescriptionsIfDue(loaded)) {
+            moveDescriptions(loaded);
+            return true;
+        }
+        return moved;
+    }
+    
+    // Start the next generation of the description file when more than half of the current one
+    // is garbage, judged by the descriptions of the given products; returns true if it did. The
+    // products' descriptions still have to be moved, the old file stays open until close() for
+    // older versions that refer to it.
+    private boolean compactDescriptionsIfDue(Collection<Product> products) {
+        DescriptionStore store = descriptions;
+        long live = 0;
+        for (Product product : products) {
+            DescriptionStore.Ref cold = product.getColdDescription();
+            if (cold != null && store.owns(cold)) {
+                live += cold.length;
+            }
+        }
+        if (store.size() <= 2 * live + DESCRIPTION_GARBAGE_SLACK) {
+            return false;
+        }
+        try {
+            store.retire();
+        } catch (IOException e) {
+            System.err.println("Error writing description file: " + e.getMessage());
+            return false;
+        }
+        message(String.format("Compacting descriptions (%d bytes, %d in use)", store.size(), live));
+        retiredDescriptions.add(store);
+        descriptions = new DescriptionStore(dataFile, store.getGeneration() + 1, DESCRIPTION_CACHE_BYTES);
+        return true;
+    }
+    
+    // Move the products' descriptions that are kept in an older generation into the current one
+    private void moveDescriptions(Collection<Product> products) {
+        DescriptionStore store = descriptions;
+        try {
+            for (Product product : products) {
+                DescriptionStore.Ref cold = product.getColdDescription();
+                if (cold != null) {
+                    store.moveHere(cold);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Whatever was not moved stays where it is; saving inlines descriptions of other files
+            System.err.println("Error writing description file: " + e.getMessage());
         }
     }
     
+    // Delete the description files the data file no longer refers to, once it has been saved
+    private void deleteUnusedDescriptions() {
+        try {
+            int generation = ProductSnapshot.readDescriptionGeneration(new File(dataFile));
+            if (generation == (descriptions == null ? 0 : descriptions.getGeneration())) {
+                DescriptionStore.deleteGenerations(dataFile, generation);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading inventory header: " + e.getMessage());
+        }
+    }
+    
+    private static boolean isLong(String description) {
+        return description != null && description.length() >= DescriptionStore.MIN_COLD_LENGTH;
+    }
+    
     // Get total number of products
     public int getTotalProducts() {
-        return products.size();
+        int total = 0;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            total += products.get(i).size();
+        }
+        return total;
     }
     
     // Check if inventory is empty
     public boolean isEmpty() {
-        return products.isEmpty();
+        return getTotalProducts() == 0;
     }
     
     // Clear all products (for testing purposes)
     public void clearInventory() {
-        products.clear();
-        saveInventory();
-        System.out.println("Inventory cleared!");
+        long start = metrics.start();
+        try {
+            lockAll();
+            try {
+                forEachProduct(product -> recordMovement(product.getId(), -product.getQuantity(),
+                        StockMovement.Reason.CLEARED));
+                for (int i = 0; i < LOCK_STRIPES; i++) {
+                    changeCounts[i] += products.get(i).size();
+                    products.set(i, PersistentProductMap.EMPTY);
+                }
+                for (InventoryIndex index : indexes) {
+                    index.cleared();
+                }
+            } finally {
+                unlockAll();
+            }
+            checkpoint();
+            message("Inventory cleared!");
+        } finally {
+            metrics.record(InventoryMetrics.Operation.CLEAR_INVENTORY, start);
+        }
+    }
+    
+    // Future of a mutation's outcome: true once everything so far is durable, false right away
+    private CompletableFuture<Boolean> whenDurable(boolean applied) {
+        return applied ? durable().thenApply(ignored -> true) : CompletableFuture.completedFuture(false);
+    }
+    
+    private ReentrantLock lockFor(String id) {
+        return locks[stripeFor(id)];
+    }
+    
+    static int stripeFor(String id) {
+        int h = id.hashCode();
+        return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
+    }
+    
+    private static void checkLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+    }
+    
+    private static void checkThreshold(Integer threshold) {
+        if (threshold != null && threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        }
+    }
+    
+    // The stock ledger, started in memory on first use under every lock stripe so no change slips past it
+    private StockLedger stockLedger() {
+        StockLedger current = ledger;
+        if (current != null) {
+            return current;
+        }
+        synchronized (indexes) {
+            if (ledger == null) {
+                lockAll();
+                try {
+                    List<Product> all = new ArrayList<>(getTotalProducts());
+                    forEachProduct(all::add);
+                    ledger = startLedger(null, all);
+                } finally {
+                    unlockAll();
+                }
+            }
+            return ledger;
+        }
+    }
+    
+    // Open a stock ledger (a null file keeps it in memory), compact it, record opening balances
+    // for products it has no matching history for and schedule the daily compaction and, with a
+    // file, the flushes that keep it at most a second behind; called under
+    // the indexes monitor, with every stripe locked or before the inventory is shared.
+    // Returns null if the ledger file cannot be read, so it is left as it is.
+    private StockLedger startLedger(File file, Collection<Product> current) {
+        long start = metrics.start();
+        try {
+            StockLedger started = new StockLedger(file, LEDGER_DETAIL_MILLIS, StockLedger.DAY_MILLIS,
+                    LEDGER_RETENTION_MILLIS);
+            long now = System.currentTimeMillis();
+            started.compact(now);
+            int reconciled = started.reconcile(current, now);
+            if (file != null && reconciled > 0) {
+                message("Recorded opening balances of " + reconciled + " product(s) in the stock ledger");
+            }
+            ScheduledExecutorService scheduler = ledgerScheduler();
+            ledgerTasks.add(scheduler.scheduleWithFixedDelay(this::compactLedger, StockLedger.DAY_MILLIS,
+                    StockLedger.DAY_MILLIS, TimeUnit.MILLISECONDS));
+            if (file != null) {
+                ledgerTasks.add(scheduler.scheduleWithFixedDelay(() -> flushLedger(started),
+                        StockLedger.FLUSH_INTERVAL_MILLIS, StockLedger.FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+            }
+            return started;
+        } catch (IOException e) {
+            System.err.println("Error opening stock ledger: " + e.getMessage());
+            return null;
+        } finally {
+            metrics.record(InventoryMetrics.Operation.LEDGER_OPEN, start);
+        }
+    }
+    
+    // Write out the movements the ledger file has not received yet and force it to disk
+    private void syncLedger() {
+        StockLedger current = ledger;
+        if (current != null) {
+            try {
+                current.sync();
+            } catch (IOException e) {
+                System.err.println("Error writing stock ledger: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Hand the movements collected so far to the ledger file
+    private static void flushLedger(StockLedger current) {
+        try {
+            current.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing stock ledger: " + e.getMessage());
+        }
+    }
+    
+    // Stop the daily compaction and the flushes; a compaction that is running finishes first
+    // (close waits for it on ledgerMaintenance)
+    private void stopLedgerTasks() {
+        synchronized (indexes) {
+            for (ScheduledFuture<?> task : ledgerTasks) {
+                task.cancel(false);
+            }
+            ledgerTasks.clear();
+        }
+    }
+    
+    // The one thread that compacts and flushes the ledgers of every inventory in the process
+    private static synchronized ScheduledExecutorService ledgerScheduler() {
+        if (ledgerScheduler == null) {
+            ledgerScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "inventory-ledger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return ledgerScheduler;
+    }
+    
+    // Sorted index for an ordering
+    private ProductOrderIndex orderIndex(ProductOrder order) {
+        return orderedIndex(orderIndexes, order, ProductOrderIndex::new);
+    }
+    
+    // Sorted indexes for an ordering, one per category
+    private CategoryOrderIndex categoryOrderIndex(ProductOrder order) {
+        return orderedIndex(categoryOrderIndexes, order, CategoryOrderIndex::new);
+    }
+    
+    // Index for an ordering, built on first use under every lock stripe so no change slips past it
+    private <T extends InventoryIndex> T orderedIndex(Map<ProductOrder, T> built, ProductOrder order,
+                                                      Function<ProductOrder, T> factory) {
+        if (order == null) {
+            throw new IllegalArgumentException("Order cannot be null");
+        }
+        T index = built.get(order);
+        if (index != null) {
+            return index;
+        }
+        synchronized (built) {
+            index = built.get(order);
+            if (index == null) {
+                index = factory.apply(order);
+                lockAll();
+                try {
+                    indexes.add(index);
+                    forEachProduct(index::productAdded);
+                } finally {
+                    unlockAll();
+                }
+                built.put(order, index);
+            }
+            return index;
+        }
+    }
+    
+    // Change thresholds and re-evaluate the products they apply to with every stripe locked, so no
+    // change of a product falls in between (it would be judged by the old threshold and missed by
+    // the re-evaluation) and checkConsistency never sees a threshold whose products are not updated
+    private void changeThresholds(Runnable change, Supplier<List<String>> affected) {
+        lockAll();
+        try {
+            thresholdChanges++; // first, so a recount that sees the new threshold sees this too
+            change.run();
+            refresh(affected.get());
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    // Re-evaluate the indexes of some products after a setting they depend on changed
+    private void refresh(List<String> ids) {
+        for (String id : ids) {
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                Product product = find(id);
+                if (product != null) {
+                    indexUpdated(product, product);
+                }
+            } finally {
+                unlock(lock);
+            }
+        }
+    }
+    
+    // Products for a list of IDs, skipping any removed in the meantime
+    private List<Product> lookup(List<String> ids) {
+        List<Product> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Product product = find(id);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+    
+    // The stored version of a product, null if there is none
+    private Product find(String id) {
+        return products.get(stripeFor(id)).get(id);
+    }
+    
+    // Walk the stored products stripe by stripe; each stripe is read at one point in time, but
+    // changes to other stripes may land in between (use snapshot() for a consistent view)
+    private void forEachProduct(Consumer<Product> action) {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            products.get(i).forEach(action);
+        }
+    }
+    
+    // Lock every stripe in ascending order, the order batches lock their stripes in
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+    
+    private void unlockAll() {
+        for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+        deliverPending();
+    }
+    
+    // Release a stripe lock, then hand out the low-stock crossings and events queued under it
+    private void unlock(ReentrantLock lock) {
+        lock.unlock();
+        deliverPending();
+    }
+    
+    // Call the low-stock listeners for queued crossings and publish the events that waited for a
+    // slow subscriber, unless this thread still holds a stripe lock (its last unlock does it then):
+    // listeners and subscribers may read the inventory meanwhile
+    private void deliverPending() {
+        InventoryEventStream stream = eventStream;
+        boolean events = stream != null && stream.hasDeferred();
+        if (!events && !lowStockTracker.hasPending()) {
+            return;
+        }
+        for (ReentrantLock lock : locks) {
+            if (lock.isHeldByCurrentThread()) {
+                return;
+            }
+        }
+        if (events) {
+            stream.publishDeferred();
+        }
+        lowStockTracker.deliver();
+    }
+    
+    // Snapshot of the stripe maps, called with every stripe locked
+    private InventorySnapshot currentSnapshot() {
+        PersistentProductMap[] roots = new PersistentProductMap[LOCK_STRIPES];
+        long version = 0;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            roots[i] = products.get(i);
+            version += changeCounts[i];
+        }
+        return new InventorySnapshot(roots, version, lowStockTracker::isLowStock);
+    }
+    
+    // Read index totals or stripe maps at a point where no change is half-applied
+    private <T> T underAllLocks(Supplier<T> read) {
+        lockAll();
+        try {
+            return read.get();
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    // Replace the stored version of a product (before is null for a new product), called under
+    // the ID's lock; a change of quantity goes into the stock ledger with the reason given.
+    // Returns the stored product.
+    // The stock value is checked first, so a version the indexes cannot value never reaches any of them
+    private Product store(Product before, Product after, StockMovement.Reason reason) {
+        if (!valueFits(after.getPrice(), after.getQuantity())) {
+            throw new IllegalArgumentException(VALUE_TOO_LARGE + " for product '" + after.getId() + "'");
+        }
+        int stripe = stripeFor(after.getId());
+        products.set(stripe, products.get(stripe).put(after));
+        changeCounts[stripe]++;
+        if (before == null) {
+            indexAdded(after);
+        } else {
+            indexUpdated(before, after);
+        }
+        recordMovement(after.getId(), after.getQuantity() - (before == null ? 0 : before.getQuantity()), reason);
+        return after;
+    }
+    
+    // True if price times quantity can be valued in long cents (see Money.valueOf)
+    private static boolean valueFits(double price, int quantity) {
+        try {
+            Money.valueOf(price, quantity);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+    
+    // Remove a stored product, called under the ID's lock
+    private void remove(Product product, StockMovement.Reason reason) {
+        int stripe = stripeFor(product.getId());
+        products.set(stripe, products.get(stripe).remove(product.getId()));
+        changeCounts[stripe]++;
+        indexRemoved(product);
+        recordMovement(product.getId(), -product.getQuantity(), reason);
+    }
+    
+    // Add a change of stock to the ledger, if there is one; called under the ID's lock
+    private void recordMovement(String id, int quantityChange, StockMovement.Reason reason) {
+        StockLedger current = ledger;
+        if (current != null && quantityChange != 0) {
+            try {
+                current.record(id, quantityChange, reason, System.currentTimeMillis());
+            } catch (IOException e) {
+                System.err.println("Error writing stock ledger: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Frozen copy of a product's values under an ID; products of a category share one category
+    // String instance (dictionary encoding)
+    private Product frozenCopy(String id, Product product) {
+        Product copy = new Product(id, product.getName(), product.getPrice(), product.getQuantity(),
+                categoryIndex.canonical(product.getCategory()), null);
+        describe(copy, product);
+        return copy.freeze();
+    }
+    
+    // Frozen version of a stored product with another quantity
+    private static Product withQuantity(Product product, int quantity) {
+        Product copy = new Product(product.getId(), product.getName(), product.getPrice(), quantity,
+                product.getCategory(), null);
+        copy.copyDescriptionFrom(product);
+        return copy.freeze();
+    }
+    
+    // Give a new version the source's description: one already in the description file is shared,
+    // another long one is appended to it, anything else is kept in memory
+    private void describe(Product copy, Product source) {
+        DescriptionStore store = descriptions;
+        DescriptionStore.Ref cold = source.getColdDescription();
+        if (cold != null && store != null && store.owns(cold)) {
+            copy.setColdDescription(cold);
+            return;
+        }
+        String description = source.getDescription();
+        if (store != null && isLong(description)) {
+            try {
+                copy.setColdDescription(store.append(description));
+                return;
+            } catch (IOException e) {
+                System.err.println("Error writing description file: " + e.getMessage());
+            }
+        }
+        copy.setDescription(description);
+    }
+    
+    private void indexAdded(Product product) {
+        for (InventoryIndex index : indexes) {
+            index.productAdded(product);
+        }
+    }
+    
+    private void indexRemoved(Product product) {
+        for (InventoryIndex index : indexes) {
+            index.productRemoved(product);
+        }
+    }
+    
+    private void indexUpdated(Product before, Product after) {
+        for (InventoryIndex index : indexes) {
+            index.productUpdated(before, after);
+        }
+    }
+    
+    private void message(String text) {
+        if (verbose) {
+            System.out.println(text);
+        }
     }
 }
 
@@ -0,0 +1,93 @@
+/**
+ * InventoryEvent class describes one change to an inventory's products
+ * Events carry the stored product before and after the change (both immutable, null for the
+ * side that does not exist) and a sequence number that increases by one per change. Changes to
+ * one product are numbered in the order they were applied. Sequence numbers start at 1 again
+ * with every stream; the epoch tells the streams apart.
+ *
+ * The events handed to an InventoryEventListener are slots of the stream's ring buffer and are
+ * reused once the listener returns; call copy() to keep one.
+ */
+public class InventoryEvent {
+    
+    // Kind of change
+    public enum Type {
+        ADDED,             // a product was added; before is null
+        UPDATED,           // fields other than (or besides) the quantity changed
+        QUANTITY_CHANGED,  // only the quantity changed
+        DELETED,           // a product was deleted; after is null
+        CLEARED            // every product was removed at once; no product is given
+    }
+    
+    private final long epoch;
+    private long sequence;
+    private long timestampMillis;
+    private Type type;
+    private Product before;
+    private Product after;
+    
+    InventoryEvent(long epoch) {
+        this.epoch = epoch;
+    }
+    
+    // Fill a ring buffer slot for a new change
+    void set(long sequence, long timestampMillis, Type type, Product before, Product after) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.type = type;
+        this.before = before;
+        this.after = after;
+    }
+    
+    // Stream the sequence number belongs to, see InventoryEventStream.getEpoch()
+    public long getEpoch() {
+        return epoch;
+    }
+    
+    // Position of the change in the stream, starting at 1
+    public long getSequence() {
+        return sequence;
+    }
+    
+    // Wall clock time of the change (epoch milliseconds)
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    // ID of the changed product, null for CLEARED
+    public String getProductId() {
+        return after != null ? after.getId() : before != null ? before.getId() : null;
+    }
+    
+    // The product as it was before the change, null if it did not exist
+    public Product getBefore() {
+        return before;
+    }
+    
+    // The product as it is after the change, null if it was deleted
+    public Product getAfter() {
+        return after;
+    }
+    
+    // Change in stock (negative when stock was taken), counting a missing product as 0 units
+    public int getQuantityChange() {
+        return (after == null ? 0 : after.getQuantity()) - (before == null ? 0 : before.getQuantity());
+    }
+    
+    // An event that keeps its values once the listener returns
+    public InventoryEvent copy() {
+        InventoryEvent copy = new InventoryEvent(epoch);
+        copy.set(sequence, timestampMillis, type, before, after);
+        return copy;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("#%d %s%s%s", sequence, type, getProductId() == null ? "" : " " + getProductId(),
+                type == Type.QUANTITY_CHANGED ? String.format(" (%+d)", getQuantityChange()) : "");
+    }
+}
@@ -0,0 +1,18 @@
+import java.util.List;
+
+/**
+ * InventoryEventListener interface receives batches of change events from an InventoryEventStream
+ * Each subscription calls its listener on its own thread with every event published since the
+ * previous call (up to the subscription's batch size), in sequence order, so a slow listener
+ * gets fewer, larger batches. The events are only valid during the call (see
+ * InventoryEvent.copy()).
+ *
+ * A listener that falls a full ring buffer behind holds back writers of the same inventory once
+ * they have released their lock stripes, so listeners may read that inventory but must not
+ * change it or wait for a change to it: hand such work to another thread.
+ */
+public interface InventoryEventListener {
+    
+    // Events in sequence order, never empty
+    void onEvents(List<InventoryEvent> events);
+}
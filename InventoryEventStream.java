@@ -0,0 +1,360 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * InventoryEventStream class publishes every change to an inventory as an InventoryEvent
+ * Events go through a ring buffer of pre-allocated slots, so publishing allocates nothing while
+ * subscribers keep up: a change claims the next sequence number, fills the slot and marks it
+ * published, all under the lock stripe of the product it changes, which keeps the events of one
+ * product in the order the changes were applied. Subscribers each follow the stream on their
+ * own thread and receive everything published since their last batch in one call.
+ *
+ * Backpressure: a slot is only reused once every subscriber is past it. A change whose slot is
+ * still taken keeps its sequence number but fills the slot only after the writer has released
+ * its stripe locks, waiting there while the slowest subscriber is a whole ring behind. Stripe
+ * locks are never held while waiting, so subscribers may read the inventory; they must not
+ * change it, as that change could wait for the subscriber itself. The ring also keeps the last
+ * events for late subscribers: subscribe(listener, epoch, fromSequence, ...) resumes from any
+ * sequence that is still in the ring.
+ *
+ * Sequence numbers are not persisted and start at 1 again with every stream; each stream has
+ * its own epoch, which events carry, so a consumer can tell a restart from a gap.
+ *
+ * Get the stream with Inventory.getEventStream(); events are published from then on.
+ */
+public class InventoryEventStream {
+    // Every slot keeps its two product versions alive until it is reused, which the garbage
+    // collector pays for; a larger ring (-Dinventory.events.capacity) lets subscribers resume further back
+    public static final int DEFAULT_CAPACITY = 8_192;
+    public static final int DEFAULT_BATCH_SIZE = 1_024;
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 100_000;
+    private static final AtomicLong LAST_EPOCH = new AtomicLong();
+    
+    private final InventoryEvent[] slots;
+    private final AtomicIntegerArray rounds; // per slot, sequence / capacity of the event it holds
+    private final int mask;
+    private final int shift;
+    private final long epoch;
+    private final AtomicLong claimed = new AtomicLong(); // last sequence handed to a change
+    private volatile Subscription[] subscriptions = new Subscription[0]; // replaced under this stream's monitor
+    private final ThreadLocal<ArrayDeque<InventoryEvent>> deferred = ThreadLocal.withInitial(ArrayDeque::new);
+    private final AtomicInteger deferredCount = new AtomicInteger(); // events waiting for a slot, all threads
+    
+    /**
+     * Subscription class is one subscriber's position in the stream and the thread feeding it
+     */
+    public static final class Subscription {
+        private final InventoryEventStream stream;
+        private final InventoryEventListener listener;
+        private final int batchSize;
+        private final Thread thread;
+        private volatile long sequence; // last sequence handed to the listener
+        private volatile boolean closed;
+        
+        private Subscription(InventoryEventStream stream, InventoryEventListener listener, long fromSequence,
+                             int batchSize) {
+            this.stream = stream;
+            this.listener = listener;
+            this.batchSize = batchSize;
+            this.sequence = fromSequence - 1;
+            this.thread = new Thread(this::run, "inventory-events");
+            thread.setDaemon(true);
+        }
+        
+        // Sequence of the last event the listener has received
+        public long getSequence() {
+            return sequence;
+        }
+        
+        // Deliver the events published so far, then stop the subscriber's thread
+        public void close() {
+            closed = true;
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                boolean interrupted = false;
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            stream.remove(this);
+        }
+        
+        private void run() {
+            Batch batch = new Batch(stream);
+            int idle = 0;
+            while (true) {
+                long next = sequence + 1;
+                long last = stream.claimed.get();
+                if (last - next >= batchSize) {
+                    last = next + batchSize - 1;
+                }
+                // Stop at the first event whose change is still filling its slot
+                long available = next - 1;
+                while (available < last && stream.isPublished(available + 1)) {
+                    available++;
+                }
+                if (available < next) {
+                    if (closed && stream.claimed.get() < next) {
+                        return;
+                    }
+                    idle = stream.idle(idle);
+                    continue;
+                }
+                idle = 0;
+                batch.reset(next, (int) (available - next + 1));
+                try {
+                    listener.onEvents(batch);
+                } catch (RuntimeException e) {
+                    System.err.println("Inventory event listener failed: " + e.getMessage());
+                }
+                sequence = available;
+            }
+        }
+    }
+    
+    // Read-only list over a run of ring slots
+    private static final class Batch extends AbstractList<InventoryEvent> implements RandomAccess {
+        private final InventoryEventStream stream;
+        private long first;
+        private int size;
+        
+        Batch(InventoryEventStream stream) {
+            this.stream = stream;
+        }
+        
+        void reset(long first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+        
+        @Override
+        public InventoryEvent get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            }
+            return stream.slots[stream.slot(first + index)];
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+    
+    // A ring of `capacity` slots, rounded up to a power of two
+    InventoryEventStream(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        // Creation time in milliseconds, kept increasing so no two streams share one
+        long now = System.currentTimeMillis();
+        this.epoch = LAST_EPOCH.accumulateAndGet(now, (last, time) -> Math.max(last + 1, time));
+        this.slots = new InventoryEvent[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new InventoryEvent(epoch);
+        }
+        this.rounds = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            rounds.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.shift = Integer.numberOfTrailingZeros(size);
+    }
+    
+    // Follow the stream from the next event on
+    public Subscription subscribe(InventoryEventListener listener) {
+        return subscribe(listener, epoch, claimed.get() + 1, DEFAULT_BATCH_SIZE);
+    }
+    
+    // Follow the stream from fromSequence on (e.g. one past the last sequence a consumer processed),
+    // receiving at most batchSize events per call; fails if the sequence belongs to another epoch
+    // (an earlier run) or the ring no longer holds fromSequence
+    public Subscription subscribe(InventoryEventListener listener, long epoch, long fromSequence, int batchSize) {
+        if (listener == null || batchSize <= 0) {
+            throw new IllegalArgumentException("A listener and a positive batch size are required");
+        }
+        if (epoch != this.epoch) {
+            throw new IllegalArgumentException("Sequence " + fromSequence + " belongs to epoch " + epoch
+                    + ", this stream is epoch " + this.epoch + " and starts at sequence 1");
+        }
+        if (fromSequence < 1 || fromSequence > claimed.get() + 1) {
+            throw new IllegalArgumentException("Sequence " + fromSequence + " has not been published");
+        }
+        Subscription subscription = new Subscription(this, listener, fromSequence, batchSize);
+        synchronized (this) {
+            Subscription[] added = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            added[added.length - 1] = subscription;
+            subscriptions = added;
+        }
+        // Publishers read the subscriptions after claiming, so either they see this one and wait
+        // for it, or the slot was already claimed for reuse and the check below sees that
+        if (claimed.get() - slots.length >= fromSequence) {
+            remove(subscription);
+            throw new IllegalArgumentException("Sequence " + fromSequence + " is no longer retained, the oldest is "
+                    + getOldestSequence());
+        }
+        subscription.thread.start();
+        return subscription;
+    }
+    
+    // Identifies this stream's sequence numbers: the time it was created (epoch milliseconds), so
+    // the stream of a later run has a larger epoch
+    public long getEpoch() {
+        return epoch;
+    }
+    
+    // Sequence of the latest change (0 before the first)
+    public long getLastSequence() {
+        return claimed.get();
+    }
+    
+    // Oldest sequence a new subscription can start from
+    public long getOldestSequence() {
+        return Math.max(1, claimed.get() - slots.length + 1);
+    }
+    
+    public int getCapacity() {
+        return slots.length;
+    }
+    
+    // Close every subscription, each after delivering what has been published
+    void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+    
+    // Index that turns Inventory's callbacks into events; they come under the product's stripe lock
+    InventoryIndex publisher() {
+        return new InventoryIndex() {
+            @Override
+            public void productAdded(Product product) {
+                publish(InventoryEvent.Type.ADDED, null, product);
+            }
+            
+            @Override
+            public void productRemoved(Product product) {
+                publish(InventoryEvent.Type.DELETED, product, null);
+            }
+            
+            @Override
+            public void productUpdated(Product before, Product after) {
+                if (before != after) { // the same instance only re-evaluates thresholds
+                    publish(onlyQuantityDiffers(before, after) ? InventoryEvent.Type.QUANTITY_CHANGED
+                            : InventoryEvent.Type.UPDATED, before, after);
+                }
+            }
+            
+            @Override
+            public void cleared() {
+                publish(InventoryEvent.Type.CLEARED, null, null);
+            }
+        };
+    }
+    
+    // Whether this thread (or any other) has events waiting for publishDeferred()
+    boolean hasDeferred() {
+        return deferredCount.get() > 0;
+    }
+    
+    // Fill the slots of the events this thread deferred, waiting for slow subscribers as needed
+    // Called by the inventory once the thread holds no stripe lock
+    void publishDeferred() {
+        ArrayDeque<InventoryEvent> events = deferred.get();
+        InventoryEvent event;
+        while ((event = events.poll()) != null) {
+            int idle = 0;
+            while (!isFree(event.getSequence())) {
+                idle = idle(idle);
+            }
+            fill(event.getSequence(), event.getTimestampMillis(), event.getType(), event.getBefore(),
+                    event.getAfter());
+            deferredCount.decrementAndGet();
+        }
+    }
+    
+    // Claim the next sequence and fill its slot, or leave that to publishDeferred() if the
+    // slowest subscriber still needs the slot: the caller holds a stripe lock
+    private void publish(InventoryEvent.Type type, Product before, Product after) {
+        long sequence = claimed.incrementAndGet();
+        long timestamp = System.currentTimeMillis();
+        if (isFree(sequence)) {
+            fill(sequence, timestamp, type, before, after);
+            return;
+        }
+        InventoryEvent event = new InventoryEvent(epoch);
+        event.set(sequence, timestamp, type, before, after);
+        deferred.get().add(event);
+        deferredCount.incrementAndGet();
+    }
+    
+    // Whether every subscriber is past the event whose slot this sequence takes
+    private boolean isFree(long sequence) {
+        long reused = sequence - slots.length;
+        return reused <= 0 || slowestSubscriber(sequence) >= reused;
+    }
+    
+    private void fill(long sequence, long timestamp, InventoryEvent.Type type, Product before, Product after) {
+        int slot = slot(sequence);
+        slots[slot].set(sequence, timestamp, type, before, after);
+        rounds.set(slot, (int) (sequence >>> shift));
+    }
+    
+    private synchronized void remove(Subscription subscription) {
+        List<Subscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+        if (remaining.remove(subscription)) {
+            subscriptions = remaining.toArray(new Subscription[0]);
+        }
+    }
+    
+    // Lowest sequence every subscriber has received (the given sequence if there are none)
+    private long slowestSubscriber(long sequence) {
+        long slowest = sequence;
+        for (Subscription subscription : subscriptions) {
+            slowest = Math.min(slowest, subscription.sequence);
+        }
+        return slowest;
+    }
+    
+    private boolean isPublished(long sequence) {
+        return rounds.get(slot(sequence)) == (int) (sequence >>> shift);
+    }
+    
+    private int slot(long sequence) {
+        return (int) sequence & mask;
+    }
+    
+    // Wait a little longer each time nothing is ready: spin, then yield, then park
+    private int idle(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+    
+    private static boolean onlyQuantityDiffers(Product before, Product after) {
+        return Objects.equals(before.getName(), after.getName()) && before.getPrice() == after.getPrice()
+                && Objects.equals(before.getCategory(), after.getCategory())
+                && before.hasSameDescription(after); // without reading descriptions kept on disk
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * InventoryIndex interface is implemented by structures that Inventory keeps in sync with its products
+ * Inventory calls these methods while holding the lock stripe of the product's ID, so calls
+ * for the same product never overlap. Stored products are never changed in place: an update
+ * replaces the stored instance, and the index must keep the new one from then on.
+ */
+interface InventoryIndex {
+    
+    // A product was added (or loaded from disk)
+    void productAdded(Product product);
+    
+    // A product was removed
+    void productRemoved(Product product);
+    
+    // A product was replaced by a new version; before is the instance stored until now
+    // (before and after are the same instance when a setting the index depends on changed)
+    default void productUpdated(Product before, Product after) {
+        productRemoved(before);
+        productAdded(after);
+    }
+    
+    // Every product was removed
+    void cleared();
+}
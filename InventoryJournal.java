@@ -0,0 +1,441 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * InventoryJournal class is an append-only write-ahead log for inventory mutations
+ * Each mutation is appended as a small checksummed record instead of rewriting the whole data file
+ *
+ * Record layout: [int payloadLength][int crc32][byte type][payload]
+ * Records carry absolute values (never deltas) so replaying a record twice is harmless,
+ * which keeps recovery correct if a crash happens between a checkpoint and the log truncation.
+ * A bad record with no valid record after it is a torn write and is cut off on replay; one
+ * followed by valid records is damage, and replay fails without touching the file.
+ */
+public class InventoryJournal implements Closeable {
+
+    // When the log is forced to disk
+    public enum SyncPolicy {
+        ALWAYS,   // fsync after every record
+        INTERVAL, // fsync at most once per sync interval
+        NEVER     // leave flushing to the operating system
+    }
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final byte RECORD_QUANTITY = 3;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final File logFile;
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalMillis;
+    private final int checkpointInterval;
+
+    private FileChannel channel;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+    private long lastSyncTime;
+    private int recordsSinceCheckpoint;
+    private boolean tornRecordDetected;
+    private IOException unusable; // a failed write that could not be cut off again, until reset()
+
+    // Constructor with default policy: fsync at most once per second, checkpoint every 10,000 records
+    public InventoryJournal(String logFile) {
+        this(logFile, SyncPolicy.INTERVAL, 1000, 10_000);
+    }
+
+    // Parameterized constructor
+    public InventoryJournal(String logFile, SyncPolicy syncPolicy, long syncIntervalMillis, int checkpointInterval) {
+        if (syncPolicy == null) {
+            throw new IllegalArgumentException("Sync policy cannot be null");
+        }
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.logFile = new File(logFile);
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public String getLogFile() {
+        return logFile.getPath();
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    // True if recovery found and discarded a partially written last record
+    public boolean isTornRecordDetected() {
+        return tornRecordDetected;
+    }
+
+    // Number of records appended since the last checkpoint
+    public synchronized int getRecordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+
+    // True once enough records have accumulated that the log should be compacted into a snapshot
+    public synchronized boolean isCheckpointDue() {
+        return recordsSinceCheckpoint >= checkpointInterval;
+    }
+
+    // Replay the log on top of a freshly loaded snapshot, returns the number of records applied
+    // A damaged record that valid records follow throws IOException and leaves the log as it is
+    public synchronized int replay(Map<String, Product> products) throws IOException {
+        tornRecordDetected = false;
+        if (!logFile.exists()) {
+            return 0;
+        }
+
+        int applied = 0;
+        long validLength = 0;
+        long fileLength = logFile.length();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            byte[] payload = new byte[256];
+            while (validLength < fileLength) {
+                if (fileLength - validLength < HEADER_SIZE) {
+                    tornRecordDetected = true;
+                    break;
+                }
+
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE || fileLength - validLength - HEADER_SIZE < length) {
+                    tornRecordDetected = true;
+                    break;
+                }
+
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                in.readFully(payload, 0, length);
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    tornRecordDetected = true;
+                    break;
+                }
+
+                applyRecord(new DataInputStream(new ByteArrayInputStream(payload, 0, length)), products);
+                validLength += HEADER_SIZE + length;
+                applied++;
+            }
+        }
+
+        if (tornRecordDetected) {
+            long next = findValidRecord(validLength + 1, fileLength);
+            if (next >= 0) {
+                tornRecordDetected = false;
+                throw new IOException("Journal '" + logFile.getPath() + "' is damaged at byte " + validLength
+                        + " (record " + (applied + 1) + "), but a valid record follows at byte " + next
+                        + "; it was left as it is");
+            }
+            // Cut the log back to the last complete record so new appends start on a clean boundary
+            try (FileChannel truncator = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                truncator.truncate(validLength);
+                truncator.force(true);
+            }
+            System.err.println("Discarded torn record at end of journal '" + logFile.getPath()
+                    + "' (" + (fileLength - validLength) + " bytes)");
+        }
+
+        recordsSinceCheckpoint = applied;
+        return applied;
+    }
+
+    // Offset of the first frame from 'from' on whose checksum matches, -1 if there is none
+    // Only called after a bad record, so reading the rest of the log into memory is fine
+    private long findValidRecord(long from, long fileLength) throws IOException {
+        if (fileLength - from < HEADER_SIZE) {
+            return -1;
+        }
+        byte[] rest = new byte[(int) Math.min(fileLength - from, Integer.MAX_VALUE - 8)];
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            file.seek(from);
+            file.readFully(rest);
+        }
+        ByteBuffer frames = ByteBuffer.wrap(rest);
+        for (int offset = 0; offset + HEADER_SIZE <= rest.length; offset++) {
+            int length = frames.getInt(offset);
+            if (length <= 0 || length > MAX_RECORD_SIZE || rest.length - offset - HEADER_SIZE < length) {
+                continue;
+            }
+            crc.reset();
+            crc.update(rest, offset + HEADER_SIZE, length);
+            if ((int) crc.getValue() == frames.getInt(offset + 4)) {
+                return from + offset;
+            }
+        }
+        return -1;
+    }
+
+    // Append a full product record (used for add and update), returns the number of bytes written
+    public synchronized int appendPut(Product product) throws IOException {
+        recordBuffer.reset();
+        encodePut(recordOut, product);
+        return append();
+    }
+
+    // Append a product removal, returns the number of bytes written
+    public synchronized int appendDelete(String id) throws IOException {
+        recordBuffer.reset();
+        encodeDelete(recordOut, id);
+        return append();
+    }
+
+    // Append the new absolute quantity of a product, returns the number of bytes written
+    public synchronized int appendQuantity(String id, int newQuantity) throws IOException {
+        recordBuffer.reset();
+        encodeQuantity(recordOut, id, newQuantity);
+        return append();
+    }
+
+    // Start collecting records that will be written together by commit(Batch)
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    // Write every record of a batch with a single write and at most one fsync
+    // Returns the number of bytes written
+    public synchronized int commit(Batch batch) throws IOException {
+        if (batch.count == 0) {
+            return 0;
+        }
+        return write(ByteBuffer.wrap(batch.frames.toByteArray()), batch.count, false);
+    }
+
+    // Write every record of a batch with a single write and force it to disk whatever the policy
+    // Returns the number of bytes written
+    public synchronized int commitDurably(Batch batch) throws IOException {
+        if (batch.count == 0) {
+            return 0;
+        }
+        return write(ByteBuffer.wrap(batch.frames.toByteArray()), batch.count, true);
+    }
+
+    /**
+     * Batch class collects framed journal records in memory until they are committed
+     * A batch is not thread-safe and belongs to the thread that created it
+     */
+    public static class Batch {
+        private final ByteArrayOutputStream frames = new ByteArrayOutputStream(4096);
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+        private final DataOutputStream payloadOut = new DataOutputStream(payload);
+        private final CRC32 crc = new CRC32();
+        private int count;
+
+        private Batch() {
+        }
+
+        public void put(Product product) throws IOException {
+            payload.reset();
+            encodePut(payloadOut, product);
+            add();
+        }
+
+        public void delete(String id) throws IOException {
+            payload.reset();
+            encodeDelete(payloadOut, id);
+            add();
+        }
+
+        public void quantity(String id, int newQuantity) throws IOException {
+            payload.reset();
+            encodeQuantity(payloadOut, id, newQuantity);
+            add();
+        }
+
+        public int size() {
+            return count;
+        }
+
+        private void add() throws IOException {
+            payloadOut.flush();
+            ByteBuffer frame = frame(payload.toByteArray(), crc);
+            frames.write(frame.array(), 0, frame.limit());
+            count++;
+        }
+    }
+
+    // Discard the log once its contents are covered by a durable snapshot
+    public synchronized void reset() throws IOException {
+        openChannel();
+        channel.truncate(0);
+        channel.force(true);
+        lastSyncTime = System.currentTimeMillis();
+        recordsSinceCheckpoint = 0;
+        unusable = null;
+    }
+
+    // Force any buffered records to disk
+    public synchronized void sync() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+            lastSyncTime = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+        channel = null;
+    }
+
+    // Frame the record in the buffer and write it to the log
+    private int append() throws IOException {
+        recordOut.flush();
+        return write(frame(recordBuffer.toByteArray(), crc), 1, false);
+    }
+
+    // Write framed records to the log and sync according to the policy (always if force is set),
+    // returns the bytes written. If the write or a forced sync fails, the log is cut back to
+    // where it was, so later records never follow a partial frame and replay keeps them.
+    private int write(ByteBuffer frames, int records, boolean force) throws IOException {
+        if (unusable != null) {
+            throw new IOException("Journal could not be cut back after a failed write, checkpoint to recover: "
+                    + unusable.getMessage(), unusable);
+        }
+        int bytes = frames.remaining();
+        openChannel();
+        long position = channel.size();
+        try {
+            while (frames.hasRemaining()) {
+                channel.write(frames);
+            }
+            if (force || syncPolicy == SyncPolicy.ALWAYS) {
+                channel.force(false);
+                lastSyncTime = System.currentTimeMillis();
+            } else if (syncPolicy == SyncPolicy.INTERVAL) {
+                long now = System.currentTimeMillis();
+                if (now - lastSyncTime >= syncIntervalMillis) {
+                    channel.force(false);
+                    lastSyncTime = now;
+                }
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(position);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                unusable = e;
+            }
+            throw e;
+        }
+        recordsSinceCheckpoint += records;
+        return bytes;
+    }
+
+    private static ByteBuffer frame(byte[] payload, CRC32 crc) {
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt((int) crc.getValue());
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    private void openChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(logFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            lastSyncTime = System.currentTimeMillis();
+        }
+    }
+
+    // Apply a single decoded record to the product map
+    private static void applyRecord(DataInputStream in, Map<String, Product> products) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case RECORD_PUT:
+                Product product = readProduct(in);
+                products.put(product.getId(), product);
+                break;
+            case RECORD_DELETE:
+                products.remove(readString(in));
+                break;
+            case RECORD_QUANTITY:
+                String id = readString(in);
+                int quantity = in.readInt();
+                Product existing = products.get(id);
+                if (existing != null) {
+                    existing.setQuantity(quantity);
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    private static void encodePut(DataOutputStream out, Product product) throws IOException {
+        out.writeByte(RECORD_PUT);
+        writeProduct(out, product);
+    }
+
+    private static void encodeDelete(DataOutputStream out, String id) throws IOException {
+        out.writeByte(RECORD_DELETE);
+        writeString(out, id);
+    }
+
+    private static void encodeQuantity(DataOutputStream out, String id, int newQuantity) throws IOException {
+        out.writeByte(RECORD_QUANTITY);
+        writeString(out, id);
+        out.writeInt(newQuantity);
+    }
+
+    private static void writeProduct(DataOutputStream out, Product product) throws IOException {
+        writeString(out, product.getId());
+        writeString(out, product.getName());
+        out.writeDouble(product.getPrice());
+        out.writeInt(product.getQuantity());
+        writeString(out, product.getCategory());
+        writeString(out, product.getDescription());
+    }
+
+    private static Product readProduct(DataInputStream in) throws IOException {
+        String id = readString(in);
+        String name = readString(in);
+        double price = in.readDouble();
+        int quantity = in.readInt();
+        String category = readString(in);
+        String description = readString(in);
+        return new Product(id, name, price, quantity, category, description);
+    }
+
+    // Length-prefixed UTF-8, -1 marks null (writeUTF is limited to 64KB)
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
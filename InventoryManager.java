@@ -1,3 +1,7 @@
+import java.io.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -6,11 +10,17 @@ import java.util.stream.Collectors;
  * Handles user input and coordinates with Inventory class
  */
 public class InventoryManager {
+    private static final int TOP_PRODUCTS = 10; // rows per ranking in the Top Products report
+    private static final int HISTORY_MOVEMENTS = 50; // latest movements shown in the Stock History report
     private Inventory inventory;
     private Scanner scanner;
     
     public InventoryManager() {
-        this.inventory = new Inventory();
+        this(new Inventory());
+    }
+    
+    public InventoryManager(Inventory inventory) {
+        this.inventory = inventory;
         this.scanner = new Scanner(System.in);
     }
     
@@ -49,7 +59,11 @@ public class InventoryManager {
                     generateReports();
                     break;
                 case 9:
+                    showMetrics();
+                    break;
+                case 10:
                     System.out.println("Thank you for using the Inventory Management System!");
+                    inventory.close();
                     scanner.close();
                     return;
                 default:
@@ -74,7 +88,8 @@ public class InventoryManager {
         System.out.println("6. Search Products");
         System.out.println("7. Update Product Quantity");
         System.out.println("8. Generate Reports");
-        System.out.println("9. Exit");
+        System.out.println("9. Metrics");
+        System.out.println("10. Exit");
         System.out.println("=".repeat(50));
     }
     
@@ -110,7 +125,11 @@ public class InventoryManager {
         String description = getStringInput("Enter Description: ");
         
         Product product = new Product(id, name, price, quantity, category, description);
-        inventory.addProduct(product);
+        try {
+            inventory.addProduct(product);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
     }
     
     // Update an existing product
@@ -178,7 +197,11 @@ public class InventoryManager {
         }
         
         Product updatedProduct = new Product(id, name, price, quantity, category, description);
-        inventory.updateProduct(id, updatedProduct);
+        try {
+            inventory.updateProduct(id, updatedProduct);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
     }
     
     // Delete a product
@@ -222,7 +245,8 @@ public class InventoryManager {
             System.out.println("\nProduct Details:");
             System.out.println(product);
             System.out.println("Total Value: $" + String.format("%.2f", product.getTotalValue()));
-            System.out.println("Low Stock: " + (product.isLowStock() ? "Yes" : "No"));
+            System.out.println("Low Stock: " + (inventory.isLowStock(product) ? "Yes" : "No")
+                    + " (reorder below " + inventory.getLowStockThreshold(product) + ")");
         }
     }
     
@@ -235,16 +259,29 @@ public class InventoryManager {
             return;
         }
         
-        List<Product> products = inventory.getAllProducts();
-        System.out.println("Total Products: " + products.size());
-        System.out.println("-".repeat(100));
-        
-        for (Product product : products) {
-            System.out.println(product);
+        System.out.println("Sort by: 1. ID  2. Name  3. Price  4. Quantity  5. Value");
+        int choice = getIntInput("Enter your choice (1-5): ");
+        ProductOrder order = choice >= 1 && choice <= 5 ? ProductOrder.values()[choice - 1] : ProductOrder.ID;
+        
+        // Streamed from the sorted index through one buffered writer, so memory use does not
+        // grow with the catalog
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        out.println("Total Products: " + inventory.getTotalProducts());
+        out.println("-".repeat(100));
+        printProducts(out, inventory.iterateProducts(order, null));
+        out.println("-".repeat(100));
+        out.println("Total Inventory Value: $" + Money.format(inventory.getTotalInventoryValueCents()));
+        out.flush();
+    }
+    
+    // Write one line per product, reusing a single line buffer
+    private void printProducts(PrintWriter out, Iterator<Product> products) {
+        StringBuilder line = new StringBuilder(160);
+        while (products.hasNext()) {
+            line.setLength(0);
+            products.next().appendTo(line).append(System.lineSeparator());
+            out.append(line);
         }
-        
-        System.out.println("-".repeat(100));
-        System.out.println("Total Inventory Value: $" + String.format("%.2f", inventory.getTotalInventoryValue()));
     }
     
     // Search products
@@ -253,6 +290,7 @@ public class InventoryManager {
         System.out.println("1. Search by Name");
         System.out.println("2. Search by Category");
         System.out.println("3. View Low Stock Products");
+        System.out.println("4. Search by Name Prefix");
         
         int choice = getIntInput("Enter search option: ");
         
@@ -271,6 +309,11 @@ public class InventoryManager {
                 List<Product> lowStockResults = inventory.getLowStockProducts();
                 displaySearchResults(lowStockResults, "Low Stock Products");
                 break;
+            case 4:
+                String prefix = getStringInput("Enter start of product name: ");
+                List<Product> prefixResults = inventory.searchProductsByNamePrefix(prefix, 20);
+                displaySearchResults(prefixResults, "Products starting with: " + prefix);
+                break;
             default:
                 System.out.println("Invalid choice!");
         }
@@ -288,9 +331,9 @@ public class InventoryManager {
         System.out.println("Found " + results.size() + " product(s):");
         System.out.println("-".repeat(100));
         
-        for (Product product : results) {
-            System.out.println(product);
-        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        printProducts(out, results.iterator());
+        out.flush();
     }
     
     // Update product quantity
@@ -313,7 +356,11 @@ public class InventoryManager {
         System.out.println("Current quantity: " + product.getQuantity());
         int change = getIntInput("Enter quantity change (+/-): ");
         
-        inventory.updateProductQuantity(id, change);
+        try {
+            inventory.updateProductQuantity(id, change);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
     }
     
     // Generate reports
@@ -328,7 +375,9 @@ public class InventoryManager {
         System.out.println("1. Inventory Summary");
         System.out.println("2. Low Stock Report");
         System.out.println("3. Category Summary");
-        System.out.println("4. All Reports");
+        System.out.println("4. Top Products");
+        System.out.println("5. Stock History");
+        System.out.println("6. All Reports");
         
         int choice = getIntInput("Enter report option: ");
         
@@ -343,9 +392,13 @@ public class InventoryManager {
                 displayCategorySummary();
                 break;
             case 4:
-                displayInventorySummary();
-                displayLowStockReport();
-                displayCategorySummary();
+                displayTopProducts();
+                break;
+            case 5:
+                displayStockHistory();
+                break;
+            case 6:
+                displayAllReports(inventory.generateReport());
                 break;
             default:
                 System.out.println("Invalid choice!");
@@ -356,7 +409,7 @@ public class InventoryManager {
     private void displayInventorySummary() {
         System.out.println("\n--- INVENTORY SUMMARY ---");
         System.out.println("Total Products: " + inventory.getTotalProducts());
-        System.out.println("Total Inventory Value: $" + String.format("%.2f", inventory.getTotalInventoryValue()));
+        System.out.println("Total Inventory Value: $" + Money.format(inventory.getTotalInventoryValueCents()));
     }
     
     // Display low stock report
@@ -367,10 +420,11 @@ public class InventoryManager {
         if (lowStockProducts.isEmpty()) {
             System.out.println("No products with low stock!");
         } else {
-            System.out.println("Products with low stock (< 10 items):");
+            System.out.println("Products with low stock (below reorder threshold):");
             System.out.println("-".repeat(80));
             for (Product product : lowStockProducts) {
-                System.out.println(product.getName() + " (ID: " + product.getId() + ") - Quantity: " + product.getQuantity());
+                System.out.println(product.getName() + " (ID: " + product.getId() + ") - Quantity: " + product.getQuantity()
+                        + " (threshold " + inventory.getLowStockThreshold(product) + ")");
             }
         }
     }
@@ -378,19 +432,170 @@ public class InventoryManager {
     // Display category summary
     private void displayCategorySummary() {
         System.out.println("\n--- CATEGORY SUMMARY ---");
-        Map<String, Integer> categorySummary = inventory.getInventorySummaryByCategory();
+        List<CategoryStats> categoryStats = inventory.getCategoryStatistics();
         
-        if (categorySummary.isEmpty()) {
+        if (categoryStats.isEmpty()) {
             System.out.println("No categories found!");
         } else {
             System.out.println("Quantity by Category:");
             System.out.println("-".repeat(40));
-            for (Map.Entry<String, Integer> entry : categorySummary.entrySet()) {
-                System.out.println(entry.getKey() + ": " + entry.getValue() + " items");
+            for (CategoryStats stats : categoryStats) {
+                System.out.println(stats.getCategory() + ": " + stats.getTotalQuantity() + " items"
+                        + " (" + stats.getProductCount() + " products, $" + Money.format(stats.getTotalValueCents())
+                        + ", " + stats.getLowStockCount() + " low stock)");
             }
         }
     }
     
+    // Display the most valuable and the lowest-stock products, and the most expensive product of
+    // each category, from the ranking indexes
+    private void displayTopProducts() {
+        System.out.println("\n--- TOP PRODUCTS ---");
+        System.out.println("Highest stock value:");
+        System.out.println("-".repeat(80));
+        for (Product product : inventory.getTopProducts(ProductOrder.VALUE, true, TOP_PRODUCTS)) {
+            System.out.println(product.getName() + " (ID: " + product.getId() + ") - $"
+                    + Money.format(Money.valueOf(product.getPrice(), product.getQuantity())));
+        }
+        
+        System.out.println("\nLowest quantity:");
+        System.out.println("-".repeat(80));
+        for (Product product : inventory.getTopProducts(ProductOrder.QUANTITY, false, TOP_PRODUCTS)) {
+            System.out.println(product.getName() + " (ID: " + product.getId() + ") - Quantity: " + product.getQuantity());
+        }
+        
+        System.out.println("\nMost expensive per category:");
+        System.out.println("-".repeat(80));
+        for (Map.Entry<String, List<Product>> entry : inventory.getTopProductsByCategory(ProductOrder.PRICE, true, 1)
+                .entrySet()) {
+            Product product = entry.getValue().get(0);
+            System.out.println(entry.getKey() + ": " + product.getName() + " (ID: " + product.getId() + ") - $"
+                    + String.format("%.2f", product.getPrice()));
+        }
+    }
+    
+    // Display a product's quantity at the start of a day and its stock movements since, from the ledger
+    private void displayStockHistory() {
+        System.out.println("\n--- STOCK HISTORY ---");
+        String id = getStringInput("Enter Product ID: ");
+        String date = getStringInput("Enter start date (yyyy-mm-dd): ");
+        long from;
+        try {
+            from = LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date!");
+            return;
+        }
+        
+        List<StockMovement> movements;
+        try {
+            System.out.println("Quantity on " + date + " at 00:00: " + inventory.getQuantityAt(id, from));
+            movements = inventory.getStockMovements(id, from, Long.MAX_VALUE);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (movements.isEmpty()) {
+            System.out.println("No stock movements since!");
+        } else {
+            System.out.println("Movements since:");
+            System.out.println("-".repeat(80));
+            for (StockMovement movement : movements.subList(Math.max(0, movements.size() - HISTORY_MOVEMENTS),
+                    movements.size())) {
+                System.out.println(movement);
+            }
+            if (movements.size() > HISTORY_MOVEMENTS) {
+                System.out.println("(last " + HISTORY_MOVEMENTS + " of " + movements.size() + " movements)");
+            }
+        }
+        Product product = inventory.getProduct(id);
+        System.out.println("Quantity now: " + (product == null ? 0 : product.getQuantity()));
+    }
+    
+    // Display every report from one pass over the inventory
+    private void displayAllReports(InventoryReport report) {
+        System.out.println("\n--- INVENTORY SUMMARY ---");
+        System.out.println("Total Products: " + report.getTotalProducts());
+        System.out.println("Total Items in Stock: " + report.getTotalQuantity());
+        System.out.println("Total Inventory Value: $" + Money.format(report.getTotalValueCents()));
+        
+        System.out.println("\n--- LOW STOCK REPORT ---");
+        if (report.getLowStockProducts().isEmpty()) {
+            System.out.println("No products with low stock!");
+        } else {
+            System.out.println("Products with low stock (below reorder threshold):");
+            System.out.println("-".repeat(80));
+            for (Product product : report.getLowStockProducts()) {
+                System.out.println(product.getName() + " (ID: " + product.getId() + ") - Quantity: " + product.getQuantity()
+                        + " (threshold " + inventory.getLowStockThreshold(product) + ")");
+            }
+        }
+        
+        System.out.println("\n--- CATEGORY SUMMARY ---");
+        System.out.println("-".repeat(40));
+        for (CategoryStats stats : report.getCategories()) {
+            System.out.println(stats.getCategory() + ": " + stats.getTotalQuantity() + " items"
+                    + " (" + stats.getProductCount() + " products, $" + Money.format(stats.getTotalValueCents())
+                    + ", " + stats.getLowStockCount() + " low stock)");
+        }
+        
+        System.out.println("\n--- PRICE DISTRIBUTION ---");
+        System.out.println("-".repeat(40));
+        for (InventoryReport.Bucket bucket : report.getPriceDistribution()) {
+            System.out.println(bucket);
+        }
+        
+        System.out.println("\n--- QUANTITY DISTRIBUTION ---");
+        System.out.println("-".repeat(40));
+        for (InventoryReport.Bucket bucket : report.getQuantityDistribution()) {
+            System.out.println(bucket);
+        }
+        System.out.println(String.format("\nReport computed in %.1f ms", report.getElapsedNanos() / 1e6));
+    }
+    
+    // Show operation latencies and persistence counters, with options to reset or switch them off
+    private void showMetrics() {
+        InventoryMetrics metrics = inventory.getMetrics();
+        System.out.println("\n--- METRICS ---");
+        System.out.println("Instrumentation: " + (metrics.isEnabled() ? "on" : "off"));
+        System.out.println("Mutations: " + metrics.getMutationCount());
+        System.out.println("Journal: " + metrics.getJournalRecordsWritten() + " record(s), "
+                + metrics.getJournalBytesWritten() + " bytes written");
+        System.out.println("Snapshots: " + metrics.getSnapshotsWritten() + " written, "
+                + metrics.getSnapshotBytesWritten() + " bytes in total, current size "
+                + metrics.getSnapshotSizeBytes() + " bytes");
+        
+        List<LatencySummary> latencies = metrics.latencies();
+        if (latencies.isEmpty()) {
+            System.out.println("No operations recorded yet!");
+        } else {
+            System.out.println("-".repeat(96));
+            System.out.println(LatencySummary.header());
+            System.out.println("-".repeat(96));
+            for (LatencySummary summary : latencies) {
+                System.out.println(summary);
+            }
+        }
+        
+        System.out.println("\n1. Reset Metrics");
+        System.out.println("2. Turn Instrumentation " + (metrics.isEnabled() ? "Off" : "On"));
+        System.out.println("3. Back");
+        int choice = getIntInput("Enter your choice: ");
+        
+        switch (choice) {
+            case 1:
+                metrics.reset();
+                System.out.println("Metrics reset!");
+                break;
+            case 2:
+                metrics.setEnabled(!metrics.isEnabled());
+                System.out.println("Instrumentation turned " + (metrics.isEnabled() ? "on" : "off") + "!");
+                break;
+            default:
+                break;
+        }
+    }
+    
     // Helper method to get string input
     private String getStringInput(String prompt) {
         System.out.print(prompt);
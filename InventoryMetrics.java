@@ -0,0 +1,231 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * InventoryMetrics class collects latency histograms and persistence counters for one Inventory
+ * Every public Inventory operation and the load/save path is timed into a LatencyHistogram.
+ * The instrumentation is on by default; it can be switched off at runtime (from the Metrics menu,
+ * over JMX or with -Dinventory.metrics=false at startup), which leaves one volatile read per call.
+ */
+public class InventoryMetrics implements InventoryMetricsMXBean {
+    
+    // Timed operations, named after the Inventory method (or persistence step) they cover
+    public enum Operation {
+        ADD_PRODUCT("addProduct"),
+        UPDATE_PRODUCT("updateProduct"),
+        DELETE_PRODUCT("deleteProduct"),
+        GET_PRODUCT("getProduct"),
+        GET_ALL_PRODUCTS("getAllProducts"),
+        LIST_PRODUCTS("listProducts"),
+        ITERATE_PRODUCTS("iterateProducts"),
+        SEARCH_BY_NAME("searchProductsByName"),
+        SEARCH_BY_NAME_PREFIX("searchProductsByNamePrefix"),
+        SEARCH_BY_CATEGORY("searchProductsByCategory"),
+        QUERY("query"),
+        GET_TOP_PRODUCTS("getTopProducts"),
+        GET_LOW_STOCK_PRODUCTS("getLowStockProducts"),
+        IS_LOW_STOCK("isLowStock"),
+        GET_LOW_STOCK_THRESHOLD("getLowStockThreshold"),
+        SET_LOW_STOCK_THRESHOLD("setLowStockThreshold"),
+        GET_TOTAL_INVENTORY_VALUE("getTotalInventoryValue"),
+        GET_INVENTORY_SUMMARY("getInventorySummaryByCategory"),
+        GET_CATEGORY_STATISTICS("getCategoryStatistics"),
+        GENERATE_REPORT("generateReport"),
+        TAKE_SNAPSHOT("snapshot"),
+        CHECK_CONSISTENCY("checkConsistency"),
+        GET_QUANTITY_AT("getQuantityAt"),
+        GET_STOCK_MOVEMENTS("getStockMovements"),
+        COMPACT_LEDGER("compactLedger"),
+        UPDATE_QUANTITY("updateProductQuantity"),
+        TRY_UPDATE_QUANTITY("tryUpdateProductQuantity"),
+        RESERVE_STOCK("reserveStock"),
+        CONFIRM_RESERVATION("confirmReservation"),
+        RELEASE_RESERVATION("releaseReservation"),
+        UPSERT_PRODUCTS("upsertProducts"),
+        APPLY_BATCH("applyBatch"),
+        PERSIST("persist"),
+        CHECKPOINT("checkpoint"),
+        CLEAR_INVENTORY("clearInventory"),
+        CLOSE("close"),
+        SNAPSHOT_SAVE("snapshot.save"),
+        SNAPSHOT_LOAD("snapshot.load"),
+        JOURNAL_APPEND("journal.append"),
+        JOURNAL_REPLAY("journal.replay"),
+        GROUP_COMMIT("groupCommit"),
+        LEDGER_OPEN("ledger.open");
+        
+        private final String label;
+        
+        Operation(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    private static final Operation[] OPERATIONS = Operation.values();
+    
+    private volatile boolean enabled = Boolean.parseBoolean(System.getProperty("inventory.metrics", "true"));
+    private final LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder mutations = new LongAdder();
+    private final LongAdder journalRecords = new LongAdder();
+    private final LongAdder journalBytes = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder snapshotBytes = new LongAdder();
+    private final AtomicLong snapshotSize = new AtomicLong();
+    private final List<ObjectName> registered = new ArrayList<>();
+    
+    public InventoryMetrics() {
+        for (Operation operation : OPERATIONS) {
+            histograms[operation.ordinal()] = new LatencyHistogram(operation.getLabel());
+        }
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    // Start timing an operation; pass the result to record() when it finishes (0 while disabled)
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+    
+    // Record an operation timed from start()
+    void record(Operation operation, long start) {
+        if (start != 0) {
+            histograms[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+    
+    void mutations(long count) {
+        if (enabled) {
+            mutations.add(count);
+        }
+    }
+    
+    void journalWritten(int records, long bytes) {
+        if (enabled) {
+            journalRecords.add(records);
+            journalBytes.add(bytes);
+        }
+    }
+    
+    void snapshotWritten(long bytes) {
+        snapshotSize.set(bytes);
+        if (enabled) {
+            snapshots.increment();
+            snapshotBytes.add(bytes);
+        }
+    }
+    
+    void snapshotLoaded(long bytes) {
+        snapshotSize.set(bytes);
+    }
+    
+    // Latency histogram of one operation
+    public LatencyHistogram histogram(Operation operation) {
+        return histograms[operation.ordinal()];
+    }
+    
+    // Summaries of every operation that has been recorded at least once, in Operation order
+    public List<LatencySummary> latencies() {
+        List<LatencySummary> summaries = new ArrayList<>();
+        for (LatencyHistogram histogram : histograms) {
+            LatencySummary summary = histogram.summary();
+            if (summary.getCount() > 0) {
+                summaries.add(summary);
+            }
+        }
+        return summaries;
+    }
+    
+    @Override
+    public long getMutationCount() {
+        return mutations.sum();
+    }
+    
+    @Override
+    public long getJournalRecordsWritten() {
+        return journalRecords.sum();
+    }
+    
+    @Override
+    public long getJournalBytesWritten() {
+        return journalBytes.sum();
+    }
+    
+    @Override
+    public long getSnapshotsWritten() {
+        return snapshots.sum();
+    }
+    
+    @Override
+    public long getSnapshotBytesWritten() {
+        return snapshotBytes.sum();
+    }
+    
+    @Override
+    public long getSnapshotSizeBytes() {
+        return snapshotSize.get();
+    }
+    
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        mutations.reset();
+        journalRecords.reset();
+        journalBytes.reset();
+        snapshots.reset();
+        snapshotBytes.reset();
+    }
+    
+    // Register the counters and one histogram per operation with the platform MBean server
+    // under inventory:type=Metrics,name=<name> and inventory:type=Latency,name=<name>,operation=<op>
+    public synchronized void registerMBeans(String name) throws JMException {
+        unregisterMBeans();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String quoted = ObjectName.quote(name);
+        try {
+            ObjectName metricsName = new ObjectName("inventory:type=Metrics,name=" + quoted);
+            server.registerMBean(this, metricsName);
+            registered.add(metricsName);
+            for (LatencyHistogram histogram : histograms) {
+                ObjectName histogramName = new ObjectName("inventory:type=Latency,name=" + quoted
+                        + ",operation=" + ObjectName.quote(histogram.getName()));
+                server.registerMBean(histogram, histogramName);
+                registered.add(histogramName);
+            }
+        } catch (JMException e) {
+            unregisterMBeans();
+            throw e;
+        }
+    }
+    
+    // Remove every MBean added by registerMBeans
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                // Already gone
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * InventoryMetricsMXBean interface is the JMX view of an inventory's counters
+ * Registered as inventory:type=Metrics,name=<name>; the latencies are separate
+ * LatencyHistogramMXBeans, one per operation.
+ */
+public interface InventoryMetricsMXBean {
+    
+    // Instrumentation can be switched off at runtime to measure its overhead
+    boolean isEnabled();
+    
+    void setEnabled(boolean enabled);
+    
+    // Successful adds, updates, deletes and quantity changes, counting each batch operation and imported row
+    long getMutationCount();
+    
+    long getJournalRecordsWritten();
+    
+    long getJournalBytesWritten();
+    
+    long getSnapshotsWritten();
+    
+    // Bytes written across all snapshots
+    long getSnapshotBytesWritten();
+    
+    // Size of the most recently written or loaded snapshot
+    long getSnapshotSizeBytes();
+    
+    // Discard every counter and histogram
+    void reset();
+}
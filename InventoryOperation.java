@@ -0,0 +1,76 @@
+/**
+ * InventoryOperation class describes a single mutation inside a batch
+ * Instances are created with the static factory methods and applied with Inventory.applyBatch
+ */
+public class InventoryOperation {
+    
+    // Kind of mutation
+    public enum Type {
+        ADD,
+        UPDATE,
+        DELETE,
+        ADJUST_QUANTITY
+    }
+    
+    private final Type type;
+    private final String productId;
+    private final Product product;
+    private final int quantityChange;
+    
+    private InventoryOperation(Type type, String productId, Product product, int quantityChange) {
+        this.type = type;
+        this.productId = productId;
+        this.product = product;
+        this.quantityChange = quantityChange;
+    }
+    
+    // Add a new product
+    public static InventoryOperation add(Product product) {
+        return new InventoryOperation(Type.ADD, product != null ? product.getId() : null, product, 0);
+    }
+    
+    // Replace the details of an existing product
+    public static InventoryOperation update(String id, Product updatedProduct) {
+        return new InventoryOperation(Type.UPDATE, id, updatedProduct, 0);
+    }
+    
+    // Remove a product
+    public static InventoryOperation delete(String id) {
+        return new InventoryOperation(Type.DELETE, id, null, 0);
+    }
+    
+    // Add or remove stock; a batch is rejected if this would take stock below zero
+    public static InventoryOperation adjustQuantity(String id, int quantityChange) {
+        return new InventoryOperation(Type.ADJUST_QUANTITY, id, null, quantityChange);
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public String getProductId() {
+        return productId;
+    }
+    
+    public Product getProduct() {
+        return product;
+    }
+    
+    public int getQuantityChange() {
+        return quantityChange;
+    }
+    
+    @Override
+    public String toString() {
+        switch (type) {
+            case ADD:
+                return "ADD " + productId;
+            case UPDATE:
+                return "UPDATE " + productId;
+            case DELETE:
+                return "DELETE " + productId;
+            default:
+                return "ADJUST_QUANTITY " + productId + " " + (quantityChange >= 0 ? "+" : "") + quantityChange;
+        }
+    }
+}
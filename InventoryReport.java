@@ -0,0 +1,115 @@
+import java.util.*;
+
+/**
+ * InventoryReport class is the complete set of inventory reports computed in one pass
+ * Holds the totals, the low-stock products, per-category statistics and the price and quantity
+ * distributions. The report is immutable: its low-stock products are the frozen versions it
+ * was computed from, so later changes to the inventory do not show up in it.
+ */
+public class InventoryReport {
+    
+    /**
+     * Bucket class is one range of a price or quantity distribution
+     */
+    public static class Bucket {
+        private final String label;
+        private final int productCount;
+        private final long totalValueCents;
+        
+        public Bucket(String label, int productCount, long totalValueCents) {
+            this.label = label;
+            this.productCount = productCount;
+            this.totalValueCents = totalValueCents;
+        }
+        
+        // Range of the bucket, e.g. "$10.00 - $49.99" or "10 - 49 units"
+        public String getLabel() {
+            return label;
+        }
+        
+        public int getProductCount() {
+            return productCount;
+        }
+        
+        // Stock value of the products in the bucket in cents
+        public long getTotalValueCents() {
+            return totalValueCents;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s: %d product(s), $%s", label, productCount, Money.format(totalValueCents));
+        }
+    }
+    
+    private final int totalProducts;
+    private final long totalQuantity;
+    private final long totalValueCents;
+    private final List<Product> lowStockProducts;
+    private final List<CategoryStats> categories;
+    private final List<Bucket> priceDistribution;
+    private final List<Bucket> quantityDistribution;
+    private final long elapsedNanos;
+    
+    public InventoryReport(int totalProducts, long totalQuantity, long totalValueCents, List<Product> lowStockProducts,
+                           List<CategoryStats> categories, List<Bucket> priceDistribution,
+                           List<Bucket> quantityDistribution, long elapsedNanos) {
+        this.totalProducts = totalProducts;
+        this.totalQuantity = totalQuantity;
+        this.totalValueCents = totalValueCents;
+        this.lowStockProducts = Collections.unmodifiableList(new ArrayList<>(lowStockProducts));
+        this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+        this.priceDistribution = Collections.unmodifiableList(new ArrayList<>(priceDistribution));
+        this.quantityDistribution = Collections.unmodifiableList(new ArrayList<>(quantityDistribution));
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    public int getTotalProducts() {
+        return totalProducts;
+    }
+    
+    // Units in stock across the inventory
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+    
+    public double getTotalValue() {
+        return Money.toAmount(totalValueCents);
+    }
+    
+    // Exact stock value across the inventory in cents
+    public long getTotalValueCents() {
+        return totalValueCents;
+    }
+    
+    // Products below their reorder threshold, by ID
+    public List<Product> getLowStockProducts() {
+        return lowStockProducts;
+    }
+    
+    // Statistics of every category, by category name
+    public List<CategoryStats> getCategories() {
+        return categories;
+    }
+    
+    // Products and stock value per price range, cheapest first
+    public List<Bucket> getPriceDistribution() {
+        return priceDistribution;
+    }
+    
+    // Products and stock value per quantity range, lowest first
+    public List<Bucket> getQuantityDistribution() {
+        return quantityDistribution;
+    }
+    
+    // Time it took to compute the report
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d product(s), %d items, $%s, %d low stock, %d categories", totalProducts,
+                totalQuantity, Money.format(totalValueCents), lowStockProducts.size(), categories.size());
+    }
+}
@@ -0,0 +1,470 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InventoryServer class serves the Inventory API over HTTP with JSON bodies
+ * Built on the JDK's com.sun.net.httpserver. Each request runs on its own virtual thread when
+ * the JVM has them (Java 21+); older JVMs fall back to a cached pool of platform threads.
+ *
+ * Endpoints:
+ *   GET  /products/{id}                          one product
+ *   GET  /products?order=&limit=&token=          one page of a listing (see Inventory.listProducts)
+ *   POST /products/{id}/quantity  {"change":n}   adjust stock, 409 if it would go below zero (or below
+ *                                                the units held by reservations)
+ *   POST /batch  [{"type":"adjust_quantity","id":..,"change":n}, {"type":"add","product":{..}},
+ *                 {"type":"update","id":..,"product":{..}}, {"type":"delete","id":..}]
+ *                                                all-or-nothing batch, 409 if rejected
+ *   POST /products/{id}/reservations  {"quantity":n,"ttlMillis":ms}
+ *                                                hold stock for a checkout, 409 if too little is available
+ *   GET  /reservations/{rid}                     an active reservation
+ *   POST /reservations/{rid}/confirm             take the held units out of stock, 409 if expired
+ *   DELETE /reservations/{rid}                   release the held units
+ *   GET  /search?name= | ?prefix=&limit= | ?category=
+ *   GET  /reports/summary | /reports/low-stock | /reports/categories
+ *   GET  /metrics                                counters and latencies of the inventory
+ */
+public class InventoryServer {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    
+    private final Inventory inventory;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    
+    // Bind to a port on the loopback interface only (0 picks a free port); call start() to accept requests
+    public InventoryServer(Inventory inventory, int port) throws IOException {
+        this(inventory, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+    
+    // Bind to the given address, e.g. a wildcard address to accept requests on every interface
+    public InventoryServer(Inventory inventory, InetSocketAddress address) throws IOException {
+        this.inventory = inventory;
+        this.server = HttpServer.create(address, 1024);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/products", this::handleProducts);
+        server.createContext("/reservations", this::handleReservations);
+        server.createContext("/batch", this::handleBatch);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/reports", this::handleReports);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    // Stop accepting requests, give running ones up to delaySeconds to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    // True if requests run on virtual threads, false on the platform thread pool fallback
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+    
+    // Executors.newVirtualThreadPerTaskExecutor() if this JVM has it, looked up reflectively
+    // so the code still compiles for and runs on Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private void handleProducts(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            String[] path = pathSegments(exchange, "/products");
+            if (path.length == 0) {
+                requireMethod(exchange, "GET");
+                return listProducts(query(exchange));
+            }
+            String id = path[0];
+            if (path.length == 1) {
+                requireMethod(exchange, "GET");
+                Product product = inventory.getProduct(id);
+                if (product == null) {
+                    throw new HttpError(404, "Product with ID '" + id + "' not found");
+                }
+                return Json.appendProduct(new StringBuilder(256), product);
+            }
+            if (path.length == 2 && path[1].equals("quantity")) {
+                requireMethod(exchange, "POST");
+                return adjustQuantity(id, bodyObject(exchange));
+            }
+            if (path.length == 2 && path[1].equals("reservations")) {
+                requireMethod(exchange, "POST");
+                return reserve(id, bodyObject(exchange));
+            }
+            throw new HttpError(404, "No such resource");
+        });
+    }
+    
+    private StringBuilder listProducts(Map<String, String> query) {
+        String orderName = query.getOrDefault("order", "id");
+        ProductOrder order;
+        try {
+            order = ProductOrder.valueOf(orderName.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, "Unknown order '" + orderName + "'");
+        }
+        int limit = Math.min(intParameter(query, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        ProductPage page = inventory.listProducts(order, limit, query.get("token"));
+        StringBuilder out = new StringBuilder(128 + page.getProducts().size() * 160);
+        out.append("{\"products\":");
+        Json.appendProducts(out, page.getProducts());
+        out.append(",\"nextToken\":");
+        return Json.appendString(out, page.getNextToken()).append('}');
+    }
+    
+    private StringBuilder adjustQuantity(String id, Map<?, ?> body) {
+        int change = Json.requireInt(body, "change");
+        boolean updated = inventory.tryUpdateProductQuantity(id, change);
+        // Stored products are replaced on every change, so read the current version afterwards
+        Product product = inventory.getProduct(id);
+        if (product == null) {
+            throw new HttpError(404, "Product with ID '" + id + "' not found");
+        }
+        if (!updated) {
+            throw new HttpError(409, "Insufficient stock, current quantity " + product.getQuantity()
+                    + ", available " + inventory.getAvailableQuantity(id));
+        }
+        return Json.appendProduct(new StringBuilder(256), product);
+    }
+    
+    private StringBuilder reserve(String id, Map<?, ?> body) {
+        int quantity = Json.requireInt(body, "quantity");
+        int ttlMillis = Json.requireInt(body, "ttlMillis");
+        if (quantity <= 0 || ttlMillis <= 0) {
+            throw new HttpError(400, "'quantity' and 'ttlMillis' must be positive");
+        }
+        Reservation reservation = inventory.reserveStock(id, quantity, ttlMillis);
+        if (reservation == null) {
+            if (inventory.getProduct(id) == null) {
+                throw new HttpError(404, "Product with ID '" + id + "' not found");
+            }
+            throw new HttpError(409, "Insufficient stock, available quantity " + inventory.getAvailableQuantity(id));
+        }
+        return appendReservation(new StringBuilder(192), reservation);
+    }
+    
+    private void handleReservations(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            String[] path = pathSegments(exchange, "/reservations");
+            if (path.length == 0 || path.length > 2 || (path.length == 2 && !path[1].equals("confirm"))) {
+                throw new HttpError(404, "No such resource");
+            }
+            Reservation reservation = inventory.getReservation(path[0]);
+            if (reservation == null) {
+                throw new HttpError(404, "No active reservation '" + path[0] + "'");
+            }
+            if (path.length == 2) {
+                requireMethod(exchange, "POST");
+                if (!inventory.confirmReservation(reservation.getId())) {
+                    throw new HttpError(409, "Reservation '" + reservation.getId() + "' is "
+                            + reservation.getStatus().toString().toLowerCase());
+                }
+            } else if (exchange.getRequestMethod().equalsIgnoreCase("DELETE")) {
+                inventory.releaseReservation(reservation.getId());
+            } else {
+                requireMethod(exchange, "GET");
+            }
+            return appendReservation(new StringBuilder(192), reservation);
+        });
+    }
+    
+    private StringBuilder appendReservation(StringBuilder out, Reservation reservation) {
+        out.append("{\"id\":");
+        Json.appendString(out, reservation.getId()).append(",\"productId\":");
+        Json.appendString(out, reservation.getProductId())
+                .append(",\"quantity\":").append(reservation.getQuantity())
+                .append(",\"expiresAtMillis\":").append(reservation.getExpiresAtMillis())
+                .append(",\"status\":\"").append(reservation.getStatus().toString().toLowerCase()).append('"')
+                .append(",\"availableQuantity\":").append(inventory.getAvailableQuantity(reservation.getProductId()));
+        return out.append('}');
+    }
+    
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            requireMethod(exchange, "POST");
+            Object body = Json.parse(readBody(exchange));
+            if (!(body instanceof List)) {
+                throw new HttpError(400, "Batch must be an array of operations");
+            }
+            List<InventoryOperation> operations = new ArrayList<>();
+            for (Object item : (List<?>) body) {
+                operations.add(toOperation(item));
+            }
+            BatchResult result = inventory.applyBatch(operations);
+            StringBuilder out = new StringBuilder(64 + operations.size() * 96);
+            out.append("{\"applied\":").append(result.isApplied()).append(",\"results\":[");
+            for (int i = 0; i < result.getResults().size(); i++) {
+                OperationResult operation = result.getResults().get(i);
+                out.append(i == 0 ? "{" : ",{").append("\"operation\":");
+                Json.appendString(out, operation.getOperation().toString());
+                out.append(",\"status\":\"").append(operation.getStatus()).append('"');
+                if (operation.getMessage() != null) {
+                    out.append(",\"message\":");
+                    Json.appendString(out, operation.getMessage());
+                }
+                if (operation.getQuantity() >= 0) {
+                    out.append(",\"quantity\":").append(operation.getQuantity());
+                }
+                out.append('}');
+            }
+            out.append("]}");
+            if (!result.isApplied()) {
+                throw new HttpError(409, out);
+            }
+            return out;
+        });
+    }
+    
+    private static InventoryOperation toOperation(Object item) {
+        if (!(item instanceof Map)) {
+            throw new HttpError(400, "Each operation must be an object");
+        }
+        Map<?, ?> object = (Map<?, ?>) item;
+        String type = Json.requireString(object, "type").toLowerCase();
+        switch (type) {
+            case "add":
+                return InventoryOperation.add(Json.toProduct(object.get("product")));
+            case "update": {
+                String id = Json.requireString(object, "id");
+                Map<String, Object> product = new LinkedHashMap<>();
+                if (object.get("product") instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) object.get("product")).entrySet()) {
+                        product.put(String.valueOf(entry.getKey()), entry.getValue());
+                    }
+                }
+                product.put("id", id);
+                if (!product.containsKey("quantity")) {
+                    throw new HttpError(400, "'quantity' is required, an update replaces every field");
+                }
+                return InventoryOperation.update(id, Json.toProduct(product));
+            }
+            case "delete":
+                return InventoryOperation.delete(Json.requireString(object, "id"));
+            case "adjust_quantity":
+                return InventoryOperation.adjustQuantity(Json.requireString(object, "id"),
+                        Json.requireInt(object, "change"));
+            default:
+                throw new HttpError(400, "Unknown operation type '" + type + "'");
+        }
+    }
+    
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            requireMethod(exchange, "GET");
+            Map<String, String> query = query(exchange);
+            List<Product> results;
+            if (query.containsKey("name")) {
+                results = inventory.searchProductsByName(query.get("name"));
+            } else if (query.containsKey("prefix")) {
+                results = inventory.searchProductsByNamePrefix(query.get("prefix"),
+                        Math.min(intParameter(query, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+            } else if (query.containsKey("category")) {
+                results = inventory.searchProductsByCategory(query.get("category"));
+            } else {
+                throw new HttpError(400, "Expected a name, prefix or category parameter");
+            }
+            StringBuilder out = new StringBuilder(32 + results.size() * 160);
+            out.append("{\"count\":").append(results.size()).append(",\"products\":");
+            return Json.appendProducts(out, results).append('}');
+        });
+    }
+    
+    private void handleReports(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            requireMethod(exchange, "GET");
+            String[] path = pathSegments(exchange, "/reports");
+            String report = path.length == 1 ? path[0] : "";
+            StringBuilder out = Json.appendReport(new StringBuilder(1024), inventory, report);
+            if (out == null) {
+                throw new HttpError(404, "Unknown report, expected summary, low-stock or categories");
+            }
+            return out;
+        });
+    }
+    
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            requireMethod(exchange, "GET");
+            InventoryMetrics metrics = inventory.getMetrics();
+            StringBuilder out = new StringBuilder(4096);
+            out.append("{\"enabled\":").append(metrics.isEnabled())
+                    .append(",\"mutations\":").append(metrics.getMutationCount())
+                    .append(",\"journalRecordsWritten\":").append(metrics.getJournalRecordsWritten())
+                    .append(",\"journalBytesWritten\":").append(metrics.getJournalBytesWritten())
+                    .append(",\"snapshotsWritten\":").append(metrics.getSnapshotsWritten())
+                    .append(",\"snapshotBytesWritten\":").append(metrics.getSnapshotBytesWritten())
+                    .append(",\"snapshotSizeBytes\":").append(metrics.getSnapshotSizeBytes())
+                    .append(",\"latencies\":[");
+            List<LatencySummary> latencies = metrics.latencies();
+            for (int i = 0; i < latencies.size(); i++) {
+                LatencySummary summary = latencies.get(i);
+                out.append(i == 0 ? "{" : ",{").append("\"operation\":");
+                Json.appendString(out, summary.getName());
+                out.append(",\"count\":").append(summary.getCount())
+                        .append(",\"meanNanos\":").append(Math.round(summary.getMeanNanos()))
+                        .append(",\"p50Nanos\":").append(summary.getP50Nanos())
+                        .append(",\"p99Nanos\":").append(summary.getP99Nanos())
+                        .append(",\"p999Nanos\":").append(summary.getP999Nanos())
+                        .append(",\"maxNanos\":").append(summary.getMaxNanos()).append('}');
+            }
+            return out.append("]}");
+        });
+    }
+    
+    // Run a handler and send its JSON result; errors become a status code and {"error": message}
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        int status = 200;
+        CharSequence body;
+        try {
+            body = handler.handle();
+        } catch (HttpError e) {
+            status = e.status;
+            body = e.body;
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = errorBody(e.getMessage());
+        } catch (IOException e) {
+            status = 400;
+            body = errorBody("Could not read the request: " + e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = errorBody("Internal error: " + e);
+        }
+        try {
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private static StringBuilder errorBody(String message) {
+        return Json.appendString(new StringBuilder("{\"error\":"), message).append('}');
+    }
+    
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+            throw new HttpError(405, "Method " + exchange.getRequestMethod() + " not allowed, use " + method);
+        }
+    }
+    
+    // Decoded path segments after a context prefix, e.g. /products/A1/quantity -> [A1, quantity]
+    private static String[] pathSegments(HttpExchange exchange, String prefix) {
+        String path = exchange.getRequestURI().getRawPath().substring(prefix.length());
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment.replace("+", "%2B"), StandardCharsets.UTF_8));
+            }
+        }
+        return segments.toArray(new String[0]);
+    }
+    
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            parameters.putIfAbsent(key, value);
+        }
+        return parameters;
+    }
+    
+    private static int intParameter(Map<String, String> query, String key, int defaultValue) {
+        String value = query.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed <= 0) {
+                throw new HttpError(400, "'" + key + "' must be positive");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "'" + key + "' must be a number");
+        }
+    }
+    
+    private static Map<?, ?> bodyObject(HttpExchange exchange) throws IOException {
+        Object body = Json.parse(readBody(exchange));
+        if (!(body instanceof Map)) {
+            throw new HttpError(400, "Request body must be a JSON object");
+        }
+        return (Map<?, ?>) body;
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new HttpError(413, "Request body too large");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+    
+    // Request handler returning the JSON response body
+    private interface Handler {
+        CharSequence handle() throws IOException;
+    }
+    
+    // Ends a request with a status code other than 200
+    private static class HttpError extends RuntimeException {
+        private final int status;
+        private final CharSequence body;
+        
+        HttpError(int status, String message) {
+            this(status, errorBody(message));
+        }
+        
+        HttpError(int status, CharSequence body) {
+            super(null, null, false, false);
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * InventorySnapshot class is a point-in-time view of an inventory's products
+ * Taken with Inventory.snapshot(), it holds every product exactly as it was at one version of
+ * the inventory: changes made afterwards never show up in it, and no change is ever half
+ * visible. Taking a snapshot does not depend on the size of the inventory (it holds every lock
+ * stripe just long enough to read one reference per stripe), and reading one never blocks
+ * writers, so long reports can run on it while the inventory keeps changing.
+ *
+ * Low-stock checks use the inventory's thresholds at the time of the check, not the time of
+ * the snapshot.
+ */
+public class InventorySnapshot {
+    private final PersistentProductMap[] stripes; // the inventory's per-stripe maps, never changed
+    private final long version;
+    private final int size;
+    private final Predicate<Product> lowStock;
+    
+    InventorySnapshot(PersistentProductMap[] stripes, long version, Predicate<Product> lowStock) {
+        this.stripes = stripes;
+        this.version = version;
+        this.lowStock = lowStock;
+        int total = 0;
+        for (PersistentProductMap stripe : stripes) {
+            total += stripe.size();
+        }
+        this.size = total;
+    }
+    
+    // Number of changes the inventory had applied when the snapshot was taken
+    // Two snapshots with the same version hold the same products.
+    public long getVersion() {
+        return version;
+    }
+    
+    // The product with this ID as it was at the snapshot, null if there was none
+    public Product getProduct(String id) {
+        return id == null ? null : stripes[Inventory.stripeFor(id)].get(id);
+    }
+    
+    public int getTotalProducts() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public List<Product> getAllProducts() {
+        List<Product> products = new ArrayList<>(size);
+        forEach(products::add);
+        return products;
+    }
+    
+    // Walk every product without copying them, in no particular order
+    public void forEach(Consumer<? super Product> action) {
+        for (PersistentProductMap stripe : stripes) {
+            stripe.forEach(action);
+        }
+    }
+    
+    public double getTotalInventoryValue() {
+        return Money.toAmount(getTotalInventoryValueCents());
+    }
+    
+    // Exact stock value in cents, summed over the products of the snapshot
+    public long getTotalInventoryValueCents() {
+        long[] total = new long[1];
+        forEach(product -> total[0] += product.getTotalValueCents());
+        return total[0];
+    }
+    
+    // Units in stock per category
+    public Map<String, Integer> getInventorySummaryByCategory() {
+        Map<String, Integer> summary = new HashMap<>();
+        forEach(product -> summary.merge(product.getCategory() == null ? "" : product.getCategory(),
+                product.getQuantity(), Integer::sum));
+        return summary;
+    }
+    
+    // Products of the snapshot below their reorder threshold
+    public List<Product> getLowStockProducts() {
+        List<Product> products = new ArrayList<>();
+        forEach(product -> {
+            if (lowStock.test(product)) {
+                products.add(product);
+            }
+        });
+        return products;
+    }
+    
+    // Every report computed in one pass over the snapshot, in parallel on large catalogs
+    public InventoryReport generateReport() {
+        return ReportEngine.run(products(), lowStock);
+    }
+    
+    // The products as a read-only collection whose spliterator splits by lock stripe
+    Collection<Product> products() {
+        return new AbstractCollection<Product>() {
+            @Override
+            public Iterator<Product> iterator() {
+                return Spliterators.iterator(spliterator());
+            }
+            
+            @Override
+            public void forEach(Consumer<? super Product> action) {
+                InventorySnapshot.this.forEach(action);
+            }
+            
+            @Override
+            public Spliterator<Product> spliterator() {
+                return new StripeSpliterator(0, stripes.length);
+            }
+            
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+    
+    // Products of a range of stripes; splitting halves the range
+    private final class StripeSpliterator implements Spliterator<Product> {
+        private int stripe;
+        private final int end;
+        private Iterator<Product> current; // products of the stripe being walked by tryAdvance
+        
+        StripeSpliterator(int stripe, int end) {
+            this.stripe = stripe;
+            this.end = end;
+        }
+        
+        @Override
+        public boolean tryAdvance(Consumer<? super Product> action) {
+            while (current == null || !current.hasNext()) {
+                if (stripe == end) {
+                    return false;
+                }
+                current = stripes[stripe++].iterator();
+            }
+            action.accept(current.next());
+            return true;
+        }
+        
+        @Override
+        public void forEachRemaining(Consumer<? super Product> action) {
+            if (current != null) {
+                current.forEachRemaining(action);
+            }
+            while (stripe < end) {
+                stripes[stripe++].forEach(action);
+            }
+        }
+        
+        @Override
+        public Spliterator<Product> trySplit() {
+            if (current != null || end - stripe < 2) {
+                return null;
+            }
+            int middle = (stripe + end) >>> 1;
+            Spliterator<Product> prefix = new StripeSpliterator(stripe, middle);
+            stripe = middle;
+            return prefix;
+        }
+        
+        @Override
+        public long estimateSize() {
+            long remaining = 0;
+            for (int i = stripe; i < end; i++) {
+                remaining += stripes[i].size();
+            }
+            return remaining;
+        }
+        
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.*;
+
+/**
+ * Json class is a minimal JSON reader and writer for the HTTP API and command scripts
+ * Parsing produces Map (objects, in document order), List, String, Long or Double, Boolean and
+ * null; malformed input throws IllegalArgumentException. Writing appends straight to a
+ * StringBuilder, using the same product layout as JSON Lines export.
+ */
+public final class Json {
+    private final String text;
+    private int position;
+    
+    private Json(String text) {
+        this.text = text;
+    }
+    
+    // Parse a complete JSON document
+    public static Object parse(String text) {
+        Json parser = new Json(text);
+        parser.skipSpaces();
+        Object value = parser.readValue();
+        parser.skipSpaces();
+        if (parser.position != text.length()) {
+            throw parser.error("Unexpected trailing characters");
+        }
+        return value;
+    }
+    
+    // Append a string literal, or null
+    public static StringBuilder appendString(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+    
+    // Append a product as an object with the JSON Lines export keys
+    public static StringBuilder appendProduct(StringBuilder out, Product product) {
+        out.append("{\"id\":");
+        appendString(out, product.getId());
+        out.append(",\"name\":");
+        appendString(out, product.getName());
+        out.append(",\"price\":").append(product.getPrice());
+        out.append(",\"quantity\":").append(product.getQuantity());
+        out.append(",\"category\":");
+        appendString(out, product.getCategory());
+        out.append(",\"description\":");
+        appendString(out, product.getDescription());
+        return out.append('}');
+    }
+    
+    // Append an array of products
+    public static StringBuilder appendProducts(StringBuilder out, Collection<Product> products) {
+        out.append('[');
+        boolean first = true;
+        for (Product product : products) {
+            if (!first) {
+                out.append(',');
+            }
+            appendProduct(out, product);
+            first = false;
+        }
+        return out.append(']');
+    }
+    
+    // Append the summary, low-stock or categories report; returns null for any other report name
+    public static StringBuilder appendReport(StringBuilder out, Inventory inventory, String report) {
+        switch (report) {
+            case "summary":
+                long valueCents = inventory.getTotalInventoryValueCents();
+                return out.append("{\"totalProducts\":").append(inventory.getTotalProducts())
+                        .append(",\"totalValue\":").append(Money.format(valueCents))
+                        .append(",\"totalValueCents\":").append(valueCents).append('}');
+            case "low-stock":
+                out.append("{\"products\":[");
+                boolean first = true;
+                for (Product product : inventory.getLowStockProducts()) {
+                    out.append(first ? "" : ",").append("{\"product\":");
+                    appendProduct(out, product);
+                    out.append(",\"threshold\":").append(inventory.getLowStockThreshold(product)).append('}');
+                    first = false;
+                }
+                return out.append("]}");
+            case "categories":
+                out.append("{\"categories\":[");
+                List<CategoryStats> categories = inventory.getCategoryStatistics();
+                for (int i = 0; i < categories.size(); i++) {
+                    CategoryStats stats = categories.get(i);
+                    out.append(i == 0 ? "{" : ",{").append("\"category\":");
+                    appendString(out, stats.getCategory());
+                    out.append(",\"productCount\":").append(stats.getProductCount())
+                            .append(",\"totalQuantity\":").append(stats.getTotalQuantity())
+                            .append(",\"totalValue\":").append(Money.format(stats.getTotalValueCents()))
+                            .append(",\"lowStockCount\":").append(stats.getLowStockCount()).append('}');
+                }
+                return out.append("]}");
+            default:
+                return null;
+        }
+    }
+    
+    // Product from a parsed object; id, name and price are required
+    public static Product toProduct(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Product must be an object");
+        }
+        Map<?, ?> object = (Map<?, ?>) value;
+        String id = requireString(object, "id");
+        String name = requireString(object, "name");
+        double price = requireNumber(object, "price").doubleValue();
+        if (price < 0 || Double.isNaN(price) || Double.isInfinite(price)) {
+            throw new IllegalArgumentException("Price must be a non-negative number");
+        }
+        Object quantity = object.get("quantity");
+        if (quantity != null && !(quantity instanceof Long)) {
+            throw new IllegalArgumentException("Quantity must be a whole number");
+        }
+        return new Product(id, name, price, quantity == null ? 0 : toInt((Long) quantity, "quantity"),
+                optionalString(object, "category"), optionalString(object, "description"));
+    }
+    
+    // A required string member of an object
+    public static String requireString(Map<?, ?> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof String) || ((String) value).trim().isEmpty()) {
+            throw new IllegalArgumentException("'" + key + "' must be a non-empty string");
+        }
+        return (String) value;
+    }
+    
+    // A required numeric member of an object
+    public static Number requireNumber(Map<?, ?> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("'" + key + "' must be a number");
+        }
+        return (Number) value;
+    }
+    
+    // A required whole-number member of an object that fits in an int
+    public static int requireInt(Map<?, ?> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof Long)) {
+            throw new IllegalArgumentException("'" + key + "' must be a whole number");
+        }
+        return toInt((Long) value, key);
+    }
+    
+    private static String optionalString(Map<?, ?> object, String key) {
+        Object value = object.get(key);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("'" + key + "' must be a string");
+        }
+        return value == null ? "" : (String) value;
+    }
+    
+    private static int toInt(long value, String key) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("'" + key + "' is out of range");
+        }
+        return (int) value;
+    }
+    
+    private Object readValue() {
+        if (position >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+    
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipSpaces();
+        if (consume('}')) {
+            return object;
+        }
+        while (true) {
+            skipSpaces();
+            if (position >= text.length() || text.charAt(position) != '"') {
+                throw error("Expected a quoted key");
+            }
+            String key = readString();
+            skipSpaces();
+            if (!consume(':')) {
+                throw error("Expected ':'");
+            }
+            skipSpaces();
+            object.put(key, readValue());
+            skipSpaces();
+            if (consume('}')) {
+                return object;
+            }
+            if (!consume(',')) {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+    
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipSpaces();
+        if (consume(']')) {
+            return array;
+        }
+        while (true) {
+            skipSpaces();
+            array.add(readValue());
+            skipSpaces();
+            if (consume(']')) {
+                return array;
+            }
+            if (!consume(',')) {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+    
+    private String readString() {
+        StringBuilder value = new StringBuilder();
+        position++;
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                break;
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        throw error("Unterminated string");
+    }
+    
+    private Object readNumber() {
+        int start = position;
+        boolean integral = true;
+        if (text.charAt(position) == '-') {
+            position++;
+        }
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+            } else if (c < '0' || c > '9') {
+                break;
+            }
+            position++;
+        }
+        String number = text.substring(start, position);
+        try {
+            return integral ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + number + "'");
+        }
+    }
+    
+    private Object readLiteral(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("Unexpected character '" + text.charAt(position) + "'");
+        }
+        position += literal.length();
+        return value;
+    }
+    
+    private boolean consume(char expected) {
+        if (position < text.length() && text.charAt(position) == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+    
+    private void skipSpaces() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+    
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
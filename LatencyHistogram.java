@@ -0,0 +1,137 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class records operation latencies in log-linear buckets (the HdrHistogram layout)
+ * Values below 64 ns get a bucket each; above that every power of two is split into 32 buckets,
+ * so any recorded value is reported to within about 3%. All buckets are allocated up front:
+ * recording is a bucket index computation and an atomic increment, with no allocation or lock,
+ * and is safe from any number of threads.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+    
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    // Record one operation that took the given number of nanoseconds
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.getAndIncrement(bucketOf(nanos));
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+    
+    // Point-in-time count, mean and percentiles; recording may continue while it is taken
+    public LatencySummary summary() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long max = maxNanos.get();
+        double mean = count == 0 ? 0 : totalNanos.sum() / (double) count;
+        return new LatencySummary(name, count, mean, percentile(snapshot, count, max, 50),
+                percentile(snapshot, count, max, 90), percentile(snapshot, count, max, 99),
+                percentile(snapshot, count, max, 99.9), max);
+    }
+    
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+    
+    @Override
+    public long getCount() {
+        return summary().getCount();
+    }
+    
+    @Override
+    public double getMeanMicros() {
+        return summary().getMeanNanos() / 1000.0;
+    }
+    
+    @Override
+    public double getP50Micros() {
+        return summary().getP50Nanos() / 1000.0;
+    }
+    
+    @Override
+    public double getP90Micros() {
+        return summary().getP90Nanos() / 1000.0;
+    }
+    
+    @Override
+    public double getP99Micros() {
+        return summary().getP99Nanos() / 1000.0;
+    }
+    
+    @Override
+    public double getP999Micros() {
+        return summary().getP999Nanos() / 1000.0;
+    }
+    
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+    
+    // Smallest recorded value such that the given percentage of values are at or below it,
+    // reported as the top of its bucket (never above the largest value recorded)
+    private static long percentile(long[] snapshot, long count, long max, double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+    
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+    
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
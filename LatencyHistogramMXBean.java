@@ -0,0 +1,26 @@
+/**
+ * LatencyHistogramMXBean interface is the JMX view of one operation's latency histogram
+ * Registered as inventory:type=Latency,operation=<name>; times are in microseconds.
+ */
+public interface LatencyHistogramMXBean {
+    
+    // Operation the histogram times
+    String getName();
+    
+    long getCount();
+    
+    double getMeanMicros();
+    
+    double getP50Micros();
+    
+    double getP90Micros();
+    
+    double getP99Micros();
+    
+    double getP999Micros();
+    
+    double getMaxMicros();
+    
+    // Discard everything recorded so far
+    void reset();
+}
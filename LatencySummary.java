@@ -0,0 +1,85 @@
+/**
+ * LatencySummary class is a point-in-time summary of one latency histogram
+ * Percentiles are accurate to about 3%; all times are in nanoseconds.
+ */
+public class LatencySummary {
+    private final String name;
+    private final long count;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+    
+    public LatencySummary(String name, long count, double meanNanos, long p50Nanos, long p90Nanos,
+                          long p99Nanos, long p999Nanos, long maxNanos) {
+        this.name = name;
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    // Number of operations recorded
+    public long getCount() {
+        return count;
+    }
+    
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+    
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+    
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+    
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+    
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+    
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%-30s %10d %10s %10s %10s %10s %10s", name, count, format(Math.round(meanNanos)),
+                format(p50Nanos), format(p99Nanos), format(p999Nanos), format(maxNanos));
+    }
+    
+    // Header matching the columns of toString()
+    public static String header() {
+        return String.format("%-30s %10s %10s %10s %10s %10s %10s", "Operation", "Count", "Mean", "p50", "p99",
+                "p99.9", "Max");
+    }
+    
+    // Duration with a unit that keeps it short: ns, us, ms or s
+    static String format(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1f us", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.1f ms", nanos / 1e6);
+        }
+        return String.format("%.2f s", nanos / 1e9);
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * LowStockListener interface receives low-stock crossings from Inventory
+ * Called when a product's quantity (or its threshold) crosses the reorder threshold in either
+ * direction, including when a product is added already below it. Deleted products leave
+ * the low-stock set without a call.
+ *
+ * Calls are made after the change, once the thread making them holds no lock stripe of the
+ * Inventory, so a listener may read the inventory (reports, snapshots, low-stock lists) or change
+ * it; crossings caused by its own changes arrive after it returns. They come one at a time, in
+ * the order the changes were made (so in order for each product), from whichever writer thread
+ * finished a change first: implementations should be quick and thread-safe, as a slow listener
+ * holds up that writer and every later notification.
+ */
+public interface LowStockListener {
+    
+    // lowStock is true when the product fell below its threshold, false when it recovered
+    void lowStockChanged(Product product, boolean lowStock, int quantity, int threshold);
+}
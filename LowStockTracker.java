@@ -0,0 +1,182 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LowStockTracker class keeps the set of products below their reorder threshold up to date
+ * Thresholds can be set per product, per category or as a default (in that order of precedence).
+ * Listeners are notified when a product enters or leaves the set, so reorder logic does not
+ * have to poll.
+ *
+ * Like CategoryIndex, each entry remembers whether its product was last seen as low, so events
+ * for a product always alternate. Entries are only touched under the product's lock stripe,
+ * which also keeps a product's events in order: a crossing is queued there, and handed to the
+ * listeners by deliver(), which Inventory calls once the changing thread holds no stripe lock.
+ */
+class LowStockTracker implements InventoryIndex {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>(); // product ID -> entry
+    private final Map<String, Product> lowStock = new ConcurrentHashMap<>();
+    private final Map<String, Integer> productThresholds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> categoryThresholds = new ConcurrentHashMap<>();
+    private final List<LowStockListener> listeners = new CopyOnWriteArrayList<>();
+    private final Queue<Crossing> crossings = new ConcurrentLinkedQueue<>(); // queued in stripe order, not delivered yet
+    private final ReentrantLock delivering = new ReentrantLock(); // one thread delivers at a time, in queue order
+    private volatile int defaultThreshold = Product.DEFAULT_LOW_STOCK_THRESHOLD;
+    
+    private static final class Entry {
+        boolean low;
+    }
+    
+    private static final class Crossing {
+        final Product product;
+        final boolean low;
+        final int quantity;
+        final int threshold;
+        
+        Crossing(Product product, boolean low, int quantity, int threshold) {
+            this.product = product;
+            this.low = low;
+            this.quantity = quantity;
+            this.threshold = threshold;
+        }
+    }
+    
+    @Override
+    public void productAdded(Product product) {
+        Entry entry = new Entry();
+        entries.put(product.getId(), entry);
+        reconcile(entry, product);
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        if (entries.remove(product.getId()) != null) {
+            lowStock.remove(product.getId());
+        }
+    }
+    
+    @Override
+    public void productUpdated(Product before, Product after) {
+        Entry entry = entries.get(after.getId());
+        if (entry != null) {
+            reconcile(entry, after);
+        }
+    }
+    
+    @Override
+    public void cleared() {
+        entries.clear();
+        lowStock.clear();
+    }
+    
+    // Products currently below their threshold
+    public Collection<Product> lowStockProducts() {
+        return lowStock.values();
+    }
+    
+    // True if the product is below its threshold
+    public boolean isLowStock(Product product) {
+        return product.getQuantity() < thresholdFor(product);
+    }
+    
+    // Threshold that applies to a product
+    // The maps are checked for emptiness first, which spares full scans a lookup per product
+    public int thresholdFor(Product product) {
+        Integer threshold = productThresholds.isEmpty() ? null : productThresholds.get(product.getId());
+        if (threshold == null && !categoryThresholds.isEmpty()) {
+            threshold = categoryThresholds.get(product.getCategory() == null ? "" : product.getCategory());
+        }
+        return threshold != null ? threshold : defaultThreshold;
+    }
+    
+    public int getDefaultThreshold() {
+        return defaultThreshold;
+    }
+    
+    // The callers re-evaluate the affected products after changing a threshold
+    public void setDefaultThreshold(int threshold) {
+        defaultThreshold = threshold;
+    }
+    
+    public void setProductThreshold(String id, Integer threshold) {
+        if (threshold == null) {
+            productThresholds.remove(id);
+        } else {
+            productThresholds.put(id, threshold);
+        }
+    }
+    
+    // Products without a category share the "" category, as in CategoryIndex
+    public void setCategoryThreshold(String category, Integer threshold) {
+        if (category == null) {
+            category = "";
+        }
+        if (threshold == null) {
+            categoryThresholds.remove(category);
+        } else {
+            categoryThresholds.put(category, threshold);
+        }
+    }
+    
+    public void addListener(LowStockListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(LowStockListener listener) {
+        listeners.remove(listener);
+    }
+    
+    // True if crossings are waiting for deliver()
+    public boolean hasPending() {
+        return !crossings.isEmpty();
+    }
+    
+    // Call the listeners for every queued crossing, oldest first; must not be called under a
+    // stripe lock. If another thread is delivering, it picks up what this one would have, and a
+    // listener that changes stock has its own crossings delivered after it returns.
+    public void deliver() {
+        do {
+            if (delivering.isHeldByCurrentThread() || !delivering.tryLock()) {
+                return;
+            }
+            try {
+                Crossing crossing;
+                while ((crossing = crossings.poll()) != null) {
+                    for (LowStockListener listener : listeners) {
+                        try {
+                            listener.lowStockChanged(crossing.product, crossing.low, crossing.quantity,
+                                    crossing.threshold);
+                        } catch (RuntimeException e) {
+                            System.err.println("Low stock listener failed: " + e.getMessage());
+                        }
+                    }
+                }
+            } finally {
+                delivering.unlock();
+            }
+        } while (!crossings.isEmpty()); // queued after the last poll, by a thread that found us delivering
+    }
+    
+    // Bring an entry in line with the product's quantity and threshold
+    private void reconcile(Entry entry, Product product) {
+        int threshold = thresholdFor(product);
+        int quantity = product.getQuantity();
+        boolean low = quantity < threshold;
+        // The set always holds the current version of a low-stock product
+        if (low) {
+            lowStock.put(product.getId(), product);
+        } else if (entry.low) {
+            lowStock.remove(product.getId());
+        }
+        if (low == entry.low) {
+            return;
+        }
+        
+        entry.low = low;
+        if (!listeners.isEmpty()) {
+            crossings.add(new Crossing(product, low, quantity, threshold));
+        }
+    }
+}
@@ -1,17 +1,201 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import javax.management.JMException;
+
 /**
  * Main class to run the Inventory Management System
  * This is the entry point of the application
+ *
+ * Commands (without one the interactive menu starts):
+ *   import <file>   upsert products from a CSV or JSON Lines file
+ *   export <file>   write every product to a CSV or JSON Lines file
+ *   server          serve the inventory over HTTP (see InventoryServer for the endpoints)
+ *   script [<file>] replay one-line commands from a file, or from standard input without one or
+ *                   with -, printing one JSON line per command (see CommandScript for the syntax)
+ *
+ * Options:
+ *   --journal[=always|interval|never]  append mutations to inventory.dat.log instead of
+ *                                      rewriting inventory.dat on every change
+ *   --group-commit[=<ms>]              persist mutations on a background writer, one durable
+ *                                      write per group of changes arriving within the window
+ *                                      (default 0: whatever queued up during the previous write)
+ *   --format=csv|jsonl                 file format for import/export (default: from the file name)
+ *   --rejects=<file>                   where import reports rejected rows (default: <file>.rejects)
+ *   --checkpoint-every=<rows>          also save the data file every so many imported rows
+ *   --port=<port>                      HTTP port of the server (default: 8080)
+ *   --bind=<address>                   interface the server listens on (default: loopback only;
+ *                                      0.0.0.0 for every interface)
+ *   --batch=<commands>                 persist script mutations once per so many commands
+ *                                      (default 1: after every command)
+ *
+ * Metrics are published over JMX; start with -Dinventory.metrics=false to turn them off.
  */
 public class Main {
     public static void main(String[] args) {
         try {
-            InventoryManager manager = new InventoryManager();
+            if (args.length > 0 && (args[0].equals("import") || args[0].equals("export"))) {
+                runCommand(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("script")) {
+                runScript(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("server")) {
+                runServer(args);
+                return;
+            }
+            InventoryManager manager = new InventoryManager(createInventory(args));
             manager.run();
         } catch (Exception e) {
             System.err.println("An unexpected error occurred: " + e.getMessage());
             e.printStackTrace();
         }
     }
+    
+    // Run a non-interactive import or export
+    private static void runCommand(String[] args) throws Exception {
+        if (args.length < 2 || args[1].startsWith("--")) {
+            System.err.println("Usage: java Main " + args[0] + " <file> [options]");
+            System.exit(2);
+        }
+        File file = new File(args[1]);
+        ProductImporter.Format format = ProductImporter.Format.forFile(file.getName());
+        File rejectFile = new File(file.getPath() + ".rejects");
+        long checkpointInterval = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--format=")) {
+                format = ProductImporter.Format.valueOf(arg.substring("--format=".length()).toUpperCase());
+            } else if (arg.startsWith("--rejects=")) {
+                rejectFile = new File(arg.substring("--rejects=".length()));
+            } else if (arg.startsWith("--checkpoint-every=")) {
+                checkpointInterval = Long.parseLong(arg.substring("--checkpoint-every=".length()));
+            }
+        }
+        
+        Inventory inventory = createInventory(args);
+        inventory.setVerbose(false);
+        try {
+            if (args[0].equals("import")) {
+                ImportResult result = ProductImporter.importFile(inventory, file, format, rejectFile, checkpointInterval);
+                System.out.println("Imported " + result);
+                for (String reject : result.getSampleRejects()) {
+                    System.out.println("  rejected " + reject);
+                }
+                if (result.getRejected() > 0) {
+                    System.out.println("Rejected rows written to " + rejectFile.getPath());
+                } else {
+                    rejectFile.delete();
+                }
+            } else {
+                long start = System.nanoTime();
+                long count = ProductImporter.exportFile(inventory, file, format);
+                System.out.println(String.format("Exported %d product(s) to %s in %.1f s", count, file.getPath(),
+                        (System.nanoTime() - start) / 1e9));
+            }
+        } finally {
+            inventory.close();
+        }
+    }
+    
+    // Replay a command script; results go to standard output, the summary to standard error
+    private static void runScript(String[] args) throws Exception {
+        File file = args.length > 1 && !args[1].startsWith("--") && !args[1].equals("-") ? new File(args[1]) : null;
+        int batchSize = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--batch=")) {
+                batchSize = Integer.parseInt(arg.substring("--batch=".length()));
+            }
+        }
+        if (batchSize < 1) {
+            System.err.println("Usage: java Main script [<file>|-] [--batch=<commands>] [options]");
+            System.exit(2);
+        }
+        
+        // Quiet from the start: standard output carries nothing but the results
+        Inventory inventory = createInventory(args, false);
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        try {
+            ScriptResult result = file != null ? CommandScript.runFile(inventory, file, out, batchSize)
+                    : CommandScript.run(inventory, new InputStreamReader(System.in, StandardCharsets.UTF_8), out, batchSize);
+            System.err.println("Replayed " + result);
+        } finally {
+            inventory.close();
+        }
+    }
+    
+    // Serve the inventory over HTTP until the process is stopped
+    private static void runServer(String[] args) throws Exception {
+        int port = 8080;
+        String bind = null;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--bind=")) {
+                bind = arg.substring("--bind=".length());
+            }
+        }
+        InetSocketAddress address = bind == null ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(bind, port);
+        if (address.isUnresolved()) {
+            System.err.println("Unknown address: " + bind);
+            System.exit(2);
+        }
+        // The JDK server leaves Nagle's algorithm on, which holds small responses back until the
+        // client's delayed ACK (about 40 ms per keep-alive request); the property is read once,
+        // when the first server is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        
+        Inventory inventory = createInventory(args);
+        inventory.setVerbose(false);
+        InventoryServer server = new InventoryServer(inventory, address);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            inventory.close();
+        }));
+        server.start();
+        System.out.println("Serving " + inventory.getTotalProducts() + " product(s) on http://"
+                + address.getHostString() + ":" + server.getPort() + " using " + (server.usesVirtualThreads() ? "virtual threads" : "a thread pool"));
+    }
+    
+    // Build the inventory according to the command line options
+    private static Inventory createInventory(String[] args) {
+        return createInventory(args, true);
+    }
+    
+    private static Inventory createInventory(String[] args, boolean verbose) {
+        String dataFile = "inventory.dat";
+        InventoryJournal journal = null;
+        long groupCommitWindow = -1;
+        for (String arg : args) {
+            if (arg.equals("--journal") || arg.startsWith("--journal=")) {
+                InventoryJournal.SyncPolicy policy = InventoryJournal.SyncPolicy.INTERVAL;
+                if (arg.startsWith("--journal=")) {
+                    policy = InventoryJournal.SyncPolicy.valueOf(arg.substring("--journal=".length()).toUpperCase());
+                }
+                journal = new InventoryJournal(dataFile + ".log", policy, 1000, 10_000);
+            } else if (arg.equals("--group-commit")) {
+                groupCommitWindow = 0;
+            } else if (arg.startsWith("--group-commit=")) {
+                groupCommitWindow = Long.parseLong(arg.substring("--group-commit=".length()));
+            }
+        }
+        return withMBeans(new Inventory(dataFile, journal, groupCommitWindow, verbose), dataFile);
+    }
+    
+    // Publish the inventory's metrics over JMX (jconsole, VisualVM) under the data file name
+    private static Inventory withMBeans(Inventory inventory, String name) {
+        try {
+            inventory.getMetrics().registerMBeans(name);
+        } catch (JMException e) {
+            System.err.println("Metrics are not available over JMX: " + e.getMessage());
+        }
+        return inventory;
+    }
 }
 
 
@@ -0,0 +1,32 @@
+/**
+ * Money class converts between double prices and the fixed-point cents used for valuation
+ * Totals are summed as long cents so they never drift the way repeated double additions do
+ */
+public final class Money {
+    
+    private Money() {
+    }
+    
+    // Price in whole cents, rounded half up
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+    
+    // Cents as a double amount, e.g. for APIs that return double
+    public static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+    
+    // Stock value of a product in cents (price rounded to cents, times quantity)
+    public static long valueOf(double price, int quantity) {
+        return Math.multiplyExact(toCents(price), (long) quantity);
+    }
+    
+    // Format cents as a plain amount with two decimals, e.g. 123456 -> "1234.56"
+    public static String format(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return sign + (abs / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * OperationResult class reports the outcome of one operation in a batch
+ */
+public class OperationResult {
+    
+    // Outcome of the operation
+    public enum Status {
+        APPLIED,  // the operation took effect
+        FAILED,   // the operation was invalid and caused the batch to be rejected
+        SKIPPED   // the operation was valid but not applied because the batch was rejected
+    }
+    
+    private final InventoryOperation operation;
+    private final Status status;
+    private final String message;
+    private final int quantity;
+    
+    public OperationResult(InventoryOperation operation, Status status, String message, int quantity) {
+        this.operation = operation;
+        this.status = status;
+        this.message = message;
+        this.quantity = quantity;
+    }
+    
+    public InventoryOperation getOperation() {
+        return operation;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public boolean isApplied() {
+        return status == Status.APPLIED;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    // Quantity of the product after the operation, or -1 if it no longer exists or was not applied
+    public int getQuantity() {
+        return quantity;
+    }
+    
+    @Override
+    public String toString() {
+        return operation + ": " + status + (message != null ? " (" + message + ")" : "");
+    }
+}
@@ -0,0 +1,504 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PartitionedInventory class shards the products by ID hash over several Inventory partitions
+ * Every partition has its own map, indexes and data file (inventory.dat.0, inventory.dat.1, ...;
+ * a single partition keeps using inventory.dat itself). Partitions are loaded and checkpointed
+ * in parallel on a fork-join pool, a mutation rewrites only the data file of its own partition,
+ * and searches and reports run on every partition and merge the results.
+ *
+ * Products are moved to the right partition on startup when the partition count has changed,
+ * including when an unpartitioned inventory.dat is opened with several partitions.
+ */
+public class PartitionedInventory {
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+    
+    private final Inventory[] partitions;
+    private final String dataFile;
+    private final ForkJoinPool pool;
+    private volatile boolean verbose = true;
+    
+    // Constructor with a data file name the partition files are derived from (null keeps every
+    // partition in memory only) and the number of partitions
+    public PartitionedInventory(String dataFile, int partitionCount) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Partition count must be positive");
+        }
+        this.dataFile = dataFile;
+        this.partitions = new Inventory[partitionCount];
+        this.pool = new ForkJoinPool(Math.min(partitionCount, Runtime.getRuntime().availableProcessors()));
+        forEachPartition(i -> partitions[i] = new Inventory(partitionFile(i), null, -1, false));
+        rebalance();
+        for (Inventory partition : partitions) {
+            partition.setVerbose(true);
+        }
+    }
+    
+    // Turn the console messages printed by each operation on or off
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+        for (Inventory partition : partitions) {
+            partition.setVerbose(verbose);
+        }
+    }
+    
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+    
+    // Partition a product ID belongs to
+    // The ID hash is remixed and its high bits pick the partition: each partition's lock stripes
+    // come from the low bits of the plain hash, so those must stay evenly spread within a partition
+    public int partitionOf(String id) {
+        int mixed = id.hashCode() * GOLDEN_RATIO;
+        return (int) (((mixed & 0xFFFFFFFFL) * partitions.length) >>> 32);
+    }
+    
+    // Number of products in each partition
+    public int[] getPartitionSizes() {
+        int[] sizes = new int[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            sizes[i] = partitions[i].getTotalProducts();
+        }
+        return sizes;
+    }
+    
+    // Latency histograms and persistence counters of one partition
+    public InventoryMetrics getPartitionMetrics(int partition) {
+        return partitions[partition].getMetrics();
+    }
+    
+    // Add a new product to its partition
+    public boolean addProduct(Product product) {
+        return partitionFor(product == null ? null : product.getId()).addProduct(product);
+    }
+    
+    // Update an existing product
+    public boolean updateProduct(String id, Product updatedProduct) {
+        return partitionFor(id).updateProduct(id, updatedProduct);
+    }
+    
+    // Delete a product from inventory
+    public boolean deleteProduct(String id) {
+        return partitionFor(id).deleteProduct(id);
+    }
+    
+    // Get a product by ID
+    public Product getProduct(String id) {
+        return partitionFor(id).getProduct(id);
+    }
+    
+    // Update product quantity, refusing changes that would make it negative
+    public boolean updateProductQuantity(String id, int quantityChange) {
+        return partitionFor(id).updateProductQuantity(id, quantityChange);
+    }
+    
+    // Adjust quantity without console messages, returns false if the product is missing
+    // or the change would make the quantity negative
+    public boolean tryUpdateProductQuantity(String id, int quantityChange) {
+        return partitionFor(id).tryUpdateProductQuantity(id, quantityChange);
+    }
+    
+    // Add or replace products in bulk without persisting them, returns how many were new
+    // Call checkpoint() afterwards to write every partition in parallel
+    public int upsertProducts(Collection<Product> batch) {
+        List<List<Product>> byPartition = split(batch);
+        int[] added = new int[partitions.length];
+        forEachPartition(i -> added[i] = byPartition.get(i).isEmpty() ? 0
+                : partitions[i].upsertProducts(byPartition.get(i)));
+        int total = 0;
+        for (int count : added) {
+            total += count;
+        }
+        return total;
+    }
+    
+    // Get all products
+    public List<Product> getAllProducts() {
+        return concat(fanOut(Inventory::getAllProducts));
+    }
+    
+    // Get one page of products in a stable order, starting after the position of a resume token
+    // Every partition reads a page from the same position and the pages are merged, so tokens
+    // are interchangeable with those of a single Inventory
+    public ProductPage listProducts(ProductOrder order, int pageSize, String resumeToken) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        List<ProductPage> pages = fanOut(partition -> partition.listProducts(order, pageSize, resumeToken));
+        List<Product> merged = new ArrayList<>();
+        boolean more = false;
+        for (ProductPage page : pages) {
+            merged.addAll(page.getProducts());
+            more |= page.hasMore();
+        }
+        merged.sort(ProductOrderIndex.productComparator(order));
+        if (merged.size() > pageSize) {
+            merged = new ArrayList<>(merged.subList(0, pageSize));
+            more = true;
+        }
+        String nextToken = more ? ProductOrderIndex.tokenFor(order, merged.get(merged.size() - 1)) : null;
+        return new ProductPage(merged, nextToken);
+    }
+    
+    // Products matching a query; every partition applies the order and limit and the results are merged
+    public List<Product> query(ProductQuery query) {
+        List<Product> matches = concat(fanOut(partition -> partition.query(query)));
+        if (query.getOrder() != null) {
+            Comparator<Product> comparator = ProductOrderIndex.productComparator(query.getOrder());
+            matches.sort(query.isDescending() ? comparator.reversed() : comparator);
+        }
+        return matches.size() > query.getLimit() ? new ArrayList<>(matches.subList(0, query.getLimit())) : matches;
+    }
+    
+    // Up to limit products ranked by an ordering; every partition returns its own top products and
+    // the best of those are kept
+    public List<Product> getTopProducts(ProductOrder order, boolean highest, int limit) {
+        return mergeTop(fanOut(partition -> partition.getTopProducts(order, highest, limit)), order, highest, limit);
+    }
+    
+    // Up to limit products of exactly this category, ranked like getTopProducts()
+    public List<Product> getTopProductsInCategory(String category, ProductOrder order, boolean highest, int limit) {
+        return mergeTop(fanOut(partition -> partition.getTopProductsInCategory(category, order, highest, limit)),
+                order, highest, limit);
+    }
+    
+    // Up to limit ranked products of every category, by category name
+    public Map<String, List<Product>> getTopProductsByCategory(ProductOrder order, boolean highest, int limit) {
+        Map<String, List<List<Product>>> byCategory = new TreeMap<>();
+        List<Map<String, List<Product>>> parts =
+                fanOut(partition -> partition.getTopProductsByCategory(order, highest, limit));
+        for (Map<String, List<Product>> part : parts) {
+            for (Map.Entry<String, List<Product>> entry : part.entrySet()) {
+                byCategory.computeIfAbsent(entry.getKey(), key -> new ArrayList<>()).add(entry.getValue());
+            }
+        }
+        Map<String, List<Product>> result = new TreeMap<>();
+        for (Map.Entry<String, List<List<Product>>> entry : byCategory.entrySet()) {
+            result.put(entry.getKey(), mergeTop(entry.getValue(), order, highest, limit));
+        }
+        return result;
+    }
+    
+    // Search products by name (case-insensitive)
+    public List<Product> searchProductsByName(String name) {
+        return concat(fanOut(partition -> partition.searchProductsByName(name)));
+    }
+    
+    // Find up to limit products whose name starts with the prefix (case-insensitive), in name order
+    public List<Product> searchProductsByNamePrefix(String prefix, int limit) {
+        List<Product> matches = concat(fanOut(partition -> partition.searchProductsByNamePrefix(prefix, limit)));
+        matches.sort(Comparator.comparing((Product product) -> lowerCase(product.getName()))
+                .thenComparing(Product::getId));
+        return limit > 0 && matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+    
+    // Search products by category (case-insensitive, matches part of the category name)
+    public List<Product> searchProductsByCategory(String category) {
+        return concat(fanOut(partition -> partition.searchProductsByCategory(category)));
+    }
+    
+    // Get products that are below their reorder threshold
+    public List<Product> getLowStockProducts() {
+        return concat(fanOut(Inventory::getLowStockProducts));
+    }
+    
+    // Set the reorder threshold for products without a category or product threshold
+    public void setDefaultLowStockThreshold(int threshold) {
+        for (Inventory partition : partitions) {
+            partition.setDefaultLowStockThreshold(threshold);
+        }
+    }
+    
+    // Set or clear (null) the reorder threshold of a category
+    public void setCategoryLowStockThreshold(String category, Integer threshold) {
+        for (Inventory partition : partitions) {
+            partition.setCategoryLowStockThreshold(category, threshold);
+        }
+    }
+    
+    // Set or clear (null) the reorder threshold of a single product
+    public void setProductLowStockThreshold(String id, Integer threshold) {
+        partitionFor(id).setProductLowStockThreshold(id, threshold);
+    }
+    
+    // Register a listener for threshold crossings in any partition
+    public void addLowStockListener(LowStockListener listener) {
+        for (Inventory partition : partitions) {
+            partition.addLowStockListener(listener);
+        }
+    }
+    
+    // Get total inventory value
+    public double getTotalInventoryValue() {
+        return Money.toAmount(getTotalInventoryValueCents());
+    }
+    
+    // Get exact total inventory value in cents, the sum of the partitions' running totals
+    public long getTotalInventoryValueCents() {
+        long total = 0;
+        for (Inventory partition : partitions) {
+            total += partition.getTotalInventoryValueCents();
+        }
+        return total;
+    }
+    
+    // Get inventory summary by category
+    public Map<String, Integer> getInventorySummaryByCategory() {
+        Map<String, Integer> summary = new HashMap<>();
+        for (Map<String, Integer> partial : fanOut(Inventory::getInventorySummaryByCategory)) {
+            partial.forEach((category, quantity) -> summary.merge(category, quantity, Integer::sum));
+        }
+        return summary;
+    }
+    
+    // Get product count, quantity, value and low-stock count of every category
+    public List<CategoryStats> getCategoryStatistics() {
+        Map<String, CategoryStats> merged = new LinkedHashMap<>();
+        for (List<CategoryStats> partial : fanOut(Inventory::getCategoryStatistics)) {
+            for (CategoryStats stats : partial) {
+                merged.merge(stats.getCategory(), stats, (a, b) -> new CategoryStats(a.getCategory(),
+                        a.getProductCount() + b.getProductCount(), a.getTotalQuantity() + b.getTotalQuantity(),
+                        a.getTotalValueCents() + b.getTotalValueCents(), a.getLowStockCount() + b.getLowStockCount()));
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+    
+    // Quantity of a product on hand at a point in time, from the partitions' stock ledgers
+    // A product moved by a change of partition count left its earlier history in its old partition,
+    // and the move itself as a movement out of one and into the other, so the partitions are summed
+    public int getQuantityAt(String id, long timestampMillis) {
+        int quantity = 0;
+        for (Inventory partition : partitions) {
+            quantity += partition.getQuantityAt(id, timestampMillis);
+        }
+        return quantity;
+    }
+    
+    // Quantity on hand at a point in time of every product that had stock then, by ID
+    public Map<String, Integer> getQuantitiesAt(long timestampMillis) {
+        Map<String, Integer> quantities = new HashMap<>();
+        for (Map<String, Integer> partial : fanOut(partition -> partition.getQuantitiesAt(timestampMillis))) {
+            partial.forEach((id, quantity) -> quantities.merge(id, quantity, Integer::sum));
+        }
+        quantities.values().removeIf(quantity -> quantity == 0);
+        return quantities;
+    }
+    
+    // Movements of a product's stock in a time window from every partition's ledger, oldest first
+    public List<StockMovement> getStockMovements(String id, long fromMillis, long toMillis) {
+        List<StockMovement> movements = new ArrayList<>();
+        for (Inventory partition : partitions) {
+            movements.addAll(partition.getStockMovements(id, fromMillis, toMillis));
+        }
+        movements.sort(Comparator.comparingLong(StockMovement::getTimestampMillis)); // stable, keeps each ledger's order
+        return movements;
+    }
+    
+    // Compact every partition's stock ledger, in parallel
+    public void compactLedger() {
+        forEachPartition(i -> partitions[i].compactLedger());
+    }
+    
+    // Compute every report in one pass over each partition, in parallel, and merge them
+    // Each partition is read from its own snapshot, so the figures of one partition are consistent
+    public InventoryReport generateReport() {
+        long start = System.nanoTime();
+        return ReportEngine.merge(fanOut(Inventory::generateReport), start);
+    }
+    
+    // Get total number of products
+    public int getTotalProducts() {
+        int total = 0;
+        for (Inventory partition : partitions) {
+            total += partition.getTotalProducts();
+        }
+        return total;
+    }
+    
+    // Check if inventory is empty
+    public boolean isEmpty() {
+        return getTotalProducts() == 0;
+    }
+    
+    // Write a fresh snapshot of every partition, in parallel
+    public void checkpoint() {
+        forEachPartition(i -> partitions[i].checkpoint());
+    }
+    
+    // Release every partition and stop the loader pool
+    public void close() {
+        try {
+            forEachPartition(i -> partitions[i].close());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private Inventory partitionFor(String id) {
+        // Invalid IDs are still handed to a partition, which rejects them like a single Inventory
+        return partitions[id == null ? 0 : partitionOf(id)];
+    }
+    
+    private String partitionFile(int partition) {
+        if (dataFile == null) {
+            return null;
+        }
+        return partitions.length == 1 ? dataFile : dataFile + "." + partition;
+    }
+    
+    // Products grouped by the partition they belong to
+    private List<List<Product>> split(Collection<Product> products) {
+        List<List<Product>> byPartition = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            byPartition.add(new ArrayList<>());
+        }
+        for (Product product : products) {
+            if (product != null && product.getId() != null) {
+                byPartition.get(partitionOf(product.getId())).add(product);
+            }
+        }
+        return byPartition;
+    }
+    
+    // Run an action for every partition index on the pool and wait for all of them
+    private void forEachPartition(IntConsumer action) {
+        if (partitions.length == 1) {
+            action.accept(0);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            int partition = i;
+            tasks.add(ForkJoinTask.adapt(() -> action.accept(partition)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+    
+    // Run a query on every partition in parallel, results in partition order
+    private <T> List<T> fanOut(Function<Inventory, T> query) {
+        List<T> results = new ArrayList<>(Collections.nCopies(partitions.length, null));
+        forEachPartition(i -> results.set(i, query.apply(partitions[i])));
+        return results;
+    }
+    
+    // The first limit products of several rankings in the same ordering
+    private static List<Product> mergeTop(List<List<Product>> rankings, ProductOrder order, boolean highest, int limit) {
+        List<Product> merged = concat(rankings);
+        Comparator<Product> comparator = ProductOrderIndex.productComparator(order);
+        merged.sort(highest ? comparator.reversed() : comparator);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+    
+    private static List<Product> concat(List<List<Product>> lists) {
+        int size = 0;
+        for (List<Product> list : lists) {
+            size += list.size();
+        }
+        List<Product> result = new ArrayList<>(size);
+        for (List<Product> list : lists) {
+            result.addAll(list);
+        }
+        return result;
+    }
+    
+    private static String lowerCase(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+    
+    // Move products that are not in the partition their ID hashes to: products of data files
+    // left over from a different partition count, and products of partition files that are still
+    // used but were written with a different count. Their new partitions are written first, then
+    // they are removed from the old ones, so a crash in between only leaves duplicates behind
+    private void rebalance() {
+        if (dataFile == null) {
+            return;
+        }
+        List<List<Product>> misplaced = fanOut(partition -> {
+            List<Product> found = new ArrayList<>();
+            for (Product product : partition.getAllProducts()) {
+                if (partitions[partitionOf(product.getId())] != partition) {
+                    found.add(product);
+                }
+            }
+            return found;
+        });
+        
+        List<Product> moving = concat(misplaced);
+        List<File> strayFiles = new ArrayList<>();
+        for (File file : strayFiles()) {
+            try {
+                moving.addAll((ProductSnapshot.isLegacy(file) ? ProductSnapshot.readLegacy(file)
+                        : ProductSnapshot.read(file)).values());
+                strayFiles.add(file);
+            } catch (IOException e) {
+                System.err.println("Error loading partition file " + file.getPath() + ": " + e.getMessage());
+            }
+        }
+        if (moving.isEmpty() && strayFiles.isEmpty()) {
+            return;
+        }
+        
+        List<List<Product>> byPartition = split(moving);
+        forEachPartition(i -> {
+            if (!byPartition.get(i).isEmpty()) {
+                partitions[i].upsertProducts(byPartition.get(i));
+                partitions[i].checkpoint();
+            }
+        });
+        forEachPartition(i -> {
+            if (misplaced.get(i).isEmpty()) {
+                return;
+            }
+            List<InventoryOperation> deletes = new ArrayList<>(misplaced.get(i).size());
+            for (Product product : misplaced.get(i)) {
+                deletes.add(InventoryOperation.delete(product.getId()));
+            }
+            partitions[i].applyBatch(deletes);
+        });
+        for (File file : strayFiles) {
+            if (!file.delete()) {
+                System.err.println("Could not delete partition file " + file.getPath());
+            }
+            DescriptionStore.deleteGenerations(file.getPath(), 0);
+        }
+        if (verbose) {
+            System.out.println("Moved " + moving.size() + " product(s) into " + partitions.length + " partition(s)");
+        }
+    }
+    
+    // Data files next to the partition files that belong to a different partition count
+    private List<File> strayFiles() {
+        File base = new File(dataFile);
+        File directory = base.getAbsoluteFile().getParentFile();
+        String[] names = directory == null ? null : directory.list();
+        List<File> stray = new ArrayList<>();
+        if (names == null) {
+            return stray;
+        }
+        Pattern numbered = Pattern.compile(Pattern.quote(base.getName()) + "\\.(\\d{1,9})");
+        for (String name : names) {
+            Matcher matcher = numbered.matcher(name);
+            boolean unused;
+            if (name.equals(base.getName())) {
+                unused = partitions.length > 1;
+            } else if (matcher.matches()) {
+                unused = partitions.length == 1 || Integer.parseInt(matcher.group(1)) >= partitions.length;
+            } else {
+                unused = false;
+            }
+            if (unused) {
+                stray.add(new File(directory, name));
+            }
+        }
+        return stray;
+    }
+}
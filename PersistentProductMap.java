@@ -0,0 +1,366 @@
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * PersistentProductMap class is an immutable map of products keyed by ID
+ * It is a hash array mapped trie: put and remove return a new map that shares every node they
+ * did not touch with the old one (a path of at most seven small arrays is copied), so holding
+ * on to a map is a point-in-time view that never changes and costs nothing to take. Old
+ * versions are reclaimed by the garbage collector once nobody references them.
+ *
+ * Inventory stores its products in one map per lock stripe: a change replaces the stripe's map
+ * under the stripe lock, and a snapshot is just the current map of every stripe. The maps only
+ * hold frozen products.
+ */
+final class PersistentProductMap {
+    static final PersistentProductMap EMPTY = new PersistentProductMap(new BitmapNode(0, new Object[0]), 0);
+    
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    
+    private final Node root;
+    private final int size;
+    
+    private PersistentProductMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    // Map of products with distinct IDs built in one go, without copying paths (used when loading)
+    static PersistentProductMap of(Collection<Product> products) {
+        if (products.isEmpty()) {
+            return EMPTY;
+        }
+        Product[] items = products.toArray(new Product[0]);
+        int[] hashes = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            hashes[i] = hash(items[i].getId());
+        }
+        Node root = build(items, hashes, 0, items.length, 0, new Product[items.length], new int[items.length]);
+        return new PersistentProductMap(root, items.length);
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    Product get(String id) {
+        return root.get(id, hash(id), 0);
+    }
+    
+    // Map with the product added, or replacing the product with the same ID
+    PersistentProductMap put(Product product) {
+        String id = product.getId();
+        int hash = hash(id);
+        boolean added = root.get(id, hash, 0) == null;
+        return new PersistentProductMap(root.put(product, hash, 0), added ? size + 1 : size);
+    }
+    
+    // Map without the product with this ID (the same map if there is none)
+    PersistentProductMap remove(String id) {
+        int hash = hash(id);
+        if (root.get(id, hash, 0) == null) {
+            return this;
+        }
+        return new PersistentProductMap(root.remove(id, hash, 0), size - 1);
+    }
+    
+    void forEach(Consumer<? super Product> action) {
+        root.forEach(action);
+    }
+    
+    Iterator<Product> iterator() {
+        return new Cursor(root);
+    }
+    
+    // ID hashes are remixed so the trie does not depend on the bits that picked the lock stripe
+    private static int hash(String id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+    
+    private abstract static class Node {
+        abstract Product get(String id, int hash, int shift);
+        
+        abstract Node put(Product product, int hash, int shift);
+        
+        // Never called for an ID that is not in the node
+        abstract Node remove(String id, int hash, int shift);
+        
+        // The only product of a node that holds nothing else, so the parent can store it directly
+        abstract Product single();
+        
+        abstract void forEach(Consumer<? super Product> action);
+        
+        // Products and child nodes of the node, for iteration
+        abstract Object[] slots();
+    }
+    
+    // Up to 32 slots, each a product or a child node, for 5 bits of the hash
+    private static final class BitmapNode extends Node {
+        final int bitmap;
+        final Object[] slots;
+        
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+        
+        @Override
+        Product get(String id, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                return ((Node) slot).get(id, hash, shift + BITS);
+            }
+            Product product = (Product) slot;
+            return product.getId().equals(id) ? product : null;
+        }
+        
+        @Override
+        Node put(Product product, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                copy[index] = product;
+                System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node) {
+                replacement = ((Node) slot).put(product, hash, shift + BITS);
+            } else if (((Product) slot).getId().equals(product.getId())) {
+                replacement = product;
+            } else {
+                Product existing = (Product) slot;
+                replacement = pair(existing, hash(existing.getId()), product, hash, shift + BITS);
+            }
+            Object[] copy = slots.clone();
+            copy[index] = replacement;
+            return new BitmapNode(bitmap, copy);
+        }
+        
+        @Override
+        Node remove(String id, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[index];
+            if (slot instanceof Node) {
+                Node child = ((Node) slot).remove(id, hash, shift + BITS);
+                Product single = child.single();
+                Object[] copy = slots.clone();
+                copy[index] = single != null ? single : child;
+                return new BitmapNode(bitmap, copy);
+            }
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+        
+        @Override
+        Product single() {
+            return slots.length == 1 && slots[0] instanceof Product ? (Product) slots[0] : null;
+        }
+        
+        @Override
+        void forEach(Consumer<? super Product> action) {
+            for (Object slot : slots) {
+                if (slot instanceof Node) {
+                    ((Node) slot).forEach(action);
+                } else {
+                    action.accept((Product) slot);
+                }
+            }
+        }
+        
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+    }
+    
+    // Products whose IDs have the same 32-bit hash
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Product[] products;
+        
+        CollisionNode(int hash, Product[] products) {
+            this.hash = hash;
+            this.products = products;
+        }
+        
+        @Override
+        Product get(String id, int hash, int shift) {
+            for (Product product : products) {
+                if (product.getId().equals(id)) {
+                    return product;
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        Node put(Product product, int hash, int shift) {
+            for (int i = 0; i < products.length; i++) {
+                if (products[i].getId().equals(product.getId())) {
+                    Product[] copy = products.clone();
+                    copy[i] = product;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            Product[] copy = new Product[products.length + 1];
+            System.arraycopy(products, 0, copy, 0, products.length);
+            copy[products.length] = product;
+            return new CollisionNode(hash, copy);
+        }
+        
+        @Override
+        Node remove(String id, int hash, int shift) {
+            Product[] copy = new Product[products.length - 1];
+            for (int i = 0, j = 0; i < products.length; i++) {
+                if (!products[i].getId().equals(id)) {
+                    copy[j++] = products[i];
+                }
+            }
+            return new CollisionNode(hash, copy);
+        }
+        
+        @Override
+        Product single() {
+            return products.length == 1 ? products[0] : null;
+        }
+        
+        @Override
+        void forEach(Consumer<? super Product> action) {
+            for (Product product : products) {
+                action.accept(product);
+            }
+        }
+        
+        @Override
+        Object[] slots() {
+            return products;
+        }
+    }
+    
+    // Depth-first walk keeping one slot position per level (seven bitmap levels and a collision node)
+    private static final class Cursor implements Iterator<Product> {
+        private final Object[][] levels = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth;
+        private Product next;
+        
+        Cursor(Node root) {
+            levels[0] = root.slots();
+            advance();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        @Override
+        public Product next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Product product = next;
+            advance();
+            return product;
+        }
+        
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] slots = levels[depth];
+                if (positions[depth] == slots.length) {
+                    levels[depth--] = null;
+                    continue;
+                }
+                Object slot = slots[positions[depth]++];
+                if (slot instanceof Node) {
+                    levels[++depth] = ((Node) slot).slots();
+                    positions[depth] = 0;
+                } else {
+                    next = (Product) slot;
+                    return;
+                }
+            }
+        }
+    }
+    
+    // Node for items[from, to), which share the hash bits below shift: the items are grouped
+    // by their next 5 bits (a counting sort through the scratch arrays) and each group becomes a
+    // slot, holding the product itself when it is alone
+    private static Node build(Product[] items, int[] hashes, int from, int to, int shift,
+                              Product[] scratchItems, int[] scratchHashes) {
+        if (shift >= Integer.SIZE) {
+            Product[] products = new Product[to - from];
+            System.arraycopy(items, from, products, 0, products.length);
+            return new CollisionNode(hashes[from], products);
+        }
+        int[] starts = new int[MASK + 2];
+        for (int i = from; i < to; i++) {
+            starts[((hashes[i] >>> shift) & MASK) + 1]++;
+        }
+        int bitmap = 0;
+        int groups = 0;
+        for (int chunk = 0; chunk <= MASK; chunk++) {
+            if (starts[chunk + 1] > 0) {
+                bitmap |= 1 << chunk;
+                groups++;
+            }
+            starts[chunk + 1] += starts[chunk];
+        }
+        int[] next = starts.clone();
+        for (int i = from; i < to; i++) {
+            int position = from + next[(hashes[i] >>> shift) & MASK]++;
+            scratchItems[position] = items[i];
+            scratchHashes[position] = hashes[i];
+        }
+        System.arraycopy(scratchItems, from, items, from, to - from);
+        System.arraycopy(scratchHashes, from, hashes, from, to - from);
+        
+        Object[] slots = new Object[groups];
+        int slot = 0;
+        for (int chunk = 0; chunk <= MASK; chunk++) {
+            int start = from + starts[chunk];
+            int end = from + starts[chunk + 1];
+            if (end - start == 1) {
+                slots[slot++] = items[start];
+            } else if (end > start) {
+                slots[slot++] = build(items, hashes, start, end, shift + BITS, scratchItems, scratchHashes);
+            }
+        }
+        return new BitmapNode(bitmap, slots);
+    }
+    
+    // Node holding two products with different IDs, splitting on the next 5 bits where they differ
+    private static Node pair(Product a, int hashA, Product b, int hashB, int shift) {
+        if (shift >= Integer.SIZE) {
+            return new CollisionNode(hashA, new Product[] {a, b});
+        }
+        int indexA = (hashA >>> shift) & MASK;
+        int indexB = (hashB >>> shift) & MASK;
+        if (indexA == indexB) {
+            return new BitmapNode(1 << indexA, new Object[] {pair(a, hashA, b, hashB, shift + BITS)});
+        }
+        Object[] slots = indexA < indexB ? new Object[] {a, b} : new Object[] {b, a};
+        return new BitmapNode((1 << indexA) | (1 << indexB), slots);
+    }
+}
@@ -1,18 +1,33 @@
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.Objects;
 
 /**
  * Product class represents an item in the inventory
  * Implements Serializable for file I/O operations
+ * Fields are volatile, so a product can be handed between threads without extra locking
+ *
+ * Products stored in an Inventory are frozen: Inventory keeps its own copy of every product it
+ * is given and replaces that copy on each change, so a product it returns never changes and
+ * its setters throw IllegalStateException. Use copy() to get a product that can be edited.
+ *
+ * An inventory with a data file keeps long descriptions on disk (see DescriptionStore); such a
+ * product holds where its description is instead of the text, and getDescription() reads it.
  */
 public class Product implements Serializable {
     private static final long serialVersionUID = 1L;
     
-    private String id;
-    private String name;
-    private double price;
-    private int quantity;
-    private String category;
-    private String description;
+    // Quantity below which a product counts as low in stock unless Inventory configures otherwise
+    public static final int DEFAULT_LOW_STOCK_THRESHOLD = 10;
+    
+    private volatile String id;
+    private volatile String name;
+    private volatile double price;
+    private volatile int quantity;
+    private volatile String category;
+    private volatile String description;
+    private transient volatile DescriptionStore.Ref coldDescription; // when set, description is null
+    private transient volatile boolean frozen;
     
     // Default constructor
     public Product() {
@@ -40,6 +55,7 @@ public class Product implements Serializable {
     }
     
     public void setId(String id) {
+        checkNotFrozen();
         this.id = id;
     }
     
@@ -48,6 +64,7 @@ public class Product implements Serializable {
     }
     
     public void setName(String name) {
+        checkNotFrozen();
         this.name = name;
     }
     
@@ -56,6 +73,7 @@ public class Product implements Serializable {
     }
     
     public void setPrice(double price) {
+        checkNotFrozen();
         this.price = price;
     }
     
@@ -64,6 +82,7 @@ public class Product implements Serializable {
     }
     
     public void setQuantity(int quantity) {
+        checkNotFrozen();
         this.quantity = quantity;
     }
     
@@ -72,15 +91,52 @@ public class Product implements Serializable {
     }
     
     public void setCategory(String category) {
+        checkNotFrozen();
         this.category = category;
     }
     
     public String getDescription() {
-        return description;
+        DescriptionStore.Ref cold = coldDescription;
+        return cold != null ? cold.text() : description;
     }
     
     public void setDescription(String description) {
+        checkNotFrozen();
         this.description = description;
+        this.coldDescription = null;
+    }
+    
+    // Where the description is kept on disk, null when it is held in memory
+    DescriptionStore.Ref getColdDescription() {
+        return coldDescription;
+    }
+    
+    // Keep the description on disk instead of in memory
+    void setColdDescription(DescriptionStore.Ref cold) {
+        checkNotFrozen();
+        this.coldDescription = cold;
+        this.description = null;
+    }
+    
+    // Take over another product's description, wherever it is kept
+    void copyDescriptionFrom(Product other) {
+        checkNotFrozen();
+        DescriptionStore.Ref cold = other.coldDescription;
+        this.description = cold != null ? null : other.description;
+        this.coldDescription = cold;
+    }
+    
+    // True if both products have the same description, reading from disk only when one is cold and the other not
+    boolean hasSameDescription(Product other) {
+        DescriptionStore.Ref cold = coldDescription;
+        DescriptionStore.Ref otherCold = other.coldDescription;
+        if (cold != null && cold == otherCold) {
+            return true;
+        }
+        if (cold == null && otherCold == null) {
+            return Objects.equals(description, other.description);
+        }
+        return Objects.equals(getDescription(), other.getDescription());
     }
     
     // Calculate total value of this product
@@ -88,23 +144,79 @@ public class Product implements Serializable {
         return price * quantity;
     }
     
+    // Total value of this product in whole cents, as used for inventory valuation
+    public long getTotalValueCents() {
+        return Money.valueOf(price, quantity);
+    }
+    
     // Check if product is low in stock (less than 10 items)
     public boolean isLowStock() {
-        return quantity < 10;
+        return isLowStock(DEFAULT_LOW_STOCK_THRESHOLD);
+    }
+    
+    // Check if product is below the given reorder threshold
+    public boolean isLowStock(int threshold) {
+        return quantity < threshold;
     }
     
-    // Update quantity (for adding/removing stock)
+    // Update quantity (for adding/removing stock), never going below zero
+    // For editable copies only; stock of a stored product is changed through the Inventory
     public void updateQuantity(int change) {
-        this.quantity += change;
-        if (this.quantity < 0) {
-            this.quantity = 0;
+        checkNotFrozen();
+        long next = Math.max(0L, (long) quantity + change);
+        if (next > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Quantity would exceed " + Integer.MAX_VALUE);
         }
+        quantity = (int) next;
+    }
+    
+    // True for products stored in an inventory, which can no longer be changed
+    public boolean isFrozen() {
+        return frozen;
+    }
+    
+    // Editable copy of this product
+    public Product copy() {
+        Product copy = new Product(id, name, price, quantity, category, description);
+        copy.coldDescription = coldDescription;
+        return copy;
+    }
+    
+    // Make the product read-only, done by Inventory before it shares a product with other threads
+    Product freeze() {
+        frozen = true;
+        return this;
+    }
+    
+    // Serialize the description itself, the reference to the file means nothing elsewhere
+    private Object writeReplace() throws ObjectStreamException {
+        if (coldDescription == null) {
+            return this;
+        }
+        return new Product(id, name, price, quantity, category, getDescription());
+    }
+    
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Product '" + id + "' belongs to an inventory and cannot be changed,"
+                    + " edit a copy() and pass it to updateProduct instead");
+        }
+    }
+    
+    // Append the same fields as toString() without going through String.format, for long listings
+    public StringBuilder appendTo(StringBuilder out) {
+        return out.append("ID: ").append(id)
+                .append(" | Name: ").append(name)
+                .append(" | Price: $").append(Money.format(Money.toCents(price)))
+                .append(" | Quantity: ").append(quantity)
+                .append(" | Category: ").append(category)
+                .append(" | Description: ").append(getDescription());
     }
     
     @Override
     public String toString() {
         return String.format("ID: %s | Name: %s | Price: $%.2f | Quantity: %d | Category: %s | Description: %s",
-                id, name, price, quantity, category, description);
+                id, name, price, quantity, category, getDescription());
     }
     
     @Override
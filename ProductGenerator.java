@@ -0,0 +1,71 @@
+import java.util.*;
+
+/**
+ * ProductGenerator class creates synthetic products for benchmarks and load testing
+ * The same seed always produces the same sequence of products
+ */
+public class ProductGenerator {
+    private static final String[] CATEGORIES = {
+        "Electronics", "Groceries", "Clothing", "Hardware", "Toys", "Books", "Garden", "Office",
+        "Sports", "Beauty", "Automotive", "Pet Supplies", "Kitchen", "Furniture", "Music", "Health"
+    };
+    
+    private static final String[] ADJECTIVES = {
+        "Compact", "Deluxe", "Classic", "Portable", "Wireless", "Organic", "Heavy Duty", "Premium",
+        "Mini", "Smart", "Vintage", "Ultra", "Eco", "Pro", "Basic", "Digital"
+    };
+    
+    private static final String[] NOUNS = {
+        "Lamp", "Keyboard", "Blender", "Jacket", "Drill", "Notebook", "Speaker", "Backpack",
+        "Kettle", "Monitor", "Shovel", "Puzzle", "Charger", "Mug", "Chair", "Headphones"
+    };
+    
+    private final Random random;
+    private int nextId;
+    
+    // Constructor with a fixed seed
+    public ProductGenerator() {
+        this(42L);
+    }
+    
+    public ProductGenerator(long seed) {
+        this.random = new Random(seed);
+        this.nextId = 0;
+    }
+    
+    // Create the next product in the sequence
+    public Product next() {
+        String id = String.format("SKU-%08d", nextId++);
+        String name = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + NOUNS[random.nextInt(NOUNS.length)]
+                + " " + (100 + random.nextInt(900));
+        double price = Math.round((1 + random.nextDouble() * 499) * 100) / 100.0;
+        int quantity = random.nextInt(200);
+        String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        String description = "Synthetic " + category.toLowerCase() + " item " + id;
+        return new Product(id, name, price, quantity, category, description);
+    }
+    
+    // Create a list of products
+    public List<Product> generate(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(next());
+        }
+        return products;
+    }
+    
+    // Create a map of products keyed by ID, the same shape Inventory keeps in memory
+    public Map<String, Product> generateMap(int count) {
+        Map<String, Product> products = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            Product product = next();
+            products.put(product.getId(), product);
+        }
+        return products;
+    }
+    
+    // Category names used by the generator
+    public static String[] categories() {
+        return CATEGORIES.clone();
+    }
+}
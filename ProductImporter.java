@@ -0,0 +1,120 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * ProductImporter class bulk loads products from CSV or JSON Lines files and exports them again
+ * The file is streamed: rows are parsed one at a time and handed to the inventory in chunks,
+ * so memory use does not depend on the file size. Rows upsert by ID (new IDs are added,
+ * known IDs are updated) and nothing is persisted per row; the data file is written once at
+ * the end, or every checkpointInterval rows if one is given. Rows that fail validation are
+ * skipped and listed in a reject report.
+ */
+public class ProductImporter {
+    
+    // Supported file formats
+    public enum Format {
+        CSV,
+        JSONL;
+        
+        // Format implied by a file name (.jsonl, .ndjson or .json for JSON Lines, CSV otherwise)
+        public static Format forFile(String fileName) {
+            String name = fileName.toLowerCase();
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+    
+    private static final int CHUNK_SIZE = 10_000;
+    private static final int SAMPLE_REJECTS = 20;
+    
+    private ProductImporter() {
+    }
+    
+    // Import a file, writing rejected rows to rejectFile (null for no report)
+    // A checkpointInterval of 0 persists once at the end
+    public static ImportResult importFile(Inventory inventory, File file, Format format, File rejectFile,
+                                          long checkpointInterval) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+             Writer rejects = rejectFile == null ? null
+                     : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rejectFile), StandardCharsets.UTF_8))) {
+            return importProducts(inventory, in, format, rejects, checkpointInterval);
+        }
+    }
+    
+    // Import from a reader; each rejected row is reported to rejects as "line N: reason"
+    public static ImportResult importProducts(Inventory inventory, Reader in, Format format, Writer rejects,
+                                              long checkpointInterval) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        long added = 0;
+        long accepted = 0;
+        long rejected = 0;
+        long sinceCheckpoint = 0;
+        long peakHeap = usedHeap();
+        List<String> sampleRejects = new ArrayList<>();
+        List<Product> chunk = new ArrayList<>(CHUNK_SIZE);
+        
+        ProductReader reader = new ProductReader(in, format);
+        while (reader.next()) {
+            rows++;
+            Product product = reader.getProduct();
+            if (product == null) {
+                rejected++;
+                String reject = "line " + reader.getLineNumber() + ": " + reader.getError();
+                if (sampleRejects.size() < SAMPLE_REJECTS) {
+                    sampleRejects.add(reject);
+                }
+                if (rejects != null) {
+                    rejects.write(reject);
+                    rejects.write('\n');
+                }
+                continue;
+            }
+            
+            chunk.add(product);
+            if (chunk.size() == CHUNK_SIZE) {
+                added += inventory.upsertProducts(chunk);
+                accepted += chunk.size();
+                sinceCheckpoint += chunk.size();
+                chunk.clear();
+                peakHeap = Math.max(peakHeap, usedHeap());
+                if (checkpointInterval > 0 && sinceCheckpoint >= checkpointInterval) {
+                    inventory.checkpoint();
+                    sinceCheckpoint = 0;
+                }
+            }
+        }
+        added += inventory.upsertProducts(chunk);
+        accepted += chunk.size();
+        peakHeap = Math.max(peakHeap, usedHeap());
+        
+        // Single persistence pass for everything imported since the last checkpoint
+        inventory.checkpoint();
+        return new ImportResult(rows, added, accepted - added, rejected, System.nanoTime() - start,
+                peakHeap, sampleRejects);
+    }
+    
+    // Export every product to a file, returns the number of products written
+    public static long exportFile(Inventory inventory, File file, Format format) throws IOException {
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            return exportProducts(inventory, out, format);
+        }
+    }
+    
+    public static long exportProducts(Inventory inventory, Writer out, Format format) throws IOException {
+        ProductWriter writer = new ProductWriter(out, format);
+        long count = 0;
+        for (Product product : inventory.getAllProducts()) {
+            writer.write(product);
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
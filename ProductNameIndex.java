@@ -0,0 +1,278 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ProductNameIndex class is a trigram inverted index over product names
+ * Answers the same case-insensitive substring queries as a full scan by intersecting the
+ * posting sets of the query's trigrams and verifying the few remaining candidates.
+ * Names are indexed with two leading anchor characters, so the anchored trigrams also
+ * answer prefix (autocomplete) lookups of any length.
+ *
+ * Every indexed product gets a dense int ordinal, so posting sets hold primitive ints
+ * rather than ID strings; ordinals of removed products are reused.
+ */
+class ProductNameIndex implements InventoryIndex {
+    private static final String ANCHOR = "\u0000\u0000";
+
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<Long, IntSortedSet> trigrams = new ConcurrentHashMap<>(); // trigram -> ordinals
+
+    private volatile Entry[] entries = new Entry[1024]; // ordinal -> entry
+    private int nextOrdinal;
+    private int[] freeOrdinals = new int[16];
+    private int freeCount;
+
+    // Indexed product: its ordinal, ID and lower-case name
+    private static final class Entry {
+        final int ordinal;
+        final String id;
+        final String name;
+
+        Entry(int ordinal, String id, String name) {
+            this.ordinal = ordinal;
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        String id = product.getId();
+        String name = lowerCase(product.getName());
+        Entry entry = allocate(id, name);
+        byId.put(id, entry);
+        for (long trigram : trigramsOf(ANCHOR + name)) {
+            IntSortedSet ordinals = trigrams.get(trigram);
+            if (ordinals == null) {
+                ordinals = trigrams.computeIfAbsent(trigram, key -> new IntSortedSet());
+            }
+            ordinals.add(entry.ordinal);
+        }
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        Entry entry = byId.remove(product.getId());
+        if (entry == null) {
+            return;
+        }
+        // Emptied posting sets are kept; the set of distinct trigrams in names stays small
+        for (long trigram : trigramsOf(ANCHOR + entry.name)) {
+            IntSortedSet ordinals = trigrams.get(trigram);
+            if (ordinals != null) {
+                ordinals.remove(entry.ordinal);
+            }
+        }
+        release(entry);
+    }
+
+    @Override
+    public void productUpdated(Product before, Product after) {
+        // Renames are rare next to price/quantity edits, skip the index work when the name is unchanged
+        if (Objects.equals(before.getName(), after.getName())) {
+            return;
+        }
+        productRemoved(before);
+        productAdded(after);
+    }
+
+    @Override
+    public synchronized void cleared() {
+        byId.clear();
+        trigrams.clear();
+        entries = new Entry[1024];
+        nextOrdinal = 0;
+        freeCount = 0;
+    }
+
+    // IDs of products whose name contains the query, ignoring case
+    public List<String> search(String query) {
+        String needle = lowerCase(query);
+        List<String> ids = new ArrayList<>();
+        if (needle.length() < 3) {
+            // Too short for a trigram, check the cached lower-case names directly
+            for (Entry entry : byId.values()) {
+                if (entry.name.contains(needle)) {
+                    ids.add(entry.id);
+                }
+            }
+            return ids;
+        }
+
+        for (Entry entry : candidates(needle)) {
+            if (entry.name.contains(needle)) {
+                ids.add(entry.id);
+            }
+        }
+        return ids;
+    }
+
+    // Upper bound of the number of products search(query) finds: the smallest posting set of its
+    // trigrams, without intersecting them
+    public int estimate(String query) {
+        String needle = lowerCase(query);
+        if (needle.length() < 3) {
+            return byId.size();
+        }
+        int smallest = Integer.MAX_VALUE;
+        for (long trigram : trigramsOf(needle)) {
+            IntSortedSet ordinals = trigrams.get(trigram);
+            if (ordinals == null) {
+                return 0;
+            }
+            smallest = Math.min(smallest, ordinals.size());
+        }
+        return smallest;
+    }
+
+    // IDs of up to limit products whose name starts with the prefix, ignoring case, in name order
+    public List<String> searchPrefix(String prefix, int limit) {
+        String start = lowerCase(prefix);
+        Iterable<Entry> candidates = start.isEmpty() ? byId.values() : candidates(ANCHOR + start);
+
+        // Keep the limit smallest names in a max-heap instead of sorting every match
+        Comparator<Entry> byName = Comparator.comparing((Entry entry) -> entry.name).thenComparing(entry -> entry.id);
+        PriorityQueue<Entry> best = new PriorityQueue<>(byName.reversed());
+        for (Entry entry : candidates) {
+            if (!entry.name.startsWith(start)) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (byName.compare(entry, best.peek()) < 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        String[] ids = new String[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = best.poll().id;
+        }
+        return Arrays.asList(ids);
+    }
+
+    // Entries present in the posting sets of every trigram of the text (still to be verified)
+    private List<Entry> candidates(String text) {
+        List<Entry> result = new ArrayList<>();
+        long[] queryTrigrams = trigramsOf(text);
+        List<IntSortedSet> postings = new ArrayList<>(queryTrigrams.length);
+        for (long trigram : queryTrigrams) {
+            IntSortedSet ordinals = trigrams.get(trigram);
+            if (ordinals == null) {
+                return result;
+            }
+            postings.add(ordinals);
+        }
+        postings.sort(Comparator.comparingInt(IntSortedSet::size));
+
+        // Walk the smallest posting set and keep ordinals present in all the others
+        Entry[] table = entries;
+        candidates:
+        for (int ordinal : postings.get(0).toArray()) {
+            for (int i = 1; i < postings.size(); i++) {
+                if (!postings.get(i).contains(ordinal)) {
+                    continue candidates;
+                }
+            }
+            Entry entry = ordinal < table.length ? table[ordinal] : null;
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    // Hand out a free ordinal and publish the entry under it
+    private synchronized Entry allocate(String id, String name) {
+        int ordinal = freeCount > 0 ? freeOrdinals[--freeCount] : nextOrdinal++;
+        Entry[] table = entries;
+        if (ordinal >= table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        Entry entry = new Entry(ordinal, id, name);
+        table[ordinal] = entry;
+        entries = table;
+        return entry;
+    }
+
+    private synchronized void release(Entry entry) {
+        Entry[] table = entries;
+        if (entry.ordinal < table.length && table[entry.ordinal] == entry) {
+            table[entry.ordinal] = null;
+            if (freeCount == freeOrdinals.length) {
+                freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+            }
+            freeOrdinals[freeCount++] = entry.ordinal;
+        }
+    }
+
+    private static String lowerCase(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+
+    // Distinct trigrams of a string, each packed as three 16-bit chars in a long
+    // The packed value is multiplied by an odd constant (a bijection) so the keys hash evenly
+    private static long[] trigramsOf(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+        long[] result = new long[text.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            long packed = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            result[i] = packed * 0x9E3779B97F4A7C15L;
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return distinct == result.length ? result : Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * IntSortedSet class is a sorted, growable int array used as a posting set
+     * Ordinals are mostly handed out in increasing order, so adds are usually appends
+     * and bulk loading writes each posting set sequentially.
+     */
+    private static final class IntSortedSet {
+        private int[] values = new int[4];
+        private int size;
+
+        synchronized void add(int value) {
+            int index = size > 0 && values[size - 1] < value ? size : Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0 && index < size) {
+                return;
+            }
+            int insertAt = index >= 0 ? index : -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+            values[insertAt] = value;
+            size++;
+        }
+
+        synchronized void remove(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                size--;
+            }
+        }
+
+        synchronized boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * ProductOrder enum lists the stable orderings products can be listed in
+ * Every ordering breaks ties by product ID, so no two products ever compare equal.
+ */
+public enum ProductOrder {
+    ID,       // product ID
+    NAME,     // name ignoring case
+    PRICE,    // lowest price first
+    QUANTITY, // lowest quantity first
+    VALUE     // lowest stock value (price times quantity, see Money.valueOf) first
+}
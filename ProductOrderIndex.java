@@ -0,0 +1,279 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * ProductOrderIndex class keeps the products sorted in one ProductOrder for paginated listings
+ * Pages are found by key (keyset pagination): a resume token holds the sort key of the last
+ * product shown, and the next page starts right after it. Products added, changed or removed
+ * between pages never cause the rest of the listing to skip or repeat a product.
+ *
+ * An update moves a product from the key of its previous version to the key of the new one;
+ * Inventory passes both, so the index keeps nothing per product besides its skip list entry.
+ *
+ * The price, quantity and value orderings double as sorted indexes for range predicates (see
+ * QueryPlanner): range() is a view of the skip list between two bounds, walked without copying.
+ */
+class ProductOrderIndex implements InventoryIndex {
+    private final ProductOrder order;
+    private final ConcurrentSkipListMap<Key, Product> sorted;
+    
+    // Sort key of one product; only the fields of the index's ordering are compared
+    static final class Key {
+        final String id;
+        final String name;
+        final double price;
+        final int quantity;
+        final long valueCents;
+        
+        Key(String id, String name, double price, int quantity) {
+            this(id, name, price, quantity, Money.valueOf(price, quantity));
+        }
+        
+        Key(String id, String name, double price, int quantity, long valueCents) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.quantity = quantity;
+            this.valueCents = valueCents;
+        }
+    }
+    
+    ProductOrderIndex(ProductOrder order) {
+        this.order = order;
+        this.sorted = new ConcurrentSkipListMap<>(comparator(order));
+    }
+    
+    ProductOrder getOrder() {
+        return order;
+    }
+    
+    @Override
+    public void productAdded(Product product) {
+        sorted.put(keyOf(product), product);
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        sorted.remove(keyOf(product));
+    }
+    
+    @Override
+    public void productUpdated(Product before, Product after) {
+        Key key = keyOf(after);
+        Key old = before == after ? key : keyOf(before);
+        if (sorted.comparator().compare(old, key) != 0) {
+            sorted.remove(old);
+        }
+        // A product whose key did not change is swapped for the new version in place, so
+        // listings running at the same time never miss it
+        sorted.put(key, after);
+    }
+    
+    @Override
+    public void cleared() {
+        sorted.clear();
+    }
+    
+    // Products whose price, quantity or value (in cents) lies between low and high inclusive,
+    // lowest first; either bound can be infinite
+    NavigableMap<Key, Product> range(double low, double high) {
+        if (order != ProductOrder.PRICE && order != ProductOrder.QUANTITY && order != ProductOrder.VALUE) {
+            throw new IllegalStateException("The " + order + " ordering has no range");
+        }
+        if (order == ProductOrder.QUANTITY) {
+            low = Math.max(low, Integer.MIN_VALUE);
+            high = Math.min(high, Integer.MAX_VALUE);
+        }
+        if (!(low <= high)) {
+            return Collections.emptyNavigableMap();
+        }
+        Key from = bound(low, false);
+        Key to = bound(high, true);
+        if (from == null) {
+            return to == null ? sorted : sorted.headMap(to, false);
+        }
+        return to == null ? sorted.tailMap(from, true) : sorted.subMap(from, true, to, false);
+    }
+    
+    // Up to limit products from the low end of this ordering, or from the high end when highest
+    // is set; walks limit entries whatever the size of the index
+    List<Product> first(int limit, boolean highest) {
+        List<Product> products = new ArrayList<>(Math.min(limit, 1024));
+        for (Product product : entries(highest).values()) {
+            if (products.size() >= limit) {
+                break;
+            }
+            products.add(product);
+        }
+        return products;
+    }
+    
+    // Every product in this ordering, lowest or highest first
+    NavigableMap<Key, Product> entries(boolean descending) {
+        return descending ? sorted.descendingMap() : sorted;
+    }
+    
+    // True if the key is where the product is sorted now; a walk can meet a product that is
+    // moving twice, at its old key and its new one, and only the new one counts
+    boolean sortsAt(Key key, Product product) {
+        return sorted.comparator().compare(key, keyOf(product)) == 0;
+    }
+    
+    // Key before every product with the value (after every product with it when after is set),
+    // null for no bound
+    private Key bound(double value, boolean after) {
+        if (Double.isInfinite(value)) {
+            return null;
+        }
+        switch (order) {
+            case PRICE:
+                return new Key("", null, after ? Math.nextUp(value) : value, 0, 0);
+            case QUANTITY:
+                long quantity = after ? (long) Math.floor(value) + 1 : (long) Math.ceil(value);
+                return quantity > Integer.MAX_VALUE ? null : new Key("", null, 0, (int) quantity, 0);
+            default:
+                long cents = after ? (long) Math.floor(value) : (long) Math.ceil(value); // saturates
+                if (after) {
+                    return cents == Long.MAX_VALUE ? null : new Key("", null, 0, 0, cents + 1);
+                }
+                return new Key("", null, 0, 0, cents);
+        }
+    }
+    
+    // Up to pageSize products after the position of a resume token (null starts at the beginning)
+    ProductPage page(String resumeToken, int pageSize) {
+        Iterator<Map.Entry<Key, Product>> entries = tail(resumeToken).entrySet().iterator();
+        List<Product> products = new ArrayList<>(Math.min(pageSize, 1024));
+        Key last = null;
+        while (products.size() < pageSize && entries.hasNext()) {
+            Map.Entry<Key, Product> entry = entries.next();
+            products.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new ProductPage(products, last != null && entries.hasNext() ? encode(order, last) : null);
+    }
+    
+    // Every product after the position of a resume token, walking the index without copying it
+    Iterator<Product> iterator(String resumeToken) {
+        return Collections.unmodifiableCollection(tail(resumeToken).values()).iterator();
+    }
+    
+    private NavigableMap<Key, Product> tail(String resumeToken) {
+        return resumeToken == null ? sorted : sorted.tailMap(decode(resumeToken), false);
+    }
+    
+    // Resume token that continues a listing in this ordering right after the product
+    static String tokenFor(ProductOrder order, Product product) {
+        return encode(order, keyOf(product));
+    }
+    
+    // Products compared by their current values in this ordering
+    static Comparator<Product> productComparator(ProductOrder order) {
+        Comparator<Key> comparator = comparator(order);
+        return (a, b) -> comparator.compare(keyOf(a), keyOf(b));
+    }
+    
+    private static Key keyOf(Product product) {
+        return new Key(product.getId(), product.getName(), product.getPrice(), product.getQuantity());
+    }
+    
+    // Resume token: the ordering and the sort key of the last product shown, URL-safe Base64
+    private static String encode(ProductOrder order, Key key) {
+        String value;
+        switch (order) {
+            case NAME:
+                value = key.name == null ? "-" : "+" + key.name;
+                break;
+            case PRICE:
+                value = Double.toString(key.price);
+                break;
+            case QUANTITY:
+                value = Integer.toString(key.quantity);
+                break;
+            case VALUE:
+                value = Long.toString(key.valueCents);
+                break;
+            default:
+                value = "";
+        }
+        String token = order.name() + '\u0000' + value + '\u0000' + key.id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private Key decode(String token) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\u0000", 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid resume token");
+        }
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid resume token");
+        }
+        if (!parts[0].equals(order.name())) {
+            throw new IllegalArgumentException("Resume token belongs to a listing by " + parts[0].toLowerCase());
+        }
+        try {
+            switch (order) {
+                case NAME:
+                    return new Key(parts[2], parts[1].startsWith("+") ? parts[1].substring(1) : null, 0, 0);
+                case PRICE:
+                    return new Key(parts[2], null, Double.parseDouble(parts[1]), 0);
+                case QUANTITY:
+                    return new Key(parts[2], null, 0, Integer.parseInt(parts[1]));
+                case VALUE:
+                    return new Key(parts[2], null, 0, 0, Long.parseLong(parts[1]));
+                default:
+                    return new Key(parts[2], null, 0, 0);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid resume token");
+        }
+    }
+    
+    private static Comparator<Key> comparator(ProductOrder order) {
+        switch (order) {
+            case NAME:
+                return BY_NAME;
+            case PRICE:
+                return BY_PRICE;
+            case QUANTITY:
+                return BY_QUANTITY;
+            case VALUE:
+                return BY_VALUE;
+            default:
+                return BY_ID;
+        }
+    }
+    
+    private static final Comparator<Key> BY_ID = (a, b) -> a.id.compareTo(b.id);
+    
+    private static final Comparator<Key> BY_NAME = (a, b) -> {
+        String left = a.name == null ? "" : a.name;
+        String right = b.name == null ? "" : b.name;
+        int result = String.CASE_INSENSITIVE_ORDER.compare(left, right);
+        if (result == 0) {
+            result = left.compareTo(right);
+        }
+        if (result == 0 && (a.name == null) != (b.name == null)) {
+            result = a.name == null ? -1 : 1;
+        }
+        return result != 0 ? result : a.id.compareTo(b.id);
+    };
+    
+    private static final Comparator<Key> BY_PRICE = (a, b) -> {
+        int result = Double.compare(a.price, b.price);
+        return result != 0 ? result : a.id.compareTo(b.id);
+    };
+    
+    private static final Comparator<Key> BY_QUANTITY = (a, b) -> {
+        int result = Integer.compare(a.quantity, b.quantity);
+        return result != 0 ? result : a.id.compareTo(b.id);
+    };
+    
+    private static final Comparator<Key> BY_VALUE = (a, b) -> {
+        int result = Long.compare(a.valueCents, b.valueCents);
+        return result != 0 ? result : a.id.compareTo(b.id);
+    };
+}
@@ -0,0 +1,29 @@
+import java.util.*;
+
+/**
+ * ProductPage class is one page of a product listing
+ * Pass getNextToken() back to Inventory.listProducts to continue after the last product of this page.
+ */
+public class ProductPage {
+    private final List<Product> products;
+    private final String nextToken;
+    
+    public ProductPage(List<Product> products, String nextToken) {
+        this.products = Collections.unmodifiableList(products);
+        this.nextToken = nextToken;
+    }
+    
+    // Products of this page, in listing order
+    public List<Product> getProducts() {
+        return products;
+    }
+    
+    // Resume token for the next page, null on the last page
+    public String getNextToken() {
+        return nextToken;
+    }
+    
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+}
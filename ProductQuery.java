@@ -0,0 +1,224 @@
+/**
+ * ProductQuery class describes a compound query over an inventory's products
+ * Every predicate that is set must hold: an exact category, a case-insensitive name substring
+ * and inclusive ranges of price, quantity and stock value. Results can be sorted in any
+ * ProductOrder, either way round, and cut to a limit. Setting a predicate again replaces it.
+ *
+ * Run it with Inventory.query(); Inventory.explain() shows the plan. For example, products in
+ * Electronics priced 50 to 200 with fewer than 30 units, highest stock value first:
+ *   new ProductQuery().category("Electronics").priceBetween(50, 200).quantityBelow(30)
+ *           .orderBy(ProductOrder.VALUE, true)
+ */
+public class ProductQuery {
+    private String category;
+    private String nameContains;
+    private String lowerCaseName; // nameContains in lower case
+    private double minPrice = Double.NEGATIVE_INFINITY;
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private int minQuantity = Integer.MIN_VALUE;
+    private int maxQuantity = Integer.MAX_VALUE;
+    private long minValueCents = Long.MIN_VALUE;
+    private long maxValueCents = Long.MAX_VALUE;
+    private ProductOrder order; // null leaves the results unsorted
+    private boolean descending;
+    private int limit = Integer.MAX_VALUE;
+    
+    // Products of exactly this category (case-sensitive, like the category a product was stored with)
+    public ProductQuery category(String category) {
+        this.category = category;
+        return this;
+    }
+    
+    // Products whose name contains the text, ignoring case
+    public ProductQuery nameContains(String text) {
+        this.nameContains = text;
+        this.lowerCaseName = text == null ? null : text.toLowerCase();
+        return this;
+    }
+    
+    // Price between min and max inclusive; pass an infinity to leave a side open
+    public ProductQuery priceBetween(double min, double max) {
+        checkRange(min, max);
+        this.minPrice = min;
+        this.maxPrice = max;
+        return this;
+    }
+    
+    // Quantity between min and max inclusive
+    public ProductQuery quantityBetween(int min, int max) {
+        this.minQuantity = min;
+        this.maxQuantity = max;
+        return this;
+    }
+    
+    // Quantity below the limit, e.g. quantityBelow(30) for "quantity < 30"
+    public ProductQuery quantityBelow(int limit) {
+        if (limit == Integer.MIN_VALUE) {
+            return quantityBetween(Integer.MAX_VALUE, Integer.MIN_VALUE); // nothing matches
+        }
+        return quantityBetween(Integer.MIN_VALUE, limit - 1);
+    }
+    
+    // Stock value (price times quantity) between min and max inclusive, compared in whole cents
+    public ProductQuery valueBetween(double min, double max) {
+        checkRange(min, max);
+        this.minValueCents = Money.toCents(min);
+        this.maxValueCents = Money.toCents(max);
+        return this;
+    }
+    
+    // Sort the results, lowest first
+    public ProductQuery orderBy(ProductOrder order) {
+        return orderBy(order, false);
+    }
+    
+    // Sort the results, highest first when descending is set
+    public ProductQuery orderBy(ProductOrder order, boolean descending) {
+        this.order = order;
+        this.descending = descending;
+        return this;
+    }
+    
+    // Return at most this many products (the first ones in the query's order, if it has one)
+    public ProductQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        this.limit = limit;
+        return this;
+    }
+    
+    // True if the product satisfies every predicate; this is all a full scan checks
+    public boolean matches(Product product) {
+        if (category != null && !category.equals(product.getCategory())) {
+            return false;
+        }
+        double price = product.getPrice();
+        if (price < minPrice || price > maxPrice) {
+            return false;
+        }
+        int quantity = product.getQuantity();
+        if (quantity < minQuantity || quantity > maxQuantity) {
+            return false;
+        }
+        if (hasValueRange()) {
+            long value = Money.valueOf(price, quantity);
+            if (value < minValueCents || value > maxValueCents) {
+                return false;
+            }
+        }
+        String name = product.getName();
+        return lowerCaseName == null || (name == null ? "" : name.toLowerCase()).contains(lowerCaseName);
+    }
+    
+    String getCategory() {
+        return category;
+    }
+    
+    String getNameContains() {
+        return nameContains;
+    }
+    
+    boolean hasPriceRange() {
+        return minPrice != Double.NEGATIVE_INFINITY || maxPrice != Double.POSITIVE_INFINITY;
+    }
+    
+    double getMinPrice() {
+        return minPrice;
+    }
+    
+    double getMaxPrice() {
+        return maxPrice;
+    }
+    
+    boolean hasQuantityRange() {
+        return minQuantity != Integer.MIN_VALUE || maxQuantity != Integer.MAX_VALUE;
+    }
+    
+    int getMinQuantity() {
+        return minQuantity;
+    }
+    
+    int getMaxQuantity() {
+        return maxQuantity;
+    }
+    
+    boolean hasValueRange() {
+        return minValueCents != Long.MIN_VALUE || maxValueCents != Long.MAX_VALUE;
+    }
+    
+    long getMinValueCents() {
+        return minValueCents;
+    }
+    
+    long getMaxValueCents() {
+        return maxValueCents;
+    }
+    
+    ProductOrder getOrder() {
+        return order;
+    }
+    
+    boolean isDescending() {
+        return descending;
+    }
+    
+    int getLimit() {
+        return limit;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if (category != null) {
+            condition(text).append("category = '").append(category).append('\'');
+        }
+        if (nameContains != null) {
+            condition(text).append("name contains '").append(nameContains).append('\'');
+        }
+        if (hasPriceRange()) {
+            condition(text).append("price ").append(range(
+                    Double.isInfinite(minPrice) ? null : format(minPrice),
+                    Double.isInfinite(maxPrice) ? null : format(maxPrice)));
+        }
+        if (hasQuantityRange()) {
+            condition(text).append("quantity ").append(range(
+                    minQuantity == Integer.MIN_VALUE ? null : Integer.toString(minQuantity),
+                    maxQuantity == Integer.MAX_VALUE ? null : Integer.toString(maxQuantity)));
+        }
+        if (hasValueRange()) {
+            condition(text).append("value ").append(range(
+                    minValueCents == Long.MIN_VALUE ? null : Money.format(minValueCents),
+                    maxValueCents == Long.MAX_VALUE ? null : Money.format(maxValueCents)));
+        }
+        if (text.length() == 0) {
+            text.append("all products");
+        }
+        if (order != null) {
+            text.append(" order by ").append(order.name().toLowerCase()).append(descending ? " desc" : "");
+        }
+        if (limit != Integer.MAX_VALUE) {
+            text.append(" limit ").append(limit);
+        }
+        return text.toString();
+    }
+    
+    private static StringBuilder condition(StringBuilder text) {
+        return text.length() == 0 ? text : text.append(" and ");
+    }
+    
+    // Inclusive range, a null side is open
+    private static String range(String min, String max) {
+        return "[" + (min == null ? "" : min) + ".." + (max == null ? "" : max) + "]";
+    }
+    
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+    
+    private static void checkRange(double min, double max) {
+        if (Double.isNaN(min) || Double.isNaN(max)) {
+            throw new IllegalArgumentException("Range bounds cannot be NaN");
+        }
+    }
+}
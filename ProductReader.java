@@ -0,0 +1,556 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ProductReader class streams products out of a CSV or JSON Lines file one record at a time
+ * Input is read through a fixed char buffer and fields are collected in one reusable builder,
+ * so apart from the strings a Product holds, parsing a record allocates next to nothing.
+ * Prices and quantities are parsed straight from the field characters.
+ *
+ * CSV follows RFC 4180 (quoted fields, "" escapes, line breaks inside quotes). A first record
+ * with "id" and "price" columns is taken as a header naming the columns, in any order; without
+ * one the columns are id,name,price,quantity,category,description. JSON Lines holds one flat object per line
+ * with the same keys; unknown keys are ignored.
+ *
+ * A record that cannot be turned into a valid product is reported through getError() rather
+ * than an exception, so a caller can skip it and carry on.
+ */
+public class ProductReader implements Closeable {
+    // Column names, in the default CSV order
+    public static final String[] COLUMNS = {"id", "name", "price", "quantity", "category", "description"};
+    
+    private static final int ID = 0;
+    private static final int NAME = 1;
+    private static final int PRICE = 2;
+    private static final int QUANTITY = 3;
+    private static final int CATEGORY = 4;
+    private static final int DESCRIPTION = 5;
+    private static final int IGNORED = -1;
+    
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    private final Reader in;
+    private final ProductImporter.Format format;
+    private final char[] buffer = new char[64 * 1024];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    
+    private final StringBuilder field = new StringBuilder(64);
+    private int[] columns = {ID, NAME, PRICE, QUANTITY, CATEGORY, DESCRIPTION};
+    private boolean firstRecord = true;
+    private long line = 1;
+    private long recordLine;
+    
+    // Values of the record being parsed
+    private final String[] text = new String[COLUMNS.length];
+    private final boolean[] present = new boolean[COLUMNS.length];
+    private double price;
+    private int quantity;
+    private String error;
+    private Product product;
+    
+    public ProductReader(Reader in, ProductImporter.Format format) {
+        this.in = in;
+        this.format = format;
+    }
+    
+    // Parse the next record, returns false at the end of the input
+    // Afterwards either getProduct() or getError() is set
+    public boolean next() throws IOException {
+        while (true) {
+            product = null;
+            error = null;
+            for (int i = 0; i < present.length; i++) {
+                present[i] = false;
+                text[i] = null;
+            }
+            if (recordLine == 0 && peek() == '\uFEFF') {
+                read(); // byte order mark
+            }
+            skipBlankLines();
+            if (peek() < 0) {
+                return false;
+            }
+            recordLine = line;
+            
+            if (format == ProductImporter.Format.CSV) {
+                boolean header = readCsvRecord();
+                firstRecord = false;
+                if (header) {
+                    continue;
+                }
+            } else {
+                readJsonRecord();
+            }
+            if (error == null) {
+                product = buildProduct();
+            }
+            return true;
+        }
+    }
+    
+    // The product of the last record, null if it was rejected
+    public Product getProduct() {
+        return product;
+    }
+    
+    // Why the last record was rejected, null if it was accepted
+    public String getError() {
+        return error;
+    }
+    
+    // Line on which the last record started
+    public long getLineNumber() {
+        return recordLine;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    // Read one CSV record, returns true if it was the header
+    private boolean readCsvRecord() throws IOException {
+        List<String> firstFields = firstRecord ? new ArrayList<>() : null;
+        int column = 0;
+        while (true) {
+            readCsvField();
+            if (firstFields != null) {
+                // Held back until it is known whether the first record is a header
+                firstFields.add(field.toString());
+            } else if (column < columns.length) {
+                store(columns[column]);
+            }
+            column++;
+            
+            int c = read();
+            if (c == ',') {
+                continue;
+            }
+            if (c == '\r' && peek() == '\n') {
+                read();
+            }
+            break;
+        }
+        
+        if (firstFields != null) {
+            int[] named = new int[firstFields.size()];
+            for (int i = 0; i < named.length; i++) {
+                named[i] = columnIndex(firstFields.get(i).trim());
+            }
+            if (indexOf(named, ID) >= 0 && indexOf(named, PRICE) >= 0) {
+                for (int required = ID; required <= QUANTITY; required++) {
+                    if (indexOf(named, required) < 0) {
+                        throw new IOException("CSV header has no '" + COLUMNS[required] + "' column");
+                    }
+                }
+                columns = named;
+                return true;
+            }
+            for (int i = 0; i < firstFields.size() && i < columns.length; i++) {
+                field.setLength(0);
+                field.append(firstFields.get(i));
+                store(columns[i]);
+            }
+        }
+        
+        if (column < columns.length && error == null) {
+            // Trailing optional columns may be left out
+            for (int i = column; i < columns.length; i++) {
+                if (columns[i] >= ID && columns[i] <= QUANTITY) {
+                    error = "Expected " + columns.length + " columns, found " + column;
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+    
+    // Read one CSV field into the builder, stopping before the delimiter
+    private void readCsvField() throws IOException {
+        field.setLength(0);
+        if (peek() != '"') {
+            while (true) {
+                int c = peek();
+                if (c < 0 || c == ',' || c == '\n' || c == '\r') {
+                    return;
+                }
+                field.append((char) read());
+            }
+        }
+        
+        read();
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                error = "Unterminated quoted field";
+                return;
+            }
+            if (c == '"') {
+                if (peek() != '"') {
+                    // Skip anything between the closing quote and the delimiter
+                    while (peek() >= 0 && peek() != ',' && peek() != '\n' && peek() != '\r') {
+                        read();
+                    }
+                    return;
+                }
+                read();
+            }
+            field.append((char) c);
+        }
+    }
+    
+    // Read one JSON object on a single line
+    private void readJsonRecord() throws IOException {
+        skipSpaces();
+        if (read() != '{') {
+            failJson("Expected '{'");
+            return;
+        }
+        skipSpaces();
+        if (peek() == '}') {
+            read();
+        } else {
+            while (true) {
+                skipSpaces();
+                if (read() != '"' || !readJsonString()) {
+                    failJson("Expected a quoted key");
+                    return;
+                }
+                int target = columnIndex(field.toString());
+                skipSpaces();
+                if (read() != ':') {
+                    failJson("Expected ':'");
+                    return;
+                }
+                skipSpaces();
+                if (!readJsonValue(target)) {
+                    return;
+                }
+                skipSpaces();
+                int c = read();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    failJson("Expected ',' or '}'");
+                    return;
+                }
+            }
+        }
+        skipSpaces();
+        int c = peek();
+        if (c >= 0 && c != '\n' && c != '\r') {
+            failJson("Unexpected text after the object");
+            return;
+        }
+        skipLine();
+    }
+    
+    // Read a JSON value (string, number, true, false or null) and store it under the target column
+    private boolean readJsonValue(int target) throws IOException {
+        int c = peek();
+        if (c == '"') {
+            read();
+            if (!readJsonString()) {
+                failJson("Unterminated string");
+                return false;
+            }
+            store(target);
+            return true;
+        }
+        if (c == '{' || c == '[') {
+            failJson("Nested values are not supported");
+            return false;
+        }
+        
+        field.setLength(0);
+        while (true) {
+            c = peek();
+            if (c < 0 || c == ',' || c == '}' || c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+                break;
+            }
+            field.append((char) read());
+        }
+        if (contentEquals(field, "null")) {
+            return true;
+        }
+        if (field.length() == 0) {
+            failJson("Expected a value");
+            return false;
+        }
+        store(target);
+        return true;
+    }
+    
+    // Read the rest of a JSON string after its opening quote into the builder, unescaping it
+    private boolean readJsonString() throws IOException {
+        field.setLength(0);
+        while (true) {
+            int c = peek();
+            if (c < 0 || c == '\n') {
+                return false;
+            }
+            read();
+            if (c == '"') {
+                return true;
+            }
+            if (c != '\\') {
+                field.append((char) c);
+                continue;
+            }
+            c = read();
+            switch (c) {
+                case 'n': field.append('\n'); break;
+                case 't': field.append('\t'); break;
+                case 'r': field.append('\r'); break;
+                case 'b': field.append('\b'); break;
+                case 'f': field.append('\f'); break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            return false;
+                        }
+                        code = code * 16 + digit;
+                    }
+                    field.append((char) code);
+                    break;
+                case -1:
+                    return false;
+                default:
+                    field.append((char) c); // \" \\ \/
+            }
+        }
+    }
+    
+    private void failJson(String message) throws IOException {
+        if (error == null) {
+            error = message + " at column " + column();
+        }
+        skipLine();
+    }
+    
+    // Convert the builder contents into the value of a column
+    private void store(int target) {
+        if (target == IGNORED || error != null) {
+            return;
+        }
+        present[target] = true;
+        if (target == PRICE) {
+            price = parsePrice(field);
+            if (Double.isNaN(price)) {
+                error = "Invalid price '" + field + "'";
+            }
+        } else if (target == QUANTITY) {
+            long value = parseQuantity(field);
+            if (value == Long.MIN_VALUE) {
+                error = "Invalid quantity '" + field + "'";
+            }
+            quantity = (int) value;
+        } else {
+            text[target] = field.toString();
+        }
+    }
+    
+    // Same checks as adding a product by hand
+    private Product buildProduct() {
+        if (text[ID] == null || text[ID].trim().isEmpty()) {
+            error = "Product ID cannot be empty";
+        } else if (text[NAME] == null || text[NAME].trim().isEmpty()) {
+            error = "Product Name cannot be empty";
+        } else if (!present[PRICE]) {
+            error = "Price is missing";
+        } else if (price < 0) {
+            error = "Price cannot be negative";
+        } else if (!present[QUANTITY]) {
+            error = "Quantity is missing";
+        } else if (quantity < 0) {
+            error = "Quantity cannot be negative";
+        } else if (Money.toCents(price) > Long.MAX_VALUE / Math.max(quantity, 1)) {
+            error = "Stock value (price times quantity) is too large";
+        }
+        if (error != null) {
+            return null;
+        }
+        return new Product(text[ID], text[NAME], price, quantity,
+                text[CATEGORY] != null ? text[CATEGORY] : "", text[DESCRIPTION] != null ? text[DESCRIPTION] : "");
+    }
+    
+    // Decimal price without creating a String; plain decimals with up to 15 digits are exact
+    // (same result as Double.parseDouble), anything else falls back to it. NaN if invalid.
+    static double parsePrice(CharSequence value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        
+        boolean negative = start < end && value.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && digits <= 15) {
+            double result = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+            return negative ? -result : result;
+        }
+        
+        try {
+            double result = Double.parseDouble(value.subSequence(start, end).toString());
+            return Double.isInfinite(result) ? Double.NaN : result;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+    
+    // Whole number within the int range without creating a String, Long.MIN_VALUE if invalid
+    static long parseQuantity(CharSequence value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        boolean negative = start < end && value.charAt(start) == '-';
+        int i = negative || (start < end && value.charAt(start) == '+') ? start + 1 : start;
+        if (i == end) {
+            return Long.MIN_VALUE;
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            result = result * 10 + (c - '0');
+            if (result > Integer.MAX_VALUE + 1L) {
+                return Long.MIN_VALUE;
+            }
+        }
+        result = negative ? -result : result;
+        return result > Integer.MAX_VALUE ? Long.MIN_VALUE : result;
+    }
+    
+    private static int columnIndex(String name) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return IGNORED;
+    }
+    
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static boolean contentEquals(StringBuilder builder, String value) {
+        if (builder.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(builder.charAt(i)) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void skipBlankLines() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == '\n' || c == '\r' || (format == ProductImporter.Format.JSONL && (c == ' ' || c == '\t'))) {
+                read();
+            } else {
+                return;
+            }
+        }
+    }
+    
+    private void skipSpaces() throws IOException {
+        while (peek() == ' ' || peek() == '\t') {
+            read();
+        }
+    }
+    
+    private void skipLine() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0 || c == '\n') {
+                return;
+            }
+        }
+    }
+    
+    // Approximate position within the current line, for error messages
+    private int column() {
+        int column = 1;
+        for (int i = position - 1; i >= 0 && buffer[i] != '\n'; i--) {
+            column++;
+        }
+        return column;
+    }
+    
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+    
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+    
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        int count = in.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            endOfInput = true;
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+}
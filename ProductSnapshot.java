@@ -0,0 +1,427 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * ProductSnapshot class reads and writes the compact binary snapshot format of the inventory
+ * Snapshots are written through a FileChannel and loaded back through memory-mapped buffers
+ *
+ * File layout (big-endian):
+ *   header  magic "INVS", int version, int recordCount, int descriptionGeneration,
+ *           long indexOffset, long dataOffset, long dataLength, long crc32
+ *   index   recordCount longs holding the absolute file offset of every record
+ *   data    records: string id, string name, double price, int quantity, string category, string description
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes.
+ * The checksum covers the data section followed by the index section.
+ *
+ * Version 2 can keep descriptions in a DescriptionStore file: such a description is written as
+ * length -2 followed by long offset and int length into <file>.desc.<descriptionGeneration>.
+ * Version 1 files (always inline, generation 0) are still read.
+ */
+public class ProductSnapshot {
+    public static final int MAGIC = 0x494E5653; // "INVS"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 48;
+    private static final int COLD_DESCRIPTION = -2; // length marker of a description kept in the store
+    private static final int COLD_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    // Java serialization stream magic, used to recognise legacy inventory.dat files
+    private static final int LEGACY_MAGIC = 0xACED0005;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
+
+    private ProductSnapshot() {
+    }
+
+    // Write all products to the given file and force it to disk, returns the number of bytes written
+    public static long write(Collection<Product> products, File file) throws IOException {
+        return write(products, file, true);
+    }
+
+    // Write all products to the given file, returns the number of bytes written
+    public static long write(Collection<Product> products, File file, boolean sync) throws IOException {
+        return write(products, file, sync, null);
+    }
+
+    // Write all products, referring to the descriptions kept in the given store instead of copying them
+    // (a null store writes every description inline)
+    static long write(Collection<Product> products, File file, boolean sync, DescriptionStore store)
+            throws IOException {
+        if (store != null) {
+            store.sync(sync); // the file must hold everything the snapshot points to
+        }
+        int count = products.size();
+        long indexOffset = HEADER_SIZE;
+        long dataOffset = indexOffset + (long) count * Long.BYTES;
+        long[] offsets = new long[count];
+        CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            long position = dataOffset;
+            channel.position(dataOffset);
+
+            int i = 0;
+            for (Product product : products) {
+                if (i == count) {
+                    throw new ConcurrentModificationException("Product collection grew while writing snapshot");
+                }
+                byte[] id = encode(product.getId());
+                byte[] name = encode(product.getName());
+                byte[] category = encode(product.getCategory());
+                DescriptionStore.Ref cold = product.getColdDescription();
+                long coldOffset = cold != null && store != null ? cold.offsetIn(store) : -1;
+                if (coldOffset < 0) {
+                    cold = null;
+                }
+                byte[] description = cold != null ? null : encode(product.getDescription());
+                int recordSize = stringSize(id) + stringSize(name) + Double.BYTES + Integer.BYTES
+                        + stringSize(category) + (cold != null ? COLD_SIZE : stringSize(description));
+
+                if (buffer.remaining() < recordSize) {
+                    position += flush(channel, buffer, crc);
+                    if (buffer.capacity() < recordSize) {
+                        buffer = ByteBuffer.allocate(recordSize);
+                    }
+                }
+
+                offsets[i++] = position + buffer.position();
+                putString(buffer, id);
+                putString(buffer, name);
+                buffer.putDouble(product.getPrice());
+                buffer.putInt(product.getQuantity());
+                putString(buffer, category);
+                if (cold != null) {
+                    buffer.putInt(COLD_DESCRIPTION);
+                    buffer.putLong(coldOffset);
+                    buffer.putInt(cold.length);
+                } else {
+                    putString(buffer, description);
+                }
+            }
+            if (i != count) {
+                throw new ConcurrentModificationException("Product collection shrank while writing snapshot");
+            }
+            position += flush(channel, buffer, crc);
+            long dataLength = position - dataOffset;
+
+            ByteBuffer index = ByteBuffer.allocate(count * Long.BYTES);
+            index.asLongBuffer().put(offsets);
+            crc.update(index.duplicate());
+            writeFully(channel, index, indexOffset);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(count);
+            header.putInt(store != null ? store.getGeneration() : 0);
+            header.putLong(indexOffset);
+            header.putLong(dataOffset);
+            header.putLong(dataLength);
+            header.putLong(crc.getValue());
+            header.flip();
+            writeFully(channel, header, 0);
+
+            if (sync) {
+                channel.force(true);
+            }
+            return position;
+        }
+    }
+
+    // Write all products to a temporary file and atomically replace the target
+    public static long writeAtomically(Collection<Product> products, File file) throws IOException {
+        return writeAtomically(products, file, true);
+    }
+
+    public static long writeAtomically(Collection<Product> products, File file, boolean sync) throws IOException {
+        return writeAtomically(products, file, sync, null);
+    }
+
+    static long writeAtomically(Collection<Product> products, File file, boolean sync, DescriptionStore store)
+            throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        long size = write(products, temp, sync, store);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (sync) {
+            syncDirectory(file);
+        }
+        return size;
+    }
+
+    // Force the directory entry of a file that was just renamed into place, so the rename survives
+    // a crash before the caller goes on (e.g. truncates the journal the new snapshot replaces)
+    // Windows cannot open a directory as a channel; its renames are written through already
+    static void syncDirectory(File file) throws IOException {
+        if (File.separatorChar == '\\') {
+            return;
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    // Load every product of a snapshot into a new map keyed by product ID
+    public static Map<String, Product> read(File file) throws IOException {
+        // Size the map from the header so loading never rehashes
+        int count = readRecordCount(file);
+        Map<String, Product> products = new HashMap<>((int) Math.min(Integer.MAX_VALUE, count * 4L / 3 + 1));
+        read(file, products);
+        return products;
+    }
+
+    // Load every product of a snapshot into the given map, returns the number of records read
+    // Descriptions kept in a description file are read from it when they are asked for
+    public static int read(File file, Map<String, Product> products) throws IOException {
+        return read(file, products, null);
+    }
+
+    // Load a snapshot whose description file is already open as the given store (null to open it here)
+    static int read(File file, Map<String, Product> products, DescriptionStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Snapshot is truncated: " + file);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an inventory snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            int count = header.getInt();
+            int generation = header.getInt();
+            if (store != null && generation != 0 && store.getGeneration() != generation) {
+                throw new IOException("Snapshot refers to description file " + generation + ", not "
+                        + store.getGeneration() + ": " + file);
+            }
+            long indexOffset = header.getLong();
+            long dataOffset = header.getLong();
+            long dataLength = header.getLong();
+            long expectedCrc = header.getLong();
+            if (count < 0 || indexOffset + (long) count * Long.BYTES > fileSize || dataOffset + dataLength > fileSize) {
+                throw new IOException("Snapshot header is corrupt: " + file);
+            }
+
+            // Verify the checksum before touching any record
+            CRC32 crc = new CRC32();
+            for (long start = dataOffset; start < dataOffset + dataLength; start += MAP_WINDOW_SIZE) {
+                long size = Math.min(MAP_WINDOW_SIZE, dataOffset + dataLength - start);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, size));
+            }
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) count * Long.BYTES);
+            crc.update(index.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+
+            long dataEnd = dataOffset + dataLength;
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < count; i++) {
+                long offset = index.getLong(i * Long.BYTES);
+                long recordEnd = i + 1 < count ? index.getLong((i + 1) * Long.BYTES) : dataEnd;
+                if (offset < dataOffset || recordEnd > dataEnd || recordEnd < offset) {
+                    throw new IOException("Snapshot index is corrupt: " + file);
+                }
+                if (window == null || offset < windowStart || recordEnd > windowStart + window.capacity()) {
+                    windowStart = offset;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_WINDOW_SIZE, dataEnd - offset));
+                    window.order(ByteOrder.BIG_ENDIAN);
+                }
+                window.position((int) (offset - windowStart));
+
+                String id = getString(window, scratch);
+                String name = getString(window, scratch);
+                double price = window.getDouble();
+                int quantity = window.getInt();
+                String category = getString(window, scratch);
+                if (window.getInt(window.position()) == COLD_DESCRIPTION) {
+                    window.getInt();
+                    long descriptionOffset = window.getLong();
+                    int descriptionLength = window.getInt();
+                    if (generation == 0 || descriptionLength < 0) {
+                        throw new IOException("Snapshot record is corrupt: " + file);
+                    }
+                    if (store == null) {
+                        store = new DescriptionStore(file.getPath(), generation, DescriptionStore.DEFAULT_CACHE_BYTES);
+                    }
+                    Product product = new Product(id, name, price, quantity, category, null);
+                    product.setColdDescription(new DescriptionStore.Ref(store, descriptionOffset, descriptionLength));
+                    products.put(id, product);
+                } else {
+                    String description = getString(window, scratch);
+                    products.put(id, new Product(id, name, price, quantity, category, description));
+                }
+            }
+            return count;
+        }
+    }
+
+    // Number of products recorded in a snapshot header, without loading the records
+    public static int readRecordCount(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an inventory snapshot: " + file);
+            }
+            header.getInt();
+            return header.getInt();
+        }
+    }
+
+    // Description file generation a snapshot refers to, 0 if it keeps every description inline
+    static int readDescriptionGeneration(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an inventory snapshot: " + file);
+            }
+            header.getInt();
+            header.getInt();
+            return header.getInt();
+        }
+    }
+
+    // True if the file is a binary snapshot
+    public static boolean isSnapshot(File file) throws IOException {
+        return readMagic(file) == MAGIC;
+    }
+
+    // True if the file is a legacy Java-serialized inventory.dat
+    public static boolean isLegacy(File file) throws IOException {
+        return readMagic(file) == LEGACY_MAGIC;
+    }
+
+    // Load a legacy Java-serialized inventory file
+    @SuppressWarnings("unchecked")
+    public static Map<String, Product> readLegacy(File file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (Map<String, Product>) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Legacy inventory file is unreadable: " + e.getMessage(), e);
+        }
+    }
+
+    // One-shot migration of a legacy inventory file to the binary format
+    // The original file is kept next to the new one with a ".legacy" suffix
+    public static int migrate(File legacyFile) throws IOException {
+        return migrate(legacyFile, readLegacy(legacyFile));
+    }
+
+    // Migration for callers that have already loaded the legacy contents
+    public static int migrate(File legacyFile, Map<String, Product> products) throws IOException {
+        File backup = new File(legacyFile.getPath() + ".legacy");
+        Files.copy(legacyFile.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        writeAtomically(products.values(), legacyFile);
+        return products.size();
+    }
+
+    // Command line migrator: java ProductSnapshot [inventory.dat]
+    public static void main(String[] args) {
+        File file = new File(args.length > 0 ? args[0] : "inventory.dat");
+        try {
+            if (!file.exists()) {
+                System.out.println("Nothing to migrate: " + file + " does not exist");
+            } else if (isSnapshot(file)) {
+                System.out.println(file + " is already in the binary snapshot format");
+            } else {
+                int count = migrate(file);
+                System.out.println("Migrated " + count + " product(s); original kept as " + file + ".legacy");
+            }
+        } catch (IOException e) {
+            System.err.println("Migration failed: " + e.getMessage());
+        }
+    }
+
+    private static int readMagic(File file) throws IOException {
+        if (file.length() < 4) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt();
+        }
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer, byte[] scratch) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IOException("Snapshot record is corrupt");
+        }
+        if (length <= scratch.length) {
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.*;
+
+/**
+ * ProductWriter class streams products to a CSV or JSON Lines file in the layout ProductReader reads
+ * CSV output starts with a header row; fields are quoted only when they need to be.
+ */
+public class ProductWriter implements Closeable {
+    private final Writer out;
+    private final ProductImporter.Format format;
+    private boolean headerWritten;
+    
+    public ProductWriter(Writer out, ProductImporter.Format format) {
+        this.out = out;
+        this.format = format;
+    }
+    
+    // Write one product as one record
+    public void write(Product product) throws IOException {
+        if (format == ProductImporter.Format.CSV) {
+            writeCsv(product);
+        } else {
+            writeJson(product);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    private void writeCsv(Product product) throws IOException {
+        if (!headerWritten) {
+            out.write(String.join(",", ProductReader.COLUMNS));
+            out.write('\n');
+            headerWritten = true;
+        }
+        writeCsvField(product.getId());
+        out.write(',');
+        writeCsvField(product.getName());
+        out.write(',');
+        out.write(Double.toString(product.getPrice()));
+        out.write(',');
+        out.write(Integer.toString(product.getQuantity()));
+        out.write(',');
+        writeCsvField(product.getCategory());
+        out.write(',');
+        writeCsvField(product.getDescription());
+        out.write('\n');
+    }
+    
+    private void writeCsvField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = !value.isEmpty() && (value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ');
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+    
+    private void writeJson(Product product) throws IOException {
+        out.write("{\"id\":");
+        writeJsonString(product.getId());
+        out.write(",\"name\":");
+        writeJsonString(product.getName());
+        out.write(",\"price\":");
+        out.write(Double.toString(product.getPrice()));
+        out.write(",\"quantity\":");
+        out.write(Integer.toString(product.getQuantity()));
+        out.write(",\"category\":");
+        writeJsonString(product.getCategory());
+        out.write(",\"description\":");
+        writeJsonString(product.getDescription());
+        out.write("}\n");
+    }
+    
+    private void writeJsonString(String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
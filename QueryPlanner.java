@@ -0,0 +1,347 @@
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * QueryPlanner class runs a ProductQuery on an inventory's indexes
+ * Each indexed predicate is a candidate source: the category index (its size is known), the
+ * name trigram index (its smallest posting set bounds the matches) and the price, quantity and
+ * value orderings, whose ranges are counted only up to the best estimate so far, so a wide range
+ * costs no more to plan than the narrowest source. The source with the fewest candidates drives
+ * the query. Other sources at most INTERSECT_RATIO times its size are intersected with it by
+ * product ID before anything is looked up; every predicate is then checked on the product
+ * itself. When even the best source would return a large part of the inventory, walking the
+ * stripes is cheaper than a lookup per candidate, and the query scans instead.
+ *
+ * Sources that walk an ordering hand out products in that order, so a query sorted the same way
+ * stops at its limit instead of sorting; an unselective query with an order and a limit walks
+ * the order's index the same way ("the 10 most valuable products").
+ *
+ * Indexes are read without locks, like the other searches: a product changing during the query
+ * is checked in its current version and may be missed, but is never returned twice.
+ */
+final class QueryPlanner {
+    private static final int INTERSECT_RATIO = 2;
+    private static final int SCAN_FRACTION = 4; // a source must hold under 1/4 of the products to drive
+    private static final int FIRST_COUNT = 64;
+    
+    private final ProductNameIndex names;
+    private final CategoryIndex categories;
+    private final Function<ProductOrder, ProductOrderIndex> orderIndexes; // built on first use
+    private final Function<String, Product> finder;
+    private final Consumer<Consumer<Product>> scanner;
+    private final IntSupplier size;
+    
+    QueryPlanner(ProductNameIndex names, CategoryIndex categories, Function<ProductOrder, ProductOrderIndex> orderIndexes,
+                 Function<String, Product> finder, Consumer<Consumer<Product>> scanner, IntSupplier size) {
+        this.names = names;
+        this.categories = categories;
+        this.orderIndexes = orderIndexes;
+        this.finder = finder;
+        this.scanner = scanner;
+        this.size = size;
+    }
+    
+    // Products matching the query, in its order and up to its limit
+    List<Product> run(ProductQuery query) {
+        return plan(query).execute();
+    }
+    
+    // How run() would answer the query right now
+    String explain(ProductQuery query) {
+        return query + " => " + plan(query);
+    }
+    
+    private Plan plan(ProductQuery query) {
+        int total = size.getAsInt();
+        long scanLimit = total / SCAN_FRACTION;
+        List<Source> sources = new ArrayList<>();
+        String category = query.getCategory();
+        if (category != null) {
+            sources.add(new IdSource("category index", categories.productCount(category),
+                    () -> categories.productIds(category)));
+        }
+        String name = query.getNameContains();
+        if (name != null) {
+            sources.add(new IdSource("name index", names.estimate(name), () -> names.search(name)));
+        }
+        long best = total;
+        for (Source source : sources) {
+            best = Math.min(best, source.estimate);
+        }
+        List<RangeSource> ranges = new ArrayList<>();
+        if (query.hasPriceRange()) {
+            ranges.add(new RangeSource(orderIndexes.apply(ProductOrder.PRICE), query.getMinPrice(), query.getMaxPrice()));
+        }
+        if (query.hasQuantityRange()) {
+            ranges.add(new RangeSource(orderIndexes.apply(ProductOrder.QUANTITY), query.getMinQuantity(),
+                    query.getMaxQuantity()));
+        }
+        if (query.hasValueRange()) {
+            ranges.add(new RangeSource(orderIndexes.apply(ProductOrder.VALUE), query.getMinValueCents(),
+                    query.getMaxValueCents()));
+        }
+        // Count the ranges side by side with a doubling cap, so a wide range is walked no further
+        // than about twice the narrowest one
+        long cap = Math.min(best, scanLimit);
+        for (long step = FIRST_COUNT; !ranges.isEmpty(); step *= 2) {
+            long limit = Math.min(step, cap);
+            boolean ended = false;
+            for (RangeSource range : ranges) {
+                ended |= range.count(limit) < limit;
+            }
+            if (ended || limit == cap) {
+                break;
+            }
+        }
+        for (RangeSource range : ranges) {
+            best = Math.min(best, range.estimate);
+            sources.add(range);
+        }
+        
+        Plan plan = new Plan(query);
+        for (Source source : sources) {
+            if (source.estimate < scanLimit && (plan.driver == null || source.estimate < plan.driver.estimate)) {
+                plan.driver = source;
+            }
+        }
+        ProductOrder order = query.getOrder();
+        if (plan.driver == null) {
+            if (order != null && query.getLimit() < total) {
+                plan.driver = new RangeSource(orderIndexes.apply(order), total);
+            } else {
+                plan.driver = new ScanSource(total);
+            }
+        } else if (order != null || query.getLimit() >= plan.driver.estimate) {
+            // (an unsorted query that stops at its limit soon is better off without building sets)
+            for (Source source : sources) {
+                long most = plan.driver.estimate * INTERSECT_RATIO;
+                if (source != plan.driver && source.count(most + 1) <= most) {
+                    plan.intersected.add(source);
+                }
+            }
+        }
+        if (plan.driver instanceof RangeSource && ((RangeSource) plan.driver).index.getOrder() == order) {
+            ((RangeSource) plan.driver).descending = query.isDescending();
+            plan.inOrder = true;
+        }
+        return plan;
+    }
+    
+    // How a query runs: the driving source, the sources intersected with it and whether the
+    // driver already hands out products in the query's order
+    private static final class Plan {
+        final ProductQuery query;
+        Source driver;
+        final List<Source> intersected = new ArrayList<>();
+        boolean inOrder;
+        
+        Plan(ProductQuery query) {
+            this.query = query;
+        }
+        
+        List<Product> execute() {
+            int limit = query.getLimit();
+            List<Product> result = new ArrayList<>();
+            if (limit == 0) {
+                return result;
+            }
+            List<Set<String>> sets = new ArrayList<>(intersected.size());
+            for (Source source : intersected) {
+                Set<String> ids = new HashSet<>((int) Math.min(Integer.MAX_VALUE, source.estimate * 4 / 3 + 1));
+                source.collectIds(ids);
+                sets.add(ids);
+            }
+            boolean stopAtLimit = inOrder || query.getOrder() == null;
+            driver.forEach(id -> {
+                for (Set<String> ids : sets) {
+                    if (!ids.contains(id)) {
+                        return false;
+                    }
+                }
+                return true;
+            }, product -> {
+                if (query.matches(product)) {
+                    result.add(product);
+                }
+                return !stopAtLimit || result.size() < limit;
+            });
+            if (!inOrder && query.getOrder() != null) {
+                Comparator<Product> comparator = ProductOrderIndex.productComparator(query.getOrder());
+                result.sort(query.isDescending() ? comparator.reversed() : comparator);
+            }
+            return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(driver.toString());
+            for (Source source : intersected) {
+                text.append(", intersected with ").append(source);
+            }
+            text.append(driver instanceof ScanSource ? ", checking" : ", then checking").append(" every predicate");
+            if (query.getOrder() != null) {
+                text.append(inOrder ? ", already in " : ", sorted by ").append(query.getOrder().name().toLowerCase())
+                        .append(inOrder ? " order" : "");
+            }
+            if (query.getLimit() != Integer.MAX_VALUE) {
+                text.append(inOrder || query.getOrder() == null ? ", stopping at " : ", keeping the first ")
+                        .append(query.getLimit());
+            }
+            return text.toString();
+        }
+    }
+    
+    // Candidates of one indexed predicate (or of every product)
+    private abstract static class Source {
+        final String label;
+        long estimate;
+        
+        Source(String label, long estimate) {
+            this.label = label;
+            this.estimate = estimate;
+        }
+        
+        // Number of candidates, counted no further than the cap where counting costs a walk
+        long count(long cap) {
+            return estimate;
+        }
+        
+        abstract void collectIds(Set<String> ids);
+        
+        // Hand the current version of every candidate whose ID passes the filter to the sink,
+        // until it returns false
+        abstract void forEach(Predicate<String> filter, Predicate<Product> sink);
+        
+        @Override
+        public String toString() {
+            return label + " (" + estimate + " candidates)";
+        }
+    }
+    
+    // Candidates from an index that returns product IDs
+    private final class IdSource extends Source {
+        private final Supplier<List<String>> ids;
+        
+        IdSource(String label, long estimate, Supplier<List<String>> ids) {
+            super(label, estimate);
+            this.ids = ids;
+        }
+        
+        @Override
+        void collectIds(Set<String> set) {
+            set.addAll(ids.get());
+        }
+        
+        @Override
+        void forEach(Predicate<String> filter, Predicate<Product> sink) {
+            for (String id : ids.get()) {
+                if (filter.test(id)) {
+                    Product product = finder.apply(id);
+                    if (product != null && !sink.test(product)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+    
+    // Candidates from a range (or the whole) of an ordering, walked in order
+    private final class RangeSource extends Source {
+        final ProductOrderIndex index;
+        private final NavigableMap<ProductOrderIndex.Key, Product> range;
+        private final boolean whole;
+        private long countedTo; // cap of the last count, 0 before counting
+        boolean descending;
+        
+        // Not counted yet, so its estimate is unknown (Long.MAX_VALUE)
+        RangeSource(ProductOrderIndex index, double low, double high) {
+            super(index.getOrder().name().toLowerCase() + " index", Long.MAX_VALUE);
+            this.index = index;
+            this.range = index.range(low, high);
+            this.whole = false;
+        }
+        
+        // Every product, in the index's order
+        RangeSource(ProductOrderIndex index, long total) {
+            super(index.getOrder().name().toLowerCase() + " index", total);
+            this.index = index;
+            this.range = index.entries(false);
+            this.whole = true;
+            this.countedTo = Long.MAX_VALUE;
+        }
+        
+        @Override
+        long count(long cap) {
+            if (cap > countedTo && estimate >= countedTo) {
+                long counted = 0;
+                Iterator<ProductOrderIndex.Key> keys = range.keySet().iterator();
+                while (counted < cap && keys.hasNext()) {
+                    keys.next();
+                    counted++;
+                }
+                estimate = counted;
+                countedTo = cap;
+            }
+            return estimate;
+        }
+        
+        @Override
+        void collectIds(Set<String> ids) {
+            for (ProductOrderIndex.Key key : range.keySet()) {
+                ids.add(key.id);
+            }
+        }
+        
+        @Override
+        void forEach(Predicate<String> filter, Predicate<Product> sink) {
+            for (ProductOrderIndex.Key key : (descending ? range.descendingMap() : range).keySet()) {
+                if (filter.test(key.id)) {
+                    Product product = finder.apply(key.id);
+                    if (product != null && index.sortsAt(key, product) && !sink.test(product)) {
+                        return;
+                    }
+                }
+            }
+        }
+        
+        @Override
+        public String toString() {
+            if (whole) {
+                return "walk of the " + label;
+            }
+            return label + " (" + (countedTo == 0 ? "not counted" : estimate >= countedTo ? "at least " + countedTo
+                    : Long.toString(estimate)) + " candidates)";
+        }
+    }
+    
+    // Every product, stripe by stripe
+    private final class ScanSource extends Source {
+        ScanSource(long estimate) {
+            super("full scan", estimate);
+        }
+        
+        @Override
+        void collectIds(Set<String> ids) {
+            scanner.accept(product -> ids.add(product.getId()));
+        }
+        
+        @Override
+        void forEach(Predicate<String> filter, Predicate<Product> sink) {
+            boolean[] done = new boolean[1];
+            scanner.accept(product -> {
+                if (!done[0] && filter.test(product.getId())) {
+                    done[0] = !sink.test(product);
+                }
+            });
+        }
+        
+        @Override
+        public String toString() {
+            return label + " of " + estimate + " products";
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * ReportEngine class computes an InventoryReport in a single pass over the products
+ * Every product is read once and folded into counters for all reports at the same time. Large
+ * catalogs are split with the product collection's spliterator and folded in parallel on the
+ * common fork-join pool; each leaf fills its own accumulator and the halves are merged, so no
+ * counter is shared between threads.
+ *
+ * Inventory runs it over an InventorySnapshot, so every report reflects one version of the
+ * inventory. Over a live collection the pass is weakly consistent: concurrent changes may or
+ * may not be seen, but every product present for the whole pass is counted exactly once.
+ */
+final class ReportEngine {
+    static final int PARALLEL_THRESHOLD = 100_000; // smaller catalogs are folded on the calling thread
+    private static final int LEAF_SIZE = 16_384;
+    
+    private static final long[] PRICE_BOUNDS = {1_000, 5_000, 10_000, 50_000, 100_000}; // cents
+    private static final String[] PRICE_LABELS = {"$0.00 - $9.99", "$10.00 - $49.99", "$50.00 - $99.99",
+            "$100.00 - $499.99", "$500.00 - $999.99", "$1000.00 and up"};
+    private static final long[] QUANTITY_BOUNDS = {1, 10, 50, 100, 500};
+    private static final String[] QUANTITY_LABELS = {"0 units", "1 - 9 units", "10 - 49 units", "50 - 99 units",
+            "100 - 499 units", "500 units and up"};
+    
+    private ReportEngine() {
+    }
+    
+    // Compute the report over the products, lowStock decides which products are below threshold
+    static InventoryReport run(Collection<Product> products, Predicate<Product> lowStock) {
+        boolean parallel = products.size() >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+        return run(products, lowStock, parallel ? ForkJoinPool.commonPool() : null);
+    }
+    
+    // Compute the report on a fork-join pool, or on the calling thread when the pool is null
+    static InventoryReport run(Collection<Product> products, Predicate<Product> lowStock, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        Accumulator total;
+        if (pool == null) {
+            total = new Accumulator(lowStock);
+            products.forEach(total::add);
+        } else {
+            total = pool.invoke(new FoldTask(products.spliterator(), lowStock));
+        }
+        return total.toReport(System.nanoTime() - start);
+    }
+    
+    // Combine reports of disjoint sets of products (e.g. the partitions of an inventory)
+    // The elapsed time of the result is measured from start, a System.nanoTime() value
+    static InventoryReport merge(List<InventoryReport> reports, long start) {
+        Accumulator total = new Accumulator(null);
+        for (InventoryReport report : reports) {
+            total.add(report);
+        }
+        return total.toReport(System.nanoTime() - start);
+    }
+    
+    // Splits its spliterator until the pieces are small enough, then folds them
+    private static final class FoldTask extends RecursiveTask<Accumulator> {
+        private final Spliterator<Product> spliterator;
+        private final Predicate<Product> lowStock;
+        
+        FoldTask(Spliterator<Product> spliterator, Predicate<Product> lowStock) {
+            this.spliterator = spliterator;
+            this.lowStock = lowStock;
+        }
+        
+        @Override
+        protected Accumulator compute() {
+            Spliterator<Product> prefix;
+            if (spliterator.estimateSize() > LEAF_SIZE && (prefix = spliterator.trySplit()) != null) {
+                FoldTask left = new FoldTask(prefix, lowStock);
+                left.fork();
+                Accumulator right = new FoldTask(spliterator, lowStock).compute();
+                return right.merge(left.join());
+            }
+            Accumulator accumulator = new Accumulator(lowStock);
+            spliterator.forEachRemaining(accumulator::add);
+            return accumulator;
+        }
+    }
+    
+    // Running counters of every report for one part of the catalog
+    private static final class Accumulator {
+        final Predicate<Product> lowStock;
+        int products;
+        long quantity;
+        long valueCents;
+        final List<Product> lowStockProducts = new ArrayList<>();
+        final Map<String, long[]> categories = new HashMap<>(); // count, quantity, value, low stock
+        final long[][] priceBuckets = new long[PRICE_LABELS.length][2]; // count, value
+        final long[][] quantityBuckets = new long[QUANTITY_LABELS.length][2];
+        
+        Accumulator(Predicate<Product> lowStock) {
+            this.lowStock = lowStock;
+        }
+        
+        void add(Product product) {
+            // Quantity and price are read once, so every counter sees the same values
+            int productQuantity = product.getQuantity();
+            long priceCents = Money.toCents(product.getPrice());
+            long value = priceCents * productQuantity;
+            boolean low = lowStock.test(product);
+            
+            products++;
+            quantity += productQuantity;
+            valueCents += value;
+            if (low) {
+                lowStockProducts.add(product);
+            }
+            String category = product.getCategory() == null ? "" : product.getCategory();
+            long[] stats = categories.computeIfAbsent(category, key -> new long[4]);
+            stats[0]++;
+            stats[1] += productQuantity;
+            stats[2] += value;
+            stats[3] += low ? 1 : 0;
+            addTo(priceBuckets[bucketOf(PRICE_BOUNDS, priceCents)], value);
+            addTo(quantityBuckets[bucketOf(QUANTITY_BOUNDS, productQuantity)], value);
+        }
+        
+        void add(InventoryReport report) {
+            products += report.getTotalProducts();
+            quantity += report.getTotalQuantity();
+            valueCents += report.getTotalValueCents();
+            lowStockProducts.addAll(report.getLowStockProducts());
+            for (CategoryStats stats : report.getCategories()) {
+                long[] counters = categories.computeIfAbsent(stats.getCategory(), key -> new long[4]);
+                counters[0] += stats.getProductCount();
+                counters[1] += stats.getTotalQuantity();
+                counters[2] += stats.getTotalValueCents();
+                counters[3] += stats.getLowStockCount();
+            }
+            addBuckets(priceBuckets, report.getPriceDistribution());
+            addBuckets(quantityBuckets, report.getQuantityDistribution());
+        }
+        
+        Accumulator merge(Accumulator other) {
+            products += other.products;
+            quantity += other.quantity;
+            valueCents += other.valueCents;
+            lowStockProducts.addAll(other.lowStockProducts);
+            other.categories.forEach((category, counters) -> {
+                long[] stats = categories.computeIfAbsent(category, key -> new long[4]);
+                for (int i = 0; i < stats.length; i++) {
+                    stats[i] += counters[i];
+                }
+            });
+            addBuckets(priceBuckets, other.priceBuckets);
+            addBuckets(quantityBuckets, other.quantityBuckets);
+            return this;
+        }
+        
+        InventoryReport toReport(long elapsedNanos) {
+            lowStockProducts.sort(Comparator.comparing(Product::getId));
+            List<CategoryStats> stats = new ArrayList<>(categories.size());
+            for (Map.Entry<String, long[]> entry : new TreeMap<>(categories).entrySet()) {
+                long[] counters = entry.getValue();
+                stats.add(new CategoryStats(entry.getKey(), (int) counters[0], counters[1], counters[2],
+                        (int) counters[3]));
+            }
+            return new InventoryReport(products, quantity, valueCents, lowStockProducts, stats,
+                    buckets(PRICE_LABELS, priceBuckets), buckets(QUANTITY_LABELS, quantityBuckets), elapsedNanos);
+        }
+    }
+    
+    // Index of the first bucket whose upper bound is above the value
+    private static int bucketOf(long[] bounds, long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value >= bounds[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+    
+    private static void addTo(long[] bucket, long value) {
+        bucket[0]++;
+        bucket[1] += value;
+    }
+    
+    private static void addBuckets(long[][] counters, long[][] other) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i][0] += other[i][0];
+            counters[i][1] += other[i][1];
+        }
+    }
+    
+    private static void addBuckets(long[][] counters, List<InventoryReport.Bucket> buckets) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i][0] += buckets.get(i).getProductCount();
+            counters[i][1] += buckets.get(i).getTotalValueCents();
+        }
+    }
+    
+    private static List<InventoryReport.Bucket> buckets(String[] labels, long[][] counters) {
+        List<InventoryReport.Bucket> buckets = new ArrayList<>(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            buckets.add(new InventoryReport.Bucket(labels[i], (int) counters[i][0], counters[i][1]));
+        }
+        return buckets;
+    }
+}
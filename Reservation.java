@@ -0,0 +1,77 @@
+/**
+ * Reservation class is a hold on some units of a product, taken with Inventory.reserveStock
+ * While it is active its units are not available to anyone else (see getAvailableQuantity),
+ * but they stay in the product's quantity until the reservation is confirmed. A reservation
+ * that is neither confirmed nor released before its deadline expires and its units become
+ * available again. Reservations live in memory only: after a restart they are gone, which
+ * has the same effect as expiring.
+ */
+public class Reservation {
+    
+    // State of the reservation; every state but ACTIVE is final
+    public enum Status {
+        ACTIVE,     // the units are held
+        CONFIRMED,  // the units were taken out of stock
+        RELEASED,   // the hold was given up (or its product was deleted)
+        EXPIRED     // the deadline passed before the reservation was confirmed
+    }
+    
+    private final String id;
+    private final String productId;
+    private final int quantity;
+    private final long expiresAtMillis;
+    private final long deadlineNanos; // System.nanoTime() deadline, immune to wall clock changes
+    private volatile Status status = Status.ACTIVE; // only changed under the product's lock stripe
+    
+    Reservation(String id, String productId, int quantity, long ttlMillis) {
+        this.id = id;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.expiresAtMillis = System.currentTimeMillis() + ttlMillis;
+        this.deadlineNanos = System.nanoTime() + ttlMillis * 1_000_000L;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getProductId() {
+        return productId;
+    }
+    
+    // Units held
+    public int getQuantity() {
+        return quantity;
+    }
+    
+    // Wall clock time (epoch milliseconds) at which the reservation expires
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public boolean isActive() {
+        return status == Status.ACTIVE;
+    }
+    
+    long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+    
+    // True once the deadline has passed, even if the expiry has not been processed yet
+    boolean isPastDeadline() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+    
+    void setStatus(Status status) {
+        this.status = status;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: %d x %s, %s", id, quantity, productId, status);
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReservationTracker class keeps the active stock reservations and the units they hold per product
+ * Like the other indexes, it is only changed under the lock stripe of the product's ID, so
+ * checking the available quantity and taking a hold on it is a single step per product and
+ * reservations of different products never wait for each other. Finished reservations are
+ * dropped right away; a deleted product releases its holds.
+ */
+class ReservationTracker implements InventoryIndex {
+    private final Map<String, Reservation> active = new ConcurrentHashMap<>(); // reservation ID -> reservation
+    private final Map<String, Holds> holds = new ConcurrentHashMap<>(); // product ID -> holds
+    // IDs carry the start time so that a reservation ID from before a restart never matches a new one
+    private final String idPrefix = "R" + Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final AtomicLong nextId = new AtomicLong(1);
+    
+    // Active reservations of one product
+    private static final class Holds {
+        int units;
+        final Set<Reservation> reservations = new HashSet<>();
+    }
+    
+    @Override
+    public void productAdded(Product product) {
+        // A new product has no holds
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        Holds removed = holds.remove(product.getId());
+        if (removed != null) {
+            for (Reservation reservation : removed.reservations) {
+                active.remove(reservation.getId());
+                reservation.setStatus(Reservation.Status.RELEASED);
+            }
+        }
+    }
+    
+    @Override
+    public void productUpdated(Product before, Product after) {
+        // Holds follow the product ID; a manual correction below the held units leaves nothing available
+    }
+    
+    @Override
+    public void cleared() {
+        for (Holds removed : holds.values()) {
+            for (Reservation reservation : removed.reservations) {
+                reservation.setStatus(Reservation.Status.RELEASED);
+            }
+        }
+        holds.clear();
+        active.clear();
+    }
+    
+    // Hold units of a product if that many are available, null if not
+    Reservation reserve(Product product, int quantity, long ttlMillis) {
+        String productId = product.getId();
+        Holds productHolds = holds.get(productId);
+        int held = productHolds == null ? 0 : productHolds.units;
+        if (quantity > product.getQuantity() - held) {
+            return null;
+        }
+        if (productHolds == null) {
+            productHolds = new Holds();
+            holds.put(productId, productHolds);
+        }
+        Reservation reservation = new Reservation(idPrefix + nextId.getAndIncrement(), productId, quantity, ttlMillis);
+        productHolds.units += quantity;
+        productHolds.reservations.add(reservation);
+        active.put(reservation.getId(), reservation);
+        return reservation;
+    }
+    
+    // End an active reservation, giving its units back to the available quantity
+    void finish(Reservation reservation, Reservation.Status status) {
+        active.remove(reservation.getId());
+        reservation.setStatus(status);
+        Holds productHolds = holds.get(reservation.getProductId());
+        if (productHolds != null && productHolds.reservations.remove(reservation)) {
+            productHolds.units -= reservation.getQuantity();
+            if (productHolds.reservations.isEmpty()) {
+                holds.remove(reservation.getProductId());
+            }
+        }
+    }
+    
+    // Active reservation with this ID, null if there is none
+    Reservation get(String reservationId) {
+        return active.get(reservationId);
+    }
+    
+    // Units of a product held by active reservations
+    int held(String productId) {
+        Holds productHolds = holds.get(productId);
+        return productHolds == null ? 0 : productHolds.units;
+    }
+    
+    int activeCount() {
+        return active.size();
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * ScriptResult class holds the outcome of replaying a command script
+ * Counts, throughput and how many times the mutations were persisted
+ */
+public class ScriptResult {
+    private final long commands;
+    private final long failed;
+    private final long mutations;
+    private final long persists;
+    private final long elapsedNanos;
+    
+    public ScriptResult(long commands, long failed, long mutations, long persists, long elapsedNanos) {
+        this.commands = commands;
+        this.failed = failed;
+        this.mutations = mutations;
+        this.persists = persists;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    // Commands executed, successful or not (blank lines and comments are not counted)
+    public long getCommands() {
+        return commands;
+    }
+    
+    public long getFailed() {
+        return failed;
+    }
+    
+    // Commands that changed the inventory
+    public long getMutations() {
+        return mutations;
+    }
+    
+    // Times the inventory was persisted: once per mutation, or once per batch
+    public long getPersists() {
+        return persists;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    // Commands executed per second, including persistence and writing the output
+    public double getOpsPerSecond() {
+        return elapsedNanos == 0 ? 0 : commands * 1e9 / elapsedNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d command(s): %d failed, %d mutation(s) in %d persist(s), %.1f s (%.0f ops/sec)",
+                commands, failed, mutations, persists, elapsedNanos / 1e9, getOpsPerSecond());
+    }
+}
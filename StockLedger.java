@@ -0,0 +1,797 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * StockLedger class keeps the history of every product's quantity as an append-only list of
+ * StockMovements (product, signed change, time, reason)
+ * Each product's movements are packed into one byte array as two varints (zigzag change and
+ * reason in one, time since the previous movement in the other), usually 3-5 bytes a movement.
+ * Every CHECKPOINT_INTERVAL movements the product's quantity and time are noted with the offset
+ * they were reached at, so "quantity as of T" and "movements between T1 and T2" start decoding
+ * at the checkpoint before T (found by binary search) instead of at the first movement.
+ *
+ * Compaction bounds the size: movements older than the detail window are replaced by one ROLLUP
+ * per product and rollup period (their net change, at the time of the last one), and with a
+ * retention window, anything older than that is folded into an opening balance; history before
+ * the horizon that leaves can no longer be queried.
+ *
+ * With a file, movements are also appended to it in checksummed blocks (written when 64 KiB
+ * have collected, with a movement recorded a second or more after the last block, or on flush,
+ * which Inventory calls every second) and read back when the ledger is opened. File layout: magic "INVL", int version, long horizon, then blocks of
+ * [int payloadLength][int crc32][records]; records are DEFINE (code, product ID), BASE (code,
+ * opening quantity, time) and MOVE (code, the two varints of the movement); a BASE for a product
+ * that already has movements starts its history over. Compaction rewrites the file.
+ *
+ * Not thread-safe on its own: Inventory records, queries and compacts a product's movements
+ * under the product's lock stripe, and reconciles with every stripe locked. The file is written
+ * under the ledger's own lock, and rewritten while movements keep being recorded.
+ */
+final class StockLedger implements Closeable {
+    static final int CHECKPOINT_INTERVAL = 64; // movements decoded at most per point-in-time query
+    static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    static final int DEFAULT_DETAIL_DAYS = 90;
+    private static final int MAGIC = 0x494E564C; // "INVL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    static final long FLUSH_INTERVAL_MILLIS = 1000; // Inventory flushes the file this often
+    private static final byte RECORD_DEFINE = 1;
+    private static final byte RECORD_BASE = 2;
+    private static final byte RECORD_MOVE = 3;
+    private static final StockMovement.Reason[] REASONS = StockMovement.Reason.values();
+    private static final long[] NO_LONGS = new long[0];
+    private static final int[] NO_INTS = new int[0];
+
+    /**
+     * History class is one product's movements, packed, with their checkpoints
+     */
+    private static final class History {
+        final String id;
+        int code = -1; // code in the ledger file, -1 until the product is defined there
+        byte[] data = new byte[16];
+        int length;
+        int count;
+        long origin = Long.MIN_VALUE; // time decoding starts from, set by the first movement or an opening balance
+        long baseQuantity; // quantity at the origin
+        long lastTime = Long.MIN_VALUE;
+        long quantity;
+        long[] checkpointTimes = NO_LONGS;
+        long[] checkpointQuantities = NO_LONGS;
+        int[] checkpointOffsets = NO_INTS;
+        int checkpoints;
+        byte[] fileData; // data holding every movement handed to the file, guarded by the ledger
+        int fileLength; // bytes of data handed to the file, guarded by the ledger
+        boolean redefine; // compacted since the file was written; the file needs it again before more movements
+
+        History(String id) {
+            this.id = id;
+        }
+
+        // Start at an opening balance, before any movement
+        void open(long quantity, long time) {
+            baseQuantity = quantity;
+            this.quantity = quantity;
+            origin = time;
+            lastTime = time;
+        }
+
+        // Encode a movement, returns the offset its bytes start at
+        // A time earlier than the previous movement's is moved up to it, so times never go back
+        int append(int change, StockMovement.Reason reason, long time) {
+            if (lastTime == Long.MIN_VALUE) {
+                open(0, time);
+            }
+            time = Math.max(time, lastTime);
+            if (count > 0 && count % CHECKPOINT_INTERVAL == 0) {
+                if (checkpoints == checkpointTimes.length) {
+                    int capacity = Math.max(4, checkpoints * 2);
+                    checkpointTimes = Arrays.copyOf(checkpointTimes, capacity);
+                    checkpointQuantities = Arrays.copyOf(checkpointQuantities, capacity);
+                    checkpointOffsets = Arrays.copyOf(checkpointOffsets, capacity);
+                }
+                checkpointTimes[checkpoints] = lastTime;
+                checkpointQuantities[checkpoints] = quantity;
+                checkpointOffsets[checkpoints] = length;
+                checkpoints++;
+            }
+            if (data.length - length < 2 * 10) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 2 * 10));
+            }
+            int start = length;
+            length = writeVarLong(data, length, zigZag(change) << 4 | reason.ordinal());
+            length = writeVarLong(data, length, time - lastTime);
+            lastTime = time;
+            quantity += change;
+            count++;
+            return start;
+        }
+
+        // Quantity after every movement up to and including time
+        long quantityAt(long time) {
+            if (time >= lastTime) {
+                return quantity;
+            }
+            if (time < origin) {
+                return baseQuantity;
+            }
+            Decoder decoder = decoderAfter(lastCheckpoint(time, true));
+            while (decoder.next() && decoder.time <= time) {
+                decoder.quantity += decoder.change;
+            }
+            return decoder.quantity;
+        }
+
+        // Add the movements from fromMillis (inclusive) to toMillis (exclusive) to a list
+        void movements(long fromMillis, long toMillis, List<StockMovement> out) {
+            if (count == 0 || fromMillis > lastTime || toMillis <= fromMillis) {
+                return;
+            }
+            Decoder decoder = decoderAfter(lastCheckpoint(fromMillis, false));
+            while (decoder.next() && decoder.time < toMillis) {
+                if (decoder.time >= fromMillis) {
+                    out.add(new StockMovement(id, decoder.change, decoder.time, decoder.reason));
+                }
+            }
+        }
+
+        // Index of the last checkpoint taken at or before time (strictly before unless inclusive), -1 if none
+        int lastCheckpoint(long time, boolean inclusive) {
+            int low = 0;
+            int high = checkpoints - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long checkpoint = checkpointTimes[middle];
+                if (checkpoint < time || inclusive && checkpoint == time) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+
+        // Decoder positioned at a checkpoint (-1 for the origin)
+        Decoder decoderAfter(int checkpoint) {
+            Decoder decoder = new Decoder(data, length);
+            if (checkpoint < 0) {
+                decoder.position = 0;
+                decoder.time = origin;
+                decoder.quantity = baseQuantity;
+            } else {
+                decoder.position = checkpointOffsets[checkpoint];
+                decoder.time = checkpointTimes[checkpoint];
+                decoder.quantity = checkpointQuantities[checkpoint];
+            }
+            return decoder;
+        }
+
+        // A copy with old movements rolled up per period and the oldest folded into the opening
+        // balance, or null if compacting changes nothing
+        History compact(long detailCutoff, long rollupMillis, long retentionCutoff) {
+            if (count == 0 || origin >= detailCutoff) {
+                return null;
+            }
+            History compacted = new History(id);
+            compacted.code = code;
+            boolean changed = false;
+            long folded = baseQuantity;
+            long foldedUntil = origin;
+            int pending = 0; // movements of the open rollup period
+            long pendingPeriod = 0;
+            long pendingChange = 0;
+            long pendingTime = 0;
+            StockMovement.Reason pendingReason = null;
+            Decoder decoder = decoderAfter(-1);
+            while (decoder.next()) {
+                if (decoder.time < retentionCutoff) {
+                    folded += decoder.change;
+                    foldedUntil = retentionCutoff;
+                    changed = true;
+                    continue;
+                }
+                if (compacted.lastTime == Long.MIN_VALUE) {
+                    compacted.open(folded, foldedUntil);
+                }
+                long period = decoder.time < detailCutoff ? Math.floorDiv(decoder.time, rollupMillis) : Long.MIN_VALUE;
+                if (pending > 0 && period != pendingPeriod) {
+                    changed |= compacted.appendRollup(pending, pendingChange, pendingReason, pendingTime);
+                    pending = 0;
+                }
+                if (period == Long.MIN_VALUE) {
+                    compacted.append(decoder.change, decoder.reason, decoder.time);
+                } else {
+                    pendingPeriod = period;
+                    pendingChange = pending == 0 ? decoder.change : pendingChange + decoder.change;
+                    pendingReason = decoder.reason;
+                    pendingTime = decoder.time;
+                    pending++;
+                }
+            }
+            if (pending > 0) {
+                changed |= compacted.appendRollup(pending, pendingChange, pendingReason, pendingTime);
+            }
+            if (compacted.lastTime == Long.MIN_VALUE) {
+                compacted.open(folded, foldedUntil);
+            }
+            // Until the file is rewritten, movements recorded next are appended to it as following
+            // on from this copy's last movement; if that moved, the file gets the whole copy first
+            compacted.fileData = compacted.data;
+            compacted.fileLength = compacted.length;
+            compacted.redefine = code >= 0 && compacted.lastTime != lastTime;
+            return changed ? compacted : null;
+        }
+
+        // Append the movements of one rollup period, returns true unless that is the one movement as it was
+        boolean appendRollup(int movements, long change, StockMovement.Reason reason, long time) {
+            if (movements == 1) {
+                append((int) change, reason, time);
+                return false;
+            }
+            if (change != 0) { // a period that cancels out leaves no movement
+                append((int) change, StockMovement.Reason.ROLLUP, time);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Decoder class walks packed varints, and the movements of a history
+     */
+    private static final class Decoder {
+        final byte[] data;
+        final int limit;
+        int position;
+        long time;
+        long quantity;
+        int change;
+        StockMovement.Reason reason;
+
+        Decoder(byte[] data, int limit) {
+            this.data = data;
+            this.limit = limit;
+        }
+
+        // Decode the next movement into change, reason and time; false at the end
+        boolean next() {
+            if (position >= limit) {
+                return false;
+            }
+            long packed = readVarLong();
+            change = (int) unZigZag(packed >>> 4);
+            reason = REASONS[(int) (packed & 0xF)];
+            time += readVarLong();
+            return true;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Block class collects records until they are written to the file as one checksummed block
+     */
+    private static final class Block {
+        byte[] bytes = new byte[BLOCK_SIZE + 256];
+        int length;
+        final CRC32 crc = new CRC32();
+
+        // Give a product a code and write its opening balance
+        void define(History history, int code) {
+            byte[] id = history.id.getBytes(StandardCharsets.UTF_8);
+            ensure(1 + 5 + 5 + id.length);
+            bytes[length++] = RECORD_DEFINE;
+            length = writeVarLong(bytes, length, code);
+            length = writeVarLong(bytes, length, id.length);
+            System.arraycopy(id, 0, bytes, length, id.length);
+            length += id.length;
+            base(history, code);
+        }
+
+        void base(History history, int code) {
+            ensure(1 + 5 + 2 * 10);
+            bytes[length++] = RECORD_BASE;
+            length = writeVarLong(bytes, length, code);
+            length = writeVarLong(bytes, length, zigZag(history.baseQuantity));
+            length = writeVarLong(bytes, length, zigZag(history.origin));
+        }
+
+        // One MOVE record for each movement packed in data from start to end
+        void moves(int code, byte[] data, int start, int end) {
+            while (start < end) {
+                int next = skipVarLong(data, skipVarLong(data, start));
+                ensure(1 + 5 + next - start);
+                bytes[length++] = RECORD_MOVE;
+                length = writeVarLong(bytes, length, code);
+                System.arraycopy(data, start, bytes, length, next - start);
+                length += next - start;
+                start = next;
+            }
+        }
+
+        void ensure(int more) {
+            if (bytes.length - length < more) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+            }
+        }
+
+        // Write the records collected as one block and start the next
+        void writeTo(FileChannel channel) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            ByteBuffer frame = ByteBuffer.allocate(BLOCK_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(bytes, 0, length);
+            frame.putInt(length).putInt((int) crc.getValue()).put(bytes, 0, length).flip();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            length = 0;
+        }
+    }
+
+    private final Map<String, History> histories = new ConcurrentHashMap<>();
+    private final File file; // null keeps the ledger in memory only
+    private final long detailMillis;
+    private final long rollupMillis;
+    private final long retentionMillis; // 0 keeps rollups forever
+    private volatile long horizon = Long.MIN_VALUE; // history before this has been folded away
+    private FileChannel channel; // guarded by this
+    private final Block block = new Block(); // records not written yet, guarded by this
+    private long lastFlushMillis;
+    private int nextCode;
+    private final Object rewriting = new Object(); // held while the file is rewritten
+
+    // A ledger kept in a file (null for memory only) that keeps single movements for
+    // detailMillis, rolls older ones up per rollupMillis and drops rollups after retentionMillis
+    // (0 keeps them); an existing file is read back
+    StockLedger(File file, long detailMillis, long rollupMillis, long retentionMillis) throws IOException {
+        if (detailMillis < 0 || rollupMillis <= 0 || retentionMillis < 0
+                || retentionMillis > 0 && retentionMillis < detailMillis) {
+            throw new IllegalArgumentException("Invalid ledger windows: detail " + detailMillis + " ms, rollup "
+                    + rollupMillis + " ms, retention " + retentionMillis + " ms");
+        }
+        this.file = file;
+        this.detailMillis = detailMillis;
+        this.rollupMillis = rollupMillis;
+        this.retentionMillis = retentionMillis;
+        if (file != null) {
+            load();
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    // Start of the history still available, Long.MIN_VALUE if nothing has been folded away
+    long getHorizon() {
+        return horizon;
+    }
+
+    // Record a movement; a zero change is not recorded
+    void record(String id, int change, StockMovement.Reason reason, long timeMillis) throws IOException {
+        if (change == 0) {
+            return;
+        }
+        History history = histories.computeIfAbsent(id, History::new);
+        int start = history.append(change, reason, timeMillis);
+        if (file != null) {
+            write(history, start, history.length);
+        }
+    }
+
+    // Quantity of a product after every movement up to and including timeMillis (0 for a product
+    // without movements)
+    long quantityAt(String id, long timeMillis) {
+        checkHorizon(timeMillis);
+        History history = histories.get(id);
+        return history == null ? 0 : history.quantityAt(timeMillis);
+    }
+
+    // Quantity of every product with stock at timeMillis, by ID; decodes at most CHECKPOINT_INTERVAL
+    // movements per product
+    Map<String, Long> quantitiesAt(long timeMillis) {
+        checkHorizon(timeMillis);
+        Map<String, Long> quantities = new HashMap<>();
+        for (History history : histories.values()) {
+            long quantity = history.quantityAt(timeMillis);
+            if (quantity != 0) {
+                quantities.put(history.id, quantity);
+            }
+        }
+        return quantities;
+    }
+
+    // Movements of a product from fromMillis (inclusive) to toMillis (exclusive), oldest first
+    List<StockMovement> movements(String id, long fromMillis, long toMillis) {
+        checkHorizon(fromMillis);
+        List<StockMovement> movements = new ArrayList<>();
+        History history = histories.get(id);
+        if (history != null) {
+            history.movements(fromMillis, toMillis, movements);
+        }
+        return movements;
+    }
+
+    // Current quantity of a product according to the ledger
+    long balance(String id) {
+        History history = histories.get(id);
+        return history == null ? 0 : history.quantity;
+    }
+
+    // Record a RECONCILED movement for every product whose ledger balance differs from its
+    // quantity, including products the ledger has stock for that are gone
+    int reconcile(Collection<Product> products, long timeMillis) throws IOException {
+        int reconciled = 0;
+        Set<String> ids = new HashSet<>(products.size() * 4 / 3 + 1);
+        for (Product product : products) {
+            ids.add(product.getId());
+            long difference = product.getQuantity() - balance(product.getId());
+            if (difference != 0) {
+                record(product.getId(), (int) difference, StockMovement.Reason.RECONCILED, timeMillis);
+                reconciled++;
+            }
+        }
+        for (History history : new ArrayList<>(histories.values())) {
+            if (history.quantity != 0 && !ids.contains(history.id)) {
+                record(history.id, (int) -history.quantity, StockMovement.Reason.RECONCILED, timeMillis);
+                reconciled++;
+            }
+        }
+        return reconciled;
+    }
+
+    // Number of movements kept
+    long getMovementCount() {
+        long movements = 0;
+        for (History history : histories.values()) {
+            movements += history.count;
+        }
+        return movements;
+    }
+
+    // Bytes of packed movements and checkpoints held in memory
+    long getEncodedBytes() {
+        long bytes = 0;
+        for (History history : histories.values()) {
+            bytes += history.length + (long) history.checkpoints * (Long.BYTES * 2 + Integer.BYTES);
+        }
+        return bytes;
+    }
+
+    // Roll up and fold movements by the ledger's windows as of nowMillis, then rewrite the file if
+    // anything changed. Period boundaries are whole multiples of the rollup period since the epoch.
+    // Returns the number of products whose history was compacted.
+    int compact(long nowMillis) throws IOException {
+        int compacted = compact(nowMillis, id -> true);
+        if (compacted > 0) {
+            rewriteFile();
+        }
+        return compacted;
+    }
+
+    // Compact the histories of the selected products in memory only, leaving the file to
+    // rewriteFile; the caller holds the locks of those products. Returns the number compacted.
+    int compact(long nowMillis, Predicate<String> selected) {
+        long detailCutoff = Math.floorDiv(nowMillis - detailMillis, rollupMillis) * rollupMillis;
+        long retentionCutoff = retentionMillis == 0 ? Long.MIN_VALUE
+                : Math.floorDiv(nowMillis - retentionMillis, rollupMillis) * rollupMillis;
+        int compacted = 0;
+        for (Iterator<History> it = histories.values().iterator(); it.hasNext(); ) {
+            History history = it.next();
+            if (!selected.test(history.id)) {
+                continue;
+            }
+            History replacement = history.compact(detailCutoff, rollupMillis, retentionCutoff);
+            if (replacement == null) {
+                continue;
+            }
+            compacted++;
+            if (replacement.count == 0 && replacement.quantity == 0) {
+                it.remove(); // a product gone before the horizon
+            } else {
+                histories.put(history.id, replacement);
+            }
+        }
+        if (retentionCutoff > horizon) {
+            horizon = retentionCutoff;
+        }
+        return compacted;
+    }
+
+    // Write every history to a new file and put it in place of the old one. Movements can be
+    // recorded meanwhile: they wait only while the ones recorded during the copy are added to it.
+    void rewriteFile() throws IOException {
+        if (file == null) {
+            return;
+        }
+        synchronized (rewriting) {
+            History[] copied;
+            byte[][] copiedData;
+            int[] copiedLengths;
+            synchronized (this) {
+                flush();
+                List<History> defined = new ArrayList<>(histories.size());
+                for (History history : histories.values()) {
+                    if (history.code >= 0) {
+                        defined.add(history);
+                    }
+                }
+                copied = defined.toArray(new History[0]);
+                copiedData = new byte[copied.length][];
+                copiedLengths = new int[copied.length];
+                for (int i = 0; i < copied.length; i++) {
+                    copiedData[i] = copied[i].fileData;
+                    copiedLengths[i] = copied[i].fileLength;
+                }
+            }
+            File temporary = new File(file.getPath() + ".tmp");
+            FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                writeHeader(out);
+                Block copy = new Block();
+                for (int code = 0; code < copied.length; code++) {
+                    copy.define(copied[code], code);
+                    copy.moves(code, copiedData[code], 0, copiedLengths[code]);
+                    if (copy.length >= BLOCK_SIZE) {
+                        copy.writeTo(out);
+                    }
+                }
+                copy.writeTo(out);
+                synchronized (this) {
+                    Map<History, Integer> codes = new IdentityHashMap<>(copied.length * 4 / 3 + 1);
+                    for (int code = 0; code < copied.length; code++) {
+                        codes.put(copied[code], code);
+                    }
+                    int next = copied.length;
+                    for (History history : histories.values()) {
+                        if (history.code < 0) {
+                            continue;
+                        }
+                        Integer code = codes.get(history);
+                        int start = 0;
+                        if (code == null) { // defined in the old file during the copy
+                            code = next++;
+                            codes.put(history, code);
+                            copy.define(history, code);
+                        } else {
+                            start = copiedLengths[code];
+                        }
+                        copy.moves(code, history.fileData, start, history.fileLength);
+                    }
+                    copy.writeTo(out);
+                    out.force(true);
+                    out.close();
+                    block.length = 0; // records for the old file, all in the new one by now
+                    if (channel != null) {
+                        channel.close();
+                        channel = null;
+                    }
+                    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    ProductSnapshot.syncDirectory(file);
+                    for (Map.Entry<History, Integer> entry : codes.entrySet()) {
+                        entry.getKey().code = entry.getValue();
+                        entry.getKey().redefine = false;
+                    }
+                    nextCode = next;
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Write the records collected so far to the file
+    synchronized void flush() throws IOException {
+        if (block.length == 0) {
+            return;
+        }
+        openChannel();
+        block.writeTo(channel);
+        lastFlushMillis = System.currentTimeMillis();
+    }
+
+    // Write the records collected so far and force the file to disk
+    synchronized void sync() throws IOException {
+        flush();
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        if (channel != null && channel.isOpen()) {
+            channel.close();
+        }
+        channel = null;
+    }
+
+    private void checkHorizon(long timeMillis) {
+        if (timeMillis < horizon) {
+            throw new IllegalArgumentException(String.format("Stock history before %tF has been compacted away",
+                    horizon));
+        }
+    }
+
+    // Append the records of a movement (its bytes from start to end) to the open block, defining
+    // the product on its first movement
+    private synchronized void write(History history, int start, int end) throws IOException {
+        if (history.code < 0) {
+            history.code = nextCode++;
+            block.define(history, history.code);
+        } else if (history.redefine) {
+            block.base(history, history.code); // a BASE restarts the product's history on load
+            block.moves(history.code, history.data, 0, start);
+        }
+        history.redefine = false;
+        block.moves(history.code, history.data, start, end);
+        history.fileData = history.data;
+        history.fileLength = end;
+        if (block.length >= BLOCK_SIZE || System.currentTimeMillis() - lastFlushMillis >= FLUSH_INTERVAL_MILLIS) {
+            flush();
+        }
+    }
+
+    private void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(horizon);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+    }
+
+    private void openChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            if (channel.size() == 0) {
+                writeHeader(channel);
+            }
+        }
+    }
+
+    // Read the file back, cutting off a block that was only partly written
+    private void load() throws IOException {
+        long fileLength = file.length();
+        if (fileLength == 0) {
+            return;
+        }
+        List<History> byCode = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        long validLength;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (fileLength < HEADER_SIZE || in.readInt() != MAGIC) {
+                throw new IOException(file.getPath() + " is not a stock ledger");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported stock ledger version " + version);
+            }
+            horizon = in.readLong();
+            validLength = HEADER_SIZE;
+            byte[] payload = new byte[BLOCK_SIZE];
+            while (fileLength - validLength >= BLOCK_HEADER_SIZE) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_BLOCK_SIZE || fileLength - validLength - BLOCK_HEADER_SIZE < length) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                in.readFully(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(new Decoder(payload, length), byCode);
+                validLength += BLOCK_HEADER_SIZE + length;
+            }
+        }
+        nextCode = byCode.size();
+        for (History history : histories.values()) {
+            history.fileData = history.data;
+            history.fileLength = history.length;
+        }
+        if (validLength < fileLength) {
+            try (FileChannel truncator = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncator.truncate(validLength);
+                truncator.force(true);
+            }
+            System.err.println("Discarded torn block at end of stock ledger '" + file.getPath() + "' ("
+                    + (fileLength - validLength) + " bytes)");
+        }
+    }
+
+    // Apply the records of one block
+    private void apply(Decoder in, List<History> byCode) throws IOException {
+        while (in.position < in.limit) {
+            byte type = in.data[in.position++];
+            int code = (int) in.readVarLong();
+            if (type == RECORD_DEFINE) {
+                int length = (int) in.readVarLong();
+                History history = new History(new String(in.data, in.position, length, StandardCharsets.UTF_8));
+                in.position += length;
+                history.code = code;
+                while (byCode.size() <= code) {
+                    byCode.add(null);
+                }
+                byCode.set(code, history);
+                histories.put(history.id, history);
+                continue;
+            }
+            History history = code < byCode.size() ? byCode.get(code) : null;
+            if (history == null) {
+                throw new IOException("Stock ledger refers to undefined product code " + code);
+            }
+            if (type == RECORD_BASE) {
+                if (history.lastTime != Long.MIN_VALUE) { // a compacted history written again in full
+                    history = new History(history.id);
+                    history.code = code;
+                    byCode.set(code, history);
+                    histories.put(history.id, history);
+                }
+                long quantity = unZigZag(in.readVarLong());
+                long origin = unZigZag(in.readVarLong());
+                history.open(quantity, origin);
+            } else if (type == RECORD_MOVE) {
+                long packed = in.readVarLong();
+                long time = history.lastTime + in.readVarLong();
+                history.append((int) unZigZag(packed >>> 4), REASONS[(int) (packed & 0xF)], time);
+            } else {
+                throw new IOException("Unknown stock ledger record type: " + type);
+            }
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Position after the varint at position
+    private static int skipVarLong(byte[] buffer, int position) {
+        while (buffer[position++] < 0) {
+            // continuation bit set
+        }
+        return position;
+    }
+
+    // Unsigned LEB128, returns the position after the value
+    private static int writeVarLong(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+}
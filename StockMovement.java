@@ -0,0 +1,57 @@
+/**
+ * StockMovement class is one entry of the stock ledger: a change to a product's quantity
+ * Movements are immutable. The quantity change is signed (negative when stock was taken) and the
+ * timestamp is wall clock time in epoch milliseconds; the movements of one product never go back
+ * in time.
+ */
+public class StockMovement {
+
+    // What caused a movement (at most 16 reasons fit the ledger encoding)
+    public enum Reason {
+        ADDED,                  // a product was added with stock
+        ADJUSTED,               // updateProductQuantity, tryUpdateProductQuantity or a batch adjustment
+        CORRECTED,              // updateProduct (or a batch update) replaced the quantity
+        RESERVATION_CONFIRMED,  // a confirmed reservation took its units
+        IMPORTED,               // upsertProducts (bulk import)
+        DELETED,                // the product was deleted with stock left
+        CLEARED,                // the whole inventory was cleared
+        RECONCILED,             // opening balance, or a change the ledger missed (e.g. lost in a crash)
+        ROLLUP                  // net change of one rollup period, replacing its older movements
+    }
+
+    private final String productId;
+    private final int quantityChange;
+    private final long timestampMillis;
+    private final Reason reason;
+
+    public StockMovement(String productId, int quantityChange, long timestampMillis, Reason reason) {
+        this.productId = productId;
+        this.quantityChange = quantityChange;
+        this.timestampMillis = timestampMillis;
+        this.reason = reason;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    // Change in stock, negative when stock was taken
+    public int getQuantityChange() {
+        return quantityChange;
+    }
+
+    // Wall clock time of the movement (epoch milliseconds); for a ROLLUP, the time of the last
+    // movement it replaces
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%tF %<tT %s %+d %s", timestampMillis, productId, quantityChange, reason);
+    }
+}
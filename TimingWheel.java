@@ -0,0 +1,165 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * TimingWheel class calls a handler for items once their deadline has passed
+ * It is a hashed timing wheel: a ring of buckets, one per tick, that a background thread
+ * advances one bucket per tick. An item goes into the bucket of its deadline's tick together
+ * with the number of full turns of the wheel left before it is due, so each tick only looks at
+ * the items of one bucket, and scheduling costs the same however many items are waiting.
+ * Deadlines are rounded up to the next tick, so an item is never handed over early and at most
+ * about one tick late.
+ *
+ * Scheduling never blocks: new items are queued and moved into their buckets by the wheel's
+ * thread, which is the only one touching the buckets. There is no cancellation; the handler
+ * decides whether an item still needs expiring (e.g. a reservation that was confirmed).
+ * The thread is started on the first schedule() and ended by stop().
+ */
+final class TimingWheel<T> {
+    private final long tickNanos;
+    private final Entry<T>[] buckets;
+    private final int mask;
+    private final Consumer<T> handler;
+    private final String threadName;
+    private final Queue<Entry<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Object lifecycle = new Object();
+    private volatile Thread thread; // set under lifecycle
+    private volatile boolean stopped;
+    private long startNanos; // set before the thread starts
+    private long tick; // next tick to process, only used by the wheel's thread
+    
+    // An item, linked into its bucket
+    private static final class Entry<T> {
+        final T item;
+        final long deadlineNanos;
+        long rounds;
+        Entry<T> next;
+        
+        Entry(T item, long deadlineNanos) {
+            this.item = item;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+    
+    // A wheel of `wheelSize` buckets (rounded up to a power of two) of tickMillis each
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int wheelSize, Consumer<T> handler, String threadName) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = (Entry<T>[]) new Entry<?>[size];
+        this.mask = size - 1;
+        this.handler = handler;
+        this.threadName = threadName;
+    }
+    
+    // Hand the item to the handler once System.nanoTime() reaches deadlineNanos
+    void schedule(T item, long deadlineNanos) {
+        start();
+        pending.add(new Entry<>(item, deadlineNanos));
+    }
+    
+    // Stop the wheel's thread; items still waiting are dropped and schedule() fails from now on
+    void stop() {
+        Thread running;
+        synchronized (lifecycle) {
+            stopped = true;
+            running = thread;
+        }
+        if (running == null) {
+            return;
+        }
+        running.interrupt();
+        boolean interrupted = false;
+        while (running.isAlive()) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void start() {
+        if (thread != null && !stopped) {
+            return;
+        }
+        synchronized (lifecycle) {
+            if (stopped) {
+                throw new IllegalStateException("Inventory has been closed");
+            }
+            if (thread == null) {
+                startNanos = System.nanoTime();
+                thread = new Thread(this::run, threadName);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+    
+    private void run() {
+        while (!stopped) {
+            // Tick t covers the deadlines up to startNanos + t * tickNanos
+            long wait = startNanos + tick * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    continue; // stop() interrupts the sleep
+                }
+            }
+            transferPending();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+    
+    // Move newly scheduled items into the bucket of their deadline's tick
+    private void transferPending() {
+        Entry<T> entry;
+        while ((entry = pending.poll()) != null) {
+            long offset = entry.deadlineNanos - startNanos;
+            long due = offset <= 0 ? 0 : (offset + tickNanos - 1) / tickNanos;
+            due = Math.max(due, tick); // already due: handled by this tick
+            entry.rounds = (due - tick) / buckets.length;
+            int bucket = (int) (due & mask);
+            entry.next = buckets[bucket];
+            buckets[bucket] = entry;
+        }
+    }
+    
+    // Hand over the items of a bucket whose last round it is, and count the others down
+    private void expire(int bucket) {
+        Entry<T> previous = null;
+        Entry<T> entry = buckets[bucket];
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            if (entry.rounds > 0) {
+                entry.rounds--;
+                previous = entry;
+            } else {
+                if (previous == null) {
+                    buckets[bucket] = next;
+                } else {
+                    previous.next = next;
+                }
+                try {
+                    handler.accept(entry.item);
+                } catch (RuntimeException e) {
+                    System.err.println("Error in " + threadName + ": " + e);
+                }
+            }
+            entry = next;
+        }
+    }
+}
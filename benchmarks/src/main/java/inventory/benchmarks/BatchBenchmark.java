@@ -0,0 +1,118 @@
+package inventory.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BatchBenchmark class compares applying quantity deltas one call at a time with applyBatch
+ * Runs both with the default full-file rewrite and with the journal (INTERVAL sync); both
+ * report the time per delta, the batch applying DELTAS of them in one call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> JOURNAL = InventoryApi.type("InventoryJournal");
+    private static final Class<?> SYNC_POLICY = InventoryApi.type("InventoryJournal$SyncPolicy");
+    private static final Class<?> OPERATION = InventoryApi.type("InventoryOperation");
+    private static final MethodHandle NEW_JOURNAL =
+            InventoryApi.constructor(JOURNAL, String.class, SYNC_POLICY, long.class, int.class);
+    private static final MethodHandle NEW_INVENTORY =
+            InventoryApi.internalConstructor(INVENTORY, String.class, JOURNAL, long.class, boolean.class);
+    private static final MethodHandle APPLY_BATCH =
+            InventoryApi.method(INVENTORY, "applyBatch", InventoryApi.type("BatchResult"), List.class);
+    private static final MethodHandle ADJUST_QUANTITY =
+            InventoryApi.staticMethod(OPERATION, "adjustQuantity", OPERATION, String.class, int.class);
+    private static final MethodHandle ADD = InventoryApi.staticMethod(OPERATION, "add", OPERATION,
+            InventoryApi.type("Product"));
+    private static final int DELTAS = 10_000;
+    
+    @Param({"rewrite", "journal"})
+    public String persistence;
+    
+    @Param({"10000"})
+    public int productCount;
+    
+    private String[] deltaIds;
+    private int[] deltaChanges;
+    private List<Object> deltas;
+    private Object inventory;
+    private File directory;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        List<String> ids = new ArrayList<>(productCount);
+        Object generator = InventoryApi.newGenerator(42L);
+        List<Object> adds = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            Object product = InventoryApi.nextProduct(generator);
+            ids.add(InventoryApi.getId(product));
+            adds.add((Object) ADD.invokeExact(product));
+        }
+        deltaIds = new String[DELTAS];
+        deltaChanges = new int[DELTAS];
+        deltas = new ArrayList<>(DELTAS);
+        Random random = new Random(7);
+        for (int i = 0; i < DELTAS; i++) {
+            deltaIds[i] = ids.get(random.nextInt(productCount));
+            deltaChanges[i] = 1 + random.nextInt(20);
+            deltas.add((Object) ADJUST_QUANTITY.invokeExact(deltaIds[i], deltaChanges[i]));
+        }
+        
+        directory = Files.createTempDirectory("batch-benchmark").toFile();
+        File dataFile = new File(directory, "inventory.dat");
+        Object journal = persistence.equals("journal")
+                ? (Object) NEW_JOURNAL.invokeExact(dataFile.getPath() + ".log",
+                        InventoryApi.constant("InventoryJournal$SyncPolicy", "INTERVAL"), 1000L, 1_000_000)
+                : null;
+        inventory = (Object) NEW_INVENTORY.invokeExact(dataFile.getPath(), journal, -1L, false);
+        Object added = (Object) APPLY_BATCH.invokeExact(inventory, adds); // BatchResult of the catalog
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        InventoryApi.close(inventory);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    // The same deltas as the batch, one updateProductQuantity call each
+    @Benchmark
+    public boolean perCall() {
+        int i = next++ % DELTAS;
+        return InventoryApi.updateProductQuantity(inventory, deltaIds[i], deltaChanges[i]);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(DELTAS)
+    public Object batch() throws Throwable {
+        return (Object) APPLY_BATCH.invokeExact(inventory, deltas);
+    }
+}
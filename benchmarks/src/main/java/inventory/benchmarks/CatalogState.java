@@ -0,0 +1,45 @@
+package inventory.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * CatalogState class is an in-memory inventory of synthetic products shared by all benchmark threads
+ * The catalog size is a JMH parameter, e.g. -p size=1000,1000000
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+    
+    Object inventory;
+    String[] ids;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> productIds = new ArrayList<>(size);
+        inventory = InventoryApi.populatedInventory(size, productIds);
+        ids = productIds.toArray(new String[0]);
+    }
+    
+    /**
+     * Cursor class walks the product IDs in a per-thread pseudo-random order
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position = (int) Thread.currentThread().getId() * 7919;
+        int count; // operations so far, for benchmarks that alternate between kinds
+        
+        // Next product ID to operate on
+        String next(CatalogState catalog) {
+            position = position * 1103515245 + 12345;
+            return catalog.ids[(position >>> 1) % catalog.ids.length];
+        }
+    }
+}
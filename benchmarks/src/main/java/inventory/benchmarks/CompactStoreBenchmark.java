@@ -0,0 +1,95 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CompactStoreBenchmark class compares a HashMap of Product objects with CompactProductStore
+ * Times building the store from a generated catalog and looking products up by ID, for the
+ * HashMap, the compact store on the heap and the compact store in direct (off-heap) memory.
+ * Run with -prof gc to see allocation and GC time; a larger catalog (-p size=5000000) needs a
+ * larger heap for the HashMap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class CompactStoreBenchmark {
+    private static final Class<?> COMPACT = InventoryApi.type("CompactProductStore");
+    private static final MethodHandle NEW_COMPACT = InventoryApi.constructor(COMPACT, boolean.class);
+    private static final MethodHandle ADD_PRODUCT =
+            InventoryApi.method(COMPACT, "addProduct", boolean.class, InventoryApi.type("Product"));
+    private static final MethodHandle GET_PRODUCT =
+            InventoryApi.method(COMPACT, "getProduct", InventoryApi.type("Product"), String.class);
+    
+    @Param({"HashMap", "compact", "direct"})
+    public String store;
+    
+    @Param({"1000000"})
+    public int size;
+    
+    private List<Object> products;
+    private String[] ids;
+    private Map<String, Object> map;
+    private Object compact;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        products = new ArrayList<>(size);
+        ids = new String[size];
+        Object generator = InventoryApi.newGenerator(42L);
+        for (int i = 0; i < size; i++) {
+            Object product = InventoryApi.nextProduct(generator);
+            products.add(product);
+            ids[i] = InventoryApi.getId(product);
+        }
+        build();
+    }
+    
+    // Every product of the catalog into an empty store
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object build() throws Throwable {
+        if (store.equals("HashMap")) {
+            map = new HashMap<>();
+            for (Object product : products) {
+                map.put(InventoryApi.getId(product), product);
+            }
+            return map;
+        }
+        compact = (Object) NEW_COMPACT.invokeExact(store.equals("direct"));
+        for (Object product : products) {
+            boolean added = (boolean) ADD_PRODUCT.invokeExact(compact, product);
+        }
+        return compact;
+    }
+    
+    // The compact store materializes a Product on every lookup
+    @Benchmark
+    public Object getProduct() throws Throwable {
+        next = next * 1103515245 + 12345;
+        String id = ids[(next >>> 1) % ids.length];
+        return map != null ? map.get(id) : (Object) GET_PRODUCT.invokeExact(compact, id);
+    }
+}
@@ -0,0 +1,86 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ConcurrentInventoryBenchmark class measures throughput with several threads on one inventory
+ * Thread counts can be changed with -t (for the ungrouped benchmarks) and -tg (for the mixed group),
+ * e.g. -t 1 and -t 16 next to the default 4. Small catalogs (-p size=1000) keep the threads
+ * contending on the same lock stripes. InventoryStressTest checks that none of this loses an update.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConcurrentInventoryBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final MethodHandle TRY_UPDATE_PRODUCT_QUANTITY =
+            InventoryApi.method(INVENTORY, "tryUpdateProductQuantity", boolean.class, String.class, int.class);
+    private static final MethodHandle UPDATE_PRODUCT =
+            InventoryApi.method(INVENTORY, "updateProduct", boolean.class, String.class, InventoryApi.type("Product"));
+    
+    @Benchmark
+    @Threads(4)
+    public Object getProduct(CatalogState catalog, CatalogState.Cursor cursor) {
+        return InventoryApi.getProduct(catalog.inventory, cursor.next(catalog));
+    }
+    
+    // Quantity adjustments are lock-free compare-and-set updates, plus index maintenance
+    @Benchmark
+    @Threads(4)
+    public boolean updateProductQuantity(CatalogState catalog, CatalogState.Cursor cursor) {
+        return InventoryApi.updateProductQuantity(catalog.inventory, cursor.next(catalog), 1);
+    }
+    
+    // Take a unit if there is one and put it back, so the stock never runs out
+    @Benchmark
+    @Threads(4)
+    public boolean checkAndDecrement(CatalogState catalog, CatalogState.Cursor cursor) throws Throwable {
+        String id = cursor.next(catalog);
+        boolean taken = (boolean) TRY_UPDATE_PRODUCT_QUANTITY.invokeExact(catalog.inventory, id, -1);
+        if (taken) {
+            InventoryApi.updateProductQuantity(catalog.inventory, id, 1);
+        }
+        return taken;
+    }
+    
+    // Quantity adjustments with one in ten operations replacing a whole product (same values)
+    @Benchmark
+    @Threads(4)
+    public boolean mixedWithUpdates(CatalogState catalog, CatalogState.Cursor cursor) throws Throwable {
+        String id = cursor.next(catalog);
+        if (cursor.count++ % 10 == 0) {
+            Object product = InventoryApi.getProduct(catalog.inventory, id);
+            return (boolean) UPDATE_PRODUCT.invokeExact(catalog.inventory, id, product);
+        }
+        return InventoryApi.updateProductQuantity(catalog.inventory, id, 1);
+    }
+    
+    // Three readers and one writer sharing the catalog
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Object mixedGetProduct(CatalogState catalog, CatalogState.Cursor cursor) {
+        return InventoryApi.getProduct(catalog.inventory, cursor.next(catalog));
+    }
+    
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean mixedUpdateProductQuantity(CatalogState catalog, CatalogState.Cursor cursor) {
+        return InventoryApi.updateProductQuantity(catalog.inventory, cursor.next(catalog), 1);
+    }
+}
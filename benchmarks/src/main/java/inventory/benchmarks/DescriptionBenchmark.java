@@ -0,0 +1,126 @@
+package inventory.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DescriptionBenchmark class measures what keeping descriptions in a cold file saves and costs
+ * Writes a catalog with long descriptions as a data file holding them inline and opens it with
+ * descriptions in memory (cold = false) or in the description file (the first start moves them
+ * there, before anything is measured). Times startup, getDescription() for random products (mostly
+ * read from disk with cold descriptions) and for a working set that fits in the cache. Run with
+ * -prof gc, or compare heap dumps, for the heap each setting retains.
+ * DescriptionStoreTest checks every description against the one written.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DescriptionBenchmark {
+    private static final MethodHandle GET_DESCRIPTION =
+            InventoryApi.method(InventoryApi.type("Product"), "getDescription", String.class);
+    private static final String[] WORDS = {"steel", "frame", "compact", "wireless", "durable", "premium", "kit",
+            "battery", "outdoor", "ergonomic", "adjustable", "warranty", "includes", "with", "and", "for"};
+    private static final long CACHE_BYTES = 16L << 20; // DescriptionStore.DEFAULT_CACHE_BYTES
+    
+    @Param({"false", "true"})
+    public boolean cold;
+    
+    @Param({"100000"})
+    public int size;
+    
+    @Param({"2048"})
+    public int length;
+    
+    private File directory;
+    private String dataFile;
+    private Object inventory;
+    private Object[] products;
+    private int hotProducts;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty("inventory.descriptions.cold", String.valueOf(cold));
+        directory = Files.createTempDirectory("description-benchmark").toFile();
+        dataFile = new File(directory, "inventory.dat").getPath();
+        List<Object> written = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            written.add(InventoryApi.newProduct("D" + i, "Product " + i, 9.99, 100, "Category " + i % 50,
+                    description(i, length)));
+        }
+        InventoryApi.writeSnapshot(written, new File(dataFile));
+        InventoryApi.close(InventoryApi.newInventory(dataFile)); // moves cold descriptions out
+        
+        inventory = InventoryApi.newInventory(dataFile);
+        products = new Object[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            products[i] = InventoryApi.getProduct(inventory, "D" + random.nextInt(size));
+        }
+        hotProducts = (int) Math.max(1, Math.min(size, CACHE_BYTES / length / 2));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        InventoryApi.close(inventory);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        System.clearProperty("inventory.descriptions.cold");
+    }
+    
+    // Open the data file, loading every product
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object startup() {
+        Object loaded = InventoryApi.newInventory(dataFile);
+        InventoryApi.close(loaded);
+        return loaded;
+    }
+    
+    @Benchmark
+    public String randomDescription() throws Throwable {
+        return (String) GET_DESCRIPTION.invokeExact(products[next++ % products.length]);
+    }
+    
+    // Products of a working set half the size of the cache
+    @Benchmark
+    public String hotDescription() throws Throwable {
+        return (String) GET_DESCRIPTION.invokeExact(products[next++ % hotProducts]);
+    }
+    
+    // Words picked from the product's index, so every description differs
+    private static String description(int index, int length) {
+        StringBuilder text = new StringBuilder(length + 16).append("Product ").append(index).append(':');
+        Random random = new Random(index);
+        while (text.length() < length) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EventStreamBenchmark class measures what publishing change events costs a quantity update
+ * Runs the same updates without an event stream (subscribers = -1), with a stream nobody
+ * follows, and with one and four subscribers that only count what they receive. Setting
+ * slowNanosPerBatch (e.g. -p slowNanosPerBatch=1000000 with batches of 64) makes the
+ * subscribers fall a whole ring behind, so writers are held back by backpressure.
+ * InventoryEventStreamTest checks ordering, gaps and resuming.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(2)
+@State(Scope.Benchmark)
+public class EventStreamBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> STREAM = InventoryApi.type("InventoryEventStream");
+    private static final Class<?> SUBSCRIPTION = InventoryApi.type("InventoryEventStream$Subscription");
+    private static final Class<?> LISTENER = InventoryApi.type("InventoryEventListener");
+    private static final MethodHandle GET_EVENT_STREAM = InventoryApi.method(INVENTORY, "getEventStream", STREAM);
+    private static final MethodHandle GET_EPOCH = InventoryApi.method(STREAM, "getEpoch", long.class);
+    private static final MethodHandle GET_LAST_SEQUENCE = InventoryApi.method(STREAM, "getLastSequence", long.class);
+    private static final MethodHandle SUBSCRIBE =
+            InventoryApi.method(STREAM, "subscribe", SUBSCRIPTION, LISTENER, long.class, long.class, int.class);
+    private static final MethodHandle CLOSE_SUBSCRIPTION = InventoryApi.method(SUBSCRIPTION, "close", void.class);
+    private static final int PRODUCTS = 10_000;
+    private static final int DEFAULT_BATCH_SIZE = 1_024;
+    private static final int SLOW_BATCH_SIZE = 64;
+    
+    @Param({"-1", "0", "1", "4"})
+    public int subscribers; // -1: no event stream at all
+    
+    @Param({"0"})
+    public long slowNanosPerBatch;
+    
+    private Object inventory;
+    private String[] ids;
+    private final List<Object> subscriptions = new ArrayList<>();
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        inventory = InventoryApi.newInventory();
+        ids = new String[PRODUCTS];
+        List<Object> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            ids[i] = "E" + i;
+            products.add(InventoryApi.newProduct(ids[i], "Product " + i, 4.99, 1_000_000, "Bench", ""));
+        }
+        InventoryApi.upsertProducts(inventory, products);
+        if (subscribers < 0) {
+            return;
+        }
+        Object stream = (Object) GET_EVENT_STREAM.invokeExact(inventory);
+        long epoch = (long) GET_EPOCH.invokeExact(stream);
+        int batchSize = slowNanosPerBatch > 0 ? SLOW_BATCH_SIZE : DEFAULT_BATCH_SIZE;
+        for (int i = 0; i < subscribers; i++) {
+            long next = (long) GET_LAST_SEQUENCE.invokeExact(stream) + 1;
+            subscriptions.add((Object) SUBSCRIBE.invokeExact(stream, listener(), epoch, next, batchSize));
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        for (Object subscription : subscriptions) {
+            CLOSE_SUBSCRIPTION.invokeExact(subscription);
+        }
+        subscriptions.clear();
+        InventoryApi.close(inventory);
+    }
+    
+    /**
+     * Writer class is one thread's position in the catalog and the sign of its next change
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private int position = (int) Thread.currentThread().getId() * 7919;
+        private int delta = 1;
+    }
+    
+    // Changes of -1 and +1 alternate per thread, so quantities stay put
+    @Benchmark
+    public boolean updateProductQuantity(Writer writer) {
+        writer.position = writer.position * 1103515245 + 12345;
+        writer.delta = -writer.delta;
+        return InventoryApi.updateProductQuantity(inventory, ids[(writer.position >>> 1) % ids.length], writer.delta);
+    }
+    
+    // Listener that spins for slowNanosPerBatch on every batch
+    private Object listener() {
+        long slow = slowNanosPerBatch;
+        return Proxy.newProxyInstance(LISTENER.getClassLoader(), new Class<?>[] {LISTENER}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "benchmark listener";
+                default:
+                    break;
+            }
+            if (slow > 0) {
+                long until = System.nanoTime() + slow;
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,123 @@
+package inventory.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GroupCommitBenchmark class compares durable write latency of the persistence modes
+ * Concurrent writers adjust quantities on a file-backed catalog: a snapshot or a journal fsync
+ * per write, and group commit writing a snapshot or the journal for everything that arrived
+ * within the window. Latency is what the caller sees: for the durable modes it runs until the
+ * change is on disk, for fire-and-forget until the call returns (the flush at the end of each
+ * iteration is not measured). Sampled, so the percentiles are reported; change the writer count
+ * with -t, e.g. -t 1,8,32.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(8)
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> JOURNAL = InventoryApi.type("InventoryJournal");
+    private static final MethodHandle NEW_JOURNAL = InventoryApi.constructor(JOURNAL,
+            String.class, InventoryApi.type("InventoryJournal$SyncPolicy"), long.class, int.class);
+    private static final MethodHandle NEW_INVENTORY =
+            InventoryApi.internalConstructor(INVENTORY, String.class, JOURNAL, long.class, boolean.class);
+    private static final MethodHandle UPDATE_PRODUCT_QUANTITY_ASYNC = InventoryApi.method(INVENTORY,
+            "updateProductQuantityAsync", CompletableFuture.class, String.class, int.class);
+    private static final MethodHandle FLUSH = InventoryApi.method(INVENTORY, "flush", void.class);
+    
+    @Param({"snapshotPerWrite", "journalFsyncPerWrite", "groupSnapshot", "groupJournal", "groupFireAndForget"})
+    public String mode;
+    
+    @Param({"10000"})
+    public int productCount;
+    
+    @Param({"0"})
+    public long windowMillis;
+    
+    private File directory;
+    private String[] ids;
+    private Object inventory;
+    private boolean join;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("group-commit").toFile();
+        String dataFile = new File(directory, "inventory.dat").getPath();
+        ids = new String[productCount];
+        for (int i = 0; i < productCount; i++) {
+            ids[i] = String.format("SKU-%08d", i);
+        }
+        // Catalog written once up front, so only the measured writes hit the disk
+        Object loader = InventoryApi.populatedInventory(productCount, null);
+        InventoryApi.writeSnapshot(InventoryApi.getAllProducts(loader), new File(dataFile));
+        
+        boolean snapshot = mode.equals("snapshotPerWrite") || mode.equals("groupSnapshot");
+        Object journal = snapshot ? null : (Object) NEW_JOURNAL.invokeExact(dataFile + ".log",
+                InventoryApi.constant("InventoryJournal$SyncPolicy", "ALWAYS"), 0L, Integer.MAX_VALUE);
+        long window = mode.startsWith("group") ? windowMillis : -1;
+        inventory = (Object) NEW_INVENTORY.invokeExact(dataFile, journal, window, false);
+        join = mode.equals("groupSnapshot") || mode.equals("groupJournal");
+    }
+    
+    @TearDown(Level.Iteration)
+    public void flush() throws Throwable {
+        FLUSH.invokeExact(inventory);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        InventoryApi.close(inventory);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    /**
+     * Writer class is one thread's random choices
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private int seed = (int) Thread.currentThread().getId() * 7919;
+        
+        int next() {
+            seed = seed * 1103515245 + 12345;
+            return seed >>> 1;
+        }
+    }
+    
+    @Benchmark
+    public boolean updateProductQuantity(Writer writer) throws Throwable {
+        int random = writer.next();
+        String id = ids[random % ids.length];
+        int change = (random & 1024) == 0 ? 1 : -1;
+        if (join) {
+            return ((CompletableFuture<?>) UPDATE_PRODUCT_QUANTITY_ASYNC.invokeExact(inventory, id, change)).join()
+                    == Boolean.TRUE;
+        }
+        return InventoryApi.updateProductQuantity(inventory, id, change);
+    }
+}
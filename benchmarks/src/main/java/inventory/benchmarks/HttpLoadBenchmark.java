@@ -0,0 +1,149 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HttpLoadBenchmark class is a closed-loop load test of InventoryServer
+ * Each benchmark thread is a client sending its next request as soon as the previous one is
+ * answered: 70% product lookups, 15% quantity adjustments, 10% prefix searches and 5% summary
+ * reports. Sampled, so the percentiles are reported. Without a url it starts a server on
+ * loopback with a synthetic in-memory catalog; -p url=http://host:8080 loads a running one
+ * instead. Change the client count with -t.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dsun.net.httpserver.nodelay=true"})
+@Threads(32)
+@State(Scope.Benchmark)
+public class HttpLoadBenchmark {
+    private static final Class<?> SERVER = InventoryApi.type("InventoryServer");
+    private static final MethodHandle NEW_SERVER =
+            InventoryApi.constructor(SERVER, InventoryApi.type("Inventory"), int.class);
+    private static final MethodHandle START = InventoryApi.method(SERVER, "start", void.class);
+    private static final MethodHandle STOP = InventoryApi.method(SERVER, "stop", void.class, int.class);
+    private static final MethodHandle GET_PORT = InventoryApi.method(SERVER, "getPort", int.class);
+    private static final Pattern ID = Pattern.compile("\"id\":\"((?:[^\"\\\\]|\\\\.)*)\"");
+    
+    @Param({""})
+    public String url;
+    
+    @Param({"100000"})
+    public int size;
+    
+    private Object server;
+    private String base;
+    private HttpClient client;
+    private String[] encodedIds;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        base = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        if (base.isEmpty()) {
+            server = (Object) NEW_SERVER.invokeExact(InventoryApi.populatedInventory(size, null), 0);
+            START.invokeExact(server);
+            base = "http://127.0.0.1:" + (int) GET_PORT.invokeExact(server);
+        }
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5)).build();
+        List<String> ids = sampleIds();
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("The server has no products to test against");
+        }
+        encodedIds = new String[ids.size()];
+        for (int i = 0; i < encodedIds.length; i++) {
+            encodedIds[i] = URLEncoder.encode(ids.get(i), StandardCharsets.UTF_8).replace("+", "%20");
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        if (server != null) {
+            STOP.invokeExact(server, 0);
+        }
+    }
+    
+    /**
+     * Client class is one thread's random choices
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private int seed = (int) Thread.currentThread().getId() * 7919;
+        
+        int next(int bound) {
+            seed = seed * 1103515245 + 12345;
+            return (seed >>> 1) % bound;
+        }
+    }
+    
+    // 409 is an expected answer to taking more stock than there is; anything else fails the run
+    @Benchmark
+    public int request(Client state) throws Exception {
+        int status = client.send(nextRequest(state), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 200 && status != 409) {
+            throw new IllegalStateException("Request failed with status " + status);
+        }
+        return status;
+    }
+    
+    private HttpRequest nextRequest(Client state) {
+        String id = encodedIds[state.next(encodedIds.length)];
+        int pick = state.next(100);
+        if (pick < 70) {
+            return HttpRequest.newBuilder(URI.create(base + "/products/" + id)).build();
+        }
+        if (pick < 85) {
+            String body = "{\"change\":" + (state.next(2) == 0 ? 1 : -1) + "}";
+            return HttpRequest.newBuilder(URI.create(base + "/products/" + id + "/quantity"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+        if (pick < 95) {
+            return HttpRequest.newBuilder(URI.create(base + "/search?prefix=" + (char) ('A' + state.next(26))
+                    + "&limit=20")).build();
+        }
+        return HttpRequest.newBuilder(URI.create(base + "/reports/summary")).build();
+    }
+    
+    // Up to 1,000 product IDs from the first page of the ID listing
+    private List<String> sampleIds() throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/products?limit=1000"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Listing products failed with status " + response.statusCode());
+        }
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = ID.matcher(response.body());
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+}
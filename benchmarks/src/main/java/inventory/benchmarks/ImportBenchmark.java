@@ -0,0 +1,124 @@
+package inventory.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ImportBenchmark class measures bulk import and export of a large catalog
+ * Writes a synthetic CSV and JSON Lines file once, then imports it into an empty file-backed
+ * inventory (one persistence pass at the end) and exports that inventory again. Each run is a
+ * single shot, so the time reported is for the whole file; -p rows=2000000 gives the
+ * multi-million-row case.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> IMPORTER = InventoryApi.type("ProductImporter");
+    private static final Class<?> FORMAT = InventoryApi.type("ProductImporter$Format");
+    private static final Class<?> WRITER = InventoryApi.type("ProductWriter");
+    private static final MethodHandle NEW_WRITER = InventoryApi.constructor(WRITER, Writer.class, FORMAT);
+    private static final MethodHandle WRITE =
+            InventoryApi.method(WRITER, "write", void.class, InventoryApi.type("Product"));
+    private static final MethodHandle CLOSE_WRITER = InventoryApi.method(WRITER, "close", void.class);
+    private static final MethodHandle IMPORT_FILE = InventoryApi.staticMethod(IMPORTER, "importFile",
+            InventoryApi.type("ImportResult"), INVENTORY, File.class, FORMAT, File.class, long.class);
+    private static final MethodHandle EXPORT_FILE =
+            InventoryApi.staticMethod(IMPORTER, "exportFile", long.class, INVENTORY, File.class, FORMAT);
+    
+    @Param({"CSV", "JSONL"})
+    public String format;
+    
+    @Param({"200000"})
+    public int rows;
+    
+    private Object fileFormat;
+    private File directory;
+    private File source;
+    private File exportFile;
+    private Object inventory;
+    private Object imported;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        fileFormat = InventoryApi.constant("ProductImporter$Format", format);
+        directory = Files.createTempDirectory("import-benchmark").toFile();
+        source = new File(directory, "catalog." + format.toLowerCase());
+        exportFile = new File(directory, "export." + format.toLowerCase());
+        // Generated straight to disk so the generator never holds the catalog
+        Object generator = InventoryApi.newGenerator(42L);
+        Object writer = (Object) NEW_WRITER.invokeExact((Writer) new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(source), StandardCharsets.UTF_8), 1 << 16), fileFormat);
+        try {
+            for (int i = 0; i < rows; i++) {
+                WRITE.invokeExact(writer, InventoryApi.nextProduct(generator));
+            }
+        } finally {
+            CLOSE_WRITER.invokeExact(writer);
+        }
+        imported = InventoryApi.newInventory();
+        Object result = (Object) IMPORT_FILE.invokeExact(imported, source, fileFormat, (File) null, 0L);
+    }
+    
+    // Empty file-backed inventory for every import
+    @Setup(Level.Iteration)
+    public void newInventory() {
+        if (inventory != null) {
+            InventoryApi.close(inventory);
+        }
+        deleteFiles("inventory.dat");
+        inventory = InventoryApi.newInventory(new File(directory, "inventory.dat").getPath());
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        InventoryApi.close(inventory);
+        InventoryApi.close(imported);
+        deleteFiles("");
+        directory.delete();
+    }
+    
+    @Benchmark
+    public Object importFile() throws Throwable {
+        return (Object) IMPORT_FILE.invokeExact(inventory, source, fileFormat, (File) null, 0L);
+    }
+    
+    // Export of an in-memory inventory holding the whole file
+    @Benchmark
+    public long exportFile() throws Throwable {
+        return (long) EXPORT_FILE.invokeExact(imported, exportFile, fileFormat);
+    }
+    
+    private void deleteFiles(String prefix) {
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith(prefix)) {
+                file.delete();
+            }
+        }
+    }
+}
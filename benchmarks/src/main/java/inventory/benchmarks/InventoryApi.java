@@ -0,0 +1,395 @@
+package inventory.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * InventoryApi class gives the benchmarks access to the inventory classes
+ * The application classes live in the unnamed package, which code in a named package cannot
+ * import, and JMH refuses benchmarks in the unnamed package. Calls therefore go through
+ * constant method handles, which the JIT inlines like direct calls.
+ *
+ * The common calls are wrapped here; a benchmark that needs more of the API looks up its own
+ * handles with type(), method(), staticMethod() and constructor() and calls invokeExact on them;
+ * internalMethod(), internalStaticMethod() and internalConstructor() reach package-private
+ * classes and members, such as StockLedger.
+ * Application types are erased to Object in every handle.
+ */
+final class InventoryApi {
+    private static final Class<?> INVENTORY = type("Inventory");
+    private static final Class<?> PRODUCT = type("Product");
+    private static final Class<?> GENERATOR = type("ProductGenerator");
+    private static final Class<?> SNAPSHOT = type("ProductSnapshot");
+    
+    private static final MethodHandle NEW_INVENTORY = internalConstructor(INVENTORY,
+            String.class, type("InventoryJournal"), long.class, boolean.class);
+    private static final MethodHandle ADD_PRODUCT =
+            method(INVENTORY, "addProduct", boolean.class, PRODUCT);
+    private static final MethodHandle DELETE_PRODUCT =
+            method(INVENTORY, "deleteProduct", boolean.class, String.class);
+    private static final MethodHandle GET_PRODUCT =
+            method(INVENTORY, "getProduct", PRODUCT, String.class);
+    private static final MethodHandle UPDATE_PRODUCT_QUANTITY =
+            method(INVENTORY, "updateProductQuantity", boolean.class, String.class, int.class);
+    private static final MethodHandle SEARCH_PRODUCTS_BY_NAME =
+            method(INVENTORY, "searchProductsByName", List.class, String.class);
+    private static final MethodHandle SEARCH_PRODUCTS_BY_CATEGORY =
+            method(INVENTORY, "searchProductsByCategory", List.class, String.class);
+    private static final MethodHandle GET_LOW_STOCK_PRODUCTS =
+            method(INVENTORY, "getLowStockProducts", List.class);
+    private static final MethodHandle GET_TOTAL_INVENTORY_VALUE =
+            method(INVENTORY, "getTotalInventoryValue", double.class);
+    private static final MethodHandle GET_INVENTORY_SUMMARY_BY_CATEGORY =
+            method(INVENTORY, "getInventorySummaryByCategory", Map.class);
+    private static final MethodHandle GET_TOTAL_PRODUCTS =
+            method(INVENTORY, "getTotalProducts", int.class);
+    private static final MethodHandle GET_ALL_PRODUCTS =
+            method(INVENTORY, "getAllProducts", List.class);
+    private static final MethodHandle CHECKPOINT =
+            method(INVENTORY, "checkpoint", void.class);
+    private static final MethodHandle UPSERT_PRODUCTS =
+            method(INVENTORY, "upsertProducts", int.class, Collection.class);
+    private static final MethodHandle CLOSE =
+            method(INVENTORY, "close", void.class);
+    private static final MethodHandle NEW_PRODUCT = constructor(PRODUCT,
+            MethodType.methodType(void.class, String.class, String.class, double.class, int.class, String.class, String.class));
+    
+    private static final MethodHandle WRITE_SNAPSHOT =
+            staticMethod(SNAPSHOT, "writeAtomically", long.class, Collection.class, File.class, boolean.class);
+    private static final MethodHandle READ_SNAPSHOT =
+            staticMethod(SNAPSHOT, "read", Map.class, File.class);
+    
+    private static final MethodHandle NEW_GENERATOR =
+            constructor(GENERATOR, MethodType.methodType(void.class, long.class));
+    private static final MethodHandle NEXT_PRODUCT =
+            method(GENERATOR, "next", PRODUCT);
+    private static final MethodHandle CATEGORIES =
+            staticMethod(GENERATOR, "categories", String[].class);
+    private static final MethodHandle GET_ID =
+            method(PRODUCT, "getId", String.class);
+    private static final MethodHandle SET_ID =
+            method(PRODUCT, "setId", void.class, String.class);
+    
+    private InventoryApi() {
+    }
+    
+    // In-memory inventory (no data file) with console messages turned off
+    static Object newInventory() {
+        return newInventory(null);
+    }
+    
+    // Inventory backed by a data file, loading it (without console messages) if it exists
+    static Object newInventory(String dataFile) {
+        try {
+            return (Object) NEW_INVENTORY.invokeExact(dataFile, (Object) null, -1L, false);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static boolean addProduct(Object inventory, Object product) {
+        try {
+            return (boolean) ADD_PRODUCT.invokeExact(inventory, product);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static boolean deleteProduct(Object inventory, String id) {
+        try {
+            return (boolean) DELETE_PRODUCT.invokeExact(inventory, id);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static Object getProduct(Object inventory, String id) {
+        try {
+            return (Object) GET_PRODUCT.invokeExact(inventory, id);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static boolean updateProductQuantity(Object inventory, String id, int quantityChange) {
+        try {
+            return (boolean) UPDATE_PRODUCT_QUANTITY.invokeExact(inventory, id, quantityChange);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static List<?> searchProductsByName(Object inventory, String name) {
+        try {
+            return (List<?>) SEARCH_PRODUCTS_BY_NAME.invokeExact(inventory, name);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static List<?> searchProductsByCategory(Object inventory, String category) {
+        try {
+            return (List<?>) SEARCH_PRODUCTS_BY_CATEGORY.invokeExact(inventory, category);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static List<?> getLowStockProducts(Object inventory) {
+        try {
+            return (List<?>) GET_LOW_STOCK_PRODUCTS.invokeExact(inventory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static double getTotalInventoryValue(Object inventory) {
+        try {
+            return (double) GET_TOTAL_INVENTORY_VALUE.invokeExact(inventory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static Map<?, ?> getInventorySummaryByCategory(Object inventory) {
+        try {
+            return (Map<?, ?>) GET_INVENTORY_SUMMARY_BY_CATEGORY.invokeExact(inventory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static int getTotalProducts(Object inventory) {
+        try {
+            return (int) GET_TOTAL_PRODUCTS.invokeExact(inventory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static List<?> getAllProducts(Object inventory) {
+        try {
+            return (List<?>) GET_ALL_PRODUCTS.invokeExact(inventory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    // Add or replace a batch of products in one operation, returns the number stored
+    static int upsertProducts(Object inventory, Collection<?> products) {
+        try {
+            return (int) UPSERT_PRODUCTS.invokeExact(inventory, products);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    // Flush pending writes and release the journal and background threads
+    static void close(Object inventory) {
+        try {
+            CLOSE.invokeExact(inventory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    // Write the data file (a snapshot of every product)
+    static void checkpoint(Object inventory) {
+        try {
+            CHECKPOINT.invokeExact(inventory);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    // Write products to a snapshot file the way Inventory saves its data file, returns the file size
+    static long writeSnapshot(Collection<?> products, File file) {
+        try {
+            return (long) WRITE_SNAPSHOT.invokeExact(products, file, false);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    // Read every product of a snapshot file into a map keyed by ID
+    static Map<?, ?> readSnapshot(File file) {
+        try {
+            return (Map<?, ?>) READ_SNAPSHOT.invokeExact(file);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static Object newProduct(String id, String name, double price, int quantity, String category, String description) {
+        try {
+            return (Object) NEW_PRODUCT.invokeExact(id, name, price, quantity, category, description);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static Object newGenerator(long seed) {
+        try {
+            return (Object) NEW_GENERATOR.invokeExact(seed);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static Object nextProduct(Object generator) {
+        try {
+            return (Object) NEXT_PRODUCT.invokeExact(generator);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static String[] categories() {
+        try {
+            return (String[]) CATEGORIES.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static String getId(Object product) {
+        try {
+            return (String) GET_ID.invokeExact(product);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    static void setId(Object product, String id) {
+        try {
+            SET_ID.invokeExact(product, id);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+    
+    // In-memory inventory filled with count synthetic products
+    static Object populatedInventory(int count, Collection<String> ids) {
+        Object inventory = newInventory();
+        Object generator = newGenerator(42L);
+        for (int i = 0; i < count; i++) {
+            Object product = nextProduct(generator);
+            addProduct(inventory, product);
+            if (ids != null) {
+                ids.add(getId(product));
+            }
+        }
+        return inventory;
+    }
+    
+    // Application class by name
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Inventory classes not on the class path: " + name, e);
+        }
+    }
+    
+    // Virtual method handle adapted to take and return Object in place of application types
+    static MethodHandle method(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup()
+                    .findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing method " + owner.getName() + "." + name, e);
+        }
+    }
+    
+    static MethodHandle staticMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup()
+                    .findStatic(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing method " + owner.getName() + "." + name, e);
+        }
+    }
+    
+    static MethodHandle constructor(Class<?> owner, MethodType type) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findConstructor(owner, type);
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing constructor of " + owner.getName(), e);
+        }
+    }
+    
+    static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        return constructor(owner, MethodType.methodType(void.class, parameters));
+    }
+    
+    // Method handle for a package-private class or method, which the public lookup cannot see
+    static MethodHandle internalMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                    .findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing method " + owner.getName() + "." + name, e);
+        }
+    }
+    
+    static MethodHandle internalStaticMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                    .findStatic(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing method " + owner.getName() + "." + name, e);
+        }
+    }
+    
+    static MethodHandle internalConstructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                    .findConstructor(owner, MethodType.methodType(void.class, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing constructor of " + owner.getName(), e);
+        }
+    }
+    
+    // Constant of an application enum, e.g. constant("InventoryJournal$SyncPolicy", "NEVER")
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object constant(String enumType, String name) {
+        return Enum.valueOf((Class) type(enumType), name);
+    }
+    
+    // Replace application classes in a method type with Object
+    private static MethodType erase(MethodType type) {
+        MethodType erased = type;
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isApplicationType(type.parameterType(i))) {
+                erased = erased.changeParameterType(i, Object.class);
+            }
+        }
+        return isApplicationType(type.returnType()) ? erased.changeReturnType(Object.class) : erased;
+    }
+    
+    // Classes of the unnamed package (and their nested classes)
+    private static boolean isApplicationType(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+    
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,56 @@
+package inventory.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * InventoryReadBenchmark class measures lookups, searches and reports on a single thread
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InventoryReadBenchmark {
+    
+    @Benchmark
+    public Object getProduct(CatalogState catalog, CatalogState.Cursor cursor) {
+        return InventoryApi.getProduct(catalog.inventory, cursor.next(catalog));
+    }
+    
+    // Matches about one product in 16 (one of the 16 nouns used by the generator)
+    @Benchmark
+    public List<?> searchProductsByName(CatalogState catalog) {
+        return InventoryApi.searchProductsByName(catalog.inventory, "lamp");
+    }
+    
+    // Matches one of the 16 generated categories by part of its name
+    @Benchmark
+    public List<?> searchProductsByCategory(CatalogState catalog) {
+        return InventoryApi.searchProductsByCategory(catalog.inventory, "tron");
+    }
+    
+    @Benchmark
+    public List<?> getLowStockProducts(CatalogState catalog) {
+        return InventoryApi.getLowStockProducts(catalog.inventory);
+    }
+    
+    @Benchmark
+    public double getTotalInventoryValue(CatalogState catalog) {
+        return InventoryApi.getTotalInventoryValue(catalog.inventory);
+    }
+    
+    @Benchmark
+    public Map<?, ?> getInventorySummaryByCategory(CatalogState catalog) {
+        return InventoryApi.getInventorySummaryByCategory(catalog.inventory);
+    }
+}
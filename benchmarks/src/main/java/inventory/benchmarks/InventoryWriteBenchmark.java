@@ -0,0 +1,61 @@
+package inventory.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * InventoryWriteBenchmark class measures adding products and adjusting quantities
+ * The catalog keeps its size: every added product is deleted again in the same operation,
+ * and quantity adjustments alternate between +1 and -1.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InventoryWriteBenchmark {
+    
+    /**
+     * NewProduct class holds a product with an ID that is not in the catalog, one per thread
+     */
+    @State(Scope.Thread)
+    public static class NewProduct {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        
+        Object product;
+        String id;
+        int delta = 1;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            product = InventoryApi.nextProduct(InventoryApi.newGenerator(7L));
+            id = "BENCH-" + THREADS.incrementAndGet();
+            InventoryApi.setId(product, id);
+        }
+    }
+    
+    @Benchmark
+    public boolean addProduct(CatalogState catalog, NewProduct added) {
+        boolean result = InventoryApi.addProduct(catalog.inventory, added.product);
+        InventoryApi.deleteProduct(catalog.inventory, added.id);
+        return result;
+    }
+    
+    @Benchmark
+    public boolean updateProductQuantity(CatalogState catalog, CatalogState.Cursor cursor, NewProduct state) {
+        state.delta = -state.delta;
+        return InventoryApi.updateProductQuantity(catalog.inventory, cursor.next(catalog), state.delta);
+    }
+}
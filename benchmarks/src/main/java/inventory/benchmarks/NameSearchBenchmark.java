@@ -0,0 +1,88 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * NameSearchBenchmark class compares the trigram name index with a linear scan
+ * The scan is the original searchProductsByName implementation. Queries are substrings of real
+ * names (mostly hits, some selective) and one miss in ten; prefix takes the first two letters
+ * of each and returns the first 20 names. InventoryIndexTest checks the index against the scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class NameSearchBenchmark {
+    private static final MethodHandle GET_NAME =
+            InventoryApi.method(InventoryApi.type("Product"), "getName", String.class);
+    private static final MethodHandle SEARCH_PRODUCTS_BY_NAME_PREFIX = InventoryApi.method(InventoryApi.type("Inventory"),
+            "searchProductsByNamePrefix", List.class, String.class, int.class);
+    private static final int QUERIES = 200;
+    
+    @Param({"1000000"})
+    public int size;
+    
+    private Object inventory;
+    private List<?> catalog;
+    private String[] queries;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        inventory = InventoryApi.populatedInventory(size, null);
+        catalog = InventoryApi.getAllProducts(inventory);
+        Random random = new Random(3);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name = (String) GET_NAME.invokeExact((Object) catalog.get(random.nextInt(size)));
+            if (i % 10 == 0) {
+                queries[i] = "zzq" + i;
+            } else {
+                int length = 3 + random.nextInt(Math.min(8, name.length() - 2));
+                int start = random.nextInt(name.length() - length + 1);
+                queries[i] = name.substring(start, start + length).toUpperCase();
+            }
+        }
+    }
+    
+    @Benchmark
+    public List<?> trigramIndex() {
+        return InventoryApi.searchProductsByName(inventory, queries[next++ % QUERIES]);
+    }
+    
+    @Benchmark
+    public List<?> scan() throws Throwable {
+        String query = queries[next++ % QUERIES].toLowerCase();
+        List<Object> matches = new ArrayList<>();
+        for (Object product : catalog) {
+            if (((String) GET_NAME.invokeExact(product)).toLowerCase().contains(query)) {
+                matches.add(product);
+            }
+        }
+        return matches;
+    }
+    
+    @Benchmark
+    public List<?> prefix() throws Throwable {
+        return (List<?>) SEARCH_PRODUCTS_BY_NAME_PREFIX.invokeExact(inventory, queries[next++ % QUERIES].substring(0, 2), 20);
+    }
+}
@@ -0,0 +1,120 @@
+package inventory.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PartitionBenchmark class measures a partitioned inventory with 1, 4 and 16 partitions
+ * Times startup (loading every partition file), a full checkpoint, and a single quantity
+ * change, which rewrites the data file of one partition only.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PartitionBenchmark {
+    private static final Class<?> PARTITIONED = InventoryApi.type("PartitionedInventory");
+    private static final MethodHandle NEW_PARTITIONED = InventoryApi.constructor(PARTITIONED, String.class, int.class);
+    private static final MethodHandle SET_VERBOSE =
+            InventoryApi.method(PARTITIONED, "setVerbose", void.class, boolean.class);
+    private static final MethodHandle UPSERT_PRODUCTS =
+            InventoryApi.method(PARTITIONED, "upsertProducts", int.class, Collection.class);
+    private static final MethodHandle UPDATE_PRODUCT_QUANTITY =
+            InventoryApi.method(PARTITIONED, "updateProductQuantity", boolean.class, String.class, int.class);
+    private static final MethodHandle CHECKPOINT = InventoryApi.method(PARTITIONED, "checkpoint", void.class);
+    private static final MethodHandle CLOSE = InventoryApi.method(PARTITIONED, "close", void.class);
+    
+    @Param({"1", "4", "16"})
+    public int partitions;
+    
+    @Param({"1000000"})
+    public int size;
+    
+    private File directory;
+    private String dataFile;
+    private List<String> ids;
+    private Object inventory;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("partitions").toFile();
+        dataFile = new File(directory, "inventory.dat").getPath();
+        ids = new ArrayList<>(size);
+        Object generator = InventoryApi.newGenerator(42L);
+        List<Object> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Object product = InventoryApi.nextProduct(generator);
+            ids.add(InventoryApi.getId(product));
+            products.add(product);
+        }
+        Object writer = open();
+        int stored = (int) UPSERT_PRODUCTS.invokeExact(writer, (Collection<?>) products);
+        CHECKPOINT.invokeExact(writer);
+        CLOSE.invokeExact(writer);
+    }
+    
+    @Setup(Level.Iteration)
+    public void openInventory() throws Throwable {
+        inventory = open();
+    }
+    
+    @TearDown(Level.Iteration)
+    public void closeInventory() throws Throwable {
+        CLOSE.invokeExact(inventory);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    // Load every partition file
+    @Benchmark
+    public Object startup() throws Throwable {
+        Object loaded = open();
+        CLOSE.invokeExact(loaded);
+        return loaded;
+    }
+    
+    @Benchmark
+    public void checkpoint() throws Throwable {
+        CHECKPOINT.invokeExact(inventory);
+    }
+    
+    // One quantity change, saved by rewriting its partition's data file
+    @Benchmark
+    public boolean singleWrite() throws Throwable {
+        return (boolean) UPDATE_PRODUCT_QUANTITY.invokeExact(inventory, ids.get(next++ * 7919 % ids.size()), 1);
+    }
+    
+    private Object open() throws Throwable {
+        Object opened = (Object) NEW_PARTITIONED.invokeExact(dataFile, partitions);
+        SET_VERBOSE.invokeExact(opened, false);
+        return opened;
+    }
+}
@@ -0,0 +1,62 @@
+package inventory.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PersistenceBenchmark class measures saving and loading the data file
+ * Save writes a snapshot of every product exactly as Inventory does (temporary file and rename,
+ * without fsync); load reads the snapshot back into a map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+    
+    private List<?> products;
+    private File file;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        products = InventoryApi.getAllProducts(InventoryApi.populatedInventory(size, null));
+        file = File.createTempFile("inventory-benchmark", ".dat");
+        InventoryApi.writeSnapshot(products, file);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+    
+    @Benchmark
+    public long save() {
+        return InventoryApi.writeSnapshot(products, file);
+    }
+    
+    @Benchmark
+    public Map<?, ?> load() {
+        return InventoryApi.readSnapshot(file);
+    }
+}
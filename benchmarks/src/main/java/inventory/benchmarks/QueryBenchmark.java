@@ -0,0 +1,164 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * QueryBenchmark class compares Inventory.query() with filtering getAllProducts() in a stream
+ * Runs compound queries of very different selectivity (-p query=1..8, see QUERIES) against the
+ * same catalog, and a quantity update once the price, quantity and value indexes exist, to
+ * compare with InventoryWriteBenchmark's. Inventory.explain() prints the plan chosen for a
+ * query; InventoryIndexTest checks that both ways return the same products.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> PRODUCT = InventoryApi.type("Product");
+    private static final Class<?> QUERY = InventoryApi.type("ProductQuery");
+    private static final Class<?> ORDER = InventoryApi.type("ProductOrder");
+    private static final MethodHandle NEW_QUERY = InventoryApi.constructor(QUERY);
+    private static final MethodHandle CATEGORY = InventoryApi.method(QUERY, "category", QUERY, String.class);
+    private static final MethodHandle NAME_CONTAINS = InventoryApi.method(QUERY, "nameContains", QUERY, String.class);
+    private static final MethodHandle PRICE_BETWEEN =
+            InventoryApi.method(QUERY, "priceBetween", QUERY, double.class, double.class);
+    private static final MethodHandle QUANTITY_BETWEEN =
+            InventoryApi.method(QUERY, "quantityBetween", QUERY, int.class, int.class);
+    private static final MethodHandle QUANTITY_BELOW = InventoryApi.method(QUERY, "quantityBelow", QUERY, int.class);
+    private static final MethodHandle VALUE_BETWEEN =
+            InventoryApi.method(QUERY, "valueBetween", QUERY, double.class, double.class);
+    private static final MethodHandle ORDER_BY = InventoryApi.method(QUERY, "orderBy", QUERY, ORDER, boolean.class);
+    private static final MethodHandle LIMIT = InventoryApi.method(QUERY, "limit", QUERY, int.class);
+    private static final MethodHandle MATCHES = InventoryApi.method(QUERY, "matches", boolean.class, PRODUCT);
+    private static final MethodHandle GET_ORDER = InventoryApi.internalMethod(QUERY, "getOrder", ORDER);
+    private static final MethodHandle IS_DESCENDING = InventoryApi.internalMethod(QUERY, "isDescending", boolean.class);
+    private static final MethodHandle GET_LIMIT = InventoryApi.internalMethod(QUERY, "getLimit", int.class);
+    private static final MethodHandle PRODUCT_COMPARATOR = InventoryApi.internalStaticMethod(
+            InventoryApi.type("ProductOrderIndex"), "productComparator", Comparator.class, ORDER);
+    private static final MethodHandle RUN_QUERY = InventoryApi.method(INVENTORY, "query", List.class, QUERY);
+    private static final Object VALUE = InventoryApi.constant("ProductOrder", "VALUE");
+    private static final Object PRICE = InventoryApi.constant("ProductOrder", "PRICE");
+    private static final String[] CATEGORIES = new String[50];
+    private static final String[] WORDS = {"steel", "oak", "cordless", "mini", "pro", "classic", "smart", "eco"};
+    
+    static {
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            CATEGORIES[i] = i == 0 ? "Electronics" : "Category " + i;
+        }
+    }
+    
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+    public int query;
+    
+    @Param({"500000"})
+    public int size;
+    
+    private Object inventory;
+    private Object productQuery;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        inventory = InventoryApi.newInventory();
+        Random random = new Random(7);
+        List<Object> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " item " + i;
+            products.add(InventoryApi.newProduct("Q" + i, name, 1 + random.nextInt(100_000) / 100.0,
+                    random.nextInt(500), CATEGORIES[random.nextInt(CATEGORIES.length)], ""));
+        }
+        InventoryApi.upsertProducts(inventory, products);
+        productQuery = query(query);
+        // Build every index once, so neither the queries nor the updates pay for it
+        List<?> built = (List<?>) RUN_QUERY.invokeExact(inventory,
+                (Object) VALUE_BETWEEN.invokeExact((Object) QUANTITY_BELOW.invokeExact(
+                        (Object) PRICE_BETWEEN.invokeExact((Object) NEW_QUERY.invokeExact(), 1.0, 2.0), 1), 0.0, 1.0));
+    }
+    
+    @Benchmark
+    public List<?> query() throws Throwable {
+        return (List<?>) RUN_QUERY.invokeExact(inventory, productQuery);
+    }
+    
+    // What callers did before query(): filter every product, then sort and cut
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<?> streamFilter() throws Throwable {
+        List<Object> matches = new ArrayList<>();
+        for (Object product : InventoryApi.getAllProducts(inventory)) {
+            if ((boolean) MATCHES.invokeExact(productQuery, product)) {
+                matches.add(product);
+            }
+        }
+        Object order = (Object) GET_ORDER.invokeExact(productQuery);
+        if (order != null) {
+            Comparator<Object> comparator = (Comparator<Object>) PRODUCT_COMPARATOR.invokeExact(order);
+            matches.sort((boolean) IS_DESCENDING.invokeExact(productQuery) ? comparator.reversed() : comparator);
+        }
+        int limit = (int) GET_LIMIT.invokeExact(productQuery);
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+    
+    // Quantity update that also moves the product in the query indexes
+    @Benchmark
+    public boolean updateProductQuantity() {
+        next = next * 1103515245 + 12345;
+        return InventoryApi.updateProductQuantity(inventory, "Q" + (next >>> 1) % size, (next & 1024) == 0 ? 1 : -1);
+    }
+    
+    private static Object query(int number) throws Throwable {
+        Object query = (Object) NEW_QUERY.invokeExact();
+        switch (number) {
+            case 1:
+                query = (Object) CATEGORY.invokeExact(query, "Electronics");
+                query = (Object) PRICE_BETWEEN.invokeExact(query, 50.0, 200.0);
+                query = (Object) QUANTITY_BELOW.invokeExact(query, 30);
+                return (Object) ORDER_BY.invokeExact(query, VALUE, true);
+            case 2:
+                return (Object) PRICE_BETWEEN.invokeExact(query, 500.0, 501.0);
+            case 3:
+                query = (Object) QUANTITY_BETWEEN.invokeExact(query, 7, 7);
+                return (Object) PRICE_BETWEEN.invokeExact(query, 100.0, 400.0);
+            case 4:
+                query = (Object) CATEGORY.invokeExact(query, "Category 7");
+                query = (Object) QUANTITY_BETWEEN.invokeExact(query, 100, 150);
+                return (Object) VALUE_BETWEEN.invokeExact(query, 0.0, 20_000.0);
+            case 5:
+                query = (Object) NAME_CONTAINS.invokeExact(query, "item 4242");
+                return (Object) PRICE_BETWEEN.invokeExact(query, 0.0, 800.0);
+            case 6:
+                query = (Object) ORDER_BY.invokeExact(query, VALUE, true);
+                return (Object) LIMIT.invokeExact(query, 10);
+            case 7:
+                query = (Object) CATEGORY.invokeExact(query, "Electronics");
+                query = (Object) ORDER_BY.invokeExact(query, PRICE, false);
+                return (Object) LIMIT.invokeExact(query, 20);
+            case 8:
+                query = (Object) PRICE_BETWEEN.invokeExact(query, 100.0, 900.0);
+                return (Object) QUANTITY_BELOW.invokeExact(query, 400);
+            default:
+                throw new IllegalArgumentException("No query " + number);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReportBenchmark class compares the single-pass report engine with one pass per report
+ * Over a ConcurrentHashMap of products, separate stream passes for the totals, low stock,
+ * category summary and price and quantity distributions are compared with one sequential and
+ * one fork-join pass computing all of them. Over an Inventory of the same products,
+ * generateReport() is compared with the index-backed report methods the menu used before.
+ * -p size=10000000 with a larger heap gives the 10-million-product case.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> PRODUCT = InventoryApi.type("Product");
+    private static final Class<?> REPORT = InventoryApi.type("InventoryReport");
+    private static final MethodHandle RUN_ENGINE = InventoryApi.internalStaticMethod(InventoryApi.type("ReportEngine"),
+            "run", REPORT, Collection.class, Predicate.class, ForkJoinPool.class);
+    private static final MethodHandle GENERATE_REPORT = InventoryApi.method(INVENTORY, "generateReport", REPORT);
+    private static final MethodHandle GET_TOTAL_INVENTORY_VALUE_CENTS =
+            InventoryApi.method(INVENTORY, "getTotalInventoryValueCents", long.class);
+    private static final MethodHandle GET_CATEGORY_STATISTICS =
+            InventoryApi.method(INVENTORY, "getCategoryStatistics", List.class);
+    private static final MethodHandle GET_QUANTITY = InventoryApi.method(PRODUCT, "getQuantity", int.class);
+    private static final MethodHandle GET_PRICE = InventoryApi.method(PRODUCT, "getPrice", double.class);
+    private static final MethodHandle GET_CATEGORY = InventoryApi.method(PRODUCT, "getCategory", String.class);
+    private static final MethodHandle GET_TOTAL_VALUE_CENTS =
+            InventoryApi.method(PRODUCT, "getTotalValueCents", long.class);
+    private static final MethodHandle TO_CENTS =
+            InventoryApi.staticMethod(InventoryApi.type("Money"), "toCents", long.class, double.class);
+    private static final int LOW_STOCK_THRESHOLD = 10;
+    private static final long[] PRICE_BOUNDS = {1_000, 5_000, 10_000, 50_000, 100_000};
+    private static final long[] QUANTITY_BOUNDS = {1, 10, 50, 100, 500};
+    
+    @Param({"1000000"})
+    public int size;
+    
+    private Collection<Object> products;
+    private Object inventory;
+    private Predicate<Object> lowStock;
+    private ForkJoinPool pool;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> map = new ConcurrentHashMap<>(size);
+        Object generator = InventoryApi.newGenerator(42L);
+        for (int i = 0; i < size; i++) {
+            Object product = InventoryApi.nextProduct(generator);
+            map.put(InventoryApi.getId(product), product);
+        }
+        products = map.values();
+        inventory = InventoryApi.newInventory();
+        InventoryApi.upsertProducts(inventory, products);
+        lowStock = product -> quantity(product) < LOW_STOCK_THRESHOLD;
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+    
+    // Every report computed with its own pass, the way the menu used to compute them
+    @Benchmark
+    public List<Object> separatePasses() {
+        List<Object> results = new ArrayList<>();
+        results.add(products.stream().count());
+        results.add(products.stream().mapToLong(ReportBenchmark::valueCents).sum());
+        results.add(products.stream().filter(lowStock).collect(Collectors.toList()));
+        results.add(products.stream().collect(Collectors.groupingBy(ReportBenchmark::category,
+                Collectors.summingLong(ReportBenchmark::quantity))));
+        results.add(products.stream().collect(Collectors.groupingBy(ReportBenchmark::category,
+                Collectors.summingLong(ReportBenchmark::valueCents))));
+        results.add(products.stream().collect(Collectors.groupingBy(
+                product -> bucketOf(PRICE_BOUNDS, priceCents(product)), Collectors.counting())));
+        results.add(products.stream().collect(Collectors.groupingBy(
+                product -> bucketOf(QUANTITY_BOUNDS, quantity(product)), Collectors.counting())));
+        return results;
+    }
+    
+    @Benchmark
+    public Object singlePass() throws Throwable {
+        return (Object) RUN_ENGINE.invokeExact(products, lowStock, (ForkJoinPool) null);
+    }
+    
+    @Benchmark
+    public Object singlePassForkJoin() throws Throwable {
+        return (Object) RUN_ENGINE.invokeExact(products, lowStock, pool);
+    }
+    
+    // What the menu's All Reports used to call
+    @Benchmark
+    public long indexedReportMethods() throws Throwable {
+        int count = InventoryApi.getTotalProducts(inventory);
+        long value = (long) GET_TOTAL_INVENTORY_VALUE_CENTS.invokeExact(inventory);
+        int lowStockCount = InventoryApi.getLowStockProducts(inventory).size();
+        List<?> categories = (List<?>) GET_CATEGORY_STATISTICS.invokeExact(inventory);
+        return count + value + lowStockCount + categories.size();
+    }
+    
+    @Benchmark
+    public Object generateReport() throws Throwable {
+        return (Object) GENERATE_REPORT.invokeExact(inventory);
+    }
+    
+    private static int quantity(Object product) {
+        try {
+            return (int) GET_QUANTITY.invokeExact(product);
+        } catch (Throwable e) {
+            throw InventoryApi.rethrow(e);
+        }
+    }
+    
+    private static long valueCents(Object product) {
+        try {
+            return (long) GET_TOTAL_VALUE_CENTS.invokeExact(product);
+        } catch (Throwable e) {
+            throw InventoryApi.rethrow(e);
+        }
+    }
+    
+    private static long priceCents(Object product) {
+        try {
+            return (long) TO_CENTS.invokeExact((double) GET_PRICE.invokeExact(product));
+        } catch (Throwable e) {
+            throw InventoryApi.rethrow(e);
+        }
+    }
+    
+    private static String category(Object product) {
+        try {
+            String category = (String) GET_CATEGORY.invokeExact(product);
+            return category == null ? "" : category;
+        } catch (Throwable e) {
+            throw InventoryApi.rethrow(e);
+        }
+    }
+    
+    private static int bucketOf(long[] bounds, long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value >= bounds[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,105 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReservationBenchmark class runs concurrent checkouts against the reservation API
+ * Every operation reserves 1 to 3 units, then confirms the reservation (70%), releases it (20%)
+ * or abandons it to expire (10%), on a single hot SKU (every thread contends for one lock
+ * stripe) or spread over 1,000 SKUs. Stock is large enough never to run out; change the thread
+ * count with -t, e.g. -t 1,16,256. ReservationTest checks that nothing is oversold and that
+ * reservations never expire early.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(16)
+@State(Scope.Benchmark)
+public class ReservationBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> RESERVATION = InventoryApi.type("Reservation");
+    private static final MethodHandle RESERVE_STOCK =
+            InventoryApi.method(INVENTORY, "reserveStock", RESERVATION, String.class, int.class, long.class);
+    private static final MethodHandle CONFIRM_RESERVATION =
+            InventoryApi.method(INVENTORY, "confirmReservation", boolean.class, String.class);
+    private static final MethodHandle RELEASE_RESERVATION =
+            InventoryApi.method(INVENTORY, "releaseReservation", boolean.class, String.class);
+    private static final MethodHandle GET_ID = InventoryApi.method(RESERVATION, "getId", String.class);
+    private static final long TTL_MILLIS = 1_000;
+    
+    @Param({"1", "1000"})
+    public int skus;
+    
+    private Object inventory;
+    private String[] ids;
+    
+    /**
+     * Checkout class is one thread's random choices
+     */
+    @State(Scope.Thread)
+    public static class Checkout {
+        private int seed = (int) Thread.currentThread().getId() * 7919;
+        
+        int next(int bound) {
+            seed = seed * 1103515245 + 12345;
+            return (seed >>> 1) % bound;
+        }
+    }
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        inventory = InventoryApi.newInventory();
+        ids = new String[skus];
+        List<Object> products = new ArrayList<>(skus);
+        for (int i = 0; i < skus; i++) {
+            ids[i] = "SKU" + i;
+            products.add(InventoryApi.newProduct(ids[i], "Product " + i, 9.99, Integer.MAX_VALUE / 2, "Bench", ""));
+        }
+        InventoryApi.upsertProducts(inventory, products);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        InventoryApi.close(inventory);
+    }
+    
+    // Confirmed units go back into stock, so the products never sell out
+    @Benchmark
+    public boolean checkout(Checkout checkout) throws Throwable {
+        String id = ids[checkout.next(ids.length)];
+        int quantity = 1 + checkout.next(3);
+        Object reservation = (Object) RESERVE_STOCK.invokeExact(inventory, id, quantity, TTL_MILLIS);
+        if (reservation == null) {
+            return false;
+        }
+        int outcome = checkout.next(10);
+        if (outcome < 7) {
+            boolean confirmed = (boolean) CONFIRM_RESERVATION.invokeExact(inventory, (String) GET_ID.invokeExact(reservation));
+            InventoryApi.updateProductQuantity(inventory, id, quantity);
+            return confirmed;
+        } else if (outcome < 9) {
+            return (boolean) RELEASE_RESERVATION.invokeExact(inventory, (String) GET_ID.invokeExact(reservation));
+        }
+        return true; // abandoned, the timing wheel expires it
+    }
+}
@@ -0,0 +1,165 @@
+package inventory.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ScriptBenchmark class replays a generated command script
+ * The script mixes quantity changes, updates, adds, deletes, lookups, searches and the odd
+ * report, and is replayed with the full-file rewrite and with the journal (synced at intervals,
+ * or on every commit with "always"), persisting after every command or once per batch of 1,000.
+ * Each run replays the whole script into a freshly filled inventory, so the time reported is for
+ * all the commands. A full rewrite per command is slow, hence the short default script; the
+ * journal modes are worth running on a longer one, e.g. -p commands=1000000.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ScriptBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> JOURNAL = InventoryApi.type("InventoryJournal");
+    private static final Class<?> PRODUCT = InventoryApi.type("Product");
+    private static final MethodHandle NEW_JOURNAL = InventoryApi.constructor(JOURNAL,
+            String.class, InventoryApi.type("InventoryJournal$SyncPolicy"), long.class, int.class);
+    private static final MethodHandle NEW_INVENTORY =
+            InventoryApi.internalConstructor(INVENTORY, String.class, JOURNAL, long.class, boolean.class);
+    private static final MethodHandle RUN_FILE = InventoryApi.staticMethod(InventoryApi.type("CommandScript"),
+            "runFile", InventoryApi.type("ScriptResult"), INVENTORY, File.class, Writer.class, int.class);
+    private static final MethodHandle GET_NAME = InventoryApi.method(PRODUCT, "getName", String.class);
+    private static final MethodHandle GET_CATEGORY = InventoryApi.method(PRODUCT, "getCategory", String.class);
+    
+    @Param({"rewrite", "journal", "always"})
+    public String persistence;
+    
+    @Param({"1", "1000"})
+    public int batchSize;
+    
+    @Param({"10000"})
+    public int productCount;
+    
+    @Param({"1000"})
+    public int commands;
+    
+    private File directory;
+    private File script;
+    private File output;
+    private List<Object> catalog;
+    private Object inventory;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("script-benchmark").toFile();
+        script = new File(directory, "script.txt");
+        output = new File(directory, "output.jsonl");
+        catalog = new ArrayList<>(productCount);
+        Object generator = InventoryApi.newGenerator(42L);
+        for (int i = 0; i < productCount; i++) {
+            catalog.add(InventoryApi.nextProduct(generator));
+        }
+        writeScript();
+    }
+    
+    // Fresh inventory on new files for every replay, filled in one batch
+    @Setup(Level.Iteration)
+    public void newInventory() throws Throwable {
+        closeInventory();
+        File dataFile = new File(directory, "inventory.dat");
+        Object journal = persistence.equals("rewrite") ? null : (Object) NEW_JOURNAL.invokeExact(
+                dataFile.getPath() + ".log", InventoryApi.constant("InventoryJournal$SyncPolicy",
+                        persistence.equals("always") ? "ALWAYS" : "INTERVAL"), 1000L, 1_000_000);
+        inventory = (Object) NEW_INVENTORY.invokeExact(dataFile.getPath(), journal, -1L, false);
+        InventoryApi.upsertProducts(inventory, catalog);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        closeInventory();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    @Benchmark
+    public Object replay() throws Throwable {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            return (Object) RUN_FILE.invokeExact(inventory, script, out, batchSize);
+        }
+    }
+    
+    private void closeInventory() {
+        if (inventory != null) {
+            InventoryApi.close(inventory);
+            inventory = null;
+        }
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith("inventory.dat")) {
+                file.delete();
+            }
+        }
+    }
+    
+    // Script of commands over the catalog; roughly 1 in 40 fails (missing product or stock taken
+    // below zero), as a real feed would have
+    private void writeScript() throws Throwable {
+        Random random = new Random(11);
+        int nextId = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(script),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder(128);
+            for (int i = 0; i < commands; i++) {
+                Object product = catalog.get(random.nextInt(catalog.size()));
+                String id = InventoryApi.getId(product);
+                int kind = random.nextInt(100);
+                line.setLength(0);
+                if (kind < 58) {
+                    line.append("qty ").append(id).append(' ').append(random.nextInt(30) - 5);
+                } else if (kind < 73) {
+                    line.append("get ").append(id);
+                } else if (kind < 83) {
+                    line.append("update ").append(id).append(" price=").append(1 + random.nextInt(10_000) / 100.0);
+                } else if (kind < 91) {
+                    line.append("add S").append(nextId++).append(" \"Script item ").append(i).append("\" ")
+                            .append(1 + random.nextInt(10_000) / 100.0).append(' ').append(random.nextInt(100))
+                            .append(' ').append((String) GET_CATEGORY.invokeExact(product));
+                } else if (kind < 97) {
+                    line.append("delete S").append(random.nextInt(nextId + 1));
+                } else if (kind < 99) {
+                    String name = (String) GET_NAME.invokeExact(product);
+                    line.append("search prefix \"").append(name, 0, Math.min(8, name.length())).append("\" 10");
+                } else {
+                    line.append("report summary");
+                }
+                out.append(line).append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package inventory.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SnapshotBenchmark class compares the binary snapshot format with Java serialization
+ * Saves and loads the same catalog both ways: "serializable" is the map written with an
+ * ObjectOutputStream and read back through ProductSnapshot.readLegacy, the format the data file
+ * used to have. Run with -prof gc for the bytes allocated per load.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+    private static final MethodHandle READ_LEGACY =
+            InventoryApi.staticMethod(InventoryApi.type("ProductSnapshot"), "readLegacy", Map.class, File.class);
+    
+    @Param({"binary", "serializable"})
+    public String format;
+    
+    @Param({"500000"})
+    public int size;
+    
+    private Map<String, Object> products;
+    private File file;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        products = new HashMap<>();
+        Object generator = InventoryApi.newGenerator(42L);
+        for (int i = 0; i < size; i++) {
+            Object product = InventoryApi.nextProduct(generator);
+            products.put(InventoryApi.getId(product), product);
+        }
+        file = File.createTempFile("inventory-" + format, ".dat");
+        save();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+    
+    @Benchmark
+    public long save() throws IOException {
+        if (format.equals("binary")) {
+            return InventoryApi.writeSnapshot(products.values(), file);
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(products);
+        }
+        return file.length();
+    }
+    
+    @Benchmark
+    public Map<?, ?> load() throws Throwable {
+        if (format.equals("binary")) {
+            return InventoryApi.readSnapshot(file);
+        }
+        return (Map<?, ?>) READ_LEGACY.invokeExact(file);
+    }
+}
@@ -0,0 +1,153 @@
+package inventory.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * StockLedgerBenchmark class measures the stock ledger on a long history
+ * Records movements (default 10,000,000; -p movements=100000000 with a larger heap for the
+ * full-year case) spread evenly over the last 365 days across 10,000 products, then times
+ * "quantity as of T" and "movements in a one-day window" for random products and times against
+ * decoding the product's whole history, with and without everything older than 90 days
+ * compacted into daily rollups. record measures appending to a fresh ledger.
+ * StockLedgerTest checks the answers against the recorded movements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StockLedgerBenchmark {
+    private static final Class<?> LEDGER = InventoryApi.type("StockLedger");
+    private static final Class<?> REASON = InventoryApi.type("StockMovement$Reason");
+    private static final MethodHandle NEW_LEDGER =
+            InventoryApi.internalConstructor(LEDGER, File.class, long.class, long.class, long.class);
+    private static final MethodHandle RECORD =
+            InventoryApi.internalMethod(LEDGER, "record", void.class, String.class, int.class, REASON, long.class);
+    private static final MethodHandle QUANTITY_AT =
+            InventoryApi.internalMethod(LEDGER, "quantityAt", long.class, String.class, long.class);
+    private static final MethodHandle MOVEMENTS =
+            InventoryApi.internalMethod(LEDGER, "movements", List.class, String.class, long.class, long.class);
+    private static final MethodHandle COMPACT = InventoryApi.internalMethod(LEDGER, "compact", int.class, long.class);
+    private static final MethodHandle GET_QUANTITY_CHANGE =
+            InventoryApi.method(InventoryApi.type("StockMovement"), "getQuantityChange", int.class);
+    private static final Object ADJUSTED = InventoryApi.constant("StockMovement$Reason", "ADJUSTED");
+    private static final Object CONFIRMED = InventoryApi.constant("StockMovement$Reason", "RESERVATION_CONFIRMED");
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long SPAN_MILLIS = 365 * DAY_MILLIS;
+    private static final long DETAIL_MILLIS = 90 * DAY_MILLIS;
+    private static final int PRODUCTS = 10_000;
+    
+    @Param({"10000000"})
+    public long movements;
+    
+    @Param({"false", "true"})
+    public boolean compacted;
+    
+    private Object ledger;
+    private String[] ids;
+    private long now;
+    private int seed = 1;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        ids = new String[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            ids[i] = String.format("SKU-%08d", i);
+        }
+        now = System.currentTimeMillis();
+        ledger = newLedger();
+        int[] quantities = new int[PRODUCTS];
+        Random random = new Random(1);
+        long first = now - SPAN_MILLIS;
+        for (long i = 0; i < movements; i++) {
+            int product = random.nextInt(PRODUCTS);
+            int change = random.nextInt(11) - 5;
+            if (change == 0 || quantities[product] + change < 0) {
+                change = 1 + random.nextInt(5);
+            }
+            quantities[product] += change;
+            long time = first + (long) (i * (double) SPAN_MILLIS / movements);
+            RECORD.invokeExact(ledger, ids[product], change, change > 0 ? ADJUSTED : CONFIRMED, time);
+        }
+        if (compacted) {
+            int rolledUp = (int) COMPACT.invokeExact(ledger, now); // movements merged into rollups
+        }
+    }
+    
+    /**
+     * Appender class is a fresh in-memory ledger for every iteration, with its own clock
+     */
+    @State(Scope.Thread)
+    public static class Appender {
+        private Object ledger;
+        private long time;
+        private int count;
+        
+        @Setup(Level.Iteration)
+        public void setUp() throws Throwable {
+            ledger = newLedger();
+            time = System.currentTimeMillis() - SPAN_MILLIS;
+        }
+    }
+    
+    @Benchmark
+    public long quantityAt() throws Throwable {
+        return (long) QUANTITY_AT.invokeExact(ledger, nextId(), nextTime());
+    }
+    
+    // Movements of a random product in a one-day window
+    @Benchmark
+    public int window() throws Throwable {
+        long time = nextTime();
+        return ((List<?>) MOVEMENTS.invokeExact(ledger, nextId(), time, time + DAY_MILLIS)).size();
+    }
+    
+    // What quantityAt would cost by decoding the product's history up to T
+    @Benchmark
+    public long fullReplay() throws Throwable {
+        long quantity = 0;
+        for (Object movement : (List<?>) MOVEMENTS.invokeExact(ledger, nextId(), Long.MIN_VALUE, nextTime() + 1)) {
+            quantity += (int) GET_QUANTITY_CHANGE.invokeExact(movement);
+        }
+        return quantity;
+    }
+    
+    @Benchmark
+    public void record(Appender appender) throws Throwable {
+        appender.time += 3;
+        RECORD.invokeExact(appender.ledger, ids[appender.count++ % PRODUCTS], 1, ADJUSTED, appender.time);
+    }
+    
+    private String nextId() {
+        seed = seed * 1103515245 + 12345;
+        return ids[(seed >>> 1) % PRODUCTS];
+    }
+    
+    private long nextTime() {
+        seed = seed * 1103515245 + 12345;
+        return now - (long) ((seed >>> 1) / (double) Integer.MAX_VALUE * SPAN_MILLIS);
+    }
+    
+    // In-memory ledger keeping 90 days of detail and daily rollups for ever
+    private static Object newLedger() throws Throwable {
+        return (Object) NEW_LEDGER.invokeExact((File) null, DETAIL_MILLIS, DAY_MILLIS, 0L);
+    }
+}
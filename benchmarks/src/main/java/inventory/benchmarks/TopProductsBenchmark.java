@@ -0,0 +1,128 @@
+package inventory.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TopProductsBenchmark class compares the ranking indexes with sorting getAllProducts()
+ * Times the top 100 products by stock value, the 100 lowest-quantity products and the most
+ * expensive product per category both ways. InventoryIndexTest checks that the rankings match
+ * a full sort, also after random quantity and price updates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TopProductsBenchmark {
+    private static final Class<?> INVENTORY = InventoryApi.type("Inventory");
+    private static final Class<?> PRODUCT = InventoryApi.type("Product");
+    private static final Class<?> ORDER = InventoryApi.type("ProductOrder");
+    private static final MethodHandle GET_TOP_PRODUCTS =
+            InventoryApi.method(INVENTORY, "getTopProducts", List.class, ORDER, boolean.class, int.class);
+    private static final MethodHandle GET_TOP_PRODUCTS_BY_CATEGORY =
+            InventoryApi.method(INVENTORY, "getTopProductsByCategory", Map.class, ORDER, boolean.class, int.class);
+    private static final MethodHandle GET_CATEGORY = InventoryApi.method(PRODUCT, "getCategory", String.class);
+    private static final MethodHandle PRODUCT_COMPARATOR = InventoryApi.internalStaticMethod(
+            InventoryApi.type("ProductOrderIndex"), "productComparator", Comparator.class, ORDER);
+    private static final Object VALUE = InventoryApi.constant("ProductOrder", "VALUE");
+    private static final Object QUANTITY = InventoryApi.constant("ProductOrder", "QUANTITY");
+    private static final Object PRICE = InventoryApi.constant("ProductOrder", "PRICE");
+    private static final int TOP = 100;
+    private static final int CATEGORIES = 50;
+    
+    @Param({"1000000"})
+    public int size;
+    
+    private Object inventory;
+    private Comparator<Object> byValue;
+    private Comparator<Object> byQuantity;
+    private Comparator<Object> byPrice;
+    
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        inventory = InventoryApi.newInventory();
+        Random random = new Random(5);
+        List<Object> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(InventoryApi.newProduct("T" + i, "Product " + i, 1 + random.nextInt(100_000) / 100.0,
+                    random.nextInt(1000), "Category " + random.nextInt(CATEGORIES), ""));
+        }
+        InventoryApi.upsertProducts(inventory, products);
+        byValue = (Comparator<Object>) PRODUCT_COMPARATOR.invokeExact(VALUE);
+        byQuantity = (Comparator<Object>) PRODUCT_COMPARATOR.invokeExact(QUANTITY);
+        byPrice = (Comparator<Object>) PRODUCT_COMPARATOR.invokeExact(PRICE);
+        // Build the rankings once
+        topByValue();
+        lowestQuantity();
+        mostExpensivePerCategory();
+    }
+    
+    @Benchmark
+    public List<?> topByValue() throws Throwable {
+        return (List<?>) GET_TOP_PRODUCTS.invokeExact(inventory, VALUE, true, TOP);
+    }
+    
+    @Benchmark
+    public List<?> topByValueSorted() {
+        return sortAll(byValue.reversed());
+    }
+    
+    @Benchmark
+    public List<?> lowestQuantity() throws Throwable {
+        return (List<?>) GET_TOP_PRODUCTS.invokeExact(inventory, QUANTITY, false, TOP);
+    }
+    
+    @Benchmark
+    public List<?> lowestQuantitySorted() {
+        return sortAll(byQuantity);
+    }
+    
+    @Benchmark
+    public Map<?, ?> mostExpensivePerCategory() throws Throwable {
+        return (Map<?, ?>) GET_TOP_PRODUCTS_BY_CATEGORY.invokeExact(inventory, PRICE, true, 1);
+    }
+    
+    // One pass over every product, keeping the most expensive of each category
+    @Benchmark
+    public Map<?, ?> mostExpensivePerCategoryScanned() throws Throwable {
+        Map<String, Object> result = new HashMap<>();
+        for (Object product : InventoryApi.getAllProducts(inventory)) {
+            String category = (String) GET_CATEGORY.invokeExact(product);
+            Object best = result.get(category);
+            if (best == null || byPrice.compare(product, best) > 0) {
+                result.put(category, product);
+            }
+        }
+        return result;
+    }
+    
+    // What callers did before the rankings: copy and sort the whole catalog, keep the first TOP
+    private List<?> sortAll(Comparator<Object> comparator) {
+        @SuppressWarnings("unchecked")
+        List<Object> all = (List<Object>) InventoryApi.getAllProducts(inventory);
+        all.sort(comparator);
+        return new ArrayList<>(all.subList(0, Math.min(TOP, all.size())));
+    }
+}
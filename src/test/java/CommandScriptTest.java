@@ -0,0 +1,142 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * CommandScriptTest class checks how command lines are split into arguments and that every
+ * malformed or failing command answers with one "ok":false line while the script carries on
+ * Each output line is parsed back with Json, which also checks that it is valid JSON.
+ */
+class CommandScriptTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void quotesAndBackslashesGroupArguments() throws IOException {
+        Inventory inventory = inventory();
+        List<Map<?, ?>> output = run(inventory, 1,
+                "add A1 \"Desk lamp\" 24.99 40 Lighting \"Adjustable \\\"arm\\\", 2 m\"",
+                "add A2 Desk\\ chair 120 +3 \"\" ",
+                "  add   A3   Half\" \"quoted   1   1  ",
+                "update A1 \"name=Desk lamp XL\" price=22.5 category= description=\\#1",
+                "get A1");
+
+        assertEquals(5, output.size());
+        for (Map<?, ?> entry : output) {
+            assertEquals(Boolean.TRUE, entry.get("ok"), String.valueOf(entry));
+        }
+        assertEquals(Arrays.asList("A1", "Desk lamp XL", 22.5, 40, "", "#1"), fields(inventory.getProduct("A1")));
+        assertEquals(Arrays.asList("A2", "Desk chair", 120.0, 3, "", ""), fields(inventory.getProduct("A2")));
+        assertEquals(Arrays.asList("A3", "Half quoted", 1.0, 1, "", ""), fields(inventory.getProduct("A3")));
+        assertEquals(fields(inventory.getProduct("A1")), fields(Json.toProduct(output.get(4).get("product"))));
+    }
+
+    @Test
+    void failingCommandsAnswerAndTheScriptGoesOn() throws IOException {
+        Inventory inventory = inventory();
+        StringWriter out = new StringWriter();
+        String script = String.join("\n",
+                "# comment",
+                "",
+                "add A1 Lamp 5 2",
+                "add A2 \"Open quote 5 2",
+                "fly A1",
+                "add A3 Lamp",
+                "add A4 Lamp cheap 2",
+                "add A5 Lamp -1 2",
+                "add A6 Lamp 1 -2",
+                "add A1 Again 1 1",
+                "qty A1 -3",
+                "qty A1 two",
+                "update A1 colour=red",
+                "update A9 price=1",
+                "get A9",
+                "delete A9",
+                "search sideways lamp",
+                "search prefix la many",
+                "report everything",
+                "qty A1 -2");
+        ScriptResult result = CommandScript.run(inventory, new StringReader(script), out, 1);
+        List<Map<?, ?>> output = parse(out.toString());
+
+        assertEquals(18, result.getCommands());
+        assertEquals(16, result.getFailed());
+        assertEquals(2, result.getMutations());
+        assertEquals(18, output.size());
+        List<Object> lines = new ArrayList<>();
+        for (Map<?, ?> entry : output.subList(1, 17)) {
+            assertEquals(Boolean.FALSE, entry.get("ok"), String.valueOf(entry));
+            assertTrue(entry.get("error") instanceof String, String.valueOf(entry));
+            lines.add(entry.get("line"));
+        }
+        assertEquals(Arrays.asList(4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L), lines);
+        assertEquals("Unterminated quote", output.get(1).get("error"));
+        assertEquals("add", output.get(1).get("command"));
+        assertEquals("fly", output.get(2).get("command"));
+        assertEquals("Usage: add <id> <name> <price> <quantity> [category] [description]", output.get(3).get("error"));
+        assertEquals("Invalid price 'cheap'", output.get(4).get("error"));
+        assertEquals("Invalid change 'two'", output.get(9).get("error"));
+        assertEquals("Invalid limit 'many'", output.get(15).get("error"));
+        assertEquals(Boolean.TRUE, output.get(17).get("ok"));
+        assertEquals(0L, output.get(17).get("quantity"));
+        assertNull(inventory.getProduct("A2"));
+        assertEquals("Lamp", inventory.getProduct("A1").getName());
+    }
+
+    // Mutations batched by two are all in the data file once the input ends
+    @Test
+    void batchedMutationsArePersistedByTheEnd() throws IOException {
+        String dataFile = directory.resolve("inventory.dat").toString();
+        Inventory inventory = new Inventory(dataFile, null, -1, false);
+        ScriptResult result = CommandScript.run(inventory, new StringReader(String.join("\n",
+                "add A1 One 1 1", "add A2 Two 2 2", "add A3 Three 3 3", "qty A1 4", "delete A2")),
+                new StringWriter(), 2);
+        inventory.close();
+
+        assertEquals(5, result.getMutations());
+        assertEquals(3, result.getPersists());
+        Inventory reopened = new Inventory(dataFile, null, -1, false);
+        assertEquals(Arrays.asList("A1", "One", 1.0, 5, "", ""), fields(reopened.getProduct("A1")));
+        assertNull(reopened.getProduct("A2"));
+        assertEquals(3, reopened.getProduct("A3").getQuantity());
+        reopened.close();
+    }
+
+    private static List<Map<?, ?>> run(Inventory inventory, int batchSize, String... commands) throws IOException {
+        StringWriter out = new StringWriter();
+        CommandScript.run(inventory, new StringReader(String.join("\n", commands)), out, batchSize);
+        return parse(out.toString());
+    }
+
+    private static List<Map<?, ?>> parse(String output) {
+        List<Map<?, ?>> entries = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            entries.add((Map<?, ?>) Json.parse(line));
+        }
+        return entries;
+    }
+
+    private static List<Object> fields(Product product) {
+        return Arrays.asList(product.getId(), product.getName(), product.getPrice(), product.getQuantity(),
+                product.getCategory(), product.getDescription());
+    }
+
+    private static Inventory inventory() {
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        return inventory;
+    }
+}
@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * CompactProductStoreTest class checks CompactProductStore against a HashMap of the same products
+ * Every product must come back field for field, on the heap and off it, also after quantity
+ * changes and deletions have moved slots around
+ */
+class CompactProductStoreTest {
+    private static final int PRODUCTS = 20_000;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void everyProductComesBackAsStored(boolean offHeap) {
+        CompactProductStore store = new CompactProductStore(offHeap);
+        Map<String, Product> expected = new HashMap<>();
+        List<Product> products = new ProductGenerator().generate(PRODUCTS);
+        for (Product product : products) {
+            assertTrue(store.addProduct(product));
+            expected.put(product.getId(), product.copy());
+        }
+        assertEquals(PRODUCTS, store.getTotalProducts());
+        assertMatches(expected, store);
+
+        for (int i = 0; i < PRODUCTS; i += 3) {
+            String id = products.get(i).getId();
+            assertTrue(store.updateProductQuantity(id, 7));
+            expected.get(id).setQuantity(expected.get(id).getQuantity() + 7);
+        }
+        for (int i = 1; i < PRODUCTS; i += 5) {
+            String id = products.get(i).getId();
+            assertTrue(store.deleteProduct(id));
+            expected.remove(id);
+            assertNull(store.getProduct(id));
+        }
+        assertEquals(expected.size(), store.getTotalProducts());
+        assertMatches(expected, store);
+        assertEquals(expected.values().stream().mapToLong(Product::getTotalValueCents).sum(),
+                store.getTotalInventoryValueCents());
+    }
+
+    private static void assertMatches(Map<String, Product> expected, CompactProductStore store) {
+        for (Product product : expected.values()) {
+            Product stored = store.getProduct(product.getId());
+            assertNotNull(stored, product.getId());
+            assertEquals(product.toString(), stored.toString());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ConsistencyCheckTest class checks the running totals with checkConsistency() while writers run
+ * Writers add, replace, adjust and delete products and move low-stock thresholds around, which
+ * touches every running total: value, category statistics and the low-stock set
+ */
+class ConsistencyCheckTest {
+    private static final int PRODUCTS = 200;
+    private static final int WRITERS = 4;
+    private static final int OPERATIONS = 20_000;
+    private static final String[] CATEGORIES = {"Tools", "Garden", "Kitchen", "", null};
+
+    @Test
+    void runningTotalsMatchARecountDuringAndAfterConcurrentWrites() throws Exception {
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        for (int i = 0; i < PRODUCTS; i++) {
+            inventory.addProduct(product(i, new Random(i)));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            long seed = w;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < OPERATIONS; i++) {
+                    write(inventory, random);
+                }
+                return null;
+            }));
+        }
+        Future<Integer> checker = executor.submit(() -> {
+            int checks = 0;
+            while (running.get()) {
+                ConsistencyReport report = inventory.checkConsistency();
+                assertTrue(report.isConsistent(), report.toString());
+                checks++;
+            }
+            return checks;
+        });
+
+        try {
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            running.set(false);
+            executor.shutdown();
+        }
+        assertTrue(checker.get() > 0, "no check ran while the writers did");
+
+        ConsistencyReport report = inventory.checkConsistency();
+        assertTrue(report.isConsistent(), report.toString());
+        long recounted = 0;
+        for (Product product : inventory.getAllProducts()) {
+            recounted += product.getTotalValueCents();
+        }
+        assertEquals(recounted, inventory.getTotalInventoryValueCents());
+        assertEquals(recounted, report.getActualValueCents());
+    }
+
+    // One random change; it may fail (missing product, stock short), which changes nothing
+    private static void write(Inventory inventory, Random random) {
+        int index = random.nextInt(PRODUCTS);
+        String id = "P" + index;
+        int kind = random.nextInt(100);
+        if (kind < 40) {
+            inventory.updateProductQuantity(id, random.nextInt(15) - 5);
+        } else if (kind < 60) {
+            inventory.tryUpdateProductQuantity(id, -1 - random.nextInt(5));
+        } else if (kind < 80) {
+            inventory.updateProduct(id, product(index, random));
+        } else if (kind < 88) {
+            inventory.deleteProduct(id);
+        } else if (kind < 97) {
+            inventory.addProduct(product(index, random));
+        } else {
+            inventory.setCategoryLowStockThreshold(CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    random.nextBoolean() ? null : random.nextInt(20));
+        }
+    }
+
+    private static Product product(int index, Random random) {
+        return new Product("P" + index, "Product " + index, random.nextInt(100_000) / 100.0, random.nextInt(30),
+                CATEGORIES[random.nextInt(CATEGORIES.length)], "");
+    }
+}
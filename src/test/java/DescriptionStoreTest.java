@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * DescriptionStoreTest class checks that descriptions read back the same wherever they are kept
+ * A data file written with long descriptions inline is opened with cold descriptions (which moves
+ * them into the description file), reopened, and opened with cold descriptions off (which moves
+ * them back); every description must match the one written each time. Descriptions changed while
+ * the inventory runs must be compacted by the next checkpoint, not only by the next start.
+ */
+class DescriptionStoreTest {
+    private static final int PRODUCTS = 5_000;
+    private static final String[] WORDS = {"steel", "frame", "compact", "wireless", "durable", "premium", "kit",
+            "battery", "outdoor", "ergonomic", "adjustable", "warranty", "includes", "with", "and", "for"};
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearProperty() {
+        System.clearProperty("inventory.descriptions.cold");
+    }
+
+    @Test
+    void descriptionsReadBackWhereverTheyAreKept() throws IOException {
+        File dataFile = directory.resolve("inventory.dat").toFile();
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(product(i, 0));
+        }
+        ProductSnapshot.write(products, dataFile, false);
+
+        checkDescriptions(dataFile); // first start, moves them out
+        assertTrue(DescriptionStore.fileFor(dataFile.getPath(), 1).length() > 0);
+        checkDescriptions(dataFile);
+        System.setProperty("inventory.descriptions.cold", "false");
+        checkDescriptions(dataFile); // moves them back
+        checkDescriptions(dataFile);
+    }
+
+    // Three rounds of new descriptions leave three quarters of the file as garbage
+    @Test
+    void aCheckpointCompactsChangedDescriptions() throws IOException {
+        File dataFile = directory.resolve("inventory.dat").toFile();
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(product(i, 0));
+        }
+        ProductSnapshot.write(products, dataFile, false);
+        Inventory inventory = new Inventory(dataFile.getPath(), null, -1, false);
+        InventorySnapshot original = inventory.snapshot();
+        for (int round = 1; round <= 3; round++) {
+            products.clear();
+            for (int i = 0; i < PRODUCTS; i++) {
+                products.add(product(i, round));
+            }
+            inventory.upsertProducts(products);
+        }
+        File first = DescriptionStore.fileFor(dataFile.getPath(), 1);
+        long grown = first.length();
+
+        inventory.checkpoint();
+        File second = DescriptionStore.fileFor(dataFile.getPath(), 2);
+        assertFalse(first.exists());
+        assertTrue(second.length() > 0 && second.length() < grown / 2, second.length() + " of " + grown);
+        for (int i = 0; i < PRODUCTS; i++) {
+            assertEquals(description(i + 3 * PRODUCTS), inventory.getProduct(id(i)).getDescription(), id(i));
+            // Versions replaced before the compaction still read from the old file
+            assertEquals(description(i), original.getProduct(id(i)).getDescription(), id(i));
+        }
+        inventory.updateProductQuantity(id(1), 1); // shares the moved description
+        inventory.close();
+
+        inventory = new Inventory(dataFile.getPath(), null, -1, false);
+        for (int i = 0; i < PRODUCTS; i++) {
+            assertEquals(description(i + 3 * PRODUCTS), inventory.getProduct(id(i)).getDescription(), id(i));
+        }
+        inventory.close();
+        assertTrue(second.exists());
+    }
+
+    private static Product product(int index, int round) {
+        return new Product(id(index), "Product " + index, 9.99, 100, "Category " + index % 50,
+                description(index + round * PRODUCTS));
+    }
+
+    private static void checkDescriptions(File dataFile) {
+        Inventory inventory = new Inventory(dataFile.getPath(), null, -1, false);
+        assertEquals(PRODUCTS, inventory.getTotalProducts());
+        for (int i = 0; i < PRODUCTS; i++) {
+            assertEquals(description(i), inventory.getProduct(id(i)).getDescription(), id(i));
+        }
+        inventory.close();
+    }
+
+    // Words picked from the product's index, so every description differs; some are short
+    private static String description(int index) {
+        int length = index % 10 == 0 ? 20 : 200 + index % 1_000;
+        StringBuilder text = new StringBuilder(length + 16).append("Product ").append(index).append(':');
+        Random random = new Random(index);
+        while (text.length() < length) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    private static String id(int index) {
+        return "D" + index;
+    }
+}
@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * GroupCommitWriterTest class checks what the writer promises after a journal group fails
+ * The failed group's mutations are only in memory, so no later sequence number may count as
+ * durable until a checkpoint has written them to the data file
+ */
+class GroupCommitWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private GroupCommitWriter writer;
+
+    @AfterEach
+    void closeWriter() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @Test
+    void groupsAfterAFailedOneWaitForACheckpoint() throws IOException {
+        FailingJournal journal = journal(1);
+        AtomicInteger checkpoints = new AtomicInteger();
+        writer = writer(journal, () -> checkpoints.incrementAndGet() > 0);
+
+        assertFails(enqueue(batch -> batch.quantity("P1", 1)));
+
+        long second = writer.enqueue(batch -> batch.quantity("P2", 2));
+        writer.durableFuture(second).join();
+        assertEquals(1, checkpoints.get(), "the group after the failure is written as a checkpoint");
+        assertEquals(1, journal.commits.get(), "nothing is appended after the failed group");
+
+        long third = writer.enqueue(batch -> batch.quantity("P3", 3));
+        writer.durableFuture(third).join();
+        assertEquals(1, checkpoints.get());
+        assertEquals(2, journal.commits.get(), "appending resumes once the checkpoint succeeded");
+    }
+
+    @Test
+    void askingForAFailedSequenceAgainWritesACheckpoint() throws IOException {
+        AtomicInteger checkpoints = new AtomicInteger();
+        writer = writer(journal(1), () -> checkpoints.incrementAndGet() > 0);
+
+        assertFails(enqueue(batch -> batch.quantity("P1", 1)));
+        long first = writer.lastEnqueued();
+
+        writer.durableFuture(first).join();
+        assertEquals(1, checkpoints.get());
+    }
+
+    @Test
+    void durableDoesNotMovePastAFailedGroupWhileCheckpointsFail() throws IOException {
+        AtomicBoolean checkpointWorks = new AtomicBoolean(false);
+        writer = writer(journal(1), checkpointWorks::get);
+
+        assertFails(enqueue(batch -> batch.quantity("P1", 1)));
+        long first = writer.lastEnqueued();
+        long second = writer.enqueue(batch -> batch.quantity("P2", 2));
+        assertFails(writer.durableFuture(second));
+
+        assertFails(writer.durableFuture(first));
+
+        checkpointWorks.set(true);
+        writer.durableFuture(second).join();
+    }
+
+    // Enqueue and take the future while the writer cannot pick the group up yet; asking only after
+    // the group failed would already request the checkpoint that makes it durable
+    private CompletableFuture<Void> enqueue(GroupCommitWriter.Records records) throws IOException {
+        synchronized (writer) {
+            return writer.durableFuture(writer.enqueue(records));
+        }
+    }
+
+    private static void assertFails(CompletableFuture<Void> future) {
+        CompletionException error = assertThrows(CompletionException.class, future::join);
+        assertTrue(error.getCause() instanceof IOException, String.valueOf(error.getCause()));
+    }
+
+    private GroupCommitWriter writer(InventoryJournal journal, BooleanSupplier checkpoint) {
+        return new GroupCommitWriter(journal, checkpoint, () -> { }, 0, new InventoryMetrics());
+    }
+
+    private FailingJournal journal(int failures) {
+        return new FailingJournal(directory.resolve("inventory.dat.log").toString(), failures);
+    }
+
+    // Journal whose first commits fail the way a full disk would
+    private static class FailingJournal extends InventoryJournal {
+        final AtomicInteger commits = new AtomicInteger();
+        private final int failures;
+
+        FailingJournal(String logFile, int failures) {
+            super(logFile, SyncPolicy.NEVER, 0, 1_000);
+            this.failures = failures;
+        }
+
+        @Override
+        public synchronized int commitDurably(Batch batch) throws IOException {
+            if (commits.incrementAndGet() <= failures) {
+                throw new IOException("No space left on device");
+            }
+            return super.commitDurably(batch);
+        }
+    }
+}
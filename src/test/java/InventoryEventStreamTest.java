@@ -0,0 +1,207 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * InventoryEventStreamTest class checks what subscribers receive while writers run
+ * Every subscriber checks sequence numbers without gaps and each event's before version being
+ * the after version of the product's previous event, and rebuilds the quantities from the
+ * events. A ring of 16 slots keeps writers waiting for a slow subscriber almost all the time,
+ * which used to happen under their stripe lock, where a subscriber reading every stripe could
+ * never get in.
+ */
+class InventoryEventStreamTest {
+    private static final int PRODUCTS = 64;
+    private static final int WRITERS = 4;
+    private static final int OPERATIONS = 2_000;
+
+    @AfterEach
+    void clearCapacity() {
+        System.clearProperty("inventory.events.capacity");
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 0", "4, 0", "1, 100000"})
+    void subscribersReceiveEveryChangeInOrder(int subscribers, long slowNanosPerBatch) throws Exception {
+        if (slowNanosPerBatch > 0) {
+            System.setProperty("inventory.events.capacity", "256");
+        }
+        Inventory inventory = inventory();
+        InventoryEventStream stream = inventory.getEventStream();
+        List<Checker> checkers = new ArrayList<>();
+        for (int i = 0; i < subscribers; i++) {
+            Checker checker = new Checker(slowNanosPerBatch);
+            checker.subscription = slowNanosPerBatch > 0 ? stream.subscribe(checker, stream.getEpoch(), 1, 64)
+                    : stream.subscribe(checker);
+            checkers.add(checker);
+        }
+
+        writeConcurrently(inventory, 20_000);
+
+        for (Checker checker : checkers) {
+            checker.subscription.close();
+            assertNull(checker.failure);
+            assertEquals(stream.getLastSequence() + 1, checker.expectedSequence);
+            for (Map.Entry<String, Product> entry : checker.latest.entrySet()) {
+                assertEquals(inventory.getProduct(entry.getKey()).getQuantity(), entry.getValue().getQuantity(),
+                        "quantity of " + entry.getKey() + " rebuilt from the events");
+            }
+        }
+    }
+
+    // A subscription from an older sequence receives exactly the events from there on
+    @Test
+    void resumingReceivesEverythingFromTheGivenSequence() throws Exception {
+        Inventory inventory = inventory();
+        InventoryEventStream stream = inventory.getEventStream();
+        writeConcurrently(inventory, 5_000);
+
+        long last = stream.getLastSequence();
+        long from = Math.max(stream.getOldestSequence(), last - 1_000);
+        AtomicLong next = new AtomicLong(from);
+        AtomicLong gaps = new AtomicLong();
+        InventoryEventStream.Subscription subscription = stream.subscribe(events -> {
+            for (InventoryEvent event : events) {
+                if (event.getSequence() != next.getAndIncrement()) {
+                    gaps.incrementAndGet();
+                }
+            }
+        }, stream.getEpoch(), from, 256);
+        subscription.close();
+        assertEquals(0, gaps.get());
+        assertEquals(last + 1, next.get());
+        assertThrows(IllegalArgumentException.class,
+                () -> stream.subscribe(events -> { }, stream.getEpoch(), stream.getOldestSequence() - 1, 16));
+    }
+
+    @Test
+    void subscribersReadingTheInventoryDoNotBlockWriters() {
+        System.setProperty("inventory.events.capacity", "16");
+        Inventory inventory = inventory();
+        InventoryEventStream stream = inventory.getEventStream();
+        AtomicLong next = new AtomicLong(stream.getLastSequence() + 1);
+        AtomicLong gaps = new AtomicLong();
+        InventoryEventStream.Subscription subscription = stream.subscribe(events -> {
+            inventory.getTotalInventoryValueCents();
+            inventory.getLowStockProducts();
+            for (InventoryEvent event : events) {
+                if (event.getSequence() != next.getAndIncrement()) {
+                    gaps.incrementAndGet();
+                }
+            }
+        }, stream.getEpoch(), next.get(), 4);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            writeConcurrently(inventory, OPERATIONS);
+            subscription.close();
+        });
+
+        assertEquals(0, gaps.get());
+        assertEquals(stream.getLastSequence() + 1, next.get());
+    }
+
+    @Test
+    void resumingRequiresTheStreamsEpoch() {
+        Inventory first = inventory();
+        Inventory second = inventory();
+        InventoryEventStream earlier = first.getEventStream();
+        InventoryEventStream later = second.getEventStream();
+        second.updateProductQuantity("P1", 1);
+        assertNotEquals(earlier.getEpoch(), later.getEpoch());
+
+        List<InventoryEvent> received = new ArrayList<>();
+        InventoryEventStream.Subscription subscription = later.subscribe(events -> {
+            for (InventoryEvent event : events) {
+                received.add(event.copy());
+            }
+        }, later.getEpoch(), 1, 16);
+        subscription.close();
+        assertEquals(1, received.size());
+        assertEquals(later.getEpoch(), received.get(0).getEpoch());
+
+        assertThrows(IllegalArgumentException.class, () -> later.subscribe(events -> { }, earlier.getEpoch(), 1, 16));
+    }
+
+    // Random changes of -5 to +5 from WRITERS threads, operations each
+    private static void writeConcurrently(Inventory inventory, int operations) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            long seed = w;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < operations; i++) {
+                    inventory.updateProductQuantity("P" + random.nextInt(PRODUCTS), random.nextInt(11) - 5);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Subscriber that checks the stream and rebuilds every product's quantity from it
+    private static final class Checker implements InventoryEventListener {
+        private final long slowNanosPerBatch;
+        private final Map<String, Product> latest = new HashMap<>();
+        private InventoryEventStream.Subscription subscription;
+        private long expectedSequence = -1;
+        private String failure;
+
+        Checker(long slowNanosPerBatch) {
+            this.slowNanosPerBatch = slowNanosPerBatch;
+        }
+
+        @Override
+        public void onEvents(List<InventoryEvent> batch) {
+            assertTrue(!batch.isEmpty());
+            for (InventoryEvent event : batch) {
+                if (expectedSequence >= 0 && event.getSequence() != expectedSequence && failure == null) {
+                    failure = "expected sequence " + expectedSequence + ", got " + event.getSequence();
+                }
+                expectedSequence = event.getSequence() + 1;
+                Product previous = latest.put(event.getProductId(), event.getAfter());
+                if (previous != null && previous != event.getBefore() && failure == null) {
+                    failure = "event " + event + " does not follow the previous version of its product";
+                }
+            }
+            long until = System.nanoTime() + slowNanosPerBatch;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static Inventory inventory() {
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        for (int i = 0; i < PRODUCTS; i++) {
+            inventory.addProduct(new Product("P" + i, "Product " + i, 1.0, 1_000, "Tools", ""));
+        }
+        return inventory;
+    }
+}
@@ -0,0 +1,371 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * InventoryIndexTest class compares every index-backed read with filtering and sorting getAllProducts()
+ * The trigram name index, the query planner, the ranking indexes and paginated listings must
+ * return what a plain pass over the catalog returns, on a fresh catalog and after random quantity, price, category
+ * and name changes, additions and deletions (product equality is by ID, so ordered lists must
+ * hold the same products in the same order)
+ */
+class InventoryIndexTest {
+    private static final int PRODUCTS = 20_000;
+    private static final int TOP = 100;
+    private static final String[] CATEGORIES = new String[50];
+    private static final String[] WORDS = {"steel", "oak", "cordless", "mini", "pro", "classic", "smart", "eco", "Größe"};
+
+    static {
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            CATEGORIES[i] = i == 0 ? "Electronics" : "Category " + i;
+        }
+    }
+
+    private Inventory inventory;
+    private Random random;
+
+    @BeforeEach
+    void fillCatalog() {
+        inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        random = new Random(7);
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(randomProduct("Q" + i, i));
+        }
+        inventory.upsertProducts(products);
+    }
+
+    @Test
+    void nameSearchMatchesAScan() {
+        checkNameSearch();
+        // The index is built by now; it must follow renames, additions and deletions
+        changeRandomly(20_000);
+        checkNameSearch();
+    }
+
+    @Test
+    void queriesMatchAStreamFilter() {
+        checkQueries();
+        changeRandomly(20_000);
+        checkQueries();
+    }
+
+    // Random combinations of every predicate, with range ends taken from real products
+    @Test
+    void randomQueriesMatchAStreamFilter() {
+        checkRandomQueries();
+        changeRandomly(20_000);
+        checkRandomQueries();
+    }
+
+    @Test
+    void rankingsMatchAFullSort() {
+        checkRankings();
+        changeRandomly(50_000);
+        checkRankings();
+    }
+
+    @Test
+    void pagesMatchAFullSort() {
+        checkPages();
+        changeRandomly(20_000);
+        checkPages();
+    }
+
+    // Keyset pages never skip or repeat a product that stays in the catalog, whatever changes between pages
+    @Test
+    void pagesSurviveChangesBetweenThem() {
+        Set<String> stayed = ids(inventory.getAllProducts()); // less the deleted ones, which never come back
+        Set<String> listed = new HashSet<>();
+        String token = null;
+        int added = 0;
+        do {
+            ProductPage page = inventory.listProducts(ProductOrder.ID, 500, token);
+            for (Product product : page.getProducts()) {
+                assertTrue(listed.add(product.getId()), product.getId() + " listed twice");
+            }
+            token = page.getNextToken();
+            for (int i = 0; i < 200; i++) {
+                String id = "Q" + random.nextInt(PRODUCTS);
+                if (i % 10 == 0 && inventory.deleteProduct(id)) {
+                    stayed.remove(id);
+                } else if (i % 10 == 1) {
+                    inventory.addProduct(randomProduct("N" + added, added++));
+                } else if (inventory.getProduct(id) != null) {
+                    inventory.updateProduct(id, randomProduct(id, i));
+                }
+            }
+        } while (token != null);
+        assertTrue(listed.containsAll(stayed), "every product that stayed in the catalog is listed");
+    }
+
+    @Test
+    void resumeTokensAreChecked() {
+        ProductPage page = inventory.listProducts(ProductOrder.PRICE, 10, null);
+        assertThrows(IllegalArgumentException.class, () -> inventory.listProducts(ProductOrder.NAME, 10, page.getNextToken()));
+        assertThrows(IllegalArgumentException.class, () -> inventory.listProducts(ProductOrder.PRICE, 10, "not a token"));
+        assertThrows(IllegalArgumentException.class, () -> inventory.listProducts(ProductOrder.PRICE, 10, "QUJD"));
+        assertThrows(IllegalArgumentException.class, () -> inventory.listProducts(ProductOrder.PRICE, 0, null));
+    }
+
+    // Substrings of real names in any case, plus misses
+    private void checkNameSearch() {
+        List<Product> catalog = inventory.getAllProducts();
+        for (int i = 0; i < 200; i++) {
+            String name = catalog.get(random.nextInt(catalog.size())).getName();
+            String query;
+            if (i % 10 == 0) {
+                query = "zzq" + i;
+            } else {
+                int length = 3 + random.nextInt(Math.min(8, name.length() - 2));
+                int start = random.nextInt(name.length() - length + 1);
+                query = name.substring(start, start + length);
+                query = i % 2 == 0 ? query.toUpperCase() : query;
+            }
+            String lower = query.toLowerCase();
+            List<Product> expected = catalog.stream()
+                    .filter(product -> product.getName().toLowerCase().contains(lower))
+                    .collect(Collectors.toList());
+            assertEquals(new HashSet<>(expected), new HashSet<>(inventory.searchProductsByName(query)), query);
+        }
+        // Queries too short for a trigram fall back to checking every name
+        for (String query : Arrays.asList("", "o", "EC", " i", "ß")) {
+            String lower = query.toLowerCase();
+            long expected = catalog.stream().filter(product -> product.getName().toLowerCase().contains(lower)).count();
+            assertEquals(expected, inventory.searchProductsByName(query).size(), query);
+        }
+        checkPrefixSearch(catalog);
+    }
+
+    // Prefixes of every length up to a whole name, in name order (ignoring case, then by ID) and cut to a limit
+    private void checkPrefixSearch(List<Product> catalog) {
+        Comparator<Product> byName = Comparator.comparing((Product product) -> product.getName().toLowerCase())
+                .thenComparing(Product::getId);
+        for (int i = 0; i < 200; i++) {
+            String name = catalog.get(random.nextInt(catalog.size())).getName();
+            String prefix = i % 20 == 0 ? "zzq" : name.substring(0, random.nextInt(name.length() + 1));
+            prefix = i % 2 == 0 ? prefix.toUpperCase() : prefix;
+            int limit = 1 + random.nextInt(100);
+            String lower = prefix.toLowerCase();
+            List<String> expected = catalog.stream()
+                    .filter(product -> product.getName().toLowerCase().startsWith(lower))
+                    .sorted(byName)
+                    .limit(limit)
+                    .map(Product::getId)
+                    .collect(Collectors.toList());
+            List<String> actual = inventory.searchProductsByNamePrefix(prefix, limit).stream()
+                    .map(Product::getId)
+                    .collect(Collectors.toList());
+            assertEquals(expected, actual, prefix);
+        }
+    }
+
+    private void checkQueries() {
+        List<ProductQuery> queries = Arrays.asList(
+                new ProductQuery().category("Electronics").priceBetween(50, 200).quantityBelow(30)
+                        .orderBy(ProductOrder.VALUE, true),
+                new ProductQuery().priceBetween(500, 501),
+                new ProductQuery().quantityBetween(7, 7).priceBetween(100, 400),
+                new ProductQuery().category("Category 7").quantityBetween(100, 150).valueBetween(0, 20_000),
+                new ProductQuery().nameContains("item 4242").priceBetween(0, 800),
+                new ProductQuery().nameContains("STEEL").category("Category 3").orderBy(ProductOrder.NAME),
+                new ProductQuery().orderBy(ProductOrder.VALUE, true).limit(10),
+                new ProductQuery().category("Electronics").orderBy(ProductOrder.PRICE).limit(20),
+                new ProductQuery().quantityBelow(10).orderBy(ProductOrder.QUANTITY).limit(50),
+                new ProductQuery().priceBetween(100, 900).quantityBelow(400),
+                new ProductQuery().category("No such category"),
+                new ProductQuery().priceBetween(10, 5));
+        for (ProductQuery query : queries) {
+            List<Product> expected = streamFilter(query);
+            List<Product> actual = inventory.query(query);
+            String plan = inventory.explain(query);
+            if (query.getOrder() != null) {
+                assertEquals(expected, actual, plan);
+            } else {
+                assertEquals(expected.size(), actual.size(), plan);
+                assertEquals(new HashSet<>(expected), new HashSet<>(actual), plan);
+            }
+        }
+    }
+
+    private void checkRandomQueries() {
+        List<Product> catalog = inventory.getAllProducts();
+        for (int i = 0; i < 300; i++) {
+            ProductQuery query = new ProductQuery();
+            if (random.nextInt(3) == 0) {
+                query.category(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            }
+            if (random.nextInt(4) == 0) {
+                query.nameContains(WORDS[random.nextInt(WORDS.length)].substring(1));
+            }
+            if (random.nextInt(2) == 0) {
+                double[] ends = {pick(catalog).getPrice(), pick(catalog).getPrice()};
+                Arrays.sort(ends);
+                query.priceBetween(ends[0], random.nextInt(5) == 0 ? Double.POSITIVE_INFINITY : ends[1]);
+            }
+            if (random.nextInt(2) == 0) {
+                int a = pick(catalog).getQuantity();
+                int b = pick(catalog).getQuantity();
+                if (random.nextBoolean()) {
+                    query.quantityBetween(Math.min(a, b), Math.max(a, b));
+                } else {
+                    query.quantityBelow(a);
+                }
+            }
+            if (random.nextInt(3) == 0) {
+                double[] ends = {pick(catalog).getTotalValue(), pick(catalog).getTotalValue()};
+                Arrays.sort(ends);
+                query.valueBetween(ends[0], ends[1]);
+            }
+            if (random.nextBoolean()) {
+                query.orderBy(ProductOrder.values()[random.nextInt(ProductOrder.values().length)], random.nextBoolean());
+            }
+            if (random.nextBoolean()) {
+                query.limit(random.nextInt(50));
+            }
+
+            List<Product> expected = streamFilter(query);
+            List<Product> actual = inventory.query(query);
+            String plan = inventory.explain(query);
+            if (query.getOrder() != null) {
+                assertEquals(expected, actual, plan);
+            } else if (query.getLimit() == Integer.MAX_VALUE) {
+                assertEquals(expected.size(), actual.size(), plan);
+                assertEquals(new HashSet<>(expected), new HashSet<>(actual), plan);
+            } else {
+                // Any limit products of the matches will do
+                long matching = catalog.stream().filter(query::matches).count();
+                assertEquals(Math.min(matching, query.getLimit()), actual.size(), plan);
+                assertEquals(actual.size(), new HashSet<>(actual).size(), plan);
+                for (Product product : actual) {
+                    assertTrue(query.matches(product), plan);
+                }
+            }
+        }
+    }
+
+    private Product pick(List<Product> catalog) {
+        return catalog.get(random.nextInt(catalog.size()));
+    }
+
+    private void checkRankings() {
+        assertEquals(sortAll(ProductOrder.VALUE, true), inventory.getTopProducts(ProductOrder.VALUE, true, TOP));
+        assertEquals(sortAll(ProductOrder.QUANTITY, false),
+                inventory.getTopProducts(ProductOrder.QUANTITY, false, TOP));
+        assertEquals(sortAll(ProductOrder.PRICE, true), inventory.getTopProducts(ProductOrder.PRICE, true, TOP));
+        assertEquals(mostExpensivePerCategory(), inventory.getTopProductsByCategory(ProductOrder.PRICE, true, 1));
+        List<Product> lowestInCategory = inventory.getAllProducts().stream()
+                .filter(product -> product.getCategory().equals("Category 3"))
+                .sorted(ProductOrderIndex.productComparator(ProductOrder.QUANTITY))
+                .limit(TOP)
+                .collect(Collectors.toList());
+        assertEquals(lowestInCategory, inventory.getTopProductsInCategory("Category 3", ProductOrder.QUANTITY, false, TOP));
+    }
+
+    // Every ordering read page by page, and walked from a token, against sorting getAllProducts()
+    private void checkPages() {
+        for (ProductOrder order : ProductOrder.values()) {
+            List<Product> expected = inventory.getAllProducts();
+            expected.sort(ProductOrderIndex.productComparator(order));
+            List<Product> paged = new ArrayList<>();
+            String token = null;
+            do {
+                ProductPage page = inventory.listProducts(order, 777, token);
+                assertTrue(page.getProducts().size() <= 777);
+                paged.addAll(page.getProducts());
+                token = page.getNextToken();
+                assertEquals(token != null, page.hasMore());
+            } while (token != null);
+            assertEquals(expected, paged, order.name());
+
+            String middle = inventory.listProducts(order, expected.size() / 2, null).getNextToken();
+            List<Product> rest = new ArrayList<>();
+            for (Iterator<Product> products = inventory.iterateProducts(order, middle); products.hasNext(); ) {
+                rest.add(products.next());
+            }
+            assertEquals(expected.subList(expected.size() / 2, expected.size()), rest, order.name());
+        }
+        assertFalse(inventory.listProducts(ProductOrder.ID, PRODUCTS * 2, null).hasMore());
+    }
+
+    // Quantity changes, replacements (new price, category or name), additions and deletions
+    private void changeRandomly(int changes) {
+        for (int i = 0; i < changes; i++) {
+            String id = "Q" + random.nextInt(PRODUCTS + PRODUCTS / 10);
+            Product product = inventory.getProduct(id);
+            int kind = random.nextInt(10);
+            if (product == null) {
+                inventory.addProduct(randomProduct(id, i));
+            } else if (kind == 0) {
+                inventory.deleteProduct(id);
+            } else if (kind < 4) {
+                Product changed = randomProduct(id, i);
+                changed.setQuantity(product.getQuantity());
+                inventory.updateProduct(id, changed);
+            } else {
+                inventory.tryUpdateProductQuantity(id, random.nextInt(201) - 100);
+            }
+        }
+    }
+
+    private Product randomProduct(String id, int number) {
+        String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " item " + number;
+        return new Product(id, name, 1 + random.nextInt(100_000) / 100.0, random.nextInt(500),
+                CATEGORIES[random.nextInt(CATEGORIES.length)], "");
+    }
+
+    // What callers did before query(): filter every product, then sort and cut
+    private List<Product> streamFilter(ProductQuery query) {
+        Stream<Product> matches = inventory.getAllProducts().stream().filter(query::matches);
+        if (query.getOrder() != null) {
+            Comparator<Product> comparator = ProductOrderIndex.productComparator(query.getOrder());
+            matches = matches.sorted(query.isDescending() ? comparator.reversed() : comparator);
+        }
+        return matches.limit(query.getLimit()).collect(Collectors.toList());
+    }
+
+    // Copy and sort the whole catalog, keep the first TOP
+    private List<Product> sortAll(ProductOrder order, boolean highest) {
+        Comparator<Product> comparator = ProductOrderIndex.productComparator(order);
+        List<Product> all = inventory.getAllProducts();
+        all.sort(highest ? comparator.reversed() : comparator);
+        return new ArrayList<>(all.subList(0, Math.min(TOP, all.size())));
+    }
+
+    private static Set<String> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private Map<String, List<Product>> mostExpensivePerCategory() {
+        Comparator<Product> byPrice = ProductOrderIndex.productComparator(ProductOrder.PRICE);
+        Map<String, List<Product>> result = new TreeMap<>();
+        for (Product product : inventory.getAllProducts()) {
+            List<Product> best = result.get(product.getCategory());
+            if (best == null) {
+                result.put(product.getCategory(), new ArrayList<>(Collections.singletonList(product)));
+            } else if (byPrice.compare(product, best.get(0)) > 0) {
+                best.set(0, product);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * InventoryJournalTest class checks how replay treats damaged records
+ * A bad record at the end is a torn write and is cut off; one with valid records after it is
+ * damage, which fails the replay and leaves the file untouched
+ */
+class InventoryJournalTest {
+    private static final int RECORDS = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysEveryRecordOfAnIntactLog() throws IOException {
+        File log = writeLog();
+        Map<String, Product> products = replay(log);
+        assertEquals(RECORDS, products.size());
+        assertEquals(7, products.get("P7").getQuantity());
+    }
+
+    @Test
+    void cutsOffARecordTornAtTheEnd() throws IOException {
+        File log = writeLog();
+        long[] offsets = recordOffsets(log);
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(log.length() - 3);
+        }
+        InventoryJournal journal = journal(log);
+        Map<String, Product> products = new HashMap<>();
+        assertEquals(RECORDS - 1, journal.replay(products));
+        assertTrue(journal.isTornRecordDetected());
+        assertEquals(offsets[RECORDS - 1], log.length());
+        assertFalse(products.containsKey("P" + (RECORDS - 1)));
+    }
+
+    @Test
+    void cutsOffADamagedLastRecord() throws IOException {
+        File log = writeLog();
+        long[] offsets = recordOffsets(log);
+        flipBit(log, offsets[RECORDS - 1] + 12);
+        InventoryJournal journal = journal(log);
+        assertEquals(RECORDS - 1, journal.replay(new HashMap<>()));
+        assertTrue(journal.isTornRecordDetected());
+        assertEquals(offsets[RECORDS - 1], log.length());
+    }
+
+    @Test
+    void refusesADamagedRecordInTheMiddleAndLeavesTheLogAlone() throws IOException {
+        File log = writeLog();
+        long[] offsets = recordOffsets(log);
+        flipBit(log, offsets[1] + 12);
+        byte[] damaged = Files.readAllBytes(log.toPath());
+
+        IOException error = assertThrows(IOException.class, () -> journal(log).replay(new HashMap<>()));
+        assertTrue(error.getMessage().contains("record 2"), error.getMessage());
+        assertArrayEquals(damaged, Files.readAllBytes(log.toPath()));
+    }
+
+    @Test
+    void refusesADamagedLengthInTheMiddle() throws IOException {
+        File log = writeLog();
+        long[] offsets = recordOffsets(log);
+        flipBit(log, offsets[1]); // length now runs past the end of the file
+        byte[] damaged = Files.readAllBytes(log.toPath());
+
+        assertThrows(IOException.class, () -> journal(log).replay(new HashMap<>()));
+        assertArrayEquals(damaged, Files.readAllBytes(log.toPath()));
+    }
+
+    @Test
+    void inventoryDoesNotOpenOverADamagedJournal() throws IOException {
+        File log = writeLog();
+        flipBit(log, recordOffsets(log)[1] + 12);
+        byte[] damaged = Files.readAllBytes(log.toPath());
+        String dataFile = directory.resolve("inventory.dat").toString();
+
+        assertThrows(UncheckedIOException.class, () -> new Inventory(dataFile, journal(log)));
+        assertArrayEquals(damaged, Files.readAllBytes(log.toPath()));
+    }
+
+    // A log of RECORDS product records, P0 to P9 with their index as quantity
+    private File writeLog() throws IOException {
+        File log = directory.resolve("inventory.dat.log").toFile();
+        try (InventoryJournal journal = journal(log)) {
+            for (int i = 0; i < RECORDS; i++) {
+                journal.appendPut(new Product("P" + i, "Product " + i, 2.5, i, "Tools", "journal test"));
+            }
+        }
+        return log;
+    }
+
+    // Start of every record, read from the length fields
+    private static long[] recordOffsets(File log) throws IOException {
+        long[] offsets = new long[RECORDS];
+        try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+            long offset = 0;
+            for (int i = 0; i < RECORDS; i++) {
+                offsets[i] = offset;
+                file.seek(offset);
+                offset += 8 + file.readInt();
+            }
+        }
+        return offsets;
+    }
+
+    private static void flipBit(File log, long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0x40);
+        }
+    }
+
+    private static InventoryJournal journal(File log) {
+        return new InventoryJournal(log.getPath(), InventoryJournal.SyncPolicy.NEVER, 0, 1_000);
+    }
+
+    private static Map<String, Product> replay(File log) throws IOException {
+        Map<String, Product> products = new HashMap<>();
+        journal(log).replay(products);
+        return products;
+    }
+}
@@ -0,0 +1,141 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * InventoryStressTest class hammers one Inventory from several threads
+ * Few products keep the threads contending on the same stripes, which is where lost updates and
+ * oversold stock would show up
+ */
+class InventoryStressTest {
+    private static final int PRODUCTS = 100;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 20_000;
+
+    // Every thread adds random positive deltas; the final total must equal the sum of all deltas
+    @Test
+    void noIncrementIsLost() throws Exception {
+        Inventory inventory = inventory(0);
+        AtomicLong expected = new AtomicLong();
+
+        run((random, i) -> {
+            int delta = 1 + random.nextInt(5);
+            inventory.updateProductQuantity(id(random.nextInt(PRODUCTS)), delta);
+            expected.addAndGet(delta);
+        });
+
+        assertEquals(expected.get(), totalQuantity(inventory));
+    }
+
+    // Threads race to take single units; exactly the initial stock must be sold, never more
+    @Test
+    void checkAndDecrementNeverOversells() throws Exception {
+        int initialStock = 50;
+        Inventory inventory = inventory(initialStock);
+        AtomicLong sold = new AtomicLong();
+
+        run((random, i) -> {
+            if (inventory.tryUpdateProductQuantity(id(random.nextInt(PRODUCTS)), -1)) {
+                sold.incrementAndGet();
+            }
+        });
+
+        assertEquals((long) initialStock * PRODUCTS, totalQuantity(inventory) + sold.get());
+        for (Product product : inventory.getAllProducts()) {
+            assertTrue(product.getQuantity() >= 0, product.toString());
+        }
+    }
+
+    // Increments and guarded decrements interleaved with full product replacements
+    // Replacements target their own products, so the stock totals of the others stay checkable
+    @Test
+    void replacementsDoNotLoseOtherUpdates() throws Exception {
+        Inventory inventory = inventory(0);
+        for (int i = 0; i < PRODUCTS; i++) {
+            inventory.addProduct(new Product("C" + i, "Catalog " + i, 1.0, 0, "Stress", ""));
+        }
+        AtomicLong expected = new AtomicLong();
+
+        run((random, i) -> {
+            int index = random.nextInt(PRODUCTS);
+            if (i % 10 == 0) {
+                inventory.updateProduct("C" + index,
+                        new Product("C" + index, "Catalog " + i, random.nextInt(100), i, "Stress", "updated"));
+            } else if (i % 3 == 0) {
+                if (inventory.tryUpdateProductQuantity(id(index), -1)) {
+                    expected.decrementAndGet();
+                }
+            } else {
+                inventory.updateProductQuantity(id(index), 2);
+                expected.addAndGet(2);
+            }
+        });
+
+        long actual = 0;
+        for (int i = 0; i < PRODUCTS; i++) {
+            actual += inventory.getProduct(id(i)).getQuantity();
+        }
+        assertEquals(expected.get(), actual);
+    }
+
+    private interface Operation {
+        void apply(Random random, int iteration);
+    }
+
+    // Run the operation on all threads at once
+    private static void run(Operation operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                start.await();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    operation.apply(random, i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Inventory inventory(int quantity) {
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        for (int i = 0; i < PRODUCTS; i++) {
+            inventory.addProduct(new Product(id(i), "Product " + i, 1.0, quantity, "Stress", ""));
+        }
+        return inventory;
+    }
+
+    private static long totalQuantity(Inventory inventory) {
+        long total = 0;
+        for (Product product : inventory.getAllProducts()) {
+            total += product.getQuantity();
+        }
+        return total;
+    }
+
+    private static String id(int index) {
+        return "P" + index;
+    }
+}
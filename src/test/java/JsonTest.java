@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * JsonTest class checks that what Json writes parses back to the same values and that malformed
+ * documents and product objects are refused with IllegalArgumentException
+ */
+class JsonTest {
+
+    @Test
+    void writtenProductsParseBackUnchanged() {
+        List<Product> products = Arrays.asList(
+                new Product("A1", "Desk \"lamp\" \\ XL", 24.99, 40, "Lighting", "Line one\nline two\r\n\ttab"),
+                new Product("A2", "Käse € \u0001\u001f", 0.0, 0, "", ""),
+                new Product("A3", "Big", 12_345_678.5, Integer.MAX_VALUE / 100_000_000, "Tools", "x"));
+        Object parsed = Json.parse(Json.appendProducts(new StringBuilder(), products).toString());
+        List<?> array = (List<?>) parsed;
+        assertEquals(products.size(), array.size());
+        for (int i = 0; i < products.size(); i++) {
+            assertEquals(fields(products.get(i)), fields(Json.toProduct(array.get(i))));
+        }
+    }
+
+    @Test
+    void stringsRoundTrip() {
+        StringBuilder every = new StringBuilder();
+        for (char c = 0; c < 0x250; c++) {
+            every.append(c);
+        }
+        every.append("\uD83D\uDE00\u2028");
+        for (String value : Arrays.asList("", "plain", "\"\\/", every.toString())) {
+            assertEquals(value, Json.parse(Json.appendString(new StringBuilder(), value).toString()));
+        }
+        assertEquals("null", Json.appendString(new StringBuilder(), null).toString());
+    }
+
+    @Test
+    void parsesEveryKindOfValue() {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("z", 1L);
+        expected.put("a", Arrays.asList(-2L, 2.5, 1e3, -4.0E-2, true, false, null, "\u00e9/\""));
+        expected.put("empty", Collections.emptyMap());
+        expected.put("none", Collections.emptyList());
+        Object parsed = Json.parse(" {\"z\": 1, \"a\":[-2, 2.5, 1e3, -4.0E-2, true,false ,null,\"\\u00E9\\/\\\"\"],"
+                + "\n\"empty\":{}, \"none\":[ ]}\t");
+        assertEquals(expected, parsed);
+        assertEquals(Arrays.asList("z", "a", "empty", "none"), Arrays.asList(((Map<?, ?>) parsed).keySet().toArray()));
+        assertEquals(Long.MAX_VALUE, Json.parse(Long.toString(Long.MAX_VALUE)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "   ", "{", "}", "[1,]", "[1 2]", "{\"a\" 1}", "{\"a\":}", "{a:1}", "{\"a\":1,}",
+            "\"open", "\"bad \\u12g4\"", "\"cut \\u12\"", "\"ends with \\", "tru", "nul", "-", "1.2.3", "01x",
+            "99999999999999999999", "{} {}", "[1] x", "'single'"})
+    void malformedDocumentsAreRefused(String text) {
+        assertThrows(IllegalArgumentException.class, () -> Json.parse(text));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"[]", "{\"name\":\"n\",\"price\":1}", "{\"id\":\" \",\"name\":\"n\",\"price\":1}",
+            "{\"id\":\"a\",\"price\":1}", "{\"id\":\"a\",\"name\":\"n\"}", "{\"id\":\"a\",\"name\":\"n\",\"price\":\"1\"}",
+            "{\"id\":\"a\",\"name\":\"n\",\"price\":-1}", "{\"id\":\"a\",\"name\":\"n\",\"price\":1,\"quantity\":1.5}",
+            "{\"id\":\"a\",\"name\":\"n\",\"price\":1,\"quantity\":4294967296}",
+            "{\"id\":\"a\",\"name\":\"n\",\"price\":1,\"category\":7}", "{\"id\":1,\"name\":\"n\",\"price\":1}"})
+    void invalidProductsAreRefused(String text) {
+        Object value = Json.parse(text);
+        assertThrows(IllegalArgumentException.class, () -> Json.toProduct(value));
+    }
+
+    // Quantity, category and description may be left out
+    @Test
+    void optionalProductFieldsDefault() {
+        Product product = Json.toProduct(Json.parse("{\"id\":\"a\",\"name\":\"n\",\"price\":3,\"category\":null}"));
+        assertEquals(Arrays.asList("a", "n", 3.0, 0, "", ""), fields(product));
+    }
+
+    private static List<Object> fields(Product product) {
+        return Arrays.asList(product.getId(), product.getName(), product.getPrice(), product.getQuantity(),
+                product.getCategory(), product.getDescription());
+    }
+}
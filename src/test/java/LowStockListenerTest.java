@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * LowStockListenerTest class checks that low-stock listeners may call back into the inventory
+ * A listener reading the low-stock list takes every lock stripe, which used to deadlock the
+ * writers that called it while still holding their own stripe
+ */
+class LowStockListenerTest {
+    private static final int PRODUCTS = 64;
+    private static final int WRITERS = 4;
+    private static final int OPERATIONS = 20_000;
+
+    @Test
+    void listenersReadingTheInventoryDoNotBlockWriters() {
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        for (int i = 0; i < PRODUCTS; i++) {
+            inventory.addProduct(new Product("P" + i, "Product " + i, 1.0, 10, "Tools", ""));
+        }
+        Map<String, Boolean> lastSeen = new ConcurrentHashMap<>();
+        AtomicLong calls = new AtomicLong();
+        List<String> failures = new ArrayList<>();
+        inventory.addLowStockListener((product, low, quantity, threshold) -> {
+            calls.incrementAndGet();
+            inventory.getLowStockProducts();
+            inventory.getTotalInventoryValueCents();
+            Boolean previous = lastSeen.put(product.getId(), low);
+            if (previous != null && previous == low) {
+                synchronized (failures) {
+                    failures.add(product.getId() + " reported " + (low ? "low" : "recovered") + " twice in a row");
+                }
+            }
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                long seed = w;
+                writers.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        inventory.updateProductQuantity("P" + random.nextInt(PRODUCTS), random.nextInt(31) - 15);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            executor.shutdown();
+        });
+
+        assertTrue(calls.get() > 0, "no crossing was reported");
+        assertEquals(List.of(), failures);
+        for (Product product : inventory.getAllProducts()) {
+            assertEquals(inventory.isLowStock(product), lastSeen.getOrDefault(product.getId(), false),
+                    "last crossing reported for " + product.getId());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * ProductImporterTest class checks CSV and JSON Lines files written by export read back unchanged
+ * and rows that cannot be read are rejected with their line number without stopping the import.
+ * Products compare equal by ID only, so every field is compared on its own.
+ */
+class ProductImporterTest {
+    private static final String PUNCTUATION = ",\"\\\n\r\t ;'{}[]:é€\u0001";
+
+    @ParameterizedTest
+    @EnumSource(ProductImporter.Format.class)
+    void exportedProductsImportUnchanged(ProductImporter.Format format) throws IOException {
+        Inventory source = inventory();
+        source.upsertProducts(Arrays.asList(
+                new Product("A1", "Desk lamp, \"XL\"", 24.99, 40, "Lighting", "Line one\nline two\r\nand a tab\t"),
+                new Product("A2", "  padded  ", 0.1, 0, "", ""),
+                new Product("A3", "Back\\slash", 12_345_678.5, Integer.MAX_VALUE / 100_000_000, "Käse", "€ and \u0001"),
+                new Product("A4", "Plain", 1e-3, 7, "Tools", "")));
+        Random random = new Random(11);
+        for (int i = 0; i < 2_000; i++) {
+            source.addProduct(new Product("R" + i, randomText(random, 1), random.nextInt(1_000_000) / 100.0,
+                    random.nextInt(10_000), randomText(random, 0), randomText(random, 0)));
+        }
+
+        StringWriter file = new StringWriter();
+        assertEquals(source.getTotalProducts(), ProductImporter.exportProducts(source, file, format));
+        Inventory target = inventory();
+        ImportResult result = ProductImporter.importProducts(target, new StringReader(file.toString()), format, null, 0);
+
+        assertEquals(0, result.getRejected(), String.valueOf(result.getSampleRejects()));
+        assertEquals(source.getTotalProducts(), result.getAdded());
+        assertEquals(fields(source), fields(target));
+    }
+
+    // Rows for known IDs update the products instead of adding them
+    @Test
+    void importingAgainUpdates() throws IOException {
+        Inventory inventory = inventory();
+        String csv = "A1,Lamp,5.5,3\nA2,Chair,20,1\n";
+        ProductImporter.importProducts(inventory, new StringReader(csv), ProductImporter.Format.CSV, null, 0);
+        ImportResult result = ProductImporter.importProducts(inventory, new StringReader("A1,Lamp,6,4\n"),
+                ProductImporter.Format.CSV, null, 0);
+        assertEquals(0, result.getAdded());
+        assertEquals(1, result.getUpdated());
+        assertEquals(4, inventory.getProduct("A1").getQuantity());
+        assertEquals(6.0, inventory.getProduct("A1").getPrice());
+    }
+
+    @Test
+    void csvHeaderNamesTheColumnsInAnyOrder() throws IOException {
+        Inventory inventory = inventory();
+        String csv = "\uFEFFquantity, Price ,warehouse,ID,name\n"
+                + "3,9.5,North,B1,Bolt\n"
+                + "\n"
+                + "12,0.25,South,B2,\"Nut, hex\"\n";
+        ImportResult result = ProductImporter.importProducts(inventory, new StringReader(csv),
+                ProductImporter.Format.CSV, null, 0);
+        assertEquals(2, result.getRows());
+        assertEquals(Arrays.asList("B1", "Bolt", 9.5, 3, "", ""), fields(inventory.getProduct("B1")));
+        assertEquals(Arrays.asList("B2", "Nut, hex", 0.25, 12, "", ""), fields(inventory.getProduct("B2")));
+
+        assertThrows(IOException.class, () -> ProductImporter.importProducts(inventory(),
+                new StringReader("id,name,price\nC1,Cog,1\n"), ProductImporter.Format.CSV, null, 0));
+    }
+
+    @Test
+    void malformedCsvRowsAreRejectedWithTheirLine() throws IOException {
+        String csv = "G1,Good,1.5,2,Parts,\"first\nsecond\"\n"
+                + "X1,Bad price,1.2.3,4\n"
+                + "X2,Negative,1,-4\n"
+                + "X3,Too many,1,3000000000\n"
+                + ",No id,1,1\n"
+                + "X5,  ,1,1\n"
+                + "X6,Short,1\n"
+                + "G2,Also good,0,0\n"
+                + "X7,Open quote,1,1,\"never closed\n";
+        Inventory inventory = inventory();
+        StringWriter rejects = new StringWriter();
+        ImportResult result = ProductImporter.importProducts(inventory, new StringReader(csv),
+                ProductImporter.Format.CSV, rejects, 0);
+
+        assertEquals(9, result.getRows());
+        assertEquals(7, result.getRejected());
+        assertEquals(Arrays.asList("G1", "Good", 1.5, 2, "Parts", "first\nsecond"), fields(inventory.getProduct("G1")));
+        assertEquals(Arrays.asList("G2", "Also good", 0.0, 0, "", ""), fields(inventory.getProduct("G2")));
+        assertEquals(Arrays.asList(
+                "line 3: Invalid price '1.2.3'",
+                "line 4: Quantity cannot be negative",
+                "line 5: Invalid quantity '3000000000'",
+                "line 6: Product ID cannot be empty",
+                "line 7: Product Name cannot be empty",
+                "line 8: Expected 6 columns, found 3",
+                "line 10: Unterminated quoted field"), Arrays.asList(rejects.toString().split("\n")));
+        assertEquals(result.getSampleRejects(), Arrays.asList(rejects.toString().split("\n")));
+    }
+
+    @Test
+    void malformedJsonLinesAreRejectedWithTheirLine() throws IOException {
+        String jsonl = "{\"id\":\"G1\",\"name\":\"Good \\u00e9\\\"q\\\"\",\"price\":2.5,\"quantity\":3,\"extra\":true}\n"
+                + "[1, 2]\n"
+                + "{\"id\":\"X2\" \"name\":\"No colon\"}\n"
+                + "{\"id\":\"X3\",\"name\":\"Nested\",\"price\":{\"amount\":1},\"quantity\":1}\n"
+                + "{\"id\":\"X4\",\"name\":\"Trailing\",\"price\":1,\"quantity\":1} extra\n"
+                + "{\"id\":\"X5\",\"name\":\"Open string,\"price\":1,\"quantity\":1}\n"
+                + "{\"id\":\"X6\",\"name\":\"Bad escape \\u00zz\",\"price\":1,\"quantity\":1}\n"
+                + "{\"id\":\"X7\",\"name\":\"No quantity\",\"price\":1}\n"
+                + "\n"
+                + "{\"id\":\"X8\",\"name\":\"Bad price\",\"price\":\"cheap\",\"quantity\":1}\n"
+                + "{\"id\":\"G2\",\"name\":\"Also good\",\"price\":0,\"quantity\":0,\"category\":null}\n"
+                + "{\"id\":\"X9\",\"name\":\"Cut off\"";
+        Inventory inventory = inventory();
+        StringWriter rejects = new StringWriter();
+        ImportResult result = ProductImporter.importProducts(inventory, new StringReader(jsonl),
+                ProductImporter.Format.JSONL, rejects, 0);
+
+        assertEquals(11, result.getRows());
+        assertEquals(9, result.getRejected(), rejects.toString());
+        assertEquals(Arrays.asList("G1", "Good é\"q\"", 2.5, 3, "", ""), fields(inventory.getProduct("G1")));
+        assertEquals(Arrays.asList("G2", "Also good", 0.0, 0, "", ""), fields(inventory.getProduct("G2")));
+        List<String> lines = new ArrayList<>();
+        for (String reject : rejects.toString().split("\n")) {
+            lines.add(reject.substring(0, reject.indexOf(':')));
+        }
+        assertEquals(Arrays.asList("line 2", "line 3", "line 4", "line 5", "line 6", "line 7", "line 8", "line 10",
+                "line 12"), lines);
+        for (String id : Arrays.asList("X2", "X3", "X4", "X5", "X6", "X7", "X8", "X9")) {
+            assertNull(inventory.getProduct(id), id);
+        }
+    }
+
+    @Test
+    void pricesAndQuantitiesParseLikeTheJdk() {
+        for (String price : Arrays.asList("0", "19.99", " 7.5 ", "0.000001", "123456789012345", "1e3", "4.2E-2",
+                "1234567890123456.5", "-3.25")) {
+            assertEquals(Double.parseDouble(price.trim()), ProductReader.parsePrice(price), price);
+        }
+        for (String price : Arrays.asList("", "abc", "1.2.3", "1e999", "12,50")) {
+            assertEquals(Double.NaN, ProductReader.parsePrice(price), price);
+        }
+        assertEquals(42, ProductReader.parseQuantity(" +42 "));
+        assertEquals(Integer.MAX_VALUE, ProductReader.parseQuantity("2147483647"));
+        assertEquals(Integer.MIN_VALUE, ProductReader.parseQuantity("-2147483648"));
+        for (String quantity : Arrays.asList("", "-", "1.5", "2147483648", "99999999999999999999", "7x")) {
+            assertEquals(Long.MIN_VALUE, ProductReader.parseQuantity(quantity), quantity);
+        }
+    }
+
+    // Every field of every product, by ID
+    private static Map<String, List<Object>> fields(Inventory inventory) {
+        Map<String, List<Object>> fields = new TreeMap<>();
+        for (Product product : inventory.getAllProducts()) {
+            fields.put(product.getId(), fields(product));
+        }
+        return fields;
+    }
+
+    private static List<Object> fields(Product product) {
+        return Arrays.asList(product.getId(), product.getName(), product.getPrice(), product.getQuantity(),
+                product.getCategory(), product.getDescription());
+    }
+
+    // Letters mixed with characters that need quoting or escaping, at least minLength long
+    private static String randomText(Random random, int minLength) {
+        StringBuilder text = new StringBuilder();
+        int length = minLength + random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            text.append(random.nextInt(4) == 0 ? PUNCTUATION.charAt(random.nextInt(PUNCTUATION.length()))
+                    : (char) ('a' + random.nextInt(26)));
+        }
+        String value = text.toString();
+        return minLength > 0 && value.trim().isEmpty() ? "x" + value : value;
+    }
+
+    private static Inventory inventory() {
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        return inventory;
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * ReservationTest class runs concurrent checkouts against the reservation API
+ * Every checkout reserves 1 to 3 units, then confirms (70%), releases (20%) or abandons (10%)
+ * the reservation. Stock runs out part way, so reservations are refused as well. Once the
+ * abandoned ones have expired, each product must have its initial stock minus the confirmed
+ * units and nothing left reserved.
+ */
+class ReservationTest {
+    private static final int THREADS = 16;
+    private static final int OPERATIONS = 20_000;
+    private static final long TTL_MILLIS = 200;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100})
+    void checkoutsNeverOversell(int productCount) throws Exception {
+        // About 1.4 units are confirmed per operation; give the products 60% of that
+        int initialStock = Math.max(1, (int) (OPERATIONS * 0.6 * 1.4 / productCount));
+        Inventory inventory = inventory(productCount, initialStock);
+        AtomicLongArray confirmedUnits = new AtomicLongArray(productCount);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                go.await();
+                for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                    int product = random.nextInt(productCount);
+                    Reservation reservation = inventory.reserveStock(id(product), 1 + random.nextInt(3), TTL_MILLIS);
+                    if (reservation == null) {
+                        continue;
+                    }
+                    int outcome = random.nextInt(10);
+                    if (outcome < 7) {
+                        if (inventory.confirmReservation(reservation.getId())) {
+                            confirmedUnits.addAndGet(product, reservation.getQuantity());
+                        }
+                    } else if (outcome < 9) {
+                        inventory.releaseReservation(reservation.getId());
+                    }
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Let every abandoned reservation expire
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TTL_MILLIS + 5_000);
+        while (inventory.getActiveReservationCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, inventory.getActiveReservationCount(), "reservations that never expired");
+        for (int p = 0; p < productCount; p++) {
+            long expected = initialStock - confirmedUnits.get(p);
+            assertTrue(expected >= 0, id(p) + " oversold by " + -expected);
+            assertEquals(expected, inventory.getProduct(id(p)).getQuantity(), id(p));
+            assertEquals(expected, inventory.getAvailableQuantity(id(p)), id(p) + " available");
+            assertEquals(0, inventory.getReservedQuantity(id(p)), id(p) + " reserved");
+        }
+        inventory.close();
+    }
+
+    // Deadlines spread over a quarter of a second; the timing wheel may be late, never early
+    @Test
+    void reservationsNeverExpireEarly() throws Exception {
+        Inventory inventory = inventory(100, 1_000_000);
+        Random random = new Random(7);
+        List<Reservation> reservations = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            reservations.add(inventory.reserveStock(id(random.nextInt(100)), 1, 20 + random.nextInt(250)));
+        }
+        reservations.sort(Comparator.comparingLong(Reservation::getDeadlineNanos));
+
+        for (Reservation reservation : reservations) {
+            while (reservation.isActive()) {
+                Thread.sleep(0, 100_000);
+            }
+            assertTrue(System.nanoTime() >= reservation.getDeadlineNanos(), "expired before its deadline");
+        }
+        inventory.close();
+    }
+
+    private static Inventory inventory(int productCount, int quantity) {
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        List<Product> products = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            products.add(new Product(id(i), "Product " + i, 9.99, quantity, "Bench", ""));
+        }
+        inventory.upsertProducts(products);
+        return inventory;
+    }
+
+    private static String id(int index) {
+        return "SKU" + index;
+    }
+}
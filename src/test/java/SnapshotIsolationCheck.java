@@ -0,0 +1,208 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SnapshotIsolationCheck class verifies that reports always see one consistent version of the inventory
+ * Writer threads keep applying batches that move stock between two products of the same price
+ * and move products between categories. None of them changes the product count, the total
+ * quantity or the total value, so every consistent view of the inventory has the same totals;
+ * a view that saw only half of a batch would not. Each writer owns its own products (every
+ * writers-th one), so a category move, which writes back a whole product it read earlier, never
+ * undoes a transfer made by another writer in between. Meanwhile reader threads take snapshots and
+ * check every report computed from them, recount each snapshot product by product, and check
+ * that a report repeated on an old snapshot does not change while writers carry on.
+ *
+ * For comparison it also sums the quantities while walking the live inventory, which is not
+ * isolated and can see a batch half-applied (shown as torn reads, not counted as failures).
+ * SnapshotIsolationTest runs it.
+ */
+class SnapshotIsolationCheck {
+    private static final int PRICE_CLASSES = 5;
+    private static final String[] CATEGORIES = {"Tools", "Garden", "Kitchen", "Toys", "Books"};
+    
+    // Run the writers and readers for a number of seconds, printing what they did; returns the
+    // inconsistencies found (the first ten are printed as well)
+    static List<String> run(int productCount, int seconds, int writers, int readers) throws Exception {
+        // Products a writer moves stock between, a multiple of PRICE_CLASSES so transfers can wrap around
+        int owned = productCount / (writers * PRICE_CLASSES) * PRICE_CLASSES;
+        if (owned < 2 * PRICE_CLASSES) {
+            throw new IllegalArgumentException("Need at least " + 2 * PRICE_CLASSES * writers + " products for "
+                    + writers + " writer(s)");
+        }
+        
+        Inventory inventory = new Inventory(null);
+        inventory.setVerbose(false);
+        List<Product> products = new ArrayList<>(productCount);
+        Random seed = new Random(42);
+        for (int i = 0; i < productCount; i++) {
+            products.add(new Product(id(i), "Product " + i, priceOf(i, writers), seed.nextInt(200),
+                    CATEGORIES[i % CATEGORIES.length], ""));
+        }
+        inventory.upsertProducts(products);
+        InventoryReport initial = inventory.generateReport();
+        System.out.println(String.format("Products: %d, %d writer(s), %d reader(s), %d s", productCount, writers,
+                readers, seconds));
+        System.out.println("Initial: " + initial);
+        
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong batches = new AtomicLong();
+        AtomicLong reports = new AtomicLong();
+        AtomicLong liveScans = new AtomicLong();
+        AtomicLong tornLiveScans = new AtomicLong();
+        AtomicLong snapshotNanos = new AtomicLong();
+        AtomicLong maxSnapshotNanos = new AtomicLong();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        List<Future<?>> futures = new ArrayList<>();
+        
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(writer);
+                while (running.get()) {
+                    if (random.nextInt(10) == 0) {
+                        moveCategory(inventory, id(writer + writers * random.nextInt(owned)), random);
+                    } else {
+                        transfer(inventory, writer, writers, owned, random);
+                    }
+                    batches.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        
+        for (int r = 0; r < readers; r++) {
+            boolean scansLive = r == 0;
+            futures.add(executor.submit(() -> {
+                InventorySnapshot previous = null;
+                InventoryReport previousReport = null;
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    InventorySnapshot snapshot = inventory.snapshot();
+                    long elapsed = System.nanoTime() - start;
+                    snapshotNanos.addAndGet(elapsed);
+                    maxSnapshotNanos.accumulateAndGet(elapsed, Math::max);
+                    
+                    InventoryReport report = snapshot.generateReport();
+                    check(failures, "report of version " + snapshot.getVersion(), report, initial);
+                    check(failures, "recount of version " + snapshot.getVersion(), recount(snapshot), initial);
+                    if (previous != null) {
+                        // An old snapshot still reads exactly as it did when it was taken
+                        InventoryReport again = previous.generateReport();
+                        if (!sameTotals(again, previousReport)) {
+                            failures.add("version " + previous.getVersion() + " changed from " + previousReport
+                                    + " to " + again);
+                        }
+                    }
+                    previous = snapshot;
+                    previousReport = report;
+                    reports.incrementAndGet();
+                    
+                    if (scansLive) {
+                        long quantity = 0;
+                        Iterator<Product> live = inventory.iterateProducts(ProductOrder.ID, null);
+                        while (live.hasNext()) {
+                            quantity += live.next().getQuantity();
+                        }
+                        liveScans.incrementAndGet();
+                        if (quantity != initial.getTotalQuantity()) {
+                            tornLiveScans.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        
+        check(failures, "final report", inventory.generateReport(), initial);
+        ConsistencyReport consistency = inventory.checkConsistency();
+        if (!consistency.isConsistent()) {
+            failures.add("running totals drifted: " + consistency);
+        }
+        
+        System.out.println(String.format("Batches applied: %d (%.0f/s)", batches.get(),
+                batches.get() / (double) seconds));
+        System.out.println(String.format("Snapshot reports checked: %d, snapshot() average %.3f ms, longest %.3f ms",
+                reports.get(), snapshotNanos.get() / 1e6 / Math.max(1, reports.get()), maxSnapshotNanos.get() / 1e6));
+        System.out.println(String.format("Live scans without a snapshot: %d, torn: %d", liveScans.get(),
+                tornLiveScans.get()));
+        for (String failure : failures.subList(0, Math.min(10, failures.size()))) {
+            System.out.println("FAILED: " + failure);
+        }
+        return failures;
+    }
+    
+    // Move some stock between two products of the writer with the same price, all-or-nothing
+    private static void transfer(Inventory inventory, int writer, int writers, int owned, Random random) {
+        int from = random.nextInt(owned);
+        int to = (from + PRICE_CLASSES * (1 + random.nextInt(owned / PRICE_CLASSES - 1))) % owned;
+        int amount = 1 + random.nextInt(20);
+        // Rejected when the source is short of stock, which leaves the totals untouched as well
+        inventory.applyBatch(Arrays.asList(InventoryOperation.adjustQuantity(id(writer + writers * from), -amount),
+                InventoryOperation.adjustQuantity(id(writer + writers * to), amount)));
+    }
+    
+    // Move a product to another category, keeping everything else; only the product's own writer
+    // changes it, so the copy read here is still current when the update is applied
+    private static void moveCategory(Inventory inventory, String id, Random random) {
+        Product product = inventory.getProduct(id);
+        if (product != null) {
+            Product moved = product.copy();
+            moved.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            inventory.applyBatch(Collections.singletonList(InventoryOperation.update(id, moved)));
+        }
+    }
+    
+    // Totals of a snapshot added up product by product, without the report engine
+    private static InventoryReport recount(InventorySnapshot snapshot) {
+        long[] totals = new long[3]; // products, quantity, value
+        snapshot.forEach(product -> {
+            totals[0]++;
+            totals[1] += product.getQuantity();
+            totals[2] += product.getTotalValueCents();
+        });
+        return new InventoryReport((int) totals[0], totals[1], totals[2], Collections.emptyList(),
+                Collections.singletonList(new CategoryStats("", (int) totals[0], totals[1], totals[2], 0)),
+                Collections.emptyList(), Collections.emptyList(), 0);
+    }
+    
+    private static void check(List<String> failures, String label, InventoryReport report, InventoryReport expected) {
+        long categoryProducts = 0;
+        long categoryQuantity = 0;
+        long categoryValue = 0;
+        for (CategoryStats stats : report.getCategories()) {
+            categoryProducts += stats.getProductCount();
+            categoryQuantity += stats.getTotalQuantity();
+            categoryValue += stats.getTotalValueCents();
+        }
+        if (!sameTotals(report, expected) || categoryProducts != expected.getTotalProducts()
+                || categoryQuantity != expected.getTotalQuantity() || categoryValue != expected.getTotalValueCents()) {
+            failures.add(label + ": " + report + " (categories: " + categoryProducts + " products, "
+                    + categoryQuantity + " items, " + Money.format(categoryValue) + "), expected " + expected);
+        }
+    }
+    
+    private static boolean sameTotals(InventoryReport a, InventoryReport b) {
+        return a.getTotalProducts() == b.getTotalProducts() && a.getTotalQuantity() == b.getTotalQuantity()
+                && a.getTotalValueCents() == b.getTotalValueCents();
+    }
+    
+    // Products of one writer (index modulo writers) whose position among that writer's products
+    // differs by a multiple of PRICE_CLASSES share a price
+    private static double priceOf(int index, int writers) {
+        return 1.25 + 7.5 * (index / writers % PRICE_CLASSES);
+    }
+    
+    private static String id(int index) {
+        return "S" + index;
+    }
+}
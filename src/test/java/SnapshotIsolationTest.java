@@ -0,0 +1,18 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * SnapshotIsolationTest class runs SnapshotIsolationCheck for one second on a small catalog
+ * Four writers on 2,000 products apply thousands of batches in that second, plenty for a report
+ * over a half-applied batch to show up
+ */
+class SnapshotIsolationTest {
+
+    @Test
+    void everyReportMatchesOneVersionOfTheInventory() throws Exception {
+        assertEquals(Collections.emptyList(), SnapshotIsolationCheck.run(2_000, 1, 4, 2));
+    }
+}
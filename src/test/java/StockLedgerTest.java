@@ -0,0 +1,193 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * StockLedgerTest class checks the stock ledger's answers against a plain list of movements
+ * Movements are spread over the last 365 days; a few products are followed in arrays as well,
+ * and every point-in-time answer and window count for them must match, before compaction and
+ * (at the end of each day, which rollups keep exact) after it
+ */
+class StockLedgerTest {
+    private static final long SPAN_MILLIS = 365 * StockLedger.DAY_MILLIS;
+    private static final long DETAIL_MILLIS = StockLedger.DEFAULT_DETAIL_DAYS * StockLedger.DAY_MILLIS;
+    private static final int MOVEMENTS = 200_000;
+    private static final int PRODUCTS = 1_000;
+    private static final int TRACKED = 8;
+    private static final int CHECKS = 5_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void answersMatchTheMovementsBeforeAndAfterCompaction() throws IOException {
+        long now = System.currentTimeMillis();
+        StockLedger ledger = new StockLedger(null, DETAIL_MILLIS, StockLedger.DAY_MILLIS, 0);
+        Reference reference = new Reference();
+        record(ledger, reference, now);
+
+        reference.check(ledger, now, false);
+        ledger.compact(now);
+        reference.check(ledger, now, true);
+    }
+
+    @Test
+    void aLedgerFileReadsBackTheSameBeforeAndAfterCompaction() throws IOException {
+        long now = System.currentTimeMillis();
+        File file = directory.resolve("inventory.dat.ledger").toFile();
+        StockLedger ledger = new StockLedger(file, DETAIL_MILLIS, StockLedger.DAY_MILLIS, 0);
+        Reference reference = new Reference();
+        record(ledger, reference, now);
+        ledger.close();
+
+        ledger = new StockLedger(file, DETAIL_MILLIS, StockLedger.DAY_MILLIS, 0);
+        assertEquals(MOVEMENTS, ledger.getMovementCount());
+        reference.check(ledger, now, false);
+        ledger.compact(now);
+        long compacted = ledger.getMovementCount();
+        ledger.close();
+
+        ledger = new StockLedger(file, DETAIL_MILLIS, StockLedger.DAY_MILLIS, 0);
+        assertEquals(compacted, ledger.getMovementCount());
+        reference.check(ledger, now, true);
+        ledger.close();
+    }
+
+    // Change an Inventory on a data file, reopen it and look the history up
+    @Test
+    void aReopenedInventoryKnowsItsHistory() throws Exception {
+        String dataFile = directory.resolve("inventory.dat").toString();
+        System.setProperty("inventory.ledger", "true");
+        try {
+            Inventory inventory = new Inventory(dataFile, null, -1, false);
+            inventory.addProduct(new Product("A", "Widget", 2.50, 10, "Parts", ""));
+            long added = System.currentTimeMillis();
+            Thread.sleep(5);
+            inventory.updateProductQuantity("A", -3);
+            inventory.tryUpdateProductQuantity("A", 5);
+            Product corrected = inventory.getProduct("A").copy();
+            corrected.setQuantity(20);
+            inventory.updateProduct("A", corrected);
+            inventory.close();
+
+            inventory = new Inventory(dataFile, null, -1, false);
+            List<StockMovement.Reason> reasons = new ArrayList<>();
+            for (StockMovement movement : inventory.getStockMovements("A", 0, Long.MAX_VALUE)) {
+                reasons.add(movement.getReason());
+            }
+            assertEquals(Arrays.asList(StockMovement.Reason.ADDED, StockMovement.Reason.ADJUSTED,
+                    StockMovement.Reason.ADJUSTED, StockMovement.Reason.CORRECTED), reasons);
+            assertEquals(10, inventory.getQuantityAt("A", added));
+            assertEquals(20, inventory.getQuantityAt("A", Long.MAX_VALUE));
+            assertEquals(0, inventory.getQuantityAt("A", added - 1000));
+            inventory.deleteProduct("A");
+            assertEquals(0, inventory.getQuantityAt("A", Long.MAX_VALUE));
+            assertEquals(Collections.singletonMap("A", 10), inventory.getQuantitiesAt(added));
+            inventory.close();
+        } finally {
+            System.clearProperty("inventory.ledger");
+        }
+    }
+
+    // Record movements evenly spread over the year before now, following the first TRACKED products
+    private static void record(StockLedger ledger, Reference reference, long now) throws IOException {
+        Random random = new Random(1);
+        int[] quantities = new int[PRODUCTS];
+        long first = now - SPAN_MILLIS;
+        for (int i = 0; i < MOVEMENTS; i++) {
+            int product = random.nextInt(PRODUCTS);
+            int change = random.nextInt(11) - 5;
+            if (change == 0 || quantities[product] + change < 0) {
+                change = 1 + random.nextInt(5);
+            }
+            quantities[product] += change;
+            long time = first + (long) (i * (double) SPAN_MILLIS / MOVEMENTS);
+            StockMovement.Reason reason = change > 0 ? StockMovement.Reason.ADJUSTED
+                    : StockMovement.Reason.RESERVATION_CONFIRMED;
+            ledger.record(id(product), change, reason, time);
+            if (product < TRACKED) {
+                reference.add(product, time, quantities[product]);
+            }
+        }
+    }
+
+    private static String id(int product) {
+        return String.format("SKU-%08d", product);
+    }
+
+    /**
+     * Reference class is every movement of the followed products as times and resulting quantities
+     */
+    private static final class Reference {
+        private final long[][] times = new long[TRACKED][16];
+        private final long[][] quantities = new long[TRACKED][16];
+        private final int[] counts = new int[TRACKED];
+
+        void add(int product, long time, long quantity) {
+            if (counts[product] == times[product].length) {
+                times[product] = Arrays.copyOf(times[product], counts[product] * 2);
+                quantities[product] = Arrays.copyOf(quantities[product], counts[product] * 2);
+            }
+            times[product][counts[product]] = time;
+            quantities[product][counts[product]++] = quantity;
+        }
+
+        long quantityAt(int product, long time) {
+            int index = Arrays.binarySearch(times[product], 0, counts[product], time);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return index < 0 ? 0 : quantities[product][index];
+        }
+
+        int countIn(int product, long from, long to) {
+            return lowerBound(times[product], counts[product], to) - lowerBound(times[product], counts[product], from);
+        }
+
+        // Compare random queries; after compaction only ends of days before the detail window are exact,
+        // and those days' movements are rolled up
+        void check(StockLedger ledger, long now, boolean compacted) {
+            Random random = new Random(4);
+            long from = now - SPAN_MILLIS;
+            long detailCutoff = Math.floorDiv(now - DETAIL_MILLIS, StockLedger.DAY_MILLIS) * StockLedger.DAY_MILLIS;
+            for (int i = 0; i < CHECKS; i++) {
+                int product = random.nextInt(TRACKED);
+                long time = from + (long) (random.nextDouble() * (now - from));
+                if (compacted && time < detailCutoff) {
+                    time = Math.floorDiv(time, StockLedger.DAY_MILLIS) * StockLedger.DAY_MILLIS - 1;
+                }
+                assertEquals(quantityAt(product, time), ledger.quantityAt(id(product), time),
+                        "quantity of " + id(product) + " at " + time);
+                if (!compacted || time >= detailCutoff) {
+                    long to = time + StockLedger.DAY_MILLIS;
+                    assertEquals(countIn(product, time, to), ledger.movements(id(product), time, to).size(),
+                            "movements of " + id(product) + " from " + time);
+                }
+            }
+        }
+
+        private static int lowerBound(long[] values, int count, long key) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}